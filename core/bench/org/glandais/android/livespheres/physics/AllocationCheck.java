@@ -0,0 +1,196 @@
+package org.glandais.android.livespheres.physics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.glandais.android.livespheres.opengl.FrameInterpolator;
+import org.glandais.android.livespheres.opengl.ScreenTransform;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Checks on a plain JVM that the steady-state sections of the core, as the
+ * wallpaper runs them, do not allocate once warmed up: the physics update
+ * and its snapshot, gravity and touch samples, and the frame interpolation.
+ * On a device, AllocationTracker checks the whole frame path. Not part of
+ * the application.
+ *
+ * The update of {@link Box2DEngine} is measured but outside the guarantee:
+ * the broadphase of JBox2D sorts its pairs with Arrays.sort, whose merges
+ * allocate on every step with contacts. It is reported and never fails.
+ *
+ * Usage: AllocationCheck [ball counts], comma separated. Exits with status 1
+ * if a section allocated. Run from the root with "gradle
+ * :core:allocationCheck", part of "gradle check".
+ */
+public class AllocationCheck {
+
+	private static final float WIDTH = 20.0f;
+	private static final float HEIGHT = 12.0f;
+	private static final float GRAVITY = 4.0f * 9.81f;
+	private static final float STEP = 0.01f;
+	private static final int SUBSTEPS = 4;
+	private static final long UPDATE_PERIOD = 40000000L;
+
+	private static final int WARMUP_SECTIONS = 20000;
+	private static final int MEASURED_SECTIONS = 2000;
+
+	private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	/**
+	 * One section of the frame path, run repeatedly.
+	 */
+	private interface Section {
+		void run(int i);
+	}
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		String[] counts = (args.length > 0 ? args[0] : "10,500").split(",");
+		// Measures the measurement, which allocates nothing either
+		check("empty", new Section() {
+			public void run(int i) {
+			}
+		});
+		check("gravity", gravity());
+		check("touches", touches());
+		for (String count : counts) {
+			int n = Integer.parseInt(count);
+			check("circles update balls=" + n, update(new CircleEngine(3, 8),
+					n));
+			check("box2d update balls=" + n, update(new Box2DEngine(3, 8), n),
+					false);
+			check("frame balls=" + n, frame(n));
+		}
+		if (failures > 0) {
+			System.out.println(failures + " sections allocated");
+			System.exit(1);
+		}
+	}
+
+	private static void check(String name, Section section) {
+		check(name, section, true);
+	}
+
+	/**
+	 * @param guaranteed
+	 *            false to only report the allocations of the section
+	 */
+	private static void check(String name, Section section,
+			boolean guaranteed) {
+		long threadId = Thread.currentThread().getId();
+		for (int i = 0; i < WARMUP_SECTIONS; i++) {
+			section.run(i);
+		}
+		long start = THREADS.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < MEASURED_SECTIONS; i++) {
+			section.run(WARMUP_SECTIONS + i);
+		}
+		long allocated = THREADS.getThreadAllocatedBytes(threadId) - start;
+		boolean failed = allocated > 0 && guaranteed;
+		if (failed) {
+			failures++;
+		}
+		System.out.println(name + ": " + allocated + " bytes in "
+				+ MEASURED_SECTIONS + " sections"
+				+ (failed ? " FAILED" : guaranteed ? "" : " (not guaranteed)"));
+	}
+
+	/**
+	 * The update of the physics thread: touches applied as velocities,
+	 * steps, state read, snapshot published.
+	 */
+	private static Section update(final PhysicsEngine engine, final int count) {
+		engine.reset(WIDTH, HEIGHT);
+		Random random = new Random(42);
+		float radius = (float) Math.min(0.11f * HEIGHT, Math.sqrt(0.5f
+				* WIDTH * HEIGHT / (count * Math.PI)) * 0.9f);
+		for (int i = 0; i < count; i++) {
+			engine.addBall(radius + random.nextFloat() * (WIDTH - 2 * radius),
+					radius + random.nextFloat() * (HEIGHT - 2 * radius),
+					radius, 0.9f, 0.7f);
+		}
+		final BodyState state = new BodyState(count);
+		final SnapshotExchange exchange = new SnapshotExchange(count);
+		return new Section() {
+			public void run(int i) {
+				if (i % 200 == 0) {
+					float angle = (float) (i * Math.PI / 1000.0);
+					engine.setGravity(GRAVITY * (float) Math.sin(angle),
+							-GRAVITY * (float) Math.cos(angle));
+					engine.addVelocity(i % count, 1.0f, 1.0f);
+				}
+				for (int j = 0; j < SUBSTEPS; j++) {
+					engine.step(STEP);
+				}
+				engine.takeNewContactCount();
+				engine.readState(state);
+				WorldSnapshot snapshot = exchange.getBackBuffer();
+				System.arraycopy(state.x, 0, snapshot.x, 0, count);
+				System.arraycopy(state.y, 0, snapshot.y, 0, count);
+				System.arraycopy(state.angle, 0, snapshot.angle, 0, count);
+				System.arraycopy(state.radius, 0, snapshot.radius, 0, count);
+				snapshot.count = count;
+				exchange.publish();
+				exchange.acquire();
+			}
+		};
+	}
+
+	private static Section gravity() {
+		final GravityFilter filter = new GravityFilter(16, 100000000L);
+		return new Section() {
+			public void run(int i) {
+				long time = i * 20000000L;
+				filter.add(0.1f * (i % 7), 9.81f, time);
+				filter.update(time);
+			}
+		};
+	}
+
+	private static Section touches() {
+		final TouchQueue queue = new TouchQueue(32, 0.5f);
+		return new Section() {
+			public void run(int i) {
+				queue.add(i % 20, i % 12, 1.0f);
+				queue.add((i + 10) % 20, i % 12, 1.0f);
+				queue.take();
+			}
+		};
+	}
+
+	/**
+	 * The frame of the GL thread, with a snapshot published every few
+	 * frames.
+	 */
+	private static Section frame(final int count) {
+		final SnapshotExchange exchange = new SnapshotExchange(count);
+		for (int n = 0; n < 3; n++) {
+			WorldSnapshot snapshot = exchange.getBackBuffer();
+			for (int i = 0; i < count; i++) {
+				snapshot.x[i] = i % 20;
+				snapshot.y[i] = i % 12;
+				snapshot.radius[i] = 0.2f;
+			}
+			snapshot.count = count;
+			snapshot.time = UPDATE_PERIOD;
+			exchange.publish();
+		}
+		final ScreenTransform transform = new ScreenTransform(
+				ScreenTransform.ROTATION_90, 800, 480, 40.0f);
+		final FrameInterpolator frame = new FrameInterpolator(count);
+		return new Section() {
+			public void run(int i) {
+				if (i % 3 == 0) {
+					exchange.publish();
+				}
+				long renderTime = UPDATE_PERIOD + (i % 3) * UPDATE_PERIOD
+						/ 3;
+				frame.interpolate(exchange, transform, 40.0f, renderTime);
+				frame.getNextFrameTime(exchange.getFrontBuffer(), 16666667L);
+			}
+		};
+	}
+}
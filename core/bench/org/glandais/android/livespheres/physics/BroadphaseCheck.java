@@ -0,0 +1,330 @@
+package org.glandais.android.livespheres.physics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks on a plain JVM that {@link UniformGrid} misses no touching pair: the
+ * grid is driven as CircleEngine drives it, and after each update the sorted
+ * set of touching pairs among its candidates must equal the set found by a
+ * brute force search over all pairs. Candidates must also be listed once,
+ * and never pair a ball with itself. Not part of the application.
+ *
+ * Layouts are random ones with moving balls, equal radius balls touching
+ * exactly across cell boundaries, and boxes resized as the wallpaper does
+ * on rotation.
+ *
+ * Exits with status 1 if a layout fails. Run from the root with "gradle
+ * :core:broadphaseCheck", part of "gradle check".
+ */
+public class BroadphaseCheck {
+
+	private static final float WIDTH = 20.0f;
+	private static final float HEIGHT = 12.0f;
+
+	private static int failures = 0;
+
+	/**
+	 * Balls and box of a layout, as CircleEngine keeps them.
+	 */
+	private static class Layout {
+		final UniformGrid grid = new UniformGrid();
+		float width;
+		float height;
+		int count = 0;
+		float[] x = new float[0];
+		float[] y = new float[0];
+		float[] radius = new float[0];
+		float maxRadius = 0.0f;
+		boolean gridChanged = true;
+
+		Layout(float width, float height) {
+			this.width = width;
+			this.height = height;
+		}
+
+		void add(float bx, float by, float ballRadius) {
+			if (count == x.length) {
+				int capacity = Math.max(16, count * 2);
+				x = Arrays.copyOf(x, capacity);
+				y = Arrays.copyOf(y, capacity);
+				radius = Arrays.copyOf(radius, capacity);
+			}
+			x[count] = bx;
+			y[count] = by;
+			radius[count] = ballRadius;
+			count++;
+			if (ballRadius > maxRadius) {
+				maxRadius = ballRadius;
+				gridChanged = true;
+			}
+		}
+
+		/**
+		 * Same scaling as CircleEngine.resize, without the clamping.
+		 */
+		void resize(float newWidth, float newHeight, float radiusScale) {
+			float scaleX = newWidth / width;
+			float scaleY = newHeight / height;
+			width = newWidth;
+			height = newHeight;
+			for (int i = 0; i < count; i++) {
+				x[i] *= scaleX;
+				y[i] *= scaleY;
+				radius[i] *= radiusScale;
+			}
+			maxRadius *= radiusScale;
+			gridChanged = true;
+		}
+
+		int findPairs() {
+			if (gridChanged) {
+				grid.reset(width, height, 2.0f * maxRadius);
+				gridChanged = false;
+			}
+			grid.update(count, x, y);
+			return grid.findPairs();
+		}
+
+		boolean isTouching(int a, int b) {
+			float dx = x[b] - x[a];
+			float dy = y[b] - y[a];
+			float r = radius[a] + radius[b];
+			return dx * dx + dy * dy <= r * r;
+		}
+	}
+
+	/**
+	 * Outcome of the updates of one layout.
+	 */
+	private static class Result {
+		final String name;
+		int updates = 0;
+		long candidates = 0;
+		long touching = 0;
+		String error = null;
+
+		Result(String name) {
+			this.name = name;
+		}
+	}
+
+	public static void main(String[] args) {
+		random();
+		cellBoundaries();
+		resizes();
+		if (failures > 0) {
+			System.out.println(failures + " layouts failed");
+			System.exit(1);
+		}
+	}
+
+	private static void random() {
+		int[] counts = { 1, 2, 17, 200, 500 };
+		for (int count : counts) {
+			Random random = new Random(count);
+			Layout layout = new Layout(WIDTH, HEIGHT);
+			Result result = new Result("random balls=" + count);
+			float maxRadius = (float) Math.min(0.11f * HEIGHT, Math.sqrt(0.5f
+					* WIDTH * HEIGHT / (count * Math.PI)));
+			// Balls come in a few at a time, as the grid grows its links
+			for (int i = 0; i < count; i++) {
+				float r = maxRadius * (0.6f + 0.4f * random.nextFloat());
+				layout.add(random.nextFloat() * WIDTH, random.nextFloat()
+						* HEIGHT, r);
+				if (i % 7 == 0) {
+					check(layout, result);
+				}
+			}
+			// Moves of up to a cell per update, slightly past the edges
+			for (int step = 0; step < 200; step++) {
+				float move = 2.0f * maxRadius;
+				for (int i = 0; i < layout.count; i++) {
+					layout.x[i] = clamp(layout.x[i] + move
+							* (random.nextFloat() - 0.5f), WIDTH);
+					layout.y[i] = clamp(layout.y[i] + move
+							* (random.nextFloat() - 0.5f), HEIGHT);
+				}
+				check(layout, result);
+			}
+			report(result);
+		}
+	}
+
+	/**
+	 * Balls anywhere from a little outside the box to a little past its far
+	 * edges, which the grid puts in the edge cells.
+	 */
+	private static float clamp(float value, float size) {
+		return Math.max(-0.1f, Math.min(size + 0.1f, value));
+	}
+
+	/**
+	 * Equal radius balls, so that cells are exactly one diameter wide: balls
+	 * on a quarter cell lattice touch exactly, on and across cell boundaries,
+	 * and diagonal neighbours sit just inside the corners.
+	 */
+	private static void cellBoundaries() {
+		float r = 0.5f;
+		float[] widths = { WIDTH, WIDTH - 0.5f, 1.0f, 0.75f };
+		for (float width : widths) {
+			Result result = new Result("cell boundaries width=" + width);
+			Random random = new Random(42);
+			for (int n = 0; n < 50; n++) {
+				Layout layout = new Layout(width, HEIGHT);
+				int columns = (int) (width * 4.0f) + 1;
+				int rows = (int) (HEIGHT * 4.0f) + 1;
+				for (int i = 0; i < 60; i++) {
+					float bx = random.nextInt(columns) * 0.25f;
+					float by = random.nextInt(rows) * 0.25f;
+					layout.add(bx, by, r);
+					if (random.nextInt(4) == 0) {
+						// Straddles the lattice point, on both sides of it
+						float offset = Math.ulp(bx) * (random.nextInt(3) - 1);
+						layout.add(bx + offset, by - Math.ulp(by), r);
+					}
+				}
+				// Diagonal neighbours just under one diameter apart
+				float d = 2.0f * r * 0.999f / (float) Math.sqrt(2.0);
+				layout.add(width / 2.0f - 0.01f, 1.99f, r);
+				layout.add(width / 2.0f - 0.01f + d, 1.99f + d, r);
+				check(layout, result);
+				// Moves by whole and quarter cells
+				for (int step = 0; step < 10; step++) {
+					for (int i = 0; i < layout.count; i++) {
+						layout.x[i] = clamp(layout.x[i]
+								+ (random.nextInt(9) - 4) * 0.25f, width);
+						layout.y[i] = clamp(layout.y[i]
+								+ (random.nextInt(9) - 4) * 0.25f, HEIGHT);
+					}
+					check(layout, result);
+				}
+			}
+			report(result);
+		}
+	}
+
+	/**
+	 * Boxes resized as on rotation, with the radius scale of the shorter
+	 * side, then to boxes smaller than a cell and back.
+	 */
+	private static void resizes() {
+		float[][] sizes = { { HEIGHT, WIDTH }, { WIDTH, HEIGHT },
+				{ 7.3f, 3.1f }, { 0.8f, 0.6f }, { 33.3f, 21.7f },
+				{ WIDTH, HEIGHT } };
+		Random random = new Random(7);
+		Layout layout = new Layout(WIDTH, HEIGHT);
+		Result result = new Result("resizes");
+		for (int i = 0; i < 300; i++) {
+			layout.add(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT,
+					0.3f + 0.2f * random.nextFloat());
+		}
+		check(layout, result);
+		for (float[] size : sizes) {
+			float scale = Math.min(size[0], size[1])
+					/ Math.min(layout.width, layout.height);
+			layout.resize(size[0], size[1], scale);
+			check(layout, result);
+			for (int step = 0; step < 20; step++) {
+				float move = 2.0f * layout.maxRadius;
+				for (int i = 0; i < layout.count; i++) {
+					layout.x[i] = Math.max(0.0f, Math.min(layout.width,
+							layout.x[i] + move * (random.nextFloat() - 0.5f)));
+					layout.y[i] = Math.max(0.0f, Math.min(layout.height,
+							layout.y[i] + move * (random.nextFloat() - 0.5f)));
+				}
+				check(layout, result);
+			}
+		}
+		report(result);
+	}
+
+	private static void check(Layout layout, Result result) {
+		if (result.error != null) {
+			return;
+		}
+		result.updates++;
+		int count = layout.count;
+		int pairCount = layout.findPairs();
+		result.candidates += pairCount;
+
+		long[] candidates = new long[pairCount];
+		long[] found = new long[pairCount];
+		int touching = 0;
+		for (int i = 0; i < pairCount; i++) {
+			int a = layout.grid.getPairA(i);
+			int b = layout.grid.getPairB(i);
+			if (a == b || a < 0 || b < 0 || a >= count || b >= count) {
+				result.error = "bad pair " + a + "-" + b;
+				return;
+			}
+			candidates[i] = key(a, b, count);
+			if (layout.isTouching(a, b)) {
+				found[touching++] = candidates[i];
+			}
+		}
+		Arrays.sort(candidates);
+		for (int i = 1; i < pairCount; i++) {
+			if (candidates[i] == candidates[i - 1]) {
+				result.error = "pair " + pairName(candidates[i], count)
+						+ " listed twice";
+				return;
+			}
+		}
+		found = Arrays.copyOf(found, touching);
+		Arrays.sort(found);
+
+		long[] expected = new long[16];
+		int expectedCount = 0;
+		for (int a = 0; a < count; a++) {
+			for (int b = a + 1; b < count; b++) {
+				if (layout.isTouching(a, b)) {
+					if (expectedCount == expected.length) {
+						expected = Arrays.copyOf(expected, expectedCount * 2);
+					}
+					expected[expectedCount++] = key(a, b, count);
+				}
+			}
+		}
+		expected = Arrays.copyOf(expected, expectedCount);
+		result.touching += expectedCount;
+
+		if (!Arrays.equals(found, expected)) {
+			result.error = "update " + result.updates + ": "
+					+ firstDifference(found, expected, count);
+		}
+	}
+
+	private static long key(int a, int b, int count) {
+		return (long) Math.min(a, b) * count + Math.max(a, b);
+	}
+
+	private static String pairName(long key, int count) {
+		return (key / count) + "-" + (key % count);
+	}
+
+	private static String firstDifference(long[] found, long[] expected,
+			int count) {
+		int i = 0;
+		while (i < found.length && i < expected.length
+				&& found[i] == expected[i]) {
+			i++;
+		}
+		if (i < expected.length
+				&& (i == found.length || expected[i] < found[i])) {
+			return "missed touching pair " + pairName(expected[i], count);
+		}
+		return "extra touching pair " + pairName(found[i], count);
+	}
+
+	private static void report(Result result) {
+		boolean failed = result.error != null;
+		if (failed) {
+			failures++;
+		}
+		System.out.println(result.name + ": " + result.updates + " updates, "
+				+ result.candidates + " candidates, " + result.touching
+				+ " touching pairs"
+				+ (failed ? ", " + result.error + " FAILED" : ""));
+	}
+}
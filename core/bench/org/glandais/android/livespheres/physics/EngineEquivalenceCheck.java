@@ -0,0 +1,214 @@
+package org.glandais.android.livespheres.physics;
+
+import java.util.Random;
+
+/**
+ * Checks on a plain JVM that {@link CircleEngine} behaves like
+ * {@link Box2DEngine}: both are stepped from the same scenes, and positions,
+ * velocities and total energy are compared against the tolerances of each
+ * scene. Not part of the application.
+ *
+ * Scenes with a few balls are compared ball by ball along the whole run.
+ * Piles are chaotic, the order in which contacts are solved is enough to
+ * send balls elsewhere, so they are compared on their energy and on the
+ * mean height of the balls only.
+ *
+ * An impact may be solved one step earlier by one engine than by the
+ * other: velocities and energy are not compared for a few steps after a
+ * contact begins in either engine, and positions of bouncing balls may
+ * differ by the distance covered in one step.
+ *
+ * Energy is the kinetic energy of the centers plus the potential energy, for
+ * balls of density 1. Rotation is left out, as BodyState has no angular
+ * velocity, and so is friction against the walls.
+ *
+ * Exits with status 1 if a scene is out of its tolerances. Run from the
+ * root with "gradle :core:engineEquivalenceCheck", part of "gradle check".
+ */
+public class EngineEquivalenceCheck {
+
+	private static final float WIDTH = 20.0f;
+	private static final float HEIGHT = 12.0f;
+	private static final float GRAVITY = 9.81f;
+	private static final float STEP = 0.01f;
+	private static final int VELOCITY_ITERATIONS = 3;
+	private static final int POSITION_ITERATIONS = 8;
+	// Steps left out after a contact begins
+	private static final int IMPACT_STEPS = 3;
+
+	/**
+	 * Balls, gravity and tolerances of a scene. Differences are absolute,
+	 * energy differences relative to the initial energy.
+	 */
+	private abstract static class Scene {
+		final String name;
+		final int steps;
+		final float positionTolerance;
+		final float velocityTolerance;
+		final float energyTolerance;
+		final float gravityY;
+
+		Scene(String name, int steps, float gravityY, float positionTolerance,
+				float velocityTolerance, float energyTolerance) {
+			this.name = name;
+			this.steps = steps;
+			this.gravityY = gravityY;
+			this.positionTolerance = positionTolerance;
+			this.velocityTolerance = velocityTolerance;
+			this.energyTolerance = energyTolerance;
+		}
+
+		abstract void addBalls(PhysicsEngine engine);
+
+		/**
+		 * @return true to compare balls one by one, false to compare the mean
+		 *         height
+		 */
+		boolean isPerBall() {
+			return true;
+		}
+	}
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		check(new Scene("free fall", 100, -GRAVITY, 1e-4f, 1e-4f, 1e-4f) {
+			void addBalls(PhysicsEngine engine) {
+				engine.addBall(10.0f, 11.0f, 0.5f, 0.9f, 0.7f);
+			}
+		});
+		check(new Scene("floor bounce", 300, -GRAVITY, 0.1f, 0.3f, 0.05f) {
+			void addBalls(PhysicsEngine engine) {
+				engine.addBall(10.0f, 5.0f, 0.5f, 0.9f, 0.7f);
+			}
+		});
+		check(new Scene("wall bounce", 200, 0.0f, 0.1f, 0.2f, 0.02f) {
+			void addBalls(PhysicsEngine engine) {
+				int i = engine.addBall(15.0f, 6.0f, 0.5f, 0.9f, 0.7f);
+				engine.addVelocity(i, 8.0f, 0.0f);
+			}
+		});
+		check(new Scene("head-on", 200, 0.0f, 0.05f, 0.2f, 0.02f) {
+			void addBalls(PhysicsEngine engine) {
+				int a = engine.addBall(6.0f, 6.0f, 0.5f, 0.9f, 0.7f);
+				int b = engine.addBall(14.0f, 6.0f, 0.7f, 0.9f, 0.2f);
+				engine.addVelocity(a, 5.0f, 0.0f);
+				engine.addVelocity(b, -3.0f, 0.0f);
+			}
+		});
+		check(new Scene("rolling", 200, -GRAVITY, 0.05f, 0.2f, 0.05f) {
+			void addBalls(PhysicsEngine engine) {
+				int i = engine.addBall(4.0f, 0.5f, 0.5f, 0.9f, 0.0f);
+				engine.addVelocity(i, 4.0f, 0.0f);
+			}
+		});
+		check(new Scene("pile", 500, -GRAVITY, 0.1f, 0.0f, 0.1f) {
+			void addBalls(PhysicsEngine engine) {
+				Random random = new Random(42);
+				for (int i = 0; i < 100; i++) {
+					float radius = 0.4f + 0.1f * random.nextFloat();
+					engine.addBall(1.0f + (i % 18), 1.0f + (i / 18) * 1.2f
+							+ 0.1f * random.nextFloat(), radius, 0.9f, 0.7f);
+				}
+			}
+
+			boolean isPerBall() {
+				return false;
+			}
+		});
+		if (failures > 0) {
+			System.out.println(failures + " scenes out of tolerance");
+			System.exit(1);
+		}
+	}
+
+	private static void check(Scene scene) {
+		PhysicsEngine circles = create(new CircleEngine(VELOCITY_ITERATIONS,
+				POSITION_ITERATIONS), scene);
+		PhysicsEngine box2d = create(new Box2DEngine(VELOCITY_ITERATIONS,
+				POSITION_ITERATIONS), scene);
+		int count = circles.getBallCount();
+		BodyState a = new BodyState(count);
+		BodyState b = new BodyState(count);
+		circles.readState(a);
+		float initialEnergy = getEnergy(a, scene.gravityY);
+
+		float position = 0.0f;
+		float velocity = 0.0f;
+		float energy = 0.0f;
+		int lastImpact = -IMPACT_STEPS - 1;
+		for (int step = 0; step < scene.steps; step++) {
+			circles.step(STEP);
+			box2d.step(STEP);
+			circles.readState(a);
+			box2d.readState(b);
+			int contacts = circles.takeNewContactCount()
+					+ box2d.takeNewContactCount();
+			if (contacts > 0) {
+				lastImpact = step;
+			}
+			boolean impact = step - lastImpact <= IMPACT_STEPS;
+			if (scene.isPerBall()) {
+				for (int i = 0; i < count; i++) {
+					position = Math.max(position, Math.max(Math.abs(a.x[i]
+							- b.x[i]), Math.abs(a.y[i] - b.y[i])));
+					if (!impact) {
+						velocity = Math.max(velocity, Math.max(Math
+								.abs(a.vx[i] - b.vx[i]), Math.abs(a.vy[i]
+								- b.vy[i])));
+					}
+				}
+			} else {
+				position = Math.max(position, Math.abs(getMeanHeight(a)
+						- getMeanHeight(b)));
+			}
+			if (!impact || !scene.isPerBall()) {
+				float difference = getEnergy(a, scene.gravityY)
+						- getEnergy(b, scene.gravityY);
+				energy = Math.max(energy, Math.abs(difference) / initialEnergy);
+			}
+		}
+
+		boolean failed = position > scene.positionTolerance
+				|| (scene.isPerBall() && velocity > scene.velocityTolerance)
+				|| energy > scene.energyTolerance;
+		if (failed) {
+			failures++;
+		}
+		System.out.println(scene.name + ": position " + position + "/"
+				+ scene.positionTolerance + " velocity "
+				+ (scene.isPerBall() ? velocity + "/"
+						+ scene.velocityTolerance : "-") + " energy " + energy
+				+ "/" + scene.energyTolerance + (failed ? " FAILED" : ""));
+	}
+
+	private static PhysicsEngine create(PhysicsEngine engine, Scene scene) {
+		engine.reset(WIDTH, HEIGHT);
+		scene.addBalls(engine);
+		engine.setGravity(0.0f, scene.gravityY);
+		return engine;
+	}
+
+	/**
+	 * @return kinetic energy of the centers plus potential energy, from the
+	 *         floor
+	 */
+	private static float getEnergy(BodyState state, float gravityY) {
+		double energy = 0.0;
+		for (int i = 0; i < state.count; i++) {
+			double mass = Math.PI * state.radius[i] * state.radius[i];
+			energy += 0.5 * mass
+					* (state.vx[i] * state.vx[i] + state.vy[i] * state.vy[i]);
+			energy -= mass * gravityY * state.y[i];
+		}
+		return (float) energy;
+	}
+
+	private static float getMeanHeight(BodyState state) {
+		float sum = 0.0f;
+		for (int i = 0; i < state.count; i++) {
+			sum += state.y[i];
+		}
+		return sum / state.count;
+	}
+}
@@ -0,0 +1,133 @@
+package org.glandais.android.livespheres.physics;
+
+import java.util.Random;
+
+/**
+ * Measures what a surface size change costs the physics side on a plain JVM,
+ * up to the state of the first frame: rebuilding the world and its balls, as
+ * done before, against resizing it in place. Not part of the application.
+ *
+ * Usage: ResizeBenchmark [engines] [ball counts] [modes], lists being comma
+ * separated, for instance "circles,box2d 10,500 rebuild,resize". The box
+ * switches between a 800x480 and a 854x480 screen at 40 pixels per meter.
+ * Balls out of the box once settled are counted, they should not be any.
+ *
+ * Run from the root with "gradle :core:resizeBenchmark --args=...".
+ */
+public class ResizeBenchmark {
+
+	private static final float[] WIDTHS = { 20.0f, 21.35f };
+	private static final float HEIGHT = 12.0f;
+	private static final float BALL_RADIUS = 0.11f;
+	private static final float MAX_FILL_RATIO = 0.5f;
+	private static final float GRAVITY = 4.0f * 9.81f;
+	private static final float STEP = 0.01f;
+	// Steps between two resizes, so that balls settle
+	private static final int SETTLE_STEPS = 50;
+
+	private static final int WARMUP_RESIZES = 50;
+	private static final int MEASURED_RESIZES = 100;
+
+	public static void main(String[] args) {
+		String[] engines = split(args, 0, "circles,box2d");
+		String[] counts = split(args, 1, "10,100,500");
+		String[] modes = split(args, 2, "rebuild,resize");
+
+		for (String engine : engines) {
+			for (String count : counts) {
+				for (String mode : modes) {
+					run(engine, Integer.parseInt(count), "resize"
+							.equals(mode));
+				}
+			}
+		}
+	}
+
+	private static String[] split(String[] args, int index, String defaults) {
+		return (args.length > index ? args[index] : defaults).split(",");
+	}
+
+	private static void run(String name, int count, boolean resize) {
+		PhysicsEngine engine;
+		if ("box2d".equals(name)) {
+			engine = new Box2DEngine(3, 8);
+		} else {
+			engine = new CircleEngine(3, 8);
+		}
+		engine.reset(WIDTHS[0], HEIGHT);
+		addBalls(engine, count, WIDTHS[0], new Random(42));
+		engine.setGravity(0.0f, -GRAVITY);
+
+		BodyState state = new BodyState(count);
+		CostStats cost = new CostStats();
+		int escaped = 0;
+		for (int i = 0; i < WARMUP_RESIZES + MEASURED_RESIZES; i++) {
+			float oldWidth = WIDTHS[i % 2];
+			float width = WIDTHS[(i + 1) % 2];
+			long start = System.nanoTime();
+			if (resize) {
+				engine.resize(width, HEIGHT, getMeanRadius(count, width)
+						/ getMeanRadius(count, oldWidth));
+			} else {
+				engine.reset(width, HEIGHT);
+				addBalls(engine, count, width, new Random(i));
+				engine.setGravity(0.0f, -GRAVITY);
+			}
+			// The first frame shows the state after one update
+			engine.step(STEP);
+			engine.readState(state);
+			if (i >= WARMUP_RESIZES) {
+				cost.record(start, System.nanoTime());
+			}
+			for (int j = 0; j < SETTLE_STEPS; j++) {
+				engine.step(STEP);
+			}
+			engine.readState(state);
+			escaped += countEscaped(state, width);
+		}
+		System.out.println(name + " balls=" + count + " "
+				+ (resize ? "resize" : "rebuild") + ": " + cost
+				+ " escaped=" + escaped);
+	}
+
+	private static int countEscaped(BodyState state, float width) {
+		int escaped = 0;
+		for (int i = 0; i < state.count; i++) {
+			float x = state.x[i];
+			float y = state.y[i];
+			if (x < 0.0f || x > width || y < 0.0f || y > HEIGHT) {
+				escaped++;
+			}
+		}
+		return escaped;
+	}
+
+	private static float getMeanRadius(int count, float width) {
+		float meanRadius = BALL_RADIUS * Math.min(width, HEIGHT);
+		float maxMeanRadius = (float) Math.sqrt(MAX_FILL_RATIO * width
+				* HEIGHT / (count * Math.PI));
+		return Math.min(meanRadius, maxMeanRadius);
+	}
+
+	/**
+	 * Same layout as the wallpaper: a grid, and radii within 10% of the mean.
+	 */
+	private static void addBalls(PhysicsEngine engine, int count,
+			float width, Random random) {
+		float meanRadius = getMeanRadius(count, width);
+		float maxRadius = meanRadius * 1.1f;
+		int columns = Math.max(1, (int) (width / (2.0f * maxRadius)));
+		int rows = Math.max(1, (int) (HEIGHT / (2.0f * maxRadius)));
+		float cellWidth = width / columns;
+		float cellHeight = HEIGHT / rows;
+
+		for (int i = 0; i < count; i++) {
+			float radius = meanRadius
+					* (1.0f + 0.1f * (2.0f * random.nextFloat() - 1.0f));
+			int cell = i % (columns * rows);
+			float x = (cell % columns + 0.5f) * cellWidth;
+			float y = (cell / columns + 0.5f) * cellHeight;
+			engine.addBall(x, y, radius, 0.9f, 0.7f);
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package org.glandais.android.livespheres.texture;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Checks on a plain JVM that the files of {@link Etc1Encoder} decode back to
+ * their images: PKM headers are read as written, ETC1 data decoded with the
+ * reference algorithm of OES_compressed_ETC1_RGB8_texture stays within the
+ * PSNR and maximum error of each image, and alpha planes come back exact.
+ * The raw resources are also compared with a fresh encoding of their
+ * drawables, to catch a drawable changed without running
+ * TextureCompressor. Not part of the application.
+ *
+ * Usage: Etc1Check [res directory], "res" by default. Exits with status 1 if
+ * a check fails. Run from the root with "gradle :core:etc1Check", part of
+ * "gradle check".
+ */
+public class Etc1Check {
+
+	// Same tables as the specification, for pixel indices 0 and 1
+	private static final int[][] TABLES = { { 2, 8 }, { 5, 17 }, { 9, 29 },
+			{ 13, 42 }, { 18, 60 }, { 24, 80 }, { 33, 106 }, { 47, 183 } };
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		File res = new File(args.length > 0 ? args[0] : "res");
+
+		checkHeaders();
+
+		// Flat colors have a single base color, close to exact
+		check("flat", flat(13, 7, 0xFF336699), 40.0, 8);
+		check("gradient", gradient(64, 64), 35.0, 16);
+		// Noise is the worst case of ETC1, only checked to stay bounded
+		check("noise", noise(32, 32), 12.0, 255);
+
+		String[][] textures = { { "background", "background_etc1", null },
+				{ "ball", "ball_etc1", "ball_alpha" } };
+		for (String[] texture : textures) {
+			BufferedImage image = ImageIO.read(new File(res, "drawable/"
+					+ texture[0] + ".png"));
+			int width = image.getWidth();
+			int height = image.getHeight();
+			int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+			byte[] etc1 = check(texture[0], new Image(width, height, argb),
+					38.0, 48);
+			compare(new File(res, "raw/" + texture[1] + ".pkm"), etc1);
+			if (texture[2] != null) {
+				byte[] alpha = checkAlpha(texture[0], new Image(width, height,
+						argb));
+				compare(new File(res, "raw/" + texture[2] + ".pka"), alpha);
+			}
+		}
+		checkAlpha("gradient", gradient(13, 7));
+
+		if (failures > 0) {
+			System.out.println(failures + " checks failed");
+			System.exit(1);
+		}
+	}
+
+	private static class Image {
+		final int width;
+		final int height;
+		final int[] argb;
+
+		Image(int width, int height, int[] argb) {
+			this.width = width;
+			this.height = height;
+			this.argb = argb;
+		}
+	}
+
+	private static void report(String name, boolean passed, String details) {
+		if (!passed) {
+			failures++;
+		}
+		System.out.println(name + ": " + details + (passed ? "" : " FAILED"));
+	}
+
+	private static void checkHeaders() {
+		boolean passed = true;
+		for (int alpha = 0; alpha < 2; alpha++) {
+			Pkm written = new Pkm(alpha == 1, 13, 7);
+			byte[] data = new byte[Pkm.HEADER_SIZE + written.getDataSize()];
+			written.write(data);
+			Pkm read = Pkm.read(data);
+			passed &= read.alpha == written.alpha && read.width == 13
+					&& read.height == 7;
+			if (alpha == 0) {
+				passed &= read.extendedWidth == 16 && read.extendedHeight == 8
+						&& read.getDataSize() == 4 * 2 * 8;
+			} else {
+				passed &= read.getDataSize() == 13 * 7;
+			}
+			passed &= isRejected(Arrays.copyOf(data, data.length - 1));
+			byte[] corrupted = data.clone();
+			corrupted[2] = 'X';
+			passed &= isRejected(corrupted);
+		}
+		report("headers", passed, "written, read and rejected when damaged");
+	}
+
+	private static boolean isRejected(byte[] data) {
+		try {
+			Pkm.read(data);
+			return false;
+		} catch (IllegalArgumentException e) {
+			return true;
+		}
+	}
+
+	private static byte[] check(String name, Image image, double minPsnr,
+			int maxTolerance) {
+		byte[] data = new Etc1Encoder().encode(image.argb, image.width,
+				image.height);
+		Pkm pkm = Pkm.read(data);
+		if (pkm.alpha || pkm.width != image.width
+				|| pkm.height != image.height
+				|| data.length != Pkm.HEADER_SIZE + pkm.getDataSize()) {
+			report(name, false, "bad header");
+			return data;
+		}
+		int[] decoded = decode(data, pkm);
+		long squared = 0;
+		int max = 0;
+		for (int y = 0; y < image.height; y++) {
+			for (int x = 0; x < image.width; x++) {
+				int expected = image.argb[x + y * image.width];
+				int actual = decoded[x + y * pkm.extendedWidth];
+				for (int shift = 0; shift <= 16; shift += 8) {
+					int e = ((expected >> shift) & 0xFF)
+							- ((actual >> shift) & 0xFF);
+					squared += e * e;
+					max = Math.max(max, Math.abs(e));
+				}
+			}
+		}
+		double mse = (double) squared / (3 * image.width * image.height);
+		double psnr = mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math
+				.log10(255 * 255 / mse);
+		report(name, psnr >= minPsnr && max <= maxTolerance, image.width
+				+ "x" + image.height + " psnr "
+				+ (mse == 0 ? "exact" : Math.round(psnr * 10) / 10.0 + "dB")
+				+ "/" + minPsnr + "dB max error " + max + "/" + maxTolerance);
+		return data;
+	}
+
+	private static byte[] checkAlpha(String name, Image image) {
+		byte[] data = Etc1Encoder.encodeAlpha(image.argb, image.width,
+				image.height);
+		Pkm pkm = Pkm.read(data);
+		boolean passed = pkm.alpha && pkm.width == image.width
+				&& pkm.height == image.height
+				&& data.length == Pkm.HEADER_SIZE + pkm.getDataSize();
+		for (int i = 0; passed && i < image.width * image.height; i++) {
+			int alpha = data[Pkm.HEADER_SIZE + i] & 0xFF;
+			passed = alpha == image.argb[i] >>> 24;
+		}
+		report(name + " alpha", passed, image.width + "x" + image.height
+				+ " exact");
+		return data;
+	}
+
+	private static void compare(File file, byte[] expected)
+			throws IOException {
+		byte[] actual = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < actual.length) {
+				int n = in.read(actual, read, actual.length - read);
+				if (n < 0) {
+					throw new IOException("Truncated " + file);
+				}
+				read += n;
+			}
+		} finally {
+			in.close();
+		}
+		report(file.getName(), Arrays.equals(actual, expected),
+				"same as a fresh encoding");
+	}
+
+	/**
+	 * @return rgb pixels of the extended size, rows top to bottom
+	 */
+	private static int[] decode(byte[] data, Pkm pkm) {
+		int[] rgb = new int[pkm.extendedWidth * pkm.extendedHeight];
+		int offset = Pkm.HEADER_SIZE;
+		for (int by = 0; by < pkm.extendedHeight; by += 4) {
+			for (int bx = 0; bx < pkm.extendedWidth; bx += 4) {
+				long bits = 0;
+				for (int i = 0; i < 8; i++) {
+					bits = (bits << 8) | (data[offset++] & 0xFF);
+				}
+				decodeBlock(bits, rgb, bx, by, pkm.extendedWidth);
+			}
+		}
+		return rgb;
+	}
+
+	private static void decodeBlock(long bits, int[] rgb, int bx, int by,
+			int stride) {
+		boolean differential = ((bits >> 33) & 1) != 0;
+		boolean flip = ((bits >> 32) & 1) != 0;
+		int[][] base = new int[2][3];
+		for (int channel = 0; channel < 3; channel++) {
+			int value = (int) (bits >> (56 - 8 * channel)) & 0xFF;
+			if (differential) {
+				int c1 = value >> 3;
+				// Signed 3 bits difference
+				int c2 = c1 + ((value & 7) ^ 4) - 4;
+				base[0][channel] = (c1 << 3) | (c1 >> 2);
+				base[1][channel] = (c2 << 3) | (c2 >> 2);
+			} else {
+				int c1 = value >> 4;
+				int c2 = value & 15;
+				base[0][channel] = (c1 << 4) | c1;
+				base[1][channel] = (c2 << 4) | c2;
+			}
+		}
+		int[] tables = { (int) (bits >> 37) & 7, (int) (bits >> 34) & 7 };
+		for (int x = 0; x < 4; x++) {
+			for (int y = 0; y < 4; y++) {
+				int half = flip ? y / 2 : x / 2;
+				int bit = x * 4 + y;
+				int msb = (int) (bits >> (16 + bit)) & 1;
+				int lsb = (int) (bits >> bit) & 1;
+				int modifier = TABLES[tables[half]][lsb];
+				if (msb == 1) {
+					modifier = -modifier;
+				}
+				int color = 0;
+				for (int channel = 0; channel < 3; channel++) {
+					int c = Math.max(0, Math.min(255, base[half][channel]
+							+ modifier));
+					color = (color << 8) | c;
+				}
+				rgb[bx + x + (by + y) * stride] = color;
+			}
+		}
+	}
+
+	private static Image flat(int width, int height, int color) {
+		int[] argb = new int[width * height];
+		Arrays.fill(argb, color);
+		return new Image(width, height, argb);
+	}
+
+	/**
+	 * @return smooth color and alpha ramps
+	 */
+	private static Image gradient(int width, int height) {
+		int[] argb = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = 255 * x / Math.max(1, width - 1);
+				int g = 255 * y / Math.max(1, height - 1);
+				int b = (r + g) / 2;
+				int a = 255 - b;
+				argb[x + y * width] = (a << 24) | (r << 16) | (g << 8) | b;
+			}
+		}
+		return new Image(width, height, argb);
+	}
+
+	private static Image noise(int width, int height) {
+		Random random = new Random(42);
+		int[] argb = new int[width * height];
+		for (int i = 0; i < argb.length; i++) {
+			argb[i] = random.nextInt();
+		}
+		return new Image(width, height, argb);
+	}
+}
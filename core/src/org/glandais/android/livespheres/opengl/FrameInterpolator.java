@@ -0,0 +1,116 @@
+package org.glandais.android.livespheres.opengl;
+
+import org.glandais.android.livespheres.physics.SnapshotExchange;
+import org.glandais.android.livespheres.physics.WorldSnapshot;
+
+/**
+ * Ball positions of the frame being drawn, from the GL thread: interpolated
+ * between the two states of the latest snapshot for the render time, then
+ * converted to screen coordinates. Arrays are reused from frame to frame, so
+ * that a frame does not allocate once they are large enough.
+ */
+public class FrameInterpolator {
+
+	// Screen centers, angles and radii, in pixels and radians
+	private float[] x;
+	private float[] y;
+	private float[] angle;
+	private float[] radius;
+	private int count = 0;
+
+	// What the frame shows
+	private long time = 0;
+	private long version = -1;
+	private float alpha = 0.0f;
+	private boolean repeated = false;
+
+	public FrameInterpolator(int capacity) {
+		super();
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		x = new float[capacity];
+		y = new float[capacity];
+		angle = new float[capacity];
+		radius = new float[capacity];
+	}
+
+	/**
+	 * Computes the frame for the given render time, from the latest snapshot
+	 * of the exchange.
+	 *
+	 * @param scale
+	 *            pixels per meter of the radii
+	 * @return true if a new snapshot has been received since the last call
+	 */
+	public boolean interpolate(SnapshotExchange exchange,
+			ScreenTransform transform, float scale, long renderTime) {
+		boolean received = exchange.acquire();
+		WorldSnapshot s = exchange.getFrontBuffer();
+		float a = s.getAlpha(renderTime);
+		repeated = s.version == version && a == alpha;
+		time = renderTime;
+		version = s.version;
+		alpha = a;
+		int n = s.count;
+		if (x.length < n) {
+			allocate(n);
+		}
+		count = n;
+		for (int i = 0; i < n; i++) {
+			x[i] = s.previousX[i] + (s.x[i] - s.previousX[i]) * a;
+			y[i] = s.previousY[i] + (s.y[i] - s.previousY[i]) * a;
+			angle[i] = transform.toScreenAngle(s.previousAngle[i]
+					+ (s.angle[i] - s.previousAngle[i]) * a);
+			radius[i] = s.radius[i] * scale;
+		}
+		transform.toScreen(x, y, x, y, n);
+		return received;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public float[] getX() {
+		return x;
+	}
+
+	public float[] getY() {
+		return y;
+	}
+
+	public float[] getAngle() {
+		return angle;
+	}
+
+	public float[] getRadius() {
+		return radius;
+	}
+
+	/**
+	 * @return true if the last frame is the same as the one before
+	 */
+	public boolean isRepeated() {
+		return repeated;
+	}
+
+	/**
+	 * Tells when the frame after the last one is worth drawing. Frames are
+	 * drawn every framePeriod while they interpolate towards the given latest
+	 * snapshot. The frame that would reach it is left to the next snapshot,
+	 * whose first frame shows the same positions.
+	 *
+	 * @return the time of the next frame, or Long.MAX_VALUE to wait for the
+	 *         next snapshot
+	 */
+	public long getNextFrameTime(WorldSnapshot latest, long framePeriod) {
+		long span = latest.time - latest.previousTime;
+		long next = time + framePeriod;
+		if (alpha >= 1.0f || span <= 0 || next >= latest.time + span) {
+			return Long.MAX_VALUE;
+		}
+		return next;
+	}
+}
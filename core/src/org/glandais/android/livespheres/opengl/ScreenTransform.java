@@ -0,0 +1,118 @@
+package org.glandais.android.livespheres.opengl;
+
+/**
+ * Affine transform from world coordinates, in meters, to screen coordinates,
+ * in pixels, for one display orientation. Computed once when the surface
+ * changes and immutable afterwards, so that the GL thread can use it while a
+ * new one is being set up.
+ *
+ * screenX = xx * worldX + xy * worldY + x0
+ * screenY = yx * worldX + yy * worldY + y0
+ */
+public class ScreenTransform {
+
+	// Same values as android.view.Surface, which core cannot use
+	public static final int ROTATION_0 = 0;
+	public static final int ROTATION_90 = 1;
+	public static final int ROTATION_180 = 2;
+	public static final int ROTATION_270 = 3;
+
+	private final float xx, xy, x0;
+	private final float yx, yy, y0;
+
+	// Inverse
+	private final float inverseXX, inverseXY;
+	private final float inverseYX, inverseYY;
+
+	// Screen angle = angleSign * world angle + angleOffset, in radians
+	private final float angleSign;
+	private final float angleOffset;
+
+	/**
+	 * @param rotation
+	 *            of the display, one of the ROTATION constants
+	 * @param width
+	 *            longest side of the screen, in pixels
+	 * @param height
+	 *            shortest side of the screen, in pixels
+	 * @param scale
+	 *            pixels per meter
+	 */
+	public ScreenTransform(int rotation, int width, int height, float scale) {
+		super();
+		if (rotation == ROTATION_90) {
+			xx = -scale;
+			xy = 0.0f;
+			x0 = width;
+			yx = 0.0f;
+			yy = scale;
+			y0 = 0.0f;
+		} else if (rotation == ROTATION_180) {
+			xx = 0.0f;
+			xy = -scale;
+			x0 = height;
+			yx = -scale;
+			yy = 0.0f;
+			y0 = width;
+		} else if (rotation == ROTATION_270) {
+			xx = scale;
+			xy = 0.0f;
+			x0 = 0.0f;
+			yx = 0.0f;
+			yy = -scale;
+			y0 = height;
+		} else {
+			xx = 0.0f;
+			xy = scale;
+			x0 = 0.0f;
+			yx = scale;
+			yy = 0.0f;
+			y0 = 0.0f;
+		}
+		float determinant = xx * yy - xy * yx;
+		// Where the world x axis goes, and whether the axes are mirrored
+		angleSign = determinant > 0.0f ? 1.0f : -1.0f;
+		angleOffset = (float) Math.atan2(yx, xx);
+		inverseXX = yy / determinant;
+		inverseXY = -xy / determinant;
+		inverseYX = -yx / determinant;
+		inverseYY = xx / determinant;
+	}
+
+	public float toScreenX(float worldX, float worldY) {
+		return xx * worldX + xy * worldY + x0;
+	}
+
+	public float toScreenY(float worldX, float worldY) {
+		return yx * worldX + yy * worldY + y0;
+	}
+
+	public float toWorldX(float screenX, float screenY) {
+		return inverseXX * (screenX - x0) + inverseXY * (screenY - y0);
+	}
+
+	public float toWorldY(float screenX, float screenY) {
+		return inverseYX * (screenX - x0) + inverseYY * (screenY - y0);
+	}
+
+	/**
+	 * @return the screen angle, in radians, of a world angle
+	 */
+	public float toScreenAngle(float worldAngle) {
+		return angleSign * worldAngle + angleOffset;
+	}
+
+	/**
+	 * Transforms count points in one pass. Output arrays may be the input
+	 * ones.
+	 */
+	public void toScreen(float[] worldX, float[] worldY, float[] screenX,
+			float[] screenY, int count) {
+		for (int i = 0; i < count; i++) {
+			float wx = worldX[i];
+			float wy = worldY[i];
+			screenX[i] = xx * wx + xy * wy + x0;
+			screenY[i] = yx * wx + yy * wy + y0;
+		}
+	}
+}
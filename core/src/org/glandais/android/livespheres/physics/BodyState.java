@@ -0,0 +1,46 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Per-ball state stored as a structure of arrays: one contiguous primitive
+ * array per component, indexed by ball.
+ */
+public class BodyState {
+
+	public int count;
+
+	public float[] x;
+	public float[] y;
+	public float[] angle;
+	public float[] vx;
+	public float[] vy;
+	public float[] radius;
+
+	public BodyState(int capacity) {
+		super();
+		allocate(capacity);
+	}
+
+	/**
+	 * Makes room for the given number of balls. Current content is lost if
+	 * the arrays have to grow.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (x.length < capacity) {
+			allocate(capacity);
+		}
+	}
+
+	public int getCapacity() {
+		return x.length;
+	}
+
+	private void allocate(int capacity) {
+		count = 0;
+		x = new float[capacity];
+		y = new float[capacity];
+		angle = new float[capacity];
+		vx = new float[capacity];
+		vy = new float[capacity];
+		radius = new float[capacity];
+	}
+}
@@ -0,0 +1,235 @@
+package org.glandais.android.livespheres.physics;
+
+import org.jbox2d.callbacks.ContactImpulse;
+import org.jbox2d.callbacks.ContactListener;
+import org.jbox2d.collision.Manifold;
+import org.jbox2d.collision.shapes.CircleShape;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.BodyDef;
+import org.jbox2d.dynamics.BodyType;
+import org.jbox2d.dynamics.Fixture;
+import org.jbox2d.dynamics.FixtureDef;
+import org.jbox2d.dynamics.World;
+import org.jbox2d.dynamics.contacts.Contact;
+
+/**
+ * {@link PhysicsEngine} backed by a general purpose JBox2D world.
+ *
+ * Not free of allocations once warmed up: the broadphase of JBox2D sorts its
+ * pairs with Arrays.sort on every step, and the merges allocate. The
+ * wallpaper defaults to {@link CircleEngine}, which does not.
+ */
+public class Box2DEngine implements PhysicsEngine {
+
+	private final int velocityIterations;
+	private final int positionIterations;
+
+	private World world;
+	private float width;
+	private float height;
+	// Box edges, moved when the box is resized
+	private Body ground;
+	private final Fixture[] edges = new Fixture[4];
+	private Body[] balls = new Body[16];
+	private float[] radius = new float[16];
+	private int ballCount = 0;
+	private int newContactCount = 0;
+
+	private final ContactListener contactCounter = new ContactListener() {
+		public void beginContact(Contact contact) {
+			newContactCount++;
+		}
+
+		public void endContact(Contact contact) {
+		}
+
+		public void preSolve(Contact contact, Manifold oldManifold) {
+		}
+
+		public void postSolve(Contact contact, ContactImpulse impulse) {
+		}
+	};
+
+	// Scratch vectors, reused so that stepping and input do not allocate
+	private final Vec2 gravity = new Vec2();
+	private final Vec2 vector = new Vec2();
+	private final Vec2 vector2 = new Vec2();
+
+	public Box2DEngine(int velocityIterations, int positionIterations) {
+		super();
+		this.velocityIterations = velocityIterations;
+		this.positionIterations = positionIterations;
+		reset(1.0f, 1.0f);
+	}
+
+	public void reset(float width, float height) {
+		world = new World(gravity.set(0.0f, 0.0f), false);
+		world.setContinuousPhysics(true);
+		world.setWarmStarting(true);
+		world.setContactListener(contactCounter);
+		newContactCount = 0;
+
+		BodyDef def = new BodyDef();
+		def.type = BodyType.STATIC;
+		ground = world.createBody(def);
+		for (int i = 0; i < edges.length; i++) {
+			edges[i] = createEdge(ground);
+		}
+		setEdges(width, height);
+
+		for (int i = 0; i < ballCount; i++) {
+			balls[i] = null;
+		}
+		ballCount = 0;
+	}
+
+	public void resize(float newWidth, float newHeight, float radiusScale) {
+		float scaleX = newWidth / width;
+		float scaleY = newHeight / height;
+		setEdges(newWidth, newHeight);
+		for (int i = 0; i < ballCount; i++) {
+			Body ball = balls[i];
+			float r = radius[i] * radiusScale;
+			radius[i] = r;
+			((CircleShape) ball.getFixtureList().getShape()).m_radius = r;
+			ball.resetMassData();
+			Vec2 position = ball.getPosition();
+			float x = clamp(position.x * scaleX, r, newWidth - r);
+			float y = clamp(position.y * scaleY, r, newHeight - r);
+			// Also updates the broadphase with the new radius
+			ball.setTransform(vector.set(x, y), ball.getAngle());
+			ball.setAwake(true);
+		}
+	}
+
+	private static float clamp(float value, float min, float max) {
+		return min > max ? 0.5f * (min + max) : Math.max(min, Math.min(max,
+				value));
+	}
+
+	/**
+	 * Sets the edge shapes for a box of the given size.
+	 */
+	private void setEdges(float newWidth, float newHeight) {
+		width = newWidth;
+		height = newHeight;
+		setEdge(0, 0.0f, 0.0f, newWidth, 0.0f);
+		setEdge(1, newWidth, 0.0f, newWidth, newHeight);
+		setEdge(2, newWidth, newHeight, 0.0f, newHeight);
+		setEdge(3, 0.0f, newHeight, 0.0f, 0.0f);
+		// Moves the edge proxies in the broadphase
+		ground.setTransform(vector.set(0.0f, 0.0f), 0.0f);
+	}
+
+	private void setEdge(int i, float x1, float y1, float x2, float y2) {
+		// Copies the vectors
+		((PolygonShape) edges[i].getShape()).setAsEdge(vector.set(x1, y1),
+				vector2.set(x2, y2));
+	}
+
+	private Fixture createEdge(Body groundBody) {
+		PolygonShape groundShapeDef = new PolygonShape();
+		groundShapeDef.setAsEdge(vector.set(0.0f, 0.0f), vector2.set(1.0f,
+				0.0f));
+
+		FixtureDef def = new FixtureDef();
+		def.density = 1.0f;
+		def.friction = WALL_FRICTION;
+		def.restitution = WALL_RESTITUTION;
+		def.shape = groundShapeDef;
+
+		return groundBody.createFixture(def);
+	}
+
+	public int addBall(float x, float y, float ballRadius, float friction,
+			float restitution) {
+		BodyDef bodyDef = new BodyDef();
+		bodyDef.type = BodyType.DYNAMIC;
+		bodyDef.position.set(x, y);
+		Body body = world.createBody(bodyDef);
+
+		CircleShape shape = new CircleShape();
+		shape.m_radius = ballRadius;
+
+		FixtureDef def = new FixtureDef();
+		def.density = 1.0f;
+		def.friction = friction;
+		def.restitution = restitution;
+		def.shape = shape;
+		body.createFixture(def);
+
+		body.resetMassData();
+
+		if (ballCount == balls.length) {
+			Body[] newBalls = new Body[ballCount * 2];
+			System.arraycopy(balls, 0, newBalls, 0, ballCount);
+			balls = newBalls;
+			float[] newRadius = new float[ballCount * 2];
+			System.arraycopy(radius, 0, newRadius, 0, ballCount);
+			radius = newRadius;
+		}
+		balls[ballCount] = body;
+		radius[ballCount] = ballRadius;
+		return ballCount++;
+	}
+
+	public int getBallCount() {
+		return ballCount;
+	}
+
+	public void setGravity(float x, float y) {
+		// World.setGravity copies the vector
+		world.setGravity(gravity.set(x, y));
+	}
+
+	public void step(float dt) {
+		world.step(dt, velocityIterations, positionIterations);
+	}
+
+	public int takeNewContactCount() {
+		int newContacts = newContactCount;
+		newContactCount = 0;
+		return newContacts;
+	}
+
+	public void readState(BodyState state) {
+		state.ensureCapacity(ballCount);
+		for (int i = 0; i < ballCount; i++) {
+			Body ball = balls[i];
+			Vec2 position = ball.getPosition();
+			Vec2 velocity = ball.getLinearVelocity();
+			state.x[i] = position.x;
+			state.y[i] = position.y;
+			state.angle[i] = ball.getAngle();
+			state.vx[i] = velocity.x;
+			state.vy[i] = velocity.y;
+			state.radius[i] = radius[i];
+		}
+		state.count = ballCount;
+	}
+
+	public float getX(int i) {
+		return balls[i].getPosition().x;
+	}
+
+	public float getY(int i) {
+		return balls[i].getPosition().y;
+	}
+
+	public float getRadius(int i) {
+		return radius[i];
+	}
+
+	public void addVelocity(int i, float dvx, float dvy) {
+		Body ball = balls[i];
+		ball.setLinearVelocity(vector.set(ball.getLinearVelocity()).addLocal(
+				dvx, dvy));
+	}
+
+	public void applyImpulse(int i, float ix, float iy) {
+		Body ball = balls[i];
+		ball.applyLinearImpulse(vector.set(ix, iy), ball.getPosition());
+	}
+}
@@ -0,0 +1,594 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * {@link PhysicsEngine} specialized for balls inside a box. Balls are the
+ * only dynamic shapes, so the whole state fits in primitive arrays and
+ * contacts are circle / circle or circle / edge only. Contacts are solved
+ * with sequential impulses, the way Box2D does it, using the same mixing
+ * rules for friction and restitution and the same tuning constants.
+ *
+ * Touching pairs come from a {@link UniformGrid} with cells sized from the
+ * biggest ball. Impulses found for a pair are kept for the next step to warm
+ * start the solver, without which piles of balls never come to rest.
+ */
+public class CircleEngine implements PhysicsEngine {
+
+	// Tuning, same values as the JBox2D settings
+	private static final float VELOCITY_THRESHOLD = 1.0f;
+	private static final float LINEAR_SLOP = 0.005f;
+	private static final float BAUMGARTE = 0.2f;
+	private static final float MAX_LINEAR_CORRECTION = 0.2f;
+	// Edges are polygons in Box2D, with a skin of twice the slop
+	private static final float WALL_SKIN = 2.0f * LINEAR_SLOP;
+
+	// Contact partners for box edges, in place of a ball index
+	private static final int WALL_LEFT = -1;
+	private static final int WALL_RIGHT = -2;
+	private static final int WALL_BOTTOM = -3;
+	private static final int WALL_TOP = -4;
+
+	private final int velocityIterations;
+	private final int positionIterations;
+
+	private float width;
+	private float height;
+	private float gravityX;
+	private float gravityY;
+
+	// Balls
+	private int count = 0;
+	private float[] x;
+	private float[] y;
+	private float[] angle;
+	private float[] vx;
+	private float[] vy;
+	private float[] w;
+	private float[] radius;
+	private float[] invMass;
+	private float[] invInertia;
+	private float[] friction;
+	private float[] restitution;
+	private float maxRadius;
+
+	private final UniformGrid grid = new UniformGrid();
+	// Cells must be resized before the next search
+	private boolean gridChanged;
+
+	// Impulses of the last step, and the ones being stored
+	private ImpulseCache impulses = new ImpulseCache();
+	private ImpulseCache nextImpulses = new ImpulseCache();
+
+	// Contacts, rebuilt on each step
+	private int contactCount = 0;
+	// Contacts not found in the impulse cache, since the last read
+	private int newContactCount = 0;
+	private int[] contactA;
+	private int[] contactB;
+	private float[] normalX;
+	private float[] normalY;
+	private float[] normalMass;
+	private float[] tangentMass;
+	private float[] velocityBias;
+	private float[] contactFriction;
+	private float[] normalImpulse;
+	private float[] tangentImpulse;
+
+	public CircleEngine(int velocityIterations, int positionIterations) {
+		super();
+		this.velocityIterations = velocityIterations;
+		this.positionIterations = positionIterations;
+		allocateBalls(16);
+		allocateContacts(64);
+		reset(1.0f, 1.0f);
+	}
+
+	public void reset(float width, float height) {
+		this.width = width;
+		this.height = height;
+		gravityX = 0.0f;
+		gravityY = 0.0f;
+		count = 0;
+		contactCount = 0;
+		maxRadius = 0.0f;
+		gridChanged = true;
+		impulses.clear(0);
+	}
+
+	public void resize(float newWidth, float newHeight, float radiusScale) {
+		float scaleX = newWidth / width;
+		float scaleY = newHeight / height;
+		width = newWidth;
+		height = newHeight;
+		for (int i = 0; i < count; i++) {
+			float r = radius[i] * radiusScale;
+			radius[i] = r;
+			setMass(i, r);
+			x[i] = clamp(x[i] * scaleX, r, width - r);
+			y[i] = clamp(y[i] * scaleY, r, height - r);
+		}
+		maxRadius *= radiusScale;
+		gridChanged = true;
+		// Impulses are kept, as Box2D keeps its contacts: pairs still
+		// touching after the move warm start the solver
+	}
+
+	private static float clamp(float value, float min, float max) {
+		return min > max ? 0.5f * (min + max) : Math.max(min, Math.min(max,
+				value));
+	}
+
+	public int addBall(float bx, float by, float ballRadius,
+			float ballFriction, float ballRestitution) {
+		if (count == x.length) {
+			allocateBalls(count * 2);
+		}
+		int i = count++;
+		x[i] = bx;
+		y[i] = by;
+		angle[i] = 0.0f;
+		vx[i] = 0.0f;
+		vy[i] = 0.0f;
+		w[i] = 0.0f;
+		radius[i] = ballRadius;
+		if (ballRadius > maxRadius) {
+			maxRadius = ballRadius;
+			gridChanged = true;
+		}
+		setMass(i, ballRadius);
+		friction[i] = ballFriction;
+		restitution[i] = ballRestitution;
+		return i;
+	}
+
+	private void setMass(int i, float ballRadius) {
+		// Density of 1, solid disc
+		float mass = (float) Math.PI * ballRadius * ballRadius;
+		invMass[i] = 1.0f / mass;
+		invInertia[i] = 1.0f / (0.5f * mass * ballRadius * ballRadius);
+	}
+
+	public int getBallCount() {
+		return count;
+	}
+
+	public void setGravity(float gx, float gy) {
+		gravityX = gx;
+		gravityY = gy;
+	}
+
+	public void step(float dt) {
+		if (dt <= 0.0f) {
+			return;
+		}
+
+		for (int i = 0; i < count; i++) {
+			vx[i] += gravityX * dt;
+			vy[i] += gravityY * dt;
+		}
+
+		findContacts();
+		prepareContacts();
+		warmStart();
+		for (int i = 0; i < velocityIterations; i++) {
+			solveVelocities();
+		}
+		storeImpulses();
+
+		for (int i = 0; i < count; i++) {
+			x[i] += vx[i] * dt;
+			y[i] += vy[i] * dt;
+			angle[i] += w[i] * dt;
+		}
+
+		for (int i = 0; i < positionIterations; i++) {
+			if (solvePositions()) {
+				break;
+			}
+		}
+		keepInBox();
+	}
+
+	private void findContacts() {
+		contactCount = 0;
+		if (count == 0) {
+			return;
+		}
+		if (gridChanged) {
+			grid.reset(width, height, 2.0f * maxRadius);
+			gridChanged = false;
+		}
+		grid.update(count, x, y);
+		int pairCount = grid.findPairs();
+		for (int i = 0; i < pairCount; i++) {
+			testPair(grid.getPairA(i), grid.getPairB(i));
+		}
+		for (int a = 0; a < count; a++) {
+			findWallContacts(a);
+		}
+	}
+
+	private void findWallContacts(int a) {
+		float r = radius[a] + WALL_SKIN;
+		if (x[a] - r < 0.0f) {
+			addContact(a, WALL_LEFT, -1.0f, 0.0f);
+		}
+		if (x[a] + r > width) {
+			addContact(a, WALL_RIGHT, 1.0f, 0.0f);
+		}
+		if (y[a] - r < 0.0f) {
+			addContact(a, WALL_BOTTOM, 0.0f, -1.0f);
+		}
+		if (y[a] + r > height) {
+			addContact(a, WALL_TOP, 0.0f, 1.0f);
+		}
+	}
+
+	private void testPair(int a, int b) {
+		if (a > b) {
+			// Same order on each step, for the impulse cache
+			int swap = a;
+			a = b;
+			b = swap;
+		}
+		float dx = x[b] - x[a];
+		float dy = y[b] - y[a];
+		float distSq = dx * dx + dy * dy;
+		float r = radius[a] + radius[b];
+		if (distSq <= r * r) {
+			if (distSq > 0.0f) {
+				float dist = (float) Math.sqrt(distSq);
+				addContact(a, b, dx / dist, dy / dist);
+			} else {
+				addContact(a, b, 1.0f, 0.0f);
+			}
+		}
+	}
+
+	/**
+	 * Adds a contact, the normal points from a to b.
+	 */
+	private void addContact(int a, int b, float nx, float ny) {
+		if (contactCount == contactA.length) {
+			allocateContacts(contactCount * 2);
+		}
+		int c = contactCount++;
+		contactA[c] = a;
+		contactB[c] = b;
+		normalX[c] = nx;
+		normalY[c] = ny;
+	}
+
+	private void prepareContacts() {
+		for (int c = 0; c < contactCount; c++) {
+			int a = contactA[c];
+			int b = contactB[c];
+			float nx = normalX[c];
+			float ny = normalY[c];
+
+			float invMa = invMass[a];
+			float invIa = invInertia[a];
+			float ra = radius[a];
+			float kNormal = invMa;
+			float kTangent = invMa + ra * ra * invIa;
+			float mixedFriction;
+			float mixedRestitution;
+			float vn;
+			if (b >= 0) {
+				float rb = radius[b];
+				kNormal += invMass[b];
+				kTangent += invMass[b] + rb * rb * invInertia[b];
+				mixedFriction = (float) Math.sqrt(friction[a] * friction[b]);
+				mixedRestitution = Math.max(restitution[a], restitution[b]);
+				vn = (vx[b] - vx[a]) * nx + (vy[b] - vy[a]) * ny;
+			} else {
+				mixedFriction = (float) Math.sqrt(friction[a] * WALL_FRICTION);
+				mixedRestitution = Math.max(restitution[a], WALL_RESTITUTION);
+				vn = -vx[a] * nx - vy[a] * ny;
+			}
+
+			normalMass[c] = 1.0f / kNormal;
+			tangentMass[c] = 1.0f / kTangent;
+			contactFriction[c] = mixedFriction;
+			velocityBias[c] = vn < -VELOCITY_THRESHOLD ? -mixedRestitution * vn
+					: 0.0f;
+		}
+	}
+
+	/**
+	 * Applies the impulses found on the previous step for the same pairs.
+	 */
+	private void warmStart() {
+		for (int c = 0; c < contactCount; c++) {
+			int a = contactA[c];
+			int b = contactB[c];
+			int slot = impulses.find(a, b);
+			if (slot == -1) {
+				newContactCount++;
+				normalImpulse[c] = 0.0f;
+				tangentImpulse[c] = 0.0f;
+				continue;
+			}
+			float pn = impulses.getNormalImpulse(slot);
+			float pt = impulses.getTangentImpulse(slot);
+			normalImpulse[c] = pn;
+			tangentImpulse[c] = pt;
+
+			float nx = normalX[c];
+			float ny = normalY[c];
+			float px = pn * nx - pt * ny;
+			float py = pn * ny + pt * nx;
+			vx[a] -= invMass[a] * px;
+			vy[a] -= invMass[a] * py;
+			w[a] -= invInertia[a] * radius[a] * pt;
+			if (b >= 0) {
+				vx[b] += invMass[b] * px;
+				vy[b] += invMass[b] * py;
+				w[b] -= invInertia[b] * radius[b] * pt;
+			}
+		}
+	}
+
+	private void storeImpulses() {
+		ImpulseCache stored = nextImpulses;
+		stored.clear(contactCount);
+		for (int c = 0; c < contactCount; c++) {
+			stored.put(contactA[c], contactB[c], normalImpulse[c],
+					tangentImpulse[c]);
+		}
+		nextImpulses = impulses;
+		impulses = stored;
+	}
+
+	private void solveVelocities() {
+		for (int c = 0; c < contactCount; c++) {
+			int a = contactA[c];
+			int b = contactB[c];
+			float nx = normalX[c];
+			float ny = normalY[c];
+			// Tangent is the normal rotated by 90 degrees
+			float tx = -ny;
+			float ty = nx;
+
+			float invMa = invMass[a];
+			float invIa = invInertia[a];
+			float ra = radius[a];
+			float vbx = 0.0f;
+			float vby = 0.0f;
+			float wb = 0.0f;
+			float invMb = 0.0f;
+			float invIb = 0.0f;
+			float rb = 0.0f;
+			if (b >= 0) {
+				vbx = vx[b];
+				vby = vy[b];
+				wb = w[b];
+				invMb = invMass[b];
+				invIb = invInertia[b];
+				rb = radius[b];
+			}
+
+			// Friction, contact points are at ra.n on a and -rb.n on b
+			float vt = (vbx - vx[a]) * tx + (vby - vy[a]) * ty - rb * wb - ra
+					* w[a];
+			float lambda = -vt * tangentMass[c];
+			float maxFriction = contactFriction[c] * normalImpulse[c];
+			float newImpulse = tangentImpulse[c] + lambda;
+			if (newImpulse > maxFriction) {
+				newImpulse = maxFriction;
+			} else if (newImpulse < -maxFriction) {
+				newImpulse = -maxFriction;
+			}
+			lambda = newImpulse - tangentImpulse[c];
+			tangentImpulse[c] = newImpulse;
+
+			vx[a] -= invMa * lambda * tx;
+			vy[a] -= invMa * lambda * ty;
+			w[a] -= invIa * ra * lambda;
+			vbx += invMb * lambda * tx;
+			vby += invMb * lambda * ty;
+			wb -= invIb * rb * lambda;
+
+			// Non penetration and restitution
+			float vn = (vbx - vx[a]) * nx + (vby - vy[a]) * ny;
+			lambda = -normalMass[c] * (vn - velocityBias[c]);
+			newImpulse = Math.max(normalImpulse[c] + lambda, 0.0f);
+			lambda = newImpulse - normalImpulse[c];
+			normalImpulse[c] = newImpulse;
+
+			vx[a] -= invMa * lambda * nx;
+			vy[a] -= invMa * lambda * ny;
+			if (b >= 0) {
+				vx[b] = vbx + invMb * lambda * nx;
+				vy[b] = vby + invMb * lambda * ny;
+				w[b] = wb;
+			}
+		}
+	}
+
+	/**
+	 * Pushes overlapping balls apart.
+	 *
+	 * @return true when the remaining overlap is small enough
+	 */
+	private boolean solvePositions() {
+		float minSeparation = 0.0f;
+		for (int c = 0; c < contactCount; c++) {
+			int a = contactA[c];
+			int b = contactB[c];
+			float ra = radius[a];
+			float nx;
+			float ny;
+			float separation;
+			float invMb = 0.0f;
+			switch (b) {
+			case WALL_LEFT:
+				nx = -1.0f;
+				ny = 0.0f;
+				separation = x[a] - ra - WALL_SKIN;
+				break;
+			case WALL_RIGHT:
+				nx = 1.0f;
+				ny = 0.0f;
+				separation = width - x[a] - ra - WALL_SKIN;
+				break;
+			case WALL_BOTTOM:
+				nx = 0.0f;
+				ny = -1.0f;
+				separation = y[a] - ra - WALL_SKIN;
+				break;
+			case WALL_TOP:
+				nx = 0.0f;
+				ny = 1.0f;
+				separation = height - y[a] - ra - WALL_SKIN;
+				break;
+			default:
+				float dx = x[b] - x[a];
+				float dy = y[b] - y[a];
+				float dist = (float) Math.sqrt(dx * dx + dy * dy);
+				if (dist > 0.0f) {
+					nx = dx / dist;
+					ny = dy / dist;
+				} else {
+					nx = 1.0f;
+					ny = 0.0f;
+				}
+				separation = dist - ra - radius[b];
+				invMb = invMass[b];
+				break;
+			}
+
+			minSeparation = Math.min(minSeparation, separation);
+
+			float correction = BAUMGARTE * (separation + LINEAR_SLOP);
+			if (correction < -MAX_LINEAR_CORRECTION) {
+				correction = -MAX_LINEAR_CORRECTION;
+			} else if (correction > 0.0f) {
+				correction = 0.0f;
+			}
+			float invMa = invMass[a];
+			float impulse = -correction / (invMa + invMb);
+			x[a] -= invMa * impulse * nx;
+			y[a] -= invMa * impulse * ny;
+			if (b >= 0) {
+				x[b] += invMb * impulse * nx;
+				y[b] += invMb * impulse * ny;
+			}
+		}
+		return minSeparation >= -1.5f * LINEAR_SLOP;
+	}
+
+	/**
+	 * Without continuous collision, a fast ball could go through an edge:
+	 * bring it back and bounce it. Smaller overlaps are left to the solver.
+	 */
+	private void keepInBox() {
+		for (int i = 0; i < count; i++) {
+			float r = radius[i];
+			float e = Math.max(restitution[i], WALL_RESTITUTION);
+			if (x[i] < 0.0f) {
+				x[i] = r;
+				if (vx[i] < 0.0f) {
+					vx[i] = -e * vx[i];
+				}
+			} else if (x[i] > width) {
+				x[i] = width - r;
+				if (vx[i] > 0.0f) {
+					vx[i] = -e * vx[i];
+				}
+			}
+			if (y[i] < 0.0f) {
+				y[i] = r;
+				if (vy[i] < 0.0f) {
+					vy[i] = -e * vy[i];
+				}
+			} else if (y[i] > height) {
+				y[i] = height - r;
+				if (vy[i] > 0.0f) {
+					vy[i] = -e * vy[i];
+				}
+			}
+		}
+	}
+
+	public int takeNewContactCount() {
+		int newContacts = newContactCount;
+		newContactCount = 0;
+		return newContacts;
+	}
+
+	public void readState(BodyState state) {
+		state.ensureCapacity(count);
+		System.arraycopy(x, 0, state.x, 0, count);
+		System.arraycopy(y, 0, state.y, 0, count);
+		System.arraycopy(angle, 0, state.angle, 0, count);
+		System.arraycopy(vx, 0, state.vx, 0, count);
+		System.arraycopy(vy, 0, state.vy, 0, count);
+		System.arraycopy(radius, 0, state.radius, 0, count);
+		state.count = count;
+	}
+
+	public float getX(int i) {
+		return x[i];
+	}
+
+	public float getY(int i) {
+		return y[i];
+	}
+
+	public float getRadius(int i) {
+		return radius[i];
+	}
+
+	public void addVelocity(int i, float dvx, float dvy) {
+		vx[i] += dvx;
+		vy[i] += dvy;
+	}
+
+	public void applyImpulse(int i, float ix, float iy) {
+		vx[i] += invMass[i] * ix;
+		vy[i] += invMass[i] * iy;
+	}
+
+	private void allocateBalls(int capacity) {
+		x = grow(x, capacity);
+		y = grow(y, capacity);
+		angle = grow(angle, capacity);
+		vx = grow(vx, capacity);
+		vy = grow(vy, capacity);
+		w = grow(w, capacity);
+		radius = grow(radius, capacity);
+		invMass = grow(invMass, capacity);
+		invInertia = grow(invInertia, capacity);
+		friction = grow(friction, capacity);
+		restitution = grow(restitution, capacity);
+	}
+
+	private void allocateContacts(int capacity) {
+		contactA = grow(contactA, capacity);
+		contactB = grow(contactB, capacity);
+		normalX = grow(normalX, capacity);
+		normalY = grow(normalY, capacity);
+		normalMass = grow(normalMass, capacity);
+		tangentMass = grow(tangentMass, capacity);
+		velocityBias = grow(velocityBias, capacity);
+		contactFriction = grow(contactFriction, capacity);
+		normalImpulse = grow(normalImpulse, capacity);
+		tangentImpulse = grow(tangentImpulse, capacity);
+	}
+
+	private static float[] grow(float[] array, int capacity) {
+		float[] grown = new float[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, grown, 0, array.length);
+		}
+		return grown;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] grown = new int[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, grown, 0, array.length);
+		}
+		return grown;
+	}
+}
@@ -0,0 +1,55 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Accumulates the duration of a repeated operation.
+ */
+public class CostStats {
+
+	private int count;
+	private long total;
+	private long max;
+
+	public CostStats() {
+		super();
+		reset();
+	}
+
+	public void reset() {
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	public void record(long start, long end) {
+		long cost = end - start;
+		count++;
+		total += cost;
+		if (cost > max) {
+			max = cost;
+		}
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return mean duration in ns
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	/**
+	 * @return longest duration in ns
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + " mean=" + (getMean() / 1000000.0)
+				+ "ms max=" + (max / 1000000.0) + "ms";
+	}
+}
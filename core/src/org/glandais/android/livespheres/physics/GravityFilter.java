@@ -0,0 +1,161 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Accelerometer samples on their way from the sensor thread to the physics
+ * thread. Samples go through a lock-free ring of primitive arrays, one
+ * producer and one consumer; before each step, the physics thread runs the
+ * samples received until then through a first order low-pass filter, and
+ * uses its output as the gravity of the step.
+ *
+ * The filter delays slow tilts by about its time constant; the time from the
+ * reception of a sample to the step that uses it is measured.
+ */
+public class GravityFilter {
+
+	private final float[] sampleX;
+	private final float[] sampleY;
+	private final long[] sampleTime;
+	private final int mask;
+	private final long timeConstant;
+
+	// Written by the producer only
+	private volatile int tail = 0;
+	private int dropped = 0;
+	// Written by the consumer only
+	private volatile int head = 0;
+
+	// Filter state, consumer only
+	private boolean primed = false;
+	private float x;
+	private float y;
+	private long lastTime;
+	private long delay;
+	private int delayCount;
+
+	/**
+	 * @param capacity
+	 *            samples kept until the physics thread runs, a power of two
+	 * @param timeConstant
+	 *            of the filter, in ns
+	 */
+	public GravityFilter(int capacity, long timeConstant) {
+		super();
+		if (capacity < 2 || (capacity & (capacity - 1)) != 0) {
+			throw new IllegalArgumentException("capacity");
+		}
+		sampleX = new float[capacity];
+		sampleY = new float[capacity];
+		sampleTime = new long[capacity];
+		mask = capacity - 1;
+		this.timeConstant = timeConstant;
+	}
+
+	/**
+	 * Stores a sample, from the sensor thread. Samples arriving while the
+	 * physics thread does not run, once the ring is full, are dropped.
+	 *
+	 * @param time
+	 *            System.nanoTime() of the reception
+	 * @return false if the sample was dropped
+	 */
+	public boolean add(float gx, float gy, long time) {
+		int t = tail;
+		if (t - head == sampleX.length) {
+			dropped++;
+			return false;
+		}
+		int index = t & mask;
+		sampleX[index] = gx;
+		sampleY[index] = gy;
+		sampleTime[index] = time;
+		// Publishes the sample
+		tail = t + 1;
+		return true;
+	}
+
+	/**
+	 * Drops the samples not filtered yet, from the producer thread while the
+	 * consumer does not run, for instance after the physics thread has been
+	 * stopped for a while and the ring filled up.
+	 */
+	public void clear() {
+		head = tail;
+	}
+
+	/**
+	 * Filters the samples received up to the given time, from the physics
+	 * thread.
+	 *
+	 * @return true once a sample has been filtered, the output is valid
+	 */
+	public boolean update(long time) {
+		int h = head;
+		int t = tail;
+		while (h != t) {
+			int index = h & mask;
+			long received = sampleTime[index];
+			if (received > time) {
+				break;
+			}
+			filter(sampleX[index], sampleY[index], received);
+			delay += time - received;
+			delayCount++;
+			h++;
+		}
+		// Frees the slots
+		head = h;
+		return primed;
+	}
+
+	private void filter(float gx, float gy, long time) {
+		if (!primed) {
+			x = gx;
+			y = gy;
+			primed = true;
+		} else {
+			long dt = Math.max(0, time - lastTime);
+			float alpha = (float) dt / (timeConstant + dt);
+			x += (gx - x) * alpha;
+			y += (gy - y) * alpha;
+		}
+		lastTime = time;
+	}
+
+	/**
+	 * @return filtered x, valid once {@link #update(long)} returned true
+	 */
+	public float getX() {
+		return x;
+	}
+
+	public float getY() {
+		return y;
+	}
+
+	/**
+	 * @return the time constant of the filter, in ns
+	 */
+	public long getTimeConstant() {
+		return timeConstant;
+	}
+
+	/**
+	 * @return mean time from the reception of a sample to the step using it,
+	 *         in ns, since the last reset
+	 */
+	public double getMeanDelay() {
+		return delayCount == 0 ? 0 : (double) delay / delayCount;
+	}
+
+	public void resetStats() {
+		delay = 0;
+		delayCount = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "samples=" + delayCount + " dropped=" + dropped
+				+ " latency=" + (timeConstant / 1000000) + "ms filter + "
+				+ Math.round(getMeanDelay() / 1000000.0) + "ms queue";
+	}
+}
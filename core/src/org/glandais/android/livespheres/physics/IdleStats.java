@@ -0,0 +1,83 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Counts the periods during which the scene was at rest and neither
+ * simulated nor rendered, to estimate the work saved.
+ */
+public class IdleStats {
+
+	private final long tickPeriod;
+
+	private int sleepCount;
+	private int wakeCount;
+	private long sleepStart;
+	private long idleTime;
+	private long totalTime;
+	private long resetTime;
+
+	/**
+	 * @param tickPeriod
+	 *            period of the physics tick in ns, the frames skipped are
+	 *            counted at the same rate
+	 */
+	public IdleStats(long tickPeriod) {
+		super();
+		this.tickPeriod = tickPeriod;
+		reset(System.nanoTime());
+	}
+
+	public void reset(long now) {
+		sleepCount = 0;
+		wakeCount = 0;
+		idleTime = 0;
+		totalTime = 0;
+		resetTime = now;
+		if (sleepStart != 0) {
+			sleepStart = now;
+		}
+	}
+
+	public void recordSleep(long now) {
+		sleepCount++;
+		sleepStart = now;
+	}
+
+	public void recordWake(long now) {
+		if (sleepStart != 0) {
+			wakeCount++;
+			idleTime += now - sleepStart;
+			sleepStart = 0;
+		}
+		totalTime = now - resetTime;
+	}
+
+	public int getSleepCount() {
+		return sleepCount;
+	}
+
+	public int getWakeCount() {
+		return wakeCount;
+	}
+
+	/**
+	 * @return time spent at rest in ns, up to the last wake up
+	 */
+	public long getIdleTime() {
+		return idleTime;
+	}
+
+	/**
+	 * @return ticks, and frames, that did not run while at rest
+	 */
+	public long getSavedTicks() {
+		return idleTime / tickPeriod;
+	}
+
+	@Override
+	public String toString() {
+		double ratio = totalTime == 0 ? 0 : (double) idleTime / totalTime;
+		return "sleeps=" + sleepCount + " wakes=" + wakeCount + " idle="
+				+ (idleTime / 1000000) + "ms (" + Math.round(ratio * 100)
+				+ "%) saved ticks=" + getSavedTicks();
+	}
+}
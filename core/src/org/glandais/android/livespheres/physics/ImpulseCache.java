@@ -0,0 +1,90 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Contact impulses of one step, by pair of bodies, used to warm start the
+ * solver on the next step. Open addressing on primitive arrays, so that
+ * nothing is allocated once the table is large enough.
+ */
+public class ImpulseCache {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] keys = new long[0];
+	private float[] normal = new float[0];
+	private float[] tangent = new float[0];
+	private int mask = 0;
+	private int size = 0;
+
+	/**
+	 * Empties the cache, making room for the given number of entries.
+	 */
+	public void clear(int expected) {
+		int capacity = 16;
+		while (capacity < 2 * expected) {
+			capacity *= 2;
+		}
+		if (capacity > keys.length) {
+			keys = new long[capacity];
+			normal = new float[capacity];
+			tangent = new float[capacity];
+			mask = capacity - 1;
+		}
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = EMPTY;
+		}
+		size = 0;
+	}
+
+	public void put(int a, int b, float normalImpulse, float tangentImpulse) {
+		if (2 * (size + 1) > keys.length) {
+			// clear() was not given the right size, drop the extra entries
+			return;
+		}
+		long key = key(a, b);
+		int slot = hash(key);
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		if (keys[slot] == EMPTY) {
+			keys[slot] = key;
+			size++;
+		}
+		normal[slot] = normalImpulse;
+		tangent[slot] = tangentImpulse;
+	}
+
+	/**
+	 * @return the slot of the pair, or -1 if it is not in the cache
+	 */
+	public int find(int a, int b) {
+		if (size == 0) {
+			return -1;
+		}
+		long key = key(a, b);
+		int slot = hash(key);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	public float getNormalImpulse(int slot) {
+		return normal[slot];
+	}
+
+	public float getTangentImpulse(int slot) {
+		return tangent[slot];
+	}
+
+	private static long key(int a, int b) {
+		return ((long) a << 32) | (b & 0xffffffffL);
+	}
+
+	private int hash(long key) {
+		int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+}
@@ -0,0 +1,142 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Tells when the device has been still long enough for the accelerometer to
+ * be sampled at a slower rate, from the raw samples: the device is still once
+ * no sample moved further than the tolerance from the reference for the still
+ * delay, and moves again with the first sample that does.
+ *
+ * Counts the events received at each rate, to estimate the wake-ups saved by
+ * the slow one.
+ */
+public class MotionGate {
+
+	private final float toleranceSquared;
+	private final long stillDelay;
+	private final long fastPeriod;
+
+	private boolean still = false;
+	private boolean primed = false;
+	private float referenceX;
+	private float referenceY;
+	private long referenceTime;
+
+	// Stats, since the last reset
+	private int fastEvents;
+	private int slowEvents;
+	private int switches;
+	private long fastTime;
+	private long slowTime;
+	private long modeStart = 0;
+
+	/**
+	 * @param tolerance
+	 *            change, in the unit of the samples, that counts as a move
+	 * @param stillDelay
+	 *            time without moves before the device is still, in ns
+	 * @param fastPeriod
+	 *            period of the events at the fast rate, in ns
+	 */
+	public MotionGate(float tolerance, long stillDelay, long fastPeriod) {
+		super();
+		toleranceSquared = tolerance * tolerance;
+		this.stillDelay = stillDelay;
+		this.fastPeriod = fastPeriod;
+	}
+
+	/**
+	 * Starts counting time, when the listener is registered. The device is
+	 * assumed to move until proven still.
+	 */
+	public void start(long now) {
+		still = false;
+		primed = false;
+		modeStart = now;
+	}
+
+	/**
+	 * Stops counting time, when the listener is unregistered.
+	 */
+	public void stop(long now) {
+		closeMode(now);
+		modeStart = 0;
+	}
+
+	/**
+	 * @return true if the device became still, or started moving again
+	 */
+	public boolean update(float x, float y, long now) {
+		if (still) {
+			slowEvents++;
+		} else {
+			fastEvents++;
+		}
+		float dx = x - referenceX;
+		float dy = y - referenceY;
+		if (!primed || dx * dx + dy * dy > toleranceSquared) {
+			primed = true;
+			referenceX = x;
+			referenceY = y;
+			referenceTime = now;
+			if (still) {
+				setStill(false, now);
+				return true;
+			}
+			return false;
+		}
+		if (!still && now - referenceTime >= stillDelay) {
+			setStill(true, now);
+			return true;
+		}
+		return false;
+	}
+
+	private void setStill(boolean newStill, long now) {
+		closeMode(now);
+		modeStart = now;
+		still = newStill;
+		switches++;
+	}
+
+	private void closeMode(long now) {
+		if (modeStart != 0) {
+			if (still) {
+				slowTime += now - modeStart;
+			} else {
+				fastTime += now - modeStart;
+			}
+			modeStart = now;
+		}
+	}
+
+	public boolean isStill() {
+		return still;
+	}
+
+	/**
+	 * @return events the fast rate would have delivered while still, minus
+	 *         those received, up to the last mode change
+	 */
+	public long getSavedWakeUps() {
+		return Math.max(0, slowTime / fastPeriod - slowEvents);
+	}
+
+	public void reset(long now) {
+		fastEvents = 0;
+		slowEvents = 0;
+		switches = 0;
+		fastTime = 0;
+		slowTime = 0;
+		if (modeStart != 0) {
+			modeStart = now;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "switches=" + switches + " fast=" + fastEvents + "/"
+				+ (fastTime / 1000000) + "ms slow=" + slowEvents + "/"
+				+ (slowTime / 1000000) + "ms saved wakeups="
+				+ getSavedWakeUps();
+	}
+}
@@ -0,0 +1,87 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Counts the frames drawn and why they were drawn: paced frames have a
+ * deadline, and how late they run is the pacing jitter, while requested
+ * frames follow a new snapshot. Duplicate frames showed nothing new.
+ */
+public class PacingStats {
+
+	private int frameCount;
+	private int requestedCount;
+	private int duplicateCount;
+	private long firstFrame;
+	private long lastFrame;
+	private final TickStats lateness = new TickStats();
+
+	public PacingStats() {
+		super();
+		reset();
+	}
+
+	public void reset() {
+		frameCount = 0;
+		requestedCount = 0;
+		duplicateCount = 0;
+		firstFrame = 0;
+		lastFrame = 0;
+		lateness.reset();
+	}
+
+	/**
+	 * @param deadline
+	 *            time the frame was due at, 0 if it was requested
+	 * @param duplicate
+	 *            true if the frame was the same as the previous one
+	 */
+	public void recordFrame(long time, long deadline, boolean duplicate) {
+		if (frameCount == 0) {
+			firstFrame = time;
+		}
+		lastFrame = time;
+		frameCount++;
+		if (deadline == 0) {
+			requestedCount++;
+		} else {
+			lateness.record(deadline, time);
+		}
+		if (duplicate) {
+			duplicateCount++;
+		}
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	public int getRequestedCount() {
+		return requestedCount;
+	}
+
+	public int getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/**
+	 * @return how late paced frames ran
+	 */
+	public TickStats getLateness() {
+		return lateness;
+	}
+
+	/**
+	 * @return frames per second between the first and the last frame
+	 */
+	public double getFrameRate() {
+		long span = lastFrame - firstFrame;
+		return span <= 0 ? 0 : (frameCount - 1) * 1000000000.0 / span;
+	}
+
+	@Override
+	public String toString() {
+		return "frames=" + frameCount + " requested=" + requestedCount
+				+ " duplicates=" + duplicateCount + " fps="
+				+ (Math.round(getFrameRate() * 10) / 10.0) + " paced "
+				+ lateness;
+	}
+}
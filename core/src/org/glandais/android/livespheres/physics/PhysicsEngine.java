@@ -0,0 +1,68 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * A 2D world made of balls inside a rectangular box. Balls are identified by
+ * their index, in creation order.
+ */
+public interface PhysicsEngine {
+
+	// Material of the box edges
+	float WALL_FRICTION = 0.9f;
+	float WALL_RESTITUTION = 0.7f;
+
+	/**
+	 * Removes all balls and sets the box, from (0, 0) to (width, height).
+	 */
+	void reset(float width, float height);
+
+	/**
+	 * Moves the box edges to (width, height), keeping the balls: positions
+	 * follow the box, radii are multiplied by radiusScale, masses follow, and
+	 * balls are brought back inside.
+	 */
+	void resize(float width, float height, float radiusScale);
+
+	/**
+	 * Adds a ball with a density of 1.
+	 * 
+	 * @return the index of the new ball
+	 */
+	int addBall(float x, float y, float radius, float friction,
+			float restitution);
+
+	int getBallCount();
+
+	void setGravity(float x, float y);
+
+	/**
+	 * Advances the simulation by dt seconds.
+	 */
+	void step(float dt);
+
+	/**
+	 * @return contacts that began since the last call, balls hitting each
+	 *         other or the walls
+	 */
+	int takeNewContactCount();
+
+	/**
+	 * Copies positions, angles, velocities and radii of all balls.
+	 */
+	void readState(BodyState state);
+
+	float getX(int i);
+
+	float getY(int i);
+
+	float getRadius(int i);
+
+	/**
+	 * Adds to the linear velocity of a ball.
+	 */
+	void addVelocity(int i, float dvx, float dvy);
+
+	/**
+	 * Applies an impulse at the center of a ball.
+	 */
+	void applyImpulse(int i, float ix, float iy);
+}
@@ -0,0 +1,208 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Picks the update and frame rate from how much the scene moves. Fast motion,
+ * frequent impacts and recent input call for the fastest tier, slow motion
+ * for the slower ones, and a scene at rest is idle. Faster tiers are entered
+ * at once; slower ones only after activity stayed below lower thresholds for
+ * a while, one tier at a time, so that the rate does not flap.
+ *
+ * Time spent in each tier is counted, to weigh battery against smoothness.
+ * Called from the physics tick and from the main thread, hence synchronized.
+ */
+public class RateGovernor {
+
+	public static final int TIER_FAST = 0;
+	public static final int TIER_MEDIUM = 1;
+	public static final int TIER_SLOW = 2;
+	public static final int TIER_IDLE = 3;
+	private static final int TIER_COUNT = 4;
+
+	// Period of the fast, medium and slow tiers
+	private static final long[] PERIODS = { 1000000000L / 60,
+			1000000000L / 30, 1000000000L / 15 };
+
+	// Kinetic energy per unit of mass, in J/kg, that calls for a tier: balls
+	// at 2 m/s and 0.5 m/s
+	private static final float FAST_ENERGY = 2.0f;
+	private static final float MEDIUM_ENERGY = 0.125f;
+	// New contacts per second that call for a tier
+	private static final float FAST_IMPACTS = 30.0f;
+	private static final float MEDIUM_IMPACTS = 5.0f;
+	// Input this recent calls for the fast tier
+	private static final long INPUT_NS = 1000000000L;
+	// Activity must stay below thresholds scaled by this to slow down...
+	private static final float HYSTERESIS = 0.5f;
+	// ...for this long
+	private static final long HOLD_NS = 500000000L;
+
+	private int tier = TIER_FAST;
+	private long slowerSince = 0;
+	private long lastUpdate = 0;
+
+	// Residency
+	private final long[] residency = new long[TIER_COUNT];
+	private final int[] entries = new int[TIER_COUNT];
+	private long tierSince = 0;
+	private boolean running = false;
+	private int activeTier = TIER_FAST;
+
+	public RateGovernor() {
+		super();
+	}
+
+	/**
+	 * @return period in ns of updates and frames in the given tier, 0 for
+	 *         idle
+	 */
+	public static long getPeriod(int tier) {
+		return tier < PERIODS.length ? PERIODS[tier] : 0;
+	}
+
+	/**
+	 * Updates the tier from the activity since the previous update.
+	 *
+	 * @param energy
+	 *            mean kinetic energy per unit of mass, in J/kg
+	 * @param newContacts
+	 *            contacts that began since the previous update
+	 * @param lastInput
+	 *            time of the last input, 0 if none
+	 * @return the tier to run in
+	 */
+	public synchronized int update(long now, float energy, int newContacts,
+			long lastInput) {
+		float elapsed = lastUpdate == 0 ? 0.0f : (now - lastUpdate) / 1e9f;
+		lastUpdate = now;
+		float impacts = elapsed > 0.0f ? newContacts / elapsed : 0.0f;
+		boolean input = lastInput != 0 && now - lastInput < INPUT_NS;
+
+		int wanted = wantedTier(energy, impacts, input, 1.0f);
+		if (wanted < tier) {
+			setTier(wanted, now);
+			slowerSince = 0;
+		} else if (wantedTier(energy, impacts, input, HYSTERESIS) > tier) {
+			if (slowerSince == 0) {
+				slowerSince = now;
+			} else if (now - slowerSince >= HOLD_NS) {
+				setTier(tier + 1, now);
+				slowerSince = now;
+			}
+		} else {
+			slowerSince = 0;
+		}
+		return tier;
+	}
+
+	private static int wantedTier(float energy, float impacts,
+			boolean input, float scale) {
+		if (input || energy > FAST_ENERGY * scale
+				|| impacts > FAST_IMPACTS * scale) {
+			return TIER_FAST;
+		}
+		if (energy > MEDIUM_ENERGY * scale || impacts > MEDIUM_IMPACTS * scale) {
+			return TIER_MEDIUM;
+		}
+		return TIER_SLOW;
+	}
+
+	public synchronized int getTier() {
+		return tier;
+	}
+
+	/**
+	 * Starts counting residency, when the scene becomes visible.
+	 */
+	public synchronized void start(long now) {
+		if (!running) {
+			running = true;
+			tierSince = now;
+			entries[activeTier]++;
+		}
+	}
+
+	/**
+	 * Stops counting residency, when the scene is hidden.
+	 */
+	public synchronized void stop(long now) {
+		if (running) {
+			residency[activeTier] += now - tierSince;
+			running = false;
+		}
+	}
+
+	/**
+	 * Enters or leaves the idle tier, when the scene is at rest. The tier
+	 * left for idle is resumed afterwards.
+	 */
+	public synchronized void setIdle(boolean idle, long now) {
+		if (idle) {
+			setActiveTier(TIER_IDLE, now);
+		} else {
+			lastUpdate = 0;
+			slowerSince = 0;
+			setActiveTier(tier, now);
+		}
+	}
+
+	private void setTier(int newTier, long now) {
+		tier = newTier;
+		setActiveTier(newTier, now);
+	}
+
+	private void setActiveTier(int newTier, long now) {
+		if (newTier == activeTier) {
+			return;
+		}
+		if (running) {
+			residency[activeTier] += now - tierSince;
+			entries[newTier]++;
+		}
+		tierSince = now;
+		activeTier = newTier;
+	}
+
+	/**
+	 * @return time spent in the tier in ns, up to now
+	 */
+	public synchronized long getResidency(int tier, long now) {
+		long time = residency[tier];
+		if (running && tier == activeTier) {
+			time += now - tierSince;
+		}
+		return time;
+	}
+
+	/**
+	 * @return how many times the tier has been entered
+	 */
+	public synchronized int getEntries(int tier) {
+		return entries[tier];
+	}
+
+	public synchronized void reset(long now) {
+		for (int i = 0; i < TIER_COUNT; i++) {
+			residency[i] = 0;
+			entries[i] = 0;
+		}
+		tierSince = now;
+	}
+
+	@Override
+	public synchronized String toString() {
+		long now = System.nanoTime();
+		long total = 0;
+		for (int i = 0; i < TIER_COUNT; i++) {
+			total += getResidency(i, now);
+		}
+		StringBuilder builder = new StringBuilder("tier=" + tier);
+		String[] names = { "fast", "medium", "slow", "idle" };
+		for (int i = 0; i < TIER_COUNT; i++) {
+			long time = getResidency(i, now);
+			long percent = total == 0 ? 0 : Math.round(time * 100.0 / total);
+			builder.append(" " + names[i] + "=" + (time / 1000000) + "ms ("
+					+ percent + "%, " + entries[i] + " entries)");
+		}
+		return builder.toString();
+	}
+}
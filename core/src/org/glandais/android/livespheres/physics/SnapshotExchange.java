@@ -0,0 +1,71 @@
+package org.glandais.android.livespheres.physics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer between one producer (physics) and one consumer
+ * (rendering). The producer fills the back buffer and swaps it with the
+ * middle one, the consumer swaps its front buffer with the middle one when a
+ * new snapshot is there. Neither side ever blocks, and the consumer always
+ * reads the latest complete snapshot.
+ */
+public class SnapshotExchange {
+
+	private static final int INDEX_MASK = 3;
+	// Set when the middle buffer holds a snapshot not read yet
+	private static final int FRESH = 4;
+
+	private final WorldSnapshot[] buffers = new WorldSnapshot[3];
+
+	// Index of the middle buffer, and FRESH flag
+	private final AtomicInteger middle = new AtomicInteger(1);
+
+	// Owned by the producer
+	private int back = 2;
+	private long version = 0;
+
+	// Owned by the consumer
+	private int front = 0;
+
+	public SnapshotExchange(int capacity) {
+		super();
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = new WorldSnapshot(capacity);
+		}
+	}
+
+	/**
+	 * @return the buffer the producer can write to
+	 */
+	public WorldSnapshot getBackBuffer() {
+		return buffers[back];
+	}
+
+	/**
+	 * Makes the back buffer available to the consumer.
+	 */
+	public void publish() {
+		buffers[back].version = ++version;
+		back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+	}
+
+	/**
+	 * Takes the latest published snapshot, if any.
+	 * 
+	 * @return true if the front buffer has been replaced by a new snapshot
+	 */
+	public boolean acquire() {
+		if ((middle.get() & FRESH) == 0) {
+			return false;
+		}
+		front = middle.getAndSet(front) & INDEX_MASK;
+		return true;
+	}
+
+	/**
+	 * @return the buffer the consumer can read from
+	 */
+	public WorldSnapshot getFrontBuffer() {
+		return buffers[front];
+	}
+}
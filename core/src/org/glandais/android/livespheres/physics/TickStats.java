@@ -0,0 +1,78 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Accumulates how late periodic ticks run compared to their deadline. The
+ * standard deviation of the lateness is the tick jitter.
+ */
+public class TickStats {
+
+	private int count;
+	private long sum;
+	private double sumSquares;
+	private long min;
+	private long max;
+
+	public TickStats() {
+		super();
+		reset();
+	}
+
+	public void reset() {
+		count = 0;
+		sum = 0;
+		sumSquares = 0;
+		min = Long.MAX_VALUE;
+		max = Long.MIN_VALUE;
+	}
+
+	public void record(long deadline, long time) {
+		long lateness = time - deadline;
+		count++;
+		sum += lateness;
+		sumSquares += (double) lateness * lateness;
+		if (lateness < min) {
+			min = lateness;
+		}
+		if (lateness > max) {
+			max = lateness;
+		}
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return mean lateness in ns
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * @return standard deviation of the lateness in ns
+	 */
+	public double getJitter() {
+		if (count == 0) {
+			return 0;
+		}
+		double mean = getMean();
+		return Math.sqrt(Math.max(0, sumSquares / count - mean * mean));
+	}
+
+	public long getMin() {
+		return min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "ticks=" + count + " lateness mean=" + (getMean() / 1000000.0)
+				+ "ms min=" + (min / 1000000.0) + "ms max="
+				+ (max / 1000000.0) + "ms jitter=" + (getJitter() / 1000000.0)
+				+ "ms";
+	}
+}
@@ -0,0 +1,113 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Touch samples handed from the input thread to the physics thread, which
+ * applies them between steps. Samples are stored as primitive arrays in two
+ * buffers: the producer appends to one while the consumer reads the other,
+ * they are swapped by {@link #take()}. Nothing is allocated once created.
+ *
+ * A sample closer than the merge distance to the previous one replaces it,
+ * their weights added, so that a finger resting or moving slowly does not
+ * fill the buffer; so does any sample once the buffer is full.
+ */
+public class TouchQueue {
+
+	private final float mergeDistanceSquared;
+
+	private final float[][] x;
+	private final float[][] y;
+	private final float[][] weight;
+	private final int[] count = new int[2];
+
+	// Guarded by this
+	private int pending = 0;
+	private int added = 0;
+	private int merged = 0;
+
+	// Owned by the consumer
+	private int taken = 1;
+
+	public TouchQueue(int capacity, float mergeDistance) {
+		super();
+		mergeDistanceSquared = mergeDistance * mergeDistance;
+		x = new float[2][capacity];
+		y = new float[2][capacity];
+		weight = new float[2][capacity];
+	}
+
+	/**
+	 * Appends a sample, from the producer thread.
+	 */
+	public synchronized void add(float sampleX, float sampleY,
+			float sampleWeight) {
+		added++;
+		int n = count[pending];
+		float[] xs = x[pending];
+		float[] ys = y[pending];
+		float[] weights = weight[pending];
+		if (n > 0) {
+			float dx = sampleX - xs[n - 1];
+			float dy = sampleY - ys[n - 1];
+			if (n == xs.length || dx * dx + dy * dy < mergeDistanceSquared) {
+				xs[n - 1] = sampleX;
+				ys[n - 1] = sampleY;
+				weights[n - 1] += sampleWeight;
+				merged++;
+				return;
+			}
+		}
+		xs[n] = sampleX;
+		ys[n] = sampleY;
+		weights[n] = sampleWeight;
+		count[pending] = n + 1;
+	}
+
+	/**
+	 * Drops the pending samples, when the world they were made for is gone.
+	 */
+	public synchronized void clear() {
+		count[pending] = 0;
+	}
+
+	/**
+	 * Takes the samples added since the last call, from the consumer thread.
+	 * They can be read through {@link #getX()}, {@link #getY()} and
+	 * {@link #getWeight()} until the next call.
+	 *
+	 * @return the number of samples taken
+	 */
+	public int take() {
+		synchronized (this) {
+			taken = pending;
+			pending = 1 - pending;
+			count[pending] = 0;
+			return count[taken];
+		}
+	}
+
+	public float[] getX() {
+		return x[taken];
+	}
+
+	public float[] getY() {
+		return y[taken];
+	}
+
+	public float[] getWeight() {
+		return weight[taken];
+	}
+
+	/**
+	 * @return samples added since created
+	 */
+	public synchronized int getAddedCount() {
+		return added;
+	}
+
+	/**
+	 * @return samples merged into the previous one since created
+	 */
+	public synchronized int getMergedCount() {
+		return merged;
+	}
+}
@@ -0,0 +1,178 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Broadphase for circles of similar sizes: the box is split in square cells
+ * at least as large as the biggest ball, so that touching balls always lie in
+ * the same or in adjacent cells. Each cell holds a doubly linked list of
+ * balls, and a ball only moves to another list when it crosses a cell
+ * boundary.
+ */
+public class UniformGrid {
+
+	private static final int NONE = -1;
+	// Balls one diameter apart, up to rounding, may pass the float distance
+	// test: cells are a little larger so that they stay in adjacent cells
+	private static final float CELL_PADDING = 1.0001f;
+
+	private int columns = 1;
+	private int rows = 1;
+	private float inverseCellSize = 1.0f;
+
+	// First ball of each cell
+	private int[] cellHead = new int[1];
+
+	// Per ball links
+	private int tracked = 0;
+	private int[] cell = new int[16];
+	private int[] next = new int[16];
+	private int[] previous = new int[16];
+
+	// Candidate pairs, reused from one step to the next
+	private int pairCount = 0;
+	private int[] pairA = new int[64];
+	private int[] pairB = new int[64];
+
+	/**
+	 * Forgets all balls and sets the cells up for the given box.
+	 */
+	public void reset(float width, float height, float cellSize) {
+		cellSize *= CELL_PADDING;
+		columns = Math.max(1, (int) Math.ceil(width / cellSize));
+		rows = Math.max(1, (int) Math.ceil(height / cellSize));
+		inverseCellSize = 1.0f / cellSize;
+		if (cellHead.length < columns * rows) {
+			cellHead = new int[columns * rows];
+		}
+		for (int i = 0; i < columns * rows; i++) {
+			cellHead[i] = NONE;
+		}
+		tracked = 0;
+		pairCount = 0;
+	}
+
+	/**
+	 * Moves the balls that crossed a cell boundary since the last update, and
+	 * inserts the balls added since then.
+	 */
+	public void update(int count, float[] x, float[] y) {
+		if (count > cell.length) {
+			int capacity = Math.max(count, cell.length * 2);
+			cell = grow(cell, capacity);
+			next = grow(next, capacity);
+			previous = grow(previous, capacity);
+		}
+		for (int i = 0; i < count; i++) {
+			int c = cellOf(x[i], y[i]);
+			if (i >= tracked) {
+				insert(i, c);
+			} else if (c != cell[i]) {
+				remove(i);
+				insert(i, c);
+			}
+		}
+		tracked = count;
+	}
+
+	private int cellOf(float x, float y) {
+		int column = (int) (x * inverseCellSize);
+		int row = (int) (y * inverseCellSize);
+		// Balls may slightly overlap the edges
+		column = Math.max(0, Math.min(columns - 1, column));
+		row = Math.max(0, Math.min(rows - 1, row));
+		return row * columns + column;
+	}
+
+	private void insert(int i, int c) {
+		int head = cellHead[c];
+		cell[i] = c;
+		previous[i] = NONE;
+		next[i] = head;
+		if (head != NONE) {
+			previous[head] = i;
+		}
+		cellHead[c] = i;
+	}
+
+	private void remove(int i) {
+		int p = previous[i];
+		int n = next[i];
+		if (p != NONE) {
+			next[p] = n;
+		} else {
+			cellHead[cell[i]] = n;
+		}
+		if (n != NONE) {
+			previous[n] = p;
+		}
+	}
+
+	/**
+	 * Lists every pair of balls in the same or in adjacent cells, once.
+	 *
+	 * @return the number of pairs, read back with {@link #getPairA(int)} and
+	 *         {@link #getPairB(int)}
+	 */
+	public int findPairs() {
+		pairCount = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				int c = row * columns + column;
+				for (int a = cellHead[c]; a != NONE; a = next[a]) {
+					// Same cell, following balls only
+					for (int b = next[a]; b != NONE; b = next[b]) {
+						addPair(a, b);
+					}
+					// Half of the neighbours, the other half sees this cell
+					if (column + 1 < columns) {
+						addPairs(a, c + 1);
+					}
+					if (row + 1 < rows) {
+						int above = c + columns;
+						if (column > 0) {
+							addPairs(a, above - 1);
+						}
+						addPairs(a, above);
+						if (column + 1 < columns) {
+							addPairs(a, above + 1);
+						}
+					}
+				}
+			}
+		}
+		return pairCount;
+	}
+
+	private void addPairs(int a, int c) {
+		for (int b = cellHead[c]; b != NONE; b = next[b]) {
+			addPair(a, b);
+		}
+	}
+
+	private void addPair(int a, int b) {
+		if (pairCount == pairA.length) {
+			pairA = grow(pairA, pairCount * 2);
+			pairB = grow(pairB, pairCount * 2);
+		}
+		pairA[pairCount] = a;
+		pairB[pairCount] = b;
+		pairCount++;
+	}
+
+	public int getPairCount() {
+		return pairCount;
+	}
+
+	public int getPairA(int pair) {
+		return pairA[pair];
+	}
+
+	public int getPairB(int pair) {
+		return pairB[pair];
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
@@ -0,0 +1,53 @@
+package org.glandais.android.livespheres.physics;
+
+/**
+ * Ball state handed from the physics thread to the rendering thread: the
+ * two last computed states, the times they stand for, and the ball radii.
+ * Arrays are sized once, so that publishing a snapshot does not allocate.
+ */
+public class WorldSnapshot {
+
+	public final float[] x;
+	public final float[] y;
+	public final float[] angle;
+
+	public final float[] previousX;
+	public final float[] previousY;
+	public final float[] previousAngle;
+
+	public final float[] radius;
+
+	public int count;
+	public long time;
+	public long previousTime;
+	public long version;
+
+	public WorldSnapshot(int capacity) {
+		super();
+		x = new float[capacity];
+		y = new float[capacity];
+		angle = new float[capacity];
+		previousX = new float[capacity];
+		previousY = new float[capacity];
+		previousAngle = new float[capacity];
+		radius = new float[capacity];
+	}
+
+	/**
+	 * @return the interpolation factor between the previous and the current
+	 *         state for the given time, clamped to [0, 1]
+	 */
+	public float getAlpha(long renderTime) {
+		long span = time - previousTime;
+		if (span <= 0) {
+			return 1.0f;
+		}
+		float alpha = (float) (renderTime - time) / (float) span;
+		if (alpha < 0.0f) {
+			return 0.0f;
+		} else if (alpha > 1.0f) {
+			return 1.0f;
+		}
+		return alpha;
+	}
+}
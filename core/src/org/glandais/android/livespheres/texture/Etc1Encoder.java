@@ -0,0 +1,297 @@
+package org.glandais.android.livespheres.texture;
+
+/**
+ * Encodes images to ETC1, for textures compressed at build time. Each 4x4
+ * block is split in two halves, side by side or one above the other, and
+ * each half gets a base color and one of eight intensity tables. Base colors
+ * are stored either as two 4 bits colors, or as a 5 bits color and a 3 bits
+ * difference. Every split, mode, base color close to the half average and
+ * table is tried, and the one with the smallest squared error kept.
+ */
+public class Etc1Encoder {
+
+	// Intensity modifiers of each table, for pixel indices 0 and 1; indices
+	// 2 and 3 are their opposites
+	private static final int[][] TABLES = { { 2, 8 }, { 5, 17 }, { 9, 29 },
+			{ 13, 42 }, { 18, 60 }, { 24, 80 }, { 33, 106 }, { 47, 183 } };
+
+	// Base colors tried around the quantized average, per channel
+	private static final int SEARCH = 1;
+	private static final int CANDIDATES = (2 * SEARCH + 1)
+			* (2 * SEARCH + 1) * (2 * SEARCH + 1);
+
+	// Block being encoded, as r, g, b of pixel x + 4 * y
+	private final int[] block = new int[48];
+
+	// Best encoding of one half for each candidate base color
+	private final int[] candidateColor = new int[CANDIDATES];
+	private final long[] candidateError = new long[CANDIDATES];
+	private final int[] candidateTable = new int[CANDIDATES];
+	private final int[] candidateIndices = new int[CANDIDATES];
+
+	// Best encoding of each half, per candidate, for the differential mode
+	private final int[][] halfColor = new int[2][CANDIDATES];
+	private final long[][] halfError = new long[2][CANDIDATES];
+	private final int[][] halfTable = new int[2][CANDIDATES];
+	private final int[][] halfIndices = new int[2][CANDIDATES];
+
+	// Pixels of each half, for both splits
+	private static final int[][][] HALVES = new int[2][2][8];
+
+	static {
+		for (int flip = 0; flip < 2; flip++) {
+			int[] counts = new int[2];
+			for (int y = 0; y < 4; y++) {
+				for (int x = 0; x < 4; x++) {
+					int half = flip == 0 ? x / 2 : y / 2;
+					HALVES[flip][half][counts[half]++] = x + 4 * y;
+				}
+			}
+		}
+	}
+
+	public Etc1Encoder() {
+		super();
+	}
+
+	/**
+	 * @param argb
+	 *            pixels, rows top to bottom; alpha is ignored
+	 * @return a PKM file, header included
+	 */
+	public byte[] encode(int[] argb, int width, int height) {
+		Pkm pkm = new Pkm(false, width, height);
+		byte[] data = new byte[Pkm.HEADER_SIZE + pkm.getDataSize()];
+		pkm.write(data);
+		int offset = Pkm.HEADER_SIZE;
+		for (int by = 0; by < pkm.extendedHeight; by += 4) {
+			for (int bx = 0; bx < pkm.extendedWidth; bx += 4) {
+				for (int y = 0; y < 4; y++) {
+					for (int x = 0; x < 4; x++) {
+						// Blocks past the edges repeat the last pixels
+						int px = Math.min(bx + x, width - 1);
+						int py = Math.min(by + y, height - 1);
+						int color = argb[px + py * width];
+						int i = 3 * (x + 4 * y);
+						block[i] = (color >> 16) & 0xFF;
+						block[i + 1] = (color >> 8) & 0xFF;
+						block[i + 2] = color & 0xFF;
+					}
+				}
+				long bits = encodeBlock();
+				for (int i = 7; i >= 0; i--) {
+					data[offset++] = (byte) (bits >>> (8 * i));
+				}
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * @param argb
+	 *            pixels, rows top to bottom
+	 * @return an alpha plane file, header included
+	 */
+	public static byte[] encodeAlpha(int[] argb, int width, int height) {
+		Pkm pkm = new Pkm(true, width, height);
+		byte[] data = new byte[Pkm.HEADER_SIZE + pkm.getDataSize()];
+		pkm.write(data);
+		for (int i = 0; i < width * height; i++) {
+			data[Pkm.HEADER_SIZE + i] = (byte) (argb[i] >>> 24);
+		}
+		return data;
+	}
+
+	private long encodeBlock() {
+		long bestError = Long.MAX_VALUE;
+		long best = 0;
+		for (int flip = 0; flip < 2; flip++) {
+			// Individual mode, two 4 bits colors
+			long error = 0;
+			int[] colors = new int[2];
+			int[] tables = new int[2];
+			int[] indices = new int[2];
+			for (int half = 0; half < 2; half++) {
+				int c = searchHalf(HALVES[flip][half], 4);
+				colors[half] = candidateColor[c];
+				tables[half] = candidateTable[c];
+				indices[half] = candidateIndices[c];
+				error += candidateError[c];
+			}
+			if (error < bestError) {
+				bestError = error;
+				best = pack(false, flip, colors, tables, indices);
+			}
+
+			// Differential mode, 5 bits color and 3 bits difference
+			for (int half = 0; half < 2; half++) {
+				searchHalf(HALVES[flip][half], 5);
+				System.arraycopy(candidateColor, 0, halfColor[half], 0,
+						CANDIDATES);
+				System.arraycopy(candidateError, 0, halfError[half], 0,
+						CANDIDATES);
+				System.arraycopy(candidateTable, 0, halfTable[half], 0,
+						CANDIDATES);
+				System.arraycopy(candidateIndices, 0, halfIndices[half], 0,
+						CANDIDATES);
+			}
+			for (int c1 = 0; c1 < CANDIDATES; c1++) {
+				for (int c2 = 0; c2 < CANDIDATES; c2++) {
+					error = halfError[0][c1] + halfError[1][c2];
+					if (error >= bestError
+							|| !isDifference(halfColor[0][c1],
+									halfColor[1][c2])) {
+						continue;
+					}
+					bestError = error;
+					colors[0] = halfColor[0][c1];
+					colors[1] = halfColor[1][c2];
+					tables[0] = halfTable[0][c1];
+					tables[1] = halfTable[1][c2];
+					indices[0] = halfIndices[0][c1];
+					indices[1] = halfIndices[1][c2];
+					best = pack(true, flip, colors, tables, indices);
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Finds the best table and indices for the base colors around the half
+	 * average, quantized to the given bits. Results are in the candidate
+	 * arrays, colors being packed as quantized r << 16 | g << 8 | b.
+	 *
+	 * @return the best candidate
+	 */
+	private int searchHalf(int[] pixels, int bits) {
+		int r = 0;
+		int g = 0;
+		int b = 0;
+		for (int i = 0; i < pixels.length; i++) {
+			int p = 3 * pixels[i];
+			r += block[p];
+			g += block[p + 1];
+			b += block[p + 2];
+		}
+		int max = (1 << bits) - 1;
+		int qr = Math.round(r * max / (8 * 255.0f));
+		int qg = Math.round(g * max / (8 * 255.0f));
+		int qb = Math.round(b * max / (8 * 255.0f));
+
+		int best = 0;
+		int c = 0;
+		for (int dr = -SEARCH; dr <= SEARCH; dr++) {
+			for (int dg = -SEARCH; dg <= SEARCH; dg++) {
+				for (int db = -SEARCH; db <= SEARCH; db++) {
+					int cr = clamp(qr + dr, max);
+					int cg = clamp(qg + dg, max);
+					int cb = clamp(qb + db, max);
+					candidateColor[c] = (cr << 16) | (cg << 8) | cb;
+					searchTables(pixels, expand(cr, bits), expand(cg, bits),
+							expand(cb, bits), c);
+					if (candidateError[c] < candidateError[best]) {
+						best = c;
+					}
+					c++;
+				}
+			}
+		}
+		return best;
+	}
+
+	private void searchTables(int[] pixels, int r, int g, int b, int c) {
+		long bestError = Long.MAX_VALUE;
+		for (int table = 0; table < TABLES.length; table++) {
+			long error = 0;
+			int indices = 0;
+			for (int i = 0; i < pixels.length && error < bestError; i++) {
+				int p = 3 * pixels[i];
+				int bestPixelError = Integer.MAX_VALUE;
+				int bestIndex = 0;
+				for (int index = 0; index < 4; index++) {
+					int modifier = TABLES[table][index & 1];
+					if (index >= 2) {
+						modifier = -modifier;
+					}
+					int er = clamp(r + modifier, 255) - block[p];
+					int eg = clamp(g + modifier, 255) - block[p + 1];
+					int eb = clamp(b + modifier, 255) - block[p + 2];
+					int pixelError = er * er + eg * eg + eb * eb;
+					if (pixelError < bestPixelError) {
+						bestPixelError = pixelError;
+						bestIndex = index;
+					}
+				}
+				error += bestPixelError;
+				indices |= bestIndex << (2 * i);
+			}
+			if (error < bestError) {
+				bestError = error;
+				candidateTable[c] = table;
+				candidateIndices[c] = indices;
+			}
+		}
+		candidateError[c] = bestError;
+	}
+
+	private static boolean isDifference(int color1, int color2) {
+		for (int shift = 0; shift <= 16; shift += 8) {
+			int d = ((color2 >> shift) & 0xFF) - ((color1 >> shift) & 0xFF);
+			if (d < -4 || d > 3) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long pack(boolean differential, int flip, int[] colors,
+			int[] tables, int[] indices) {
+		long bits = 0;
+		for (int channel = 0; channel < 3; channel++) {
+			int shift = 16 - 8 * channel;
+			int c1 = (colors[0] >> shift) & 0xFF;
+			int c2 = (colors[1] >> shift) & 0xFF;
+			int value;
+			if (differential) {
+				value = (c1 << 3) | ((c2 - c1) & 7);
+			} else {
+				value = (c1 << 4) | c2;
+			}
+			bits |= (long) value << (56 - 8 * channel);
+		}
+		bits |= (long) tables[0] << 37;
+		bits |= (long) tables[1] << 34;
+		if (differential) {
+			bits |= 1L << 33;
+		}
+		bits |= (long) flip << 32;
+
+		// Pixel indices are stored column by column, most significant bits
+		// first
+		for (int half = 0; half < 2; half++) {
+			int[] pixels = HALVES[flip][half];
+			for (int i = 0; i < pixels.length; i++) {
+				int pixel = pixels[i];
+				int x = pixel & 3;
+				int y = pixel >> 2;
+				int bit = x * 4 + y;
+				int index = (indices[half] >> (2 * i)) & 3;
+				bits |= (long) (index >> 1) << (16 + bit);
+				bits |= (long) (index & 1) << bit;
+			}
+		}
+		return bits;
+	}
+
+	private static int expand(int value, int bits) {
+		if (bits == 4) {
+			return (value << 4) | value;
+		}
+		return (value << 3) | (value >> 2);
+	}
+
+	private static int clamp(int value, int max) {
+		return value < 0 ? 0 : (value > max ? max : value);
+	}
+}
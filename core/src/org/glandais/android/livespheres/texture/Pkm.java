@@ -0,0 +1,107 @@
+package org.glandais.android.livespheres.texture;
+
+/**
+ * Header of the texture files produced at build time, 16 bytes, big endian.
+ * ETC1 files use the standard PKM layout: "PKM 10", format, width and height
+ * rounded up to whole 4x4 blocks, then the original width and height. Alpha
+ * planes use the same layout with "PKA 10", followed by one byte per pixel,
+ * rows top to bottom.
+ */
+public class Pkm {
+
+	public static final int HEADER_SIZE = 16;
+
+	private static final byte[] ETC1_MAGIC = { 'P', 'K', 'M', ' ', '1', '0' };
+	private static final byte[] ALPHA_MAGIC = { 'P', 'K', 'A', ' ', '1', '0' };
+	// ETC1 RGB, no mipmaps
+	private static final int FORMAT_ETC1_RGB = 0;
+
+	public final boolean alpha;
+	public final int extendedWidth;
+	public final int extendedHeight;
+	public final int width;
+	public final int height;
+
+	public Pkm(boolean alpha, int width, int height) {
+		super();
+		this.alpha = alpha;
+		this.width = width;
+		this.height = height;
+		if (alpha) {
+			extendedWidth = width;
+			extendedHeight = height;
+		} else {
+			extendedWidth = (width + 3) & ~3;
+			extendedHeight = (height + 3) & ~3;
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the header is neither ETC1 nor alpha
+	 */
+	public static Pkm read(byte[] data) {
+		if (data.length < HEADER_SIZE) {
+			throw new IllegalArgumentException("Truncated header");
+		}
+		boolean alpha;
+		if (startsWith(data, ETC1_MAGIC)) {
+			alpha = false;
+		} else if (startsWith(data, ALPHA_MAGIC)) {
+			alpha = true;
+		} else {
+			throw new IllegalArgumentException("Not a PKM file");
+		}
+		if (readShort(data, 6) != FORMAT_ETC1_RGB) {
+			throw new IllegalArgumentException("Unsupported format "
+					+ readShort(data, 6));
+		}
+		Pkm pkm = new Pkm(alpha, readShort(data, 12), readShort(data, 14));
+		if (pkm.extendedWidth != readShort(data, 8)
+				|| pkm.extendedHeight != readShort(data, 10)) {
+			throw new IllegalArgumentException("Inconsistent sizes");
+		}
+		if (data.length < HEADER_SIZE + pkm.getDataSize()) {
+			throw new IllegalArgumentException("Truncated data");
+		}
+		return pkm;
+	}
+
+	public void write(byte[] data) {
+		System.arraycopy(alpha ? ALPHA_MAGIC : ETC1_MAGIC, 0, data, 0,
+				ETC1_MAGIC.length);
+		writeShort(data, 6, FORMAT_ETC1_RGB);
+		writeShort(data, 8, extendedWidth);
+		writeShort(data, 10, extendedHeight);
+		writeShort(data, 12, width);
+		writeShort(data, 14, height);
+	}
+
+	/**
+	 * @return size of the data following the header, in bytes
+	 */
+	public int getDataSize() {
+		if (alpha) {
+			return width * height;
+		}
+		return (extendedWidth / 4) * (extendedHeight / 4) * 8;
+	}
+
+	private static boolean startsWith(byte[] data, byte[] magic) {
+		for (int i = 0; i < magic.length; i++) {
+			if (data[i] != magic[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int readShort(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+	}
+
+	private static void writeShort(byte[] data, int offset, int value) {
+		data[offset] = (byte) (value >> 8);
+		data[offset + 1] = (byte) value;
+	}
+}
@@ -0,0 +1,69 @@
+package org.glandais.android.livespheres.texture;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Build step run on a plain JVM, not part of the application: encodes the
+ * opaque drawables to ETC1 and writes the alpha of the translucent ones to a
+ * separate plane, as raw resources loaded without decoding.
+ *
+ * Usage: TextureCompressor [res directory], "res" by default. Run it again
+ * whenever one of the drawables changes.
+ */
+public class TextureCompressor {
+
+	// Drawable, ETC1 raw resource, alpha plane raw resource or null
+	private static final String[][] TEXTURES = {
+			{ "background", "background_etc1", null },
+			{ "ball", "ball_etc1", "ball_alpha" } };
+
+	public static void main(String[] args) throws IOException {
+		File res = new File(args.length > 0 ? args[0] : "res");
+		File drawables = new File(res, "drawable");
+		File raw = new File(res, "raw");
+		if (!raw.isDirectory() && !raw.mkdirs()) {
+			throw new IOException("Cannot create " + raw);
+		}
+
+		Etc1Encoder encoder = new Etc1Encoder();
+		for (String[] texture : TEXTURES) {
+			File source = new File(drawables, texture[0] + ".png");
+			BufferedImage image = ImageIO.read(source);
+			if (image == null) {
+				throw new IOException("Cannot read " + source);
+			}
+			int width = image.getWidth();
+			int height = image.getHeight();
+			int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+
+			long start = System.nanoTime();
+			byte[] etc1 = encoder.encode(argb, width, height);
+			long time = (System.nanoTime() - start) / 1000000;
+			write(new File(raw, texture[1] + ".pkm"), etc1);
+			System.out.println(source + ": " + width + "x" + height + ", "
+					+ etc1.length + " bytes ETC1 instead of "
+					+ (width * height * 2) + " bytes RGB_565, " + time + "ms");
+
+			if (texture[2] != null) {
+				byte[] alpha = Etc1Encoder.encodeAlpha(argb, width, height);
+				write(new File(raw, texture[2] + ".pka"), alpha);
+				System.out.println(source + ": " + alpha.length
+						+ " bytes alpha plane");
+			}
+		}
+	}
+
+	private static void write(File file, byte[] data) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+}
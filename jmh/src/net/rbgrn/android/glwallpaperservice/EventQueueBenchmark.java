@@ -0,0 +1,223 @@
+package net.rbgrn.android.glwallpaperservice;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Measures GLThread.queueEvent under contention on a plain JVM: producer
+ * threads queue the same runnable as fast as they can while a consumer runs
+ * them, as the GL thread does. Not part of the application.
+ *
+ * Usage: EventQueueBenchmark [queues] [producer counts] [events per
+ * producer], lists being comma separated, for instance "monitor,ring 1,2,4
+ * 100000". The monitor queue is the previous implementation: an ArrayList
+ * behind two nested monitors, emptied from its head one event at a time. The
+ * ring queue is EventQueue, drained in batches.
+ *
+ * Run from the root with "gradle :jmh:eventQueueBenchmark --args=...".
+ */
+public class EventQueueBenchmark {
+
+	private static final int CAPACITY = 64;
+	private static final int RUNS = 5;
+
+	/**
+	 * A queue and its consumer thread.
+	 */
+	private abstract static class Harness {
+		final AtomicInteger wakeUps = new AtomicInteger();
+		int consumed;
+
+		abstract void queue(Runnable event);
+
+		/**
+		 * Runs events until count of them have run.
+		 */
+		abstract void consume(int count) throws InterruptedException;
+	}
+
+	/**
+	 * The previous GLThread queue.
+	 */
+	private static class MonitorHarness extends Harness {
+		private final Object mManager = new Object();
+		private final ArrayList<Runnable> mEvents = new ArrayList<Runnable>();
+		private boolean mEventsWaiting;
+
+		@Override
+		void queue(Runnable event) {
+			synchronized (this) {
+				mEvents.add(event);
+				synchronized (mManager) {
+					mEventsWaiting = true;
+					mManager.notifyAll();
+					wakeUps.incrementAndGet();
+				}
+			}
+		}
+
+		@Override
+		void consume(int count) throws InterruptedException {
+			while (consumed < count) {
+				synchronized (mManager) {
+					while (!mEventsWaiting) {
+						mManager.wait();
+					}
+					mEventsWaiting = false;
+				}
+				Runnable event;
+				while ((event = getEvent()) != null) {
+					event.run();
+				}
+			}
+		}
+
+		private Runnable getEvent() {
+			synchronized (this) {
+				if (mEvents.size() > 0) {
+					return mEvents.remove(0);
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * EventQueue, with the wake-ups of GLThread: producers finding the queue
+	 * full block until the consumer has drained it.
+	 */
+	private static class RingHarness extends Harness {
+		private final EventQueue mQueue = new EventQueue(CAPACITY);
+		private final Runnable[] mBatch = new Runnable[CAPACITY];
+		private final ReentrantLock mLock = new ReentrantLock();
+		private final Condition mWakeUp = mLock.newCondition();
+		private final Condition mDrained = mLock.newCondition();
+
+		@Override
+		void queue(Runnable event) {
+			if (!mQueue.offer(event)) {
+				mLock.lock();
+				try {
+					while (!mQueue.offer(event)) {
+						mWakeUp.signal();
+						wakeUps.incrementAndGet();
+						mDrained.awaitUninterruptibly();
+					}
+				} finally {
+					mLock.unlock();
+				}
+			}
+			if (mQueue.requestWakeUp()) {
+				mLock.lock();
+				try {
+					mWakeUp.signal();
+					wakeUps.incrementAndGet();
+				} finally {
+					mLock.unlock();
+				}
+			}
+		}
+
+		@Override
+		void consume(int count) throws InterruptedException {
+			boolean drainedBefore = false;
+			while (consumed < count) {
+				mLock.lock();
+				try {
+					if (drainedBefore) {
+						mDrained.signalAll();
+					}
+					while (mQueue.isEmpty()) {
+						mWakeUp.await();
+					}
+				} finally {
+					mLock.unlock();
+				}
+				drainedBefore = true;
+				int drained = mQueue.drainTo(mBatch);
+				for (int i = 0; i < drained; i++) {
+					Runnable event = mBatch[i];
+					mBatch[i] = null;
+					event.run();
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		String[] queues = split(args, 0, "monitor,ring");
+		String[] producers = split(args, 1, "1,2,4");
+		int events = Integer.parseInt(args.length > 2 ? args[2] : "100000");
+
+		for (String producer : producers) {
+			for (String queue : queues) {
+				int count = Integer.parseInt(producer);
+				// The first runs warm the JIT up
+				for (int run = 0; run < RUNS; run++) {
+					boolean last = run == RUNS - 1;
+					run(queue, count, events, last);
+				}
+			}
+		}
+	}
+
+	private static String[] split(String[] args, int index, String defaults) {
+		return (args.length > index ? args[index] : defaults).split(",");
+	}
+
+	private static void run(String name, int producerCount,
+			final int events, boolean print) throws InterruptedException {
+		final Harness harness;
+		if ("ring".equals(name)) {
+			harness = new RingHarness();
+		} else {
+			harness = new MonitorHarness();
+		}
+		// The same command object for every event, run by the consumer only
+		final Runnable event = new Runnable() {
+			public void run() {
+				harness.consumed++;
+			}
+		};
+
+		final long[] producerTimes = new long[producerCount];
+		Thread[] producers = new Thread[producerCount];
+		for (int i = 0; i < producerCount; i++) {
+			final int index = i;
+			producers[i] = new Thread() {
+				@Override
+				public void run() {
+					long start = System.nanoTime();
+					for (int j = 0; j < events; j++) {
+						harness.queue(event);
+					}
+					producerTimes[index] = System.nanoTime() - start;
+				}
+			};
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < producerCount; i++) {
+			producers[i].start();
+		}
+		harness.consume(producerCount * events);
+		long elapsed = System.nanoTime() - start;
+		long producerTime = 0;
+		for (int i = 0; i < producerCount; i++) {
+			producers[i].join();
+			producerTime += producerTimes[i];
+		}
+
+		if (print) {
+			long total = (long) producerCount * events;
+			System.out.println(name + " producers=" + producerCount
+					+ " events=" + total + " elapsed="
+					+ elapsed / 1000000L + "ms throughput="
+					+ total * 1000L / Math.max(1, elapsed / 1000L)
+					+ "/ms queue=" + (double) producerTime / total
+					+ "ns wakeups=" + harness.wakeUps.get());
+		}
+	}
+}
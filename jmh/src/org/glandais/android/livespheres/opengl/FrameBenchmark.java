@@ -0,0 +1,114 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.glandais.android.livespheres.opengl.sprites.GLSprite;
+import org.glandais.android.livespheres.physics.SnapshotExchange;
+import org.glandais.android.livespheres.physics.WorldSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of PhysicsWorld.setBallCoords on the GL thread: interpolation of the
+ * latest snapshot, transform to the screen, then the sprite positions. With
+ * publish, the physics thread publishes a snapshot before every frame, so
+ * that the frame also swaps buffers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 480;
+	private static final float SCALE = 40.0f;
+	// 25 updates per second, 60 frames per second
+	private static final long UPDATE_PERIOD = 40000000L;
+	private static final long FRAME_PERIOD = 16666667L;
+
+	@Param({ "10", "500", "2000" })
+	public int ballCount;
+
+	@Param({ "0", "1" })
+	public int rotation;
+
+	@Param({ "false", "true" })
+	public boolean publish;
+
+	private SnapshotExchange exchange;
+	private ScreenTransform transform;
+	private FrameInterpolator frame;
+	private GLSprite[] sprites;
+	private long renderTime;
+
+	@Setup
+	public void setUp() {
+		exchange = new SnapshotExchange(ballCount);
+		Random random = new Random(42);
+		// Fills the three buffers
+		for (int n = 0; n < 3; n++) {
+			WorldSnapshot snapshot = exchange.getBackBuffer();
+			for (int i = 0; i < ballCount; i++) {
+				snapshot.previousX[i] = random.nextFloat() * WIDTH / SCALE;
+				snapshot.previousY[i] = random.nextFloat() * HEIGHT / SCALE;
+				snapshot.previousAngle[i] = random.nextFloat();
+				snapshot.x[i] = random.nextFloat() * WIDTH / SCALE;
+				snapshot.y[i] = random.nextFloat() * HEIGHT / SCALE;
+				snapshot.angle[i] = random.nextFloat();
+				snapshot.radius[i] = 0.2f + 0.1f * random.nextFloat();
+			}
+			snapshot.count = ballCount;
+			snapshot.previousTime = 0;
+			snapshot.time = UPDATE_PERIOD;
+			exchange.publish();
+		}
+		exchange.acquire();
+		transform = new ScreenTransform(rotation, WIDTH, HEIGHT, SCALE);
+		frame = new FrameInterpolator(ballCount);
+		sprites = new GLSprite[ballCount];
+		for (int i = 0; i < ballCount; i++) {
+			sprites[i] = new GLSprite(0);
+		}
+		renderTime = UPDATE_PERIOD;
+	}
+
+	@Benchmark
+	public GLSprite[] setBallCoords() {
+		if (publish) {
+			exchange.publish();
+		}
+		// Sweeps the interpolation span
+		renderTime += FRAME_PERIOD;
+		if (renderTime >= 2 * UPDATE_PERIOD) {
+			renderTime -= UPDATE_PERIOD;
+		}
+		frame.interpolate(exchange, transform, SCALE, renderTime);
+		int count = frame.getCount();
+		float[] x = frame.getX();
+		float[] y = frame.getY();
+		float[] angle = frame.getAngle();
+		float[] radius = frame.getRadius();
+		for (int i = 0; i < count; i++) {
+			float r = radius[i];
+			sprites[i].width = 2.0f * r;
+			sprites[i].height = 2.0f * r;
+			sprites[i].x = x[i] - r;
+			sprites[i].y = y[i] - r;
+			sprites[i].angle = angle[i];
+		}
+		return sprites;
+	}
+}
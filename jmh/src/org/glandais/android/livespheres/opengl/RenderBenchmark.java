@@ -0,0 +1,343 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.microedition.khronos.opengles.GL10;
+
+import org.glandais.android.livespheres.opengl.sprites.GLSprite;
+import org.glandais.android.livespheres.opengl.sprites.Grid;
+import org.glandais.android.livespheres.opengl.sprites.SpriteBatch;
+import org.glandais.android.livespheres.opengl.sprites.TextureRegion;
+import org.glandais.android.livespheres.physics.CostStats;
+
+/**
+ * Draws frames of the wallpaper with the sprite classes on
+ * {@link SoftwareGL}, to measure the CPU cost of drawing on a plain JVM and
+ * to compare frames with golden images. Not part of the application.
+ *
+ * Usage: RenderBenchmark [res directory] [modes] [ball counts]
+ * [record|check|verify golden directory], lists being comma separated, for
+ * instance
+ * "res batch,vbo,drawtex 10,500,2000 check golden". Modes are the paths of
+ * SpheresRenderer: batch draws through SpriteBatch with client arrays, vbo
+ * through SpriteBatch with buffer objects, drawtex through GLSprite and the
+ * draw_texture extension.
+ *
+ * For each combination, the cost of a frame is measured with rasterization
+ * off, which leaves the sprite code, the GL calls and this GL vertex
+ * processing, then with it on; calls per frame are counted through
+ * {@link StateCachingGL}. Then one frame is written to, or compared with,
+ * mode_count.png in the golden directory. A comparison fails when a channel
+ * differs by more than {@link #TOLERANCE}, and writes the differing pixels
+ * in red to mode_count_diff.png. Verify compares without measuring.
+ *
+ * Run from the root with "gradle :jmh:renderBenchmark --args=...". The
+ * golden images of jmh/golden are verified by "gradle
+ * :jmh:renderGoldenCheck", part of "gradle check", and recorded again with
+ * "res batch,vbo,drawtex 10,500,2000 record jmh/golden" when a change of the
+ * drawing is intended.
+ */
+public class RenderBenchmark {
+
+	// Portrait WVGA
+	private static final int WIDTH = 480;
+	private static final int HEIGHT = 800;
+	// Same as the wallpaper, relative to the smallest side
+	private static final float BALL_RADIUS = 0.11f;
+	private static final float MAX_FILL_RATIO = 0.5f;
+	private static final int TOLERANCE = 2;
+
+	private static final int WARMUP_FRAMES = 50;
+	private static final int MEASURED_FRAMES = 200;
+
+	public static void main(String[] args) throws IOException {
+		File res = new File(args.length > 0 ? args[0] : "res");
+		String[] modes = split(args, 1, "batch,vbo,drawtex");
+		String[] counts = split(args, 2, "10,500,2000");
+		String action = args.length > 3 ? args[3] : null;
+		File golden = new File(args.length > 4 ? args[4] : "golden");
+
+		BufferedImage background = ImageIO.read(new File(res,
+				"drawable/background.png"));
+		BufferedImage ball = ImageIO.read(new File(res, "drawable/ball.png"));
+		boolean failed = false;
+		for (String mode : modes) {
+			for (String count : counts) {
+				RenderBenchmark benchmark = new RenderBenchmark(mode, Integer
+						.parseInt(count), background, ball);
+				if (!"verify".equals(action)) {
+					benchmark.measure();
+				}
+				if ("record".equals(action)) {
+					benchmark.record(golden);
+				} else if ("check".equals(action)
+						|| "verify".equals(action)) {
+					failed |= !benchmark.check(golden);
+				}
+			}
+		}
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	private static String[] split(String[] args, int index, String defaults) {
+		return (args.length > index ? args[index] : defaults).split(",");
+	}
+
+	private final String mMode;
+	private final int mCount;
+	private final SoftwareGL mSoftwareGL;
+	private final StateCachingGL mGl;
+	private final GLSprite mBackground;
+	private final GLSprite[] mBalls;
+	private final TextureRegion mBackgroundRegion;
+	private final TextureRegion mBallRegion;
+	private SpriteBatch mBatch;
+
+	private RenderBenchmark(String mode, int count, BufferedImage background,
+			BufferedImage ball) {
+		super();
+		mMode = mode;
+		mCount = count;
+		mSoftwareGL = new SoftwareGL(WIDTH, HEIGHT);
+		mGl = new StateCachingGL(mSoftwareGL);
+		GL10 gl = mGl;
+
+		// Same state as SpheresRenderer
+		gl.glClearColor(0.5f, 0.5f, 0.5f, 1);
+		gl.glShadeModel(GL10.GL_FLAT);
+		gl.glDisable(GL10.GL_DEPTH_TEST);
+		gl.glDisable(GL10.GL_DITHER);
+		gl.glDisable(GL10.GL_LIGHTING);
+		gl.glViewport(0, 0, WIDTH, HEIGHT);
+		gl.glMatrixMode(GL10.GL_PROJECTION);
+		gl.glLoadIdentity();
+		gl.glOrthof(0.0f, WIDTH, 0.0f, HEIGHT, 0.0f, 1.0f);
+		gl.glEnable(GL10.GL_BLEND);
+		gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
+		gl.glColor4x(0x10000, 0x10000, 0x10000, 0x10000);
+		gl.glEnable(GL10.GL_TEXTURE_2D);
+
+		mBackgroundRegion = upload(gl, 1, background);
+		mBallRegion = upload(gl, 2, ball);
+		if ("batch".equals(mode) || "vbo".equals(mode)) {
+			mBatch = new SpriteBatch(count);
+			if ("vbo".equals(mode)) {
+				mBatch.generateHardwareBuffers(gl);
+			}
+		} else if (!"drawtex".equals(mode)) {
+			throw new IllegalArgumentException("Unknown mode " + mode);
+		}
+
+		// Stretched to the screen, as a user background
+		mBackground = new GLSprite(1);
+		mBackground.setRegion(mBackgroundRegion);
+		mBackground.width = WIDTH;
+		mBackground.height = HEIGHT;
+		mBalls = new GLSprite[count];
+		layout();
+	}
+
+	/**
+	 * Same layout as the wallpaper, shuffled and rotated with a fixed seed so
+	 * that runs can be compared.
+	 */
+	private void layout() {
+		float meanRadius = BALL_RADIUS * Math.min(WIDTH, HEIGHT);
+		float maxMeanRadius = (float) Math.sqrt(MAX_FILL_RATIO * WIDTH * HEIGHT
+				/ (mCount * Math.PI));
+		meanRadius = Math.min(meanRadius, maxMeanRadius);
+		Random random = new Random(42);
+		for (int i = 0; i < mCount; i++) {
+			float radius = meanRadius
+					* (1.0f + 0.1f * (2.0f * random.nextFloat() - 1.0f));
+			GLSprite sprite = new GLSprite(2);
+			sprite.setRegion(mBallRegion);
+			sprite.width = 2.0f * radius;
+			sprite.height = 2.0f * radius;
+			sprite.x = random.nextFloat() * (WIDTH - sprite.width);
+			sprite.y = random.nextFloat() * (HEIGHT - sprite.height);
+			sprite.angle = (float) (random.nextFloat() * 2.0 * Math.PI);
+			mBalls[i] = sprite;
+		}
+	}
+
+	/**
+	 * Uploads an image as SpheresRenderer textures: RGBA, nearest
+	 * minification, linear magnification, clamped, replacing the color.
+	 */
+	private static TextureRegion upload(GL10 gl, int resourceId,
+			BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 4)
+				.order(ByteOrder.nativeOrder());
+		// Rows top down, as GLUtils uploads bitmaps
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int argb = image.getRGB(x, y);
+				pixels.put((byte) (argb >> 16));
+				pixels.put((byte) (argb >> 8));
+				pixels.put((byte) argb);
+				pixels.put((byte) (argb >>> 24));
+			}
+		}
+		pixels.position(0);
+
+		int[] names = new int[1];
+		gl.glGenTextures(1, names, 0);
+		gl.glBindTexture(GL10.GL_TEXTURE_2D, names[0]);
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER,
+				GL10.GL_NEAREST);
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER,
+				GL10.GL_LINEAR);
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S,
+				GL10.GL_CLAMP_TO_EDGE);
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T,
+				GL10.GL_CLAMP_TO_EDGE);
+		gl.glTexEnvf(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE,
+				GL10.GL_REPLACE);
+		gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGBA, width, height,
+				0, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, pixels);
+		return new TextureRegion(resourceId, names[0], 0, 0, width, height,
+				width, height);
+	}
+
+	/**
+	 * Draws a frame as SpheresRenderer.onDrawFrame.
+	 */
+	private void drawFrame() {
+		GL10 gl = mGl;
+		gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+		gl.glMatrixMode(GL10.GL_MODELVIEW);
+		if (mBatch != null) {
+			gl.glLoadIdentity();
+			Grid.beginDrawing(gl, true, false);
+			mBatch.begin(mBackgroundRegion.textureName, 0);
+			mBatch.add(gl, mBackground);
+			mBatch.end(gl);
+			mBatch.begin(mBallRegion.textureName, 0);
+			for (int i = 0; i < mBalls.length; i++) {
+				mBatch.add(gl, mBalls[i]);
+			}
+			mBatch.end(gl);
+			Grid.endDrawing(gl);
+		} else {
+			mBackground.draw(gl);
+			for (int i = 0; i < mBalls.length; i++) {
+				mBalls[i].draw(gl);
+			}
+		}
+		mGl.endFrame();
+		int error = gl.glGetError();
+		if (error != GL10.GL_NO_ERROR) {
+			throw new IllegalStateException("GL error 0x"
+					+ Integer.toHexString(error));
+		}
+	}
+
+	private void measure() {
+		mSoftwareGL.setRasterizing(false);
+		CostStats submission = run();
+		mSoftwareGL.setRasterizing(true);
+		mSoftwareGL.resetCounters();
+		CostStats frame = run();
+		int frames = WARMUP_FRAMES + MEASURED_FRAMES;
+		System.out.println(mMode + " balls=" + mCount + " draw calls="
+				+ mSoftwareGL.getDrawCallCount() / frames + " triangles="
+				+ mSoftwareGL.getTriangleCount() / frames + " fragments="
+				+ mSoftwareGL.getFragmentCount() / frames + " gl calls="
+				+ mGl.getFrameCallCount() + " skipped="
+				+ mGl.getFrameSkippedCount());
+		System.out.println("  submission: " + submission);
+		System.out.println("  frame: " + frame);
+	}
+
+	private CostStats run() {
+		CostStats cost = new CostStats();
+		for (int i = 0; i < WARMUP_FRAMES + MEASURED_FRAMES; i++) {
+			long start = System.nanoTime();
+			drawFrame();
+			if (i >= WARMUP_FRAMES) {
+				cost.record(start, System.nanoTime());
+			}
+		}
+		return cost;
+	}
+
+	private BufferedImage render() {
+		drawFrame();
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT,
+				BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, WIDTH, HEIGHT, mSoftwareGL.getPixels(), 0, WIDTH);
+		return image;
+	}
+
+	private File getGoldenFile(File directory, String suffix) {
+		return new File(directory, mMode + "_" + mCount + suffix + ".png");
+	}
+
+	private void record(File directory) throws IOException {
+		directory.mkdirs();
+		File file = getGoldenFile(directory, "");
+		ImageIO.write(render(), "png", file);
+		System.out.println("  recorded " + file);
+	}
+
+	/**
+	 * @return true if the frame matches the golden image
+	 */
+	private boolean check(File directory) throws IOException {
+		File file = getGoldenFile(directory, "");
+		if (!file.exists()) {
+			System.out.println("  missing " + file);
+			return false;
+		}
+		BufferedImage expected = ImageIO.read(file);
+		BufferedImage actual = render();
+		if (expected.getWidth() != WIDTH || expected.getHeight() != HEIGHT) {
+			System.out.println("  size differs from " + file);
+			return false;
+		}
+		BufferedImage diff = new BufferedImage(WIDTH, HEIGHT,
+				BufferedImage.TYPE_INT_ARGB);
+		int differing = 0;
+		int maxDelta = 0;
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				int a = expected.getRGB(x, y);
+				int b = actual.getRGB(x, y);
+				int delta = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					delta = Math.max(delta, Math.abs(((a >>> shift) & 0xFF)
+							- ((b >>> shift) & 0xFF)));
+				}
+				maxDelta = Math.max(maxDelta, delta);
+				if (delta > TOLERANCE) {
+					differing++;
+					diff.setRGB(x, y, 0xFFFF0000);
+				} else {
+					// Dimmed, to locate the differences
+					diff.setRGB(x, y, 0xFF000000 | (b >> 2) & 0x3F3F3F);
+				}
+			}
+		}
+		if (differing == 0) {
+			System.out.println("  matches " + file + ", max delta "
+					+ maxDelta);
+			return true;
+		}
+		File diffFile = getGoldenFile(directory, "_diff");
+		ImageIO.write(diff, "png", diffFile);
+		System.out.println("  " + differing + " pixels differ from " + file
+				+ ", max delta " + maxDelta + ", see " + diffFile);
+		return false;
+	}
+}
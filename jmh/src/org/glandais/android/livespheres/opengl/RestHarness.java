@@ -0,0 +1,223 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.util.Random;
+
+import org.glandais.android.livespheres.physics.IdleStats;
+import org.glandais.android.livespheres.physics.RateGovernor;
+
+/**
+ * Drives {@link PhysicsWorld} through a session of occasional touches and
+ * tilts on a simulated clock, as SpheresWallpaper schedules it: ticks at the
+ * period of the {@link RateGovernor} tier, one frame per published snapshot,
+ * accelerometer samples all along. The session runs twice, always on and
+ * with the rest detection, which stops ticks and frames once the balls are
+ * at rest until the next input, and the ticks and frames skipped are
+ * reported along with the estimate of {@link IdleStats}. Not part of the
+ * application.
+ *
+ * Both runs see the same inputs at the same times, but balls are laid out
+ * at random by the world, so that the runs are only comparable on average.
+ *
+ * Usage: RestHarness [ball counts] [minutes], counts comma separated, for
+ * instance "10,100 10". Run from the root with "gradle :jmh:restHarness
+ * --args=...".
+ */
+public class RestHarness {
+
+	private static final int WIDTH = 480;
+	private static final int HEIGHT = 800;
+	// Same as SpheresWallpaper
+	private static final float GRAVITY_RATIO = 4.0f;
+	private static final float EARTH_GRAVITY = 9.81f;
+	private static final long SENSOR_PERIOD = 60000000L;
+	// Inputs come at random, this far apart
+	private static final long MIN_INPUT_GAP = 10000000000L;
+	private static final long MAX_INPUT_GAP = 60000000000L;
+	private static final int TOUCH_SAMPLES = 6;
+	private static final long TOUCH_SAMPLE_PERIOD = 16000000L;
+	// Simulated clock origin, as System.nanoTime() is never 0
+	private static final long START = 1000000000L;
+
+	public static void main(String[] args) {
+		String[] counts = (args.length > 0 ? args[0] : "10,100").split(",");
+		long duration = (args.length > 1 ? Long.parseLong(args[1]) : 10) * 60
+				* 1000000000L;
+		for (String count : counts) {
+			int n = Integer.parseInt(count);
+			RestHarness alwaysOn = new RestHarness(n, false);
+			alwaysOn.run(duration);
+			RestHarness resting = new RestHarness(n, true);
+			resting.run(duration);
+			report(n, duration, alwaysOn, resting);
+		}
+	}
+
+	private final boolean mRestDetection;
+	private final PhysicsWorld mWorld;
+	private final RateGovernor mGovernor = new RateGovernor();
+	private final IdleStats mIdleStats = new IdleStats(RateGovernor
+			.getPeriod(RateGovernor.TIER_SLOW));
+	// Same inputs for both runs
+	private final Random mInputs = new Random(42);
+
+	private boolean mSleeping = false;
+	private long mNextTick;
+	private int mTicks = 0;
+	private int mFrames = 0;
+	private int mInputCount = 0;
+	// Time from each input to the rest that followed it
+	private long mRestDelay = 0;
+	private long mMaxRestDelay = 0;
+	private long mLastInput = 0;
+
+	// Gravity held by the device, in world axes
+	private float mGravityX = 0.0f;
+	private float mGravityY = -EARTH_GRAVITY;
+
+	private RestHarness(int ballCount, boolean restDetection) {
+		super();
+		mRestDetection = restDetection;
+		mWorld = new PhysicsWorld(null);
+		mWorld.setBallConfig(ballCount, PhysicsWorld.DEFAULT_SIZE_VARIATION);
+		mWorld.recreateWorld(WIDTH, HEIGHT);
+	}
+
+	private void run(long duration) {
+		long end = START + duration;
+		mGovernor.start(START);
+		mIdleStats.reset(START);
+		mWorld.setGravity(mGravityX, mGravityY, GRAVITY_RATIO, START);
+		mWorld.resetClock(START);
+		mNextTick = START + getPeriod();
+		long nextSensor = START + SENSOR_PERIOD;
+		long nextInput = START + nextInputGap();
+		int touchSamples = 0;
+		float touchX = 0.0f;
+		float touchY = 0.0f;
+
+		while (true) {
+			long now = Math.min(nextSensor, nextInput);
+			if (!mSleeping) {
+				now = Math.min(now, mNextTick);
+			}
+			if (now >= end) {
+				break;
+			}
+			if (!mSleeping && now == mNextTick) {
+				tick(now);
+			} else if (now == nextSensor) {
+				if (mWorld.setGravity(mGravityX, mGravityY, GRAVITY_RATIO,
+						now)) {
+					wake(now);
+				}
+				nextSensor += SENSOR_PERIOD;
+			} else {
+				if (touchSamples == 0) {
+					input(now);
+					if (mInputs.nextBoolean()) {
+						// Tilt, held until the next one
+						double angle = Math.toRadians(20 + mInputs.nextInt(40))
+								* (mInputs.nextBoolean() ? 1 : -1);
+						mGravityX = (float) (EARTH_GRAVITY * Math.sin(angle));
+						mGravityY = (float) (-EARTH_GRAVITY * Math.cos(angle));
+						nextInput = now + nextInputGap();
+						continue;
+					}
+					touchX = mInputs.nextFloat() * WIDTH;
+					touchY = mInputs.nextFloat() * HEIGHT;
+				}
+				// A short swipe, as touch events come
+				mWorld.touch(touchX + touchSamples * 10.0f, touchY, 1.0f, now);
+				wake(now);
+				touchSamples++;
+				if (touchSamples < TOUCH_SAMPLES) {
+					nextInput = now + TOUCH_SAMPLE_PERIOD;
+				} else {
+					touchSamples = 0;
+					nextInput = now + nextInputGap();
+				}
+			}
+		}
+		if (mSleeping) {
+			// Closes the last rest
+			mIdleStats.recordWake(end);
+		}
+		mGovernor.stop(end);
+	}
+
+	private long nextInputGap() {
+		return MIN_INPUT_GAP
+				+ (long) (mInputs.nextDouble() * (MAX_INPUT_GAP - MIN_INPUT_GAP));
+	}
+
+	private void input(long now) {
+		mInputCount++;
+		mLastInput = now;
+	}
+
+	private long getPeriod() {
+		return RateGovernor.getPeriod(mGovernor.getTier());
+	}
+
+	/**
+	 * The tick of SpheresWallpaper, then its sleep once at rest.
+	 */
+	private void tick(long now) {
+		mTicks++;
+		if (mWorld.update(now)) {
+			// The GL thread draws each new snapshot
+			mFrames++;
+			mGovernor.update(now, mWorld.getMeanEnergy(), mWorld
+					.takeNewContactCount(), mWorld.getLastInputTime());
+		}
+		mNextTick = now + getPeriod();
+		if (mRestDetection && mWorld.isAtRest()) {
+			mSleeping = true;
+			mIdleStats.recordSleep(now);
+			mGovernor.setIdle(true, now);
+			// Draws the final positions
+			mFrames++;
+			if (mLastInput != 0) {
+				long delay = now - mLastInput;
+				mRestDelay += delay;
+				mMaxRestDelay = Math.max(mMaxRestDelay, delay);
+				mLastInput = 0;
+			}
+		}
+	}
+
+	private void wake(long now) {
+		if (mSleeping) {
+			mSleeping = false;
+			mIdleStats.recordWake(now);
+			mGovernor.setIdle(false, now);
+			mWorld.resetClock(now);
+			mNextTick = now + getPeriod();
+		}
+	}
+
+	private static void report(int ballCount, long duration,
+			RestHarness alwaysOn, RestHarness resting) {
+		int rests = resting.mIdleStats.getSleepCount();
+		System.out.println("balls=" + ballCount + " session="
+				+ duration / 1000000000L + "s inputs=" + resting.mInputCount);
+		System.out.println("  always on: ticks=" + alwaysOn.mTicks
+				+ " frames=" + alwaysOn.mFrames);
+		System.out.println("  with rest: ticks=" + resting.mTicks
+				+ " frames=" + resting.mFrames + " rest after input="
+				+ (rests == 0 ? "-" : resting.mRestDelay / rests / 1000000L
+						+ "ms mean, " + resting.mMaxRestDelay / 1000000L
+						+ "ms max"));
+		System.out.println("  idle stats: " + resting.mIdleStats);
+		System.out.println("  skipped: ticks="
+				+ (alwaysOn.mTicks - resting.mTicks) + " ("
+				+ percent(alwaysOn.mTicks - resting.mTicks, alwaysOn.mTicks)
+				+ ") frames=" + (alwaysOn.mFrames - resting.mFrames) + " ("
+				+ percent(alwaysOn.mFrames - resting.mFrames, alwaysOn.mFrames)
+				+ ")");
+	}
+
+	private static String percent(long part, long total) {
+		return (total == 0 ? 0 : Math.round(100.0 * part / total)) + "%";
+	}
+}
@@ -0,0 +1,1632 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.HashMap;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+import javax.microedition.khronos.opengles.GL11Ext;
+
+/**
+ * Software implementation of the part of OpenGL ES 1.1 used by the
+ * renderer, rasterizing into an ARGB framebuffer, so that drawing code can
+ * run on a plain JVM: golden images, and draw submission benchmarks with
+ * rasterization turned off. Not part of the application.
+ *
+ * Supported: indexed and non indexed triangles from client arrays or buffer
+ * objects, float or fixed coordinates; two texture units, REPLACE and
+ * MODULATE, nearest and linear filtering, clamp and repeat; the draw_texture
+ * extension with crop rectangles; blending; the model view and projection
+ * stacks; glClear, glViewport and glReadPixels. Mipmaps are not stored, so
+ * textures whose minification filter needs them are incomplete, as in GL.
+ * Other calls throw, see {@link UnsupportedGL}, and so does drawing with a
+ * capability enabled that is not implemented, such as depth test.
+ *
+ * Pixels are sampled at their center, triangles follow the top left fill
+ * rule and texture coordinates are interpolated linearly in screen space,
+ * which is exact for the orthographic projections used here.
+ */
+public class SoftwareGL extends UnsupportedGL {
+
+	private static final String EXTENSIONS = "GL_OES_draw_texture "
+			+ "GL_OES_vertex_buffer_object GL_OES_matrix_get";
+	private static final int UNITS = 2;
+	private static final int MAX_TEXTURE_SIZE = 2048;
+	private static final int MODELVIEW_DEPTH = 16;
+	private static final int OTHER_DEPTH = 2;
+
+	// Capabilities whose effect is not implemented, drawing with them fails
+	private static final int[] UNSUPPORTED_CAPS = { GL10.GL_ALPHA_TEST,
+			GL10.GL_CULL_FACE, GL10.GL_DEPTH_TEST, GL10.GL_SCISSOR_TEST,
+			GL10.GL_LIGHTING, GL10.GL_STENCIL_TEST, GL10.GL_FOG,
+			GL10.GL_COLOR_LOGIC_OP, GL10.GL_POINT_SMOOTH };
+
+	private static class Texture {
+		int width;
+		int height;
+		// ARGB, rows from t = 0 up
+		int[] texels;
+		int format = GL10.GL_RGBA;
+		int minFilter = GL10.GL_NEAREST_MIPMAP_LINEAR;
+		int magFilter = GL10.GL_LINEAR;
+		int wrapS = GL10.GL_REPEAT;
+		int wrapT = GL10.GL_REPEAT;
+		final int[] crop = new int[4];
+
+		boolean isComplete() {
+			return texels != null
+					&& (minFilter == GL10.GL_NEAREST
+							|| minFilter == GL10.GL_LINEAR);
+		}
+	}
+
+	/**
+	 * A vertex attribute array, from a client buffer or a buffer object.
+	 */
+	private static class Pointer {
+		int size;
+		int type;
+		int stride;
+		Buffer client;
+		int clientPosition;
+		ByteBuffer object;
+		int offset;
+	}
+
+	private final int mWidth;
+	private final int mHeight;
+	// ARGB, rows top down
+	private final int[] mPixels;
+
+	private int mError = GL10.GL_NO_ERROR;
+	private final HashMap<Integer, Boolean> mCaps =
+			new HashMap<Integer, Boolean>();
+	private final boolean[] mTexture2D = new boolean[UNITS];
+	private int mActiveUnit = 0;
+	private int mClientUnit = 0;
+
+	private final HashMap<Integer, Texture> mTextures =
+			new HashMap<Integer, Texture>();
+	private final int[] mBoundTextures = new int[UNITS];
+	private final int[] mTexEnvModes = { GL10.GL_MODULATE, GL10.GL_MODULATE };
+	private int mNextTexture = 1;
+
+	private final HashMap<Integer, ByteBuffer> mBuffers =
+			new HashMap<Integer, ByteBuffer>();
+	private int mArrayBuffer = 0;
+	private int mElementArrayBuffer = 0;
+	private int mNextBuffer = 1;
+
+	private boolean mVertexArray = false;
+	private final boolean[] mTexCoordArrays = new boolean[UNITS];
+	private final Pointer mVertexPointer = new Pointer();
+	private final Pointer[] mTexCoordPointers = { new Pointer(),
+			new Pointer() };
+	private final float[][] mCurrentTexCoords = { { 0, 0, 0, 1 },
+			{ 0, 0, 0, 1 } };
+
+	private final float[] mColor = { 1, 1, 1, 1 };
+	private final float[] mClearColor = { 0, 0, 0, 0 };
+	private int mBlendSource = GL10.GL_ONE;
+	private int mBlendDestination = GL10.GL_ZERO;
+	private int mUnpackAlignment = 4;
+	private int mViewportX = 0;
+	private int mViewportY = 0;
+	private int mViewportWidth;
+	private int mViewportHeight;
+
+	private int mMatrixMode = GL10.GL_MODELVIEW;
+	private final float[][] mModelView = new float[MODELVIEW_DEPTH][16];
+	private final float[][] mProjection = new float[OTHER_DEPTH][16];
+	private final float[][] mTextureMatrix = new float[OTHER_DEPTH][16];
+	private int mModelViewDepth = 0;
+	private int mProjectionDepth = 0;
+	private int mTextureDepth = 0;
+	private final float[] mTemp = new float[16];
+	private final float[] mMvp = new float[16];
+
+	private boolean mRasterizing = true;
+	private int mDrawCalls = 0;
+	private int mTriangles = 0;
+	private long mFragments = 0;
+
+	// Vertices of the triangle being drawn: window x, y, then s, t per unit
+	private static final int VERTEX_FLOATS = 2 + 2 * UNITS;
+	private final float[] mVertices = new float[3 * VERTEX_FLOATS];
+	private final Texture[] mUnitTextures = new Texture[UNITS];
+	private final boolean[] mUnitMinified = new boolean[UNITS];
+	private final float[] mFragment = new float[4];
+	private final float[] mTexel = new float[4];
+
+	public SoftwareGL(int width, int height) {
+		super();
+		mWidth = width;
+		mHeight = height;
+		mPixels = new int[width * height];
+		mViewportWidth = width;
+		mViewportHeight = height;
+		identity(mModelView[0]);
+		identity(mProjection[0]);
+		identity(mTextureMatrix[0]);
+		mCaps.put(GL10.GL_DITHER, Boolean.TRUE);
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * @return the framebuffer, ARGB, rows top down
+	 */
+	public int[] getPixels() {
+		return mPixels;
+	}
+
+	/**
+	 * Turns rasterization on or off: when off, draw calls are validated and
+	 * their vertices fetched and transformed, but no pixel is written, to
+	 * measure the cost of submission alone.
+	 */
+	public void setRasterizing(boolean rasterizing) {
+		mRasterizing = rasterizing;
+	}
+
+	public int getDrawCallCount() {
+		return mDrawCalls;
+	}
+
+	public int getTriangleCount() {
+		return mTriangles;
+	}
+
+	public long getFragmentCount() {
+		return mFragments;
+	}
+
+	public void resetCounters() {
+		mDrawCalls = 0;
+		mTriangles = 0;
+		mFragments = 0;
+	}
+
+	private void error(int error) {
+		if (mError == GL10.GL_NO_ERROR) {
+			mError = error;
+		}
+	}
+
+	// State
+
+	@Override
+	public int glGetError() {
+		int error = mError;
+		mError = GL10.GL_NO_ERROR;
+		return error;
+	}
+
+	@Override
+	public String glGetString(int name) {
+		switch (name) {
+		case GL10.GL_VENDOR:
+			return "livespheres";
+		case GL10.GL_RENDERER:
+			return "SoftwareGL";
+		case GL10.GL_VERSION:
+			return "OpenGL ES-CM 1.1";
+		case GL10.GL_EXTENSIONS:
+			return EXTENSIONS;
+		default:
+			error(GL10.GL_INVALID_ENUM);
+			return null;
+		}
+	}
+
+	@Override
+	public void glGetIntegerv(int pname, int[] params, int offset) {
+		switch (pname) {
+		case GL10.GL_MAX_TEXTURE_SIZE:
+			params[offset] = MAX_TEXTURE_SIZE;
+			break;
+		case GL10.GL_MAX_TEXTURE_UNITS:
+			params[offset] = UNITS;
+			break;
+		case GL11.GL_ARRAY_BUFFER_BINDING:
+			params[offset] = mArrayBuffer;
+			break;
+		case GL11.GL_ELEMENT_ARRAY_BUFFER_BINDING:
+			params[offset] = mElementArrayBuffer;
+			break;
+		default:
+			error(GL10.GL_INVALID_ENUM);
+		}
+	}
+
+	@Override
+	public void glGetFloatv(int pname, float[] params, int offset) {
+		if (pname == GL10.GL_ALIASED_POINT_SIZE_RANGE) {
+			params[offset] = 1.0f;
+			params[offset + 1] = 1.0f;
+		} else {
+			error(GL10.GL_INVALID_ENUM);
+		}
+	}
+
+	@Override
+	public void glEnable(int cap) {
+		setCap(cap, true);
+	}
+
+	@Override
+	public void glDisable(int cap) {
+		setCap(cap, false);
+	}
+
+	private void setCap(int cap, boolean enabled) {
+		if (cap == GL10.GL_TEXTURE_2D) {
+			mTexture2D[mActiveUnit] = enabled;
+		} else {
+			mCaps.put(cap, Boolean.valueOf(enabled));
+		}
+	}
+
+	@Override
+	public boolean glIsEnabled(int cap) {
+		if (cap == GL10.GL_TEXTURE_2D) {
+			return mTexture2D[mActiveUnit];
+		}
+		if (cap == GL10.GL_VERTEX_ARRAY) {
+			return mVertexArray;
+		}
+		if (cap == GL10.GL_TEXTURE_COORD_ARRAY) {
+			return mTexCoordArrays[mClientUnit];
+		}
+		return isEnabled(cap);
+	}
+
+	private boolean isEnabled(int cap) {
+		Boolean enabled = mCaps.get(cap);
+		return enabled != null && enabled.booleanValue();
+	}
+
+	@Override
+	public void glEnableClientState(int array) {
+		setClientState(array, true);
+	}
+
+	@Override
+	public void glDisableClientState(int array) {
+		setClientState(array, false);
+	}
+
+	private void setClientState(int array, boolean enabled) {
+		switch (array) {
+		case GL10.GL_VERTEX_ARRAY:
+			mVertexArray = enabled;
+			break;
+		case GL10.GL_TEXTURE_COORD_ARRAY:
+			mTexCoordArrays[mClientUnit] = enabled;
+			break;
+		case GL10.GL_COLOR_ARRAY:
+		case GL10.GL_NORMAL_ARRAY:
+		case GL11.GL_POINT_SIZE_ARRAY_OES:
+			if (enabled) {
+				throw unsupported("Array " + array);
+			}
+			break;
+		default:
+			error(GL10.GL_INVALID_ENUM);
+		}
+	}
+
+	@Override
+	public void glActiveTexture(int texture) {
+		int unit = texture - GL10.GL_TEXTURE0;
+		if (unit < 0 || unit >= UNITS) {
+			error(GL10.GL_INVALID_ENUM);
+			return;
+		}
+		mActiveUnit = unit;
+	}
+
+	@Override
+	public void glClientActiveTexture(int texture) {
+		int unit = texture - GL10.GL_TEXTURE0;
+		if (unit < 0 || unit >= UNITS) {
+			error(GL10.GL_INVALID_ENUM);
+			return;
+		}
+		mClientUnit = unit;
+	}
+
+	@Override
+	public void glMultiTexCoord4f(int target, float s, float t, float r,
+			float q) {
+		float[] coords = mCurrentTexCoords[target - GL10.GL_TEXTURE0];
+		coords[0] = s;
+		coords[1] = t;
+		coords[2] = r;
+		coords[3] = q;
+	}
+
+	@Override
+	public void glColor4f(float red, float green, float blue, float alpha) {
+		mColor[0] = clamp(red);
+		mColor[1] = clamp(green);
+		mColor[2] = clamp(blue);
+		mColor[3] = clamp(alpha);
+	}
+
+	@Override
+	public void glColor4x(int red, int green, int blue, int alpha) {
+		glColor4f(red / 65536.0f, green / 65536.0f, blue / 65536.0f,
+				alpha / 65536.0f);
+	}
+
+	@Override
+	public void glColor4ub(byte red, byte green, byte blue, byte alpha) {
+		glColor4f((red & 0xFF) / 255.0f, (green & 0xFF) / 255.0f,
+				(blue & 0xFF) / 255.0f, (alpha & 0xFF) / 255.0f);
+	}
+
+	@Override
+	public void glBlendFunc(int sfactor, int dfactor) {
+		mBlendSource = sfactor;
+		mBlendDestination = dfactor;
+	}
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		mClearColor[0] = clamp(red);
+		mClearColor[1] = clamp(green);
+		mClearColor[2] = clamp(blue);
+		mClearColor[3] = clamp(alpha);
+	}
+
+	@Override
+	public void glClear(int mask) {
+		if ((mask & GL10.GL_COLOR_BUFFER_BIT) != 0) {
+			int color = pack(mClearColor);
+			for (int i = 0; i < mPixels.length; i++) {
+				mPixels[i] = color;
+			}
+		}
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		mViewportX = x;
+		mViewportY = y;
+		mViewportWidth = width;
+		mViewportHeight = height;
+	}
+
+	@Override
+	public void glPixelStorei(int pname, int param) {
+		if (pname == GL10.GL_UNPACK_ALIGNMENT) {
+			mUnpackAlignment = param;
+		} else if (pname != GL10.GL_PACK_ALIGNMENT) {
+			error(GL10.GL_INVALID_ENUM);
+		}
+	}
+
+	@Override
+	public void glHint(int target, int mode) {
+		// Hints do not change the result
+	}
+
+	@Override
+	public void glShadeModel(int mode) {
+		// One color per draw, shading does not matter
+	}
+
+	@Override
+	public void glFlush() {
+	}
+
+	@Override
+	public void glFinish() {
+	}
+
+	// Matrices
+
+	@Override
+	public void glMatrixMode(int mode) {
+		if (mode != GL10.GL_MODELVIEW && mode != GL10.GL_PROJECTION
+				&& mode != GL10.GL_TEXTURE) {
+			error(GL10.GL_INVALID_ENUM);
+			return;
+		}
+		mMatrixMode = mode;
+	}
+
+	private float[] currentMatrix() {
+		switch (mMatrixMode) {
+		case GL10.GL_PROJECTION:
+			return mProjection[mProjectionDepth];
+		case GL10.GL_TEXTURE:
+			return mTextureMatrix[mTextureDepth];
+		default:
+			return mModelView[mModelViewDepth];
+		}
+	}
+
+	@Override
+	public void glPushMatrix() {
+		switch (mMatrixMode) {
+		case GL10.GL_PROJECTION:
+			mProjectionDepth = push(mProjection, mProjectionDepth);
+			break;
+		case GL10.GL_TEXTURE:
+			mTextureDepth = push(mTextureMatrix, mTextureDepth);
+			break;
+		default:
+			mModelViewDepth = push(mModelView, mModelViewDepth);
+		}
+	}
+
+	private int push(float[][] stack, int depth) {
+		if (depth + 1 == stack.length) {
+			error(GL10.GL_STACK_OVERFLOW);
+			return depth;
+		}
+		System.arraycopy(stack[depth], 0, stack[depth + 1], 0, 16);
+		return depth + 1;
+	}
+
+	@Override
+	public void glPopMatrix() {
+		int depth;
+		switch (mMatrixMode) {
+		case GL10.GL_PROJECTION:
+			depth = mProjectionDepth--;
+			break;
+		case GL10.GL_TEXTURE:
+			depth = mTextureDepth--;
+			break;
+		default:
+			depth = mModelViewDepth--;
+		}
+		if (depth == 0) {
+			error(GL10.GL_STACK_UNDERFLOW);
+			mProjectionDepth = Math.max(0, mProjectionDepth);
+			mTextureDepth = Math.max(0, mTextureDepth);
+			mModelViewDepth = Math.max(0, mModelViewDepth);
+		}
+	}
+
+	@Override
+	public void glLoadIdentity() {
+		identity(currentMatrix());
+	}
+
+	@Override
+	public void glLoadMatrixf(float[] m, int offset) {
+		System.arraycopy(m, offset, currentMatrix(), 0, 16);
+	}
+
+	@Override
+	public void glMultMatrixf(float[] m, int offset) {
+		multiply(currentMatrix(), m, offset);
+	}
+
+	@Override
+	public void glOrthof(float left, float right, float bottom, float top,
+			float zNear, float zFar) {
+		float[] m = mTemp;
+		identity(m);
+		m[0] = 2.0f / (right - left);
+		m[5] = 2.0f / (top - bottom);
+		m[10] = -2.0f / (zFar - zNear);
+		m[12] = -(right + left) / (right - left);
+		m[13] = -(top + bottom) / (top - bottom);
+		m[14] = -(zFar + zNear) / (zFar - zNear);
+		multiply(currentMatrix(), m, 0);
+	}
+
+	@Override
+	public void glFrustumf(float left, float right, float bottom, float top,
+			float zNear, float zFar) {
+		float[] m = mTemp;
+		for (int i = 0; i < 16; i++) {
+			m[i] = 0.0f;
+		}
+		m[0] = 2.0f * zNear / (right - left);
+		m[5] = 2.0f * zNear / (top - bottom);
+		m[8] = (right + left) / (right - left);
+		m[9] = (top + bottom) / (top - bottom);
+		m[10] = -(zFar + zNear) / (zFar - zNear);
+		m[11] = -1.0f;
+		m[14] = -2.0f * zFar * zNear / (zFar - zNear);
+		multiply(currentMatrix(), m, 0);
+	}
+
+	@Override
+	public void glTranslatef(float x, float y, float z) {
+		float[] m = mTemp;
+		identity(m);
+		m[12] = x;
+		m[13] = y;
+		m[14] = z;
+		multiply(currentMatrix(), m, 0);
+	}
+
+	@Override
+	public void glScalef(float x, float y, float z) {
+		float[] m = mTemp;
+		identity(m);
+		m[0] = x;
+		m[5] = y;
+		m[10] = z;
+		multiply(currentMatrix(), m, 0);
+	}
+
+	@Override
+	public void glRotatef(float angle, float x, float y, float z) {
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if (length == 0.0f) {
+			return;
+		}
+		x /= length;
+		y /= length;
+		z /= length;
+		float radians = (float) Math.toRadians(angle);
+		float c = (float) Math.cos(radians);
+		float s = (float) Math.sin(radians);
+		float t = 1.0f - c;
+		float[] m = mTemp;
+		identity(m);
+		m[0] = x * x * t + c;
+		m[1] = y * x * t + z * s;
+		m[2] = x * z * t - y * s;
+		m[4] = x * y * t - z * s;
+		m[5] = y * y * t + c;
+		m[6] = y * z * t + x * s;
+		m[8] = x * z * t + y * s;
+		m[9] = y * z * t - x * s;
+		m[10] = z * z * t + c;
+		multiply(currentMatrix(), m, 0);
+	}
+
+	private static void identity(float[] m) {
+		for (int i = 0; i < 16; i++) {
+			m[i] = i % 5 == 0 ? 1.0f : 0.0f;
+		}
+	}
+
+	/**
+	 * m = m * n, column major.
+	 */
+	private static void multiply(float[] m, float[] n, int offset) {
+		float[] r = new float[16];
+		for (int column = 0; column < 4; column++) {
+			for (int row = 0; row < 4; row++) {
+				float sum = 0.0f;
+				for (int k = 0; k < 4; k++) {
+					sum += m[k * 4 + row] * n[offset + column * 4 + k];
+				}
+				r[column * 4 + row] = sum;
+			}
+		}
+		System.arraycopy(r, 0, m, 0, 16);
+	}
+
+	// Textures
+
+	@Override
+	public void glGenTextures(int n, int[] textures, int offset) {
+		for (int i = 0; i < n; i++) {
+			textures[offset + i] = mNextTexture++;
+		}
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		for (int i = 0; i < n; i++) {
+			int name = textures[offset + i];
+			mTextures.remove(name);
+			for (int unit = 0; unit < UNITS; unit++) {
+				if (mBoundTextures[unit] == name) {
+					mBoundTextures[unit] = 0;
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean glIsTexture(int texture) {
+		return mTextures.containsKey(texture);
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture) {
+		if (target != GL10.GL_TEXTURE_2D) {
+			error(GL10.GL_INVALID_ENUM);
+			return;
+		}
+		if (texture != 0 && !mTextures.containsKey(texture)) {
+			mTextures.put(texture, new Texture());
+		}
+		mBoundTextures[mActiveUnit] = texture;
+	}
+
+	private Texture boundTexture() {
+		int name = mBoundTextures[mActiveUnit];
+		Texture texture = mTextures.get(name);
+		if (texture == null) {
+			// The default texture
+			texture = new Texture();
+			mTextures.put(name, texture);
+		}
+		return texture;
+	}
+
+	@Override
+	public void glTexParameterf(int target, int pname, float param) {
+		glTexParameteri(target, pname, (int) param);
+	}
+
+	@Override
+	public void glTexParameterx(int target, int pname, int param) {
+		glTexParameteri(target, pname, param);
+	}
+
+	@Override
+	public void glTexParameteri(int target, int pname, int param) {
+		Texture texture = boundTexture();
+		switch (pname) {
+		case GL10.GL_TEXTURE_MIN_FILTER:
+			texture.minFilter = param;
+			break;
+		case GL10.GL_TEXTURE_MAG_FILTER:
+			texture.magFilter = param;
+			break;
+		case GL10.GL_TEXTURE_WRAP_S:
+			texture.wrapS = param;
+			break;
+		case GL10.GL_TEXTURE_WRAP_T:
+			texture.wrapT = param;
+			break;
+		case GL11.GL_GENERATE_MIPMAP:
+			if (param != 0) {
+				throw unsupported("GL_GENERATE_MIPMAP");
+			}
+			break;
+		default:
+			error(GL10.GL_INVALID_ENUM);
+		}
+	}
+
+	@Override
+	public void glTexParameteriv(int target, int pname, int[] params,
+			int offset) {
+		if (pname == GL11Ext.GL_TEXTURE_CROP_RECT_OES) {
+			System.arraycopy(params, offset, boundTexture().crop, 0, 4);
+		} else {
+			glTexParameteri(target, pname, params[offset]);
+		}
+	}
+
+	@Override
+	public void glTexEnvf(int target, int pname, float param) {
+		glTexEnvi(target, pname, (int) param);
+	}
+
+	@Override
+	public void glTexEnvx(int target, int pname, int param) {
+		glTexEnvi(target, pname, param);
+	}
+
+	@Override
+	public void glTexEnvi(int target, int pname, int param) {
+		if (target == GL10.GL_TEXTURE_ENV
+				&& pname == GL10.GL_TEXTURE_ENV_MODE) {
+			if (param != GL10.GL_REPLACE && param != GL10.GL_MODULATE) {
+				throw unsupported("Texture env mode " + param);
+			}
+			mTexEnvModes[mActiveUnit] = param;
+		} else if (target == GL11.GL_POINT_SPRITE_OES) {
+			throw unsupported("Point sprites");
+		} else {
+			error(GL10.GL_INVALID_ENUM);
+		}
+	}
+
+	@Override
+	public void glTexImage2D(int target, int level, int internalformat,
+			int width, int height, int border, int format, int type,
+			Buffer pixels) {
+		if (level > 0) {
+			// Mipmaps are not stored
+			return;
+		}
+		if (internalformat != format || border != 0 || width < 0
+				|| height < 0 || width > MAX_TEXTURE_SIZE
+				|| height > MAX_TEXTURE_SIZE) {
+			error(GL10.GL_INVALID_VALUE);
+			return;
+		}
+		Texture texture = boundTexture();
+		texture.width = width;
+		texture.height = height;
+		texture.format = format;
+		texture.texels = new int[width * height];
+		if (pixels != null) {
+			unpack(texture, 0, 0, width, height, format, type, pixels);
+		}
+	}
+
+	@Override
+	public void glTexSubImage2D(int target, int level, int xoffset,
+			int yoffset, int width, int height, int format, int type,
+			Buffer pixels) {
+		Texture texture = boundTexture();
+		if (level > 0) {
+			return;
+		}
+		if (texture.texels == null || xoffset < 0 || yoffset < 0
+				|| xoffset + width > texture.width
+				|| yoffset + height > texture.height) {
+			error(GL10.GL_INVALID_VALUE);
+			return;
+		}
+		unpack(texture, xoffset, yoffset, width, height, format, type,
+				pixels);
+	}
+
+	/**
+	 * Converts rows of pixels, from t = 0 up, to ARGB texels.
+	 */
+	private void unpack(Texture texture, int x, int y, int width,
+			int height, int format, int type, Buffer pixels) {
+		ByteBuffer bytes = toBytes(pixels);
+		int bytesPerPixel;
+		if (type == GL10.GL_UNSIGNED_BYTE) {
+			switch (format) {
+			case GL10.GL_RGBA:
+				bytesPerPixel = 4;
+				break;
+			case GL10.GL_RGB:
+				bytesPerPixel = 3;
+				break;
+			case GL10.GL_LUMINANCE_ALPHA:
+				bytesPerPixel = 2;
+				break;
+			case GL10.GL_ALPHA:
+			case GL10.GL_LUMINANCE:
+				bytesPerPixel = 1;
+				break;
+			default:
+				error(GL10.GL_INVALID_ENUM);
+				return;
+			}
+		} else if (type == GL10.GL_UNSIGNED_SHORT_5_6_5
+				&& format == GL10.GL_RGB) {
+			bytesPerPixel = 2;
+		} else if ((type == GL10.GL_UNSIGNED_SHORT_4_4_4_4
+				|| type == GL10.GL_UNSIGNED_SHORT_5_5_5_1)
+				&& format == GL10.GL_RGBA) {
+			bytesPerPixel = 2;
+		} else {
+			error(GL10.GL_INVALID_OPERATION);
+			return;
+		}
+		int rowSize = width * bytesPerPixel;
+		int stride = (rowSize + mUnpackAlignment - 1) / mUnpackAlignment
+				* mUnpackAlignment;
+		int base = bytes.position();
+		for (int row = 0; row < height; row++) {
+			int p = base + row * stride;
+			int t = (y + row) * texture.width + x;
+			for (int column = 0; column < width; column++) {
+				int argb;
+				if (bytesPerPixel == 2 && type != GL10.GL_UNSIGNED_BYTE) {
+					int value = bytes.getShort(p) & 0xFFFF;
+					argb = unpackShort(value, type);
+				} else {
+					int b0 = bytes.get(p) & 0xFF;
+					switch (format) {
+					case GL10.GL_RGBA:
+						argb = (bytes.get(p + 3) & 0xFF) << 24 | b0 << 16
+								| (bytes.get(p + 1) & 0xFF) << 8
+								| (bytes.get(p + 2) & 0xFF);
+						break;
+					case GL10.GL_RGB:
+						argb = 0xFF000000 | b0 << 16
+								| (bytes.get(p + 1) & 0xFF) << 8
+								| (bytes.get(p + 2) & 0xFF);
+						break;
+					case GL10.GL_LUMINANCE_ALPHA:
+						argb = (bytes.get(p + 1) & 0xFF) << 24 | b0 << 16
+								| b0 << 8 | b0;
+						break;
+					case GL10.GL_ALPHA:
+						argb = b0 << 24;
+						break;
+					default:
+						argb = 0xFF000000 | b0 << 16 | b0 << 8 | b0;
+					}
+				}
+				texture.texels[t + column] = argb;
+				p += bytesPerPixel;
+			}
+		}
+	}
+
+	private static int unpackShort(int value, int type) {
+		int a;
+		int r;
+		int g;
+		int b;
+		if (type == GL10.GL_UNSIGNED_SHORT_5_6_5) {
+			a = 255;
+			r = expand(value >> 11, 5);
+			g = expand((value >> 5) & 0x3F, 6);
+			b = expand(value & 0x1F, 5);
+		} else if (type == GL10.GL_UNSIGNED_SHORT_4_4_4_4) {
+			r = expand(value >> 12, 4);
+			g = expand((value >> 8) & 0xF, 4);
+			b = expand((value >> 4) & 0xF, 4);
+			a = expand(value & 0xF, 4);
+		} else {
+			r = expand(value >> 11, 5);
+			g = expand((value >> 6) & 0x1F, 5);
+			b = expand((value >> 1) & 0x1F, 5);
+			a = (value & 1) * 255;
+		}
+		return a << 24 | r << 16 | g << 8 | b;
+	}
+
+	private static int expand(int value, int bits) {
+		return (value * 255 + ((1 << bits) - 1) / 2) / ((1 << bits) - 1);
+	}
+
+	// Buffer objects
+
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		for (int i = 0; i < n; i++) {
+			buffers[offset + i] = mNextBuffer++;
+		}
+	}
+
+	@Override
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		for (int i = 0; i < n; i++) {
+			int name = buffers[offset + i];
+			mBuffers.remove(name);
+			if (mArrayBuffer == name) {
+				mArrayBuffer = 0;
+			}
+			if (mElementArrayBuffer == name) {
+				mElementArrayBuffer = 0;
+			}
+		}
+	}
+
+	@Override
+	public boolean glIsBuffer(int buffer) {
+		return mBuffers.containsKey(buffer);
+	}
+
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+		if (buffer != 0 && !mBuffers.containsKey(buffer)) {
+			mBuffers.put(buffer, ByteBuffer.allocate(0));
+		}
+		if (target == GL11.GL_ARRAY_BUFFER) {
+			mArrayBuffer = buffer;
+		} else if (target == GL11.GL_ELEMENT_ARRAY_BUFFER) {
+			mElementArrayBuffer = buffer;
+		} else {
+			error(GL10.GL_INVALID_ENUM);
+		}
+	}
+
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		int name = boundBuffer(target);
+		if (name == 0) {
+			error(GL10.GL_INVALID_OPERATION);
+			return;
+		}
+		ByteBuffer store = ByteBuffer.allocate(size).order(
+				ByteOrder.nativeOrder());
+		if (data != null) {
+			copy(data, store, 0, size);
+		}
+		mBuffers.put(name, store);
+	}
+
+	@Override
+	public void glBufferSubData(int target, int offset, int size,
+			Buffer data) {
+		ByteBuffer store = mBuffers.get(boundBuffer(target));
+		if (store == null || offset + size > store.capacity()) {
+			error(GL10.GL_INVALID_VALUE);
+			return;
+		}
+		copy(data, store, offset, size);
+	}
+
+	private int boundBuffer(int target) {
+		if (target == GL11.GL_ARRAY_BUFFER) {
+			return mArrayBuffer;
+		}
+		if (target == GL11.GL_ELEMENT_ARRAY_BUFFER) {
+			return mElementArrayBuffer;
+		}
+		error(GL10.GL_INVALID_ENUM);
+		return 0;
+	}
+
+	/**
+	 * Copies size bytes of data, from its position, in native order.
+	 */
+	private static void copy(Buffer data, ByteBuffer store, int offset,
+			int size) {
+		ByteBuffer bytes = toBytes(data);
+		for (int i = 0; i < size; i++) {
+			store.put(offset + i, bytes.get(bytes.position() + i));
+		}
+	}
+
+	/**
+	 * @return the content of the buffer from its position, as native order
+	 *         bytes
+	 */
+	private static ByteBuffer toBytes(Buffer data) {
+		if (data instanceof ByteBuffer) {
+			return ((ByteBuffer) data).duplicate().order(
+					ByteOrder.nativeOrder());
+		}
+		int remaining = data.remaining();
+		ByteBuffer bytes;
+		if (data instanceof FloatBuffer) {
+			FloatBuffer floats = (FloatBuffer) data;
+			bytes = ByteBuffer.allocate(remaining * 4).order(
+					ByteOrder.nativeOrder());
+			for (int i = 0; i < remaining; i++) {
+				bytes.putFloat(i * 4, floats.get(floats.position() + i));
+			}
+		} else if (data instanceof IntBuffer) {
+			IntBuffer ints = (IntBuffer) data;
+			bytes = ByteBuffer.allocate(remaining * 4).order(
+					ByteOrder.nativeOrder());
+			for (int i = 0; i < remaining; i++) {
+				bytes.putInt(i * 4, ints.get(ints.position() + i));
+			}
+		} else if (data instanceof ShortBuffer) {
+			ShortBuffer shorts = (ShortBuffer) data;
+			bytes = ByteBuffer.allocate(remaining * 2).order(
+					ByteOrder.nativeOrder());
+			for (int i = 0; i < remaining; i++) {
+				bytes.putShort(i * 2, shorts.get(shorts.position() + i));
+			}
+		} else if (data instanceof CharBuffer) {
+			CharBuffer chars = (CharBuffer) data;
+			bytes = ByteBuffer.allocate(remaining * 2).order(
+					ByteOrder.nativeOrder());
+			for (int i = 0; i < remaining; i++) {
+				bytes.putChar(i * 2, chars.get(chars.position() + i));
+			}
+		} else {
+			throw unsupported("Buffer " + data.getClass().getName());
+		}
+		return bytes;
+	}
+
+	// Arrays
+
+	@Override
+	public void glVertexPointer(int size, int type, int stride,
+			Buffer pointer) {
+		setPointer(mVertexPointer, size, type, stride, pointer);
+	}
+
+	@Override
+	public void glVertexPointer(int size, int type, int stride, int offset) {
+		setPointer(mVertexPointer, size, type, stride, offset);
+	}
+
+	@Override
+	public void glTexCoordPointer(int size, int type, int stride,
+			Buffer pointer) {
+		setPointer(mTexCoordPointers[mClientUnit], size, type, stride,
+				pointer);
+	}
+
+	@Override
+	public void glTexCoordPointer(int size, int type, int stride, int offset) {
+		setPointer(mTexCoordPointers[mClientUnit], size, type, stride,
+				offset);
+	}
+
+	private void setPointer(Pointer pointer, int size, int type, int stride,
+			Buffer client) {
+		if (!checkPointer(size, type, stride)) {
+			return;
+		}
+		pointer.size = size;
+		pointer.type = type;
+		pointer.stride = stride;
+		// As the Android bindings, the array starts at the buffer position
+		pointer.client = client;
+		pointer.clientPosition = client.position();
+		pointer.object = null;
+	}
+
+	private void setPointer(Pointer pointer, int size, int type, int stride,
+			int offset) {
+		ByteBuffer object = mBuffers.get(mArrayBuffer);
+		if (mArrayBuffer == 0 || object == null) {
+			error(GL10.GL_INVALID_OPERATION);
+			return;
+		}
+		if (!checkPointer(size, type, stride)) {
+			return;
+		}
+		pointer.size = size;
+		pointer.type = type;
+		pointer.stride = stride;
+		pointer.client = null;
+		pointer.object = object;
+		pointer.offset = offset;
+	}
+
+	private boolean checkPointer(int size, int type, int stride) {
+		if (size < 2 || size > 4 || stride < 0) {
+			error(GL10.GL_INVALID_VALUE);
+			return false;
+		}
+		if (type != GL10.GL_FLOAT && type != GL10.GL_FIXED) {
+			throw unsupported("Array type " + type);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the component of the element, 0 past the pointer size
+	 */
+	private static float fetch(Pointer pointer, int element, int component) {
+		if (component >= pointer.size) {
+			return component == 3 ? 1.0f : 0.0f;
+		}
+		// Both types are 4 bytes wide
+		int stride = pointer.stride == 0 ? pointer.size * 4 : pointer.stride;
+		if (pointer.object != null) {
+			int offset = pointer.offset + element * stride + component * 4;
+			if (pointer.type == GL10.GL_FLOAT) {
+				return pointer.object.getFloat(offset);
+			}
+			return pointer.object.getInt(offset) / 65536.0f;
+		}
+		Buffer client = pointer.client;
+		if (client instanceof ByteBuffer) {
+			ByteBuffer bytes = (ByteBuffer) client;
+			int offset = pointer.clientPosition + element * stride
+					+ component * 4;
+			if (pointer.type == GL10.GL_FLOAT) {
+				return bytes.getFloat(offset);
+			}
+			return bytes.getInt(offset) / 65536.0f;
+		}
+		int index = pointer.clientPosition + element * (stride / 4)
+				+ component;
+		if (client instanceof FloatBuffer) {
+			return ((FloatBuffer) client).get(index);
+		}
+		if (client instanceof IntBuffer) {
+			return ((IntBuffer) client).get(index) / 65536.0f;
+		}
+		throw unsupported("Buffer " + client.getClass().getName());
+	}
+
+	// Drawing
+
+	@Override
+	public void glDrawArrays(int mode, int first, int count) {
+		draw(mode, count, null, 0, first);
+	}
+
+	@Override
+	public void glDrawElements(int mode, int count, int type, Buffer indices) {
+		if (type != GL10.GL_UNSIGNED_SHORT && type != GL10.GL_UNSIGNED_BYTE) {
+			error(GL10.GL_INVALID_ENUM);
+			return;
+		}
+		draw(mode, count, toBytes(indices), type, 0);
+	}
+
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		ByteBuffer object = mBuffers.get(mElementArrayBuffer);
+		if (mElementArrayBuffer == 0 || object == null) {
+			error(GL10.GL_INVALID_OPERATION);
+			return;
+		}
+		if (type != GL10.GL_UNSIGNED_SHORT && type != GL10.GL_UNSIGNED_BYTE) {
+			error(GL10.GL_INVALID_ENUM);
+			return;
+		}
+		ByteBuffer indices = object.duplicate().order(ByteOrder.nativeOrder());
+		indices.position(offset);
+		draw(mode, count, indices, type, 0);
+	}
+
+	/**
+	 * @param indices
+	 *            indices from their position, null for consecutive vertices
+	 *            from first
+	 */
+	private void draw(int mode, int count, ByteBuffer indices, int type,
+			int first) {
+		if (mode != GL10.GL_TRIANGLES && mode != GL10.GL_TRIANGLE_STRIP
+				&& mode != GL10.GL_TRIANGLE_FAN) {
+			throw unsupported("Primitive mode " + mode);
+		}
+		if (!mVertexArray) {
+			// Nothing is drawn without positions
+			return;
+		}
+		checkCaps();
+		mDrawCalls++;
+		setupUnits();
+		float[] mvp = mMvp;
+		System.arraycopy(mProjection[mProjectionDepth], 0, mvp, 0, 16);
+		multiply(mvp, mModelView[mModelViewDepth], 0);
+
+		int triangles = mode == GL10.GL_TRIANGLES ? count / 3 : Math.max(0,
+				count - 2);
+		for (int triangle = 0; triangle < triangles; triangle++) {
+			for (int corner = 0; corner < 3; corner++) {
+				int vertex;
+				if (mode == GL10.GL_TRIANGLES) {
+					vertex = triangle * 3 + corner;
+				} else if (mode == GL10.GL_TRIANGLE_FAN) {
+					vertex = corner == 0 ? 0 : triangle + corner;
+				} else if ((triangle & 1) == 0) {
+					vertex = triangle + corner;
+				} else {
+					// Odd strip triangles are reversed to keep the winding
+					vertex = triangle + (corner == 0 ? 1 : corner == 1 ? 0 : 2);
+				}
+				int element;
+				if (indices == null) {
+					element = first + vertex;
+				} else if (type == GL10.GL_UNSIGNED_SHORT) {
+					element = indices.getShort(indices.position() + vertex
+							* 2) & 0xFFFF;
+				} else {
+					element = indices.get(indices.position() + vertex) & 0xFF;
+				}
+				transform(element, corner * VERTEX_FLOATS);
+			}
+			mTriangles++;
+			if (mRasterizing) {
+				rasterize();
+			}
+		}
+	}
+
+	private void checkCaps() {
+		for (int i = 0; i < UNSUPPORTED_CAPS.length; i++) {
+			if (isEnabled(UNSUPPORTED_CAPS[i])) {
+				throw unsupported("Capability " + UNSUPPORTED_CAPS[i]);
+			}
+		}
+	}
+
+	/**
+	 * Looks up the texture of each unit, null if texturing is off for it.
+	 */
+	private void setupUnits() {
+		for (int unit = 0; unit < UNITS; unit++) {
+			Texture texture = null;
+			if (mTexture2D[unit]) {
+				texture = mTextures.get(mBoundTextures[unit]);
+				if (texture != null && !texture.isComplete()) {
+					// Incomplete textures disable the unit
+					texture = null;
+				}
+			}
+			mUnitTextures[unit] = texture;
+		}
+	}
+
+	private void transform(int element, int offset) {
+		float x = fetch(mVertexPointer, element, 0);
+		float y = fetch(mVertexPointer, element, 1);
+		float z = fetch(mVertexPointer, element, 2);
+		float w = fetch(mVertexPointer, element, 3);
+		float[] m = mMvp;
+		float cx = m[0] * x + m[4] * y + m[8] * z + m[12] * w;
+		float cy = m[1] * x + m[5] * y + m[9] * z + m[13] * w;
+		float cw = m[3] * x + m[7] * y + m[11] * z + m[15] * w;
+		float[] v = mVertices;
+		v[offset] = mViewportX + (cx / cw + 1.0f) * 0.5f * mViewportWidth;
+		v[offset + 1] = mViewportY + (cy / cw + 1.0f) * 0.5f
+				* mViewportHeight;
+		for (int unit = 0; unit < UNITS; unit++) {
+			int t = offset + 2 + unit * 2;
+			if (mTexCoordArrays[unit]) {
+				v[t] = fetch(mTexCoordPointers[unit], element, 0);
+				v[t + 1] = fetch(mTexCoordPointers[unit], element, 1);
+			} else {
+				v[t] = mCurrentTexCoords[unit][0];
+				v[t + 1] = mCurrentTexCoords[unit][1];
+			}
+		}
+	}
+
+	private void rasterize() {
+		float[] v = mVertices;
+		int a = 0;
+		int b = VERTEX_FLOATS;
+		int c = 2 * VERTEX_FLOATS;
+		float area = (v[b] - v[a]) * (v[c + 1] - v[a + 1])
+				- (v[b + 1] - v[a + 1]) * (v[c] - v[a]);
+		if (area == 0.0f) {
+			return;
+		}
+		if (area < 0.0f) {
+			// Counter clockwise from now on
+			int swap = b;
+			b = c;
+			c = swap;
+			area = -area;
+		}
+		int minX = Math.max(0, (int) Math.floor(Math.min(v[a], Math.min(
+				v[b], v[c]))));
+		int maxX = Math.min(mWidth - 1, (int) Math.ceil(Math.max(v[a], Math
+				.max(v[b], v[c]))));
+		int minY = Math.max(0, (int) Math.floor(Math.min(v[a + 1], Math.min(
+				v[b + 1], v[c + 1]))));
+		int maxY = Math.min(mHeight - 1, (int) Math.ceil(Math.max(v[a + 1],
+				Math.max(v[b + 1], v[c + 1]))));
+
+		// Texture coordinates derivatives, to pick the filters
+		for (int unit = 0; unit < UNITS; unit++) {
+			Texture texture = mUnitTextures[unit];
+			if (texture == null) {
+				continue;
+			}
+			int t = 2 + unit * 2;
+			float dsdx = gradientX(v, a, b, c, t) / area;
+			float dtdx = gradientX(v, a, b, c, t + 1) / area;
+			float dsdy = gradientY(v, a, b, c, t) / area;
+			float dtdy = gradientY(v, a, b, c, t + 1) / area;
+			float rho = Math.max(length(dsdx * texture.width, dtdx
+					* texture.height), length(dsdy * texture.width, dtdy
+					* texture.height));
+			mUnitMinified[unit] = rho > 1.0f;
+		}
+
+		for (int y = minY; y <= maxY; y++) {
+			float py = y + 0.5f;
+			for (int x = minX; x <= maxX; x++) {
+				float px = x + 0.5f;
+				float w0 = edge(v, b, c, px, py);
+				float w1 = edge(v, c, a, px, py);
+				float w2 = edge(v, a, b, px, py);
+				if (!inside(w0, v, b, c) || !inside(w1, v, c, a)
+						|| !inside(w2, v, a, b)) {
+					continue;
+				}
+				w0 /= area;
+				w1 /= area;
+				w2 /= area;
+				shade(w0, w1, w2, a, b, c);
+				writeFragment(x, y);
+			}
+		}
+	}
+
+	/**
+	 * @return the derivative of the attribute at offset i along x, times
+	 *         twice the area of the triangle
+	 */
+	private static float gradientX(float[] v, int a, int b, int c, int i) {
+		return (v[b + i] - v[a + i]) * (v[c + 1] - v[a + 1])
+				- (v[c + i] - v[a + i]) * (v[b + 1] - v[a + 1]);
+	}
+
+	private static float gradientY(float[] v, int a, int b, int c, int i) {
+		return (v[c + i] - v[a + i]) * (v[b] - v[a])
+				- (v[b + i] - v[a + i]) * (v[c] - v[a]);
+	}
+
+	private static float length(float x, float y) {
+		return (float) Math.sqrt(x * x + y * y);
+	}
+
+	/**
+	 * @return twice the signed area of (p, q, point), positive when point is
+	 *         on the left of p to q
+	 */
+	private static float edge(float[] v, int p, int q, float x, float y) {
+		return (v[q] - v[p]) * (y - v[p + 1]) - (v[q + 1] - v[p + 1])
+				* (x - v[p]);
+	}
+
+	/**
+	 * Top left rule: pixels centered on an edge belong to the triangle on its
+	 * left or top side only.
+	 */
+	private static boolean inside(float w, float[] v, int p, int q) {
+		if (w > 0.0f) {
+			return true;
+		}
+		if (w < 0.0f) {
+			return false;
+		}
+		float dx = v[q] - v[p];
+		float dy = v[q + 1] - v[p + 1];
+		// Counter clockwise, y up: top edges go left, left edges go down
+		return (dy == 0.0f && dx < 0.0f) || dy < 0.0f;
+	}
+
+	/**
+	 * Computes the fragment color from the current color and the textures.
+	 */
+	private void shade(float w0, float w1, float w2, int a, int b, int c) {
+		float[] fragment = mFragment;
+		System.arraycopy(mColor, 0, fragment, 0, 4);
+		float[] v = mVertices;
+		for (int unit = 0; unit < UNITS; unit++) {
+			Texture texture = mUnitTextures[unit];
+			if (texture == null) {
+				continue;
+			}
+			int t = 2 + unit * 2;
+			float s = w0 * v[a + t] + w1 * v[b + t] + w2 * v[c + t];
+			float tt = w0 * v[a + t + 1] + w1 * v[b + t + 1] + w2
+					* v[c + t + 1];
+			sample(texture, mUnitMinified[unit] ? texture.minFilter
+					: texture.magFilter, s, tt);
+			combine(texture.format, mTexEnvModes[unit]);
+		}
+	}
+
+	private void sample(Texture texture, int filter, float s, float t) {
+		float[] texel = mTexel;
+		float x = s * texture.width;
+		float y = t * texture.height;
+		if (filter == GL10.GL_NEAREST
+				|| filter == GL10.GL_NEAREST_MIPMAP_NEAREST
+				|| filter == GL10.GL_NEAREST_MIPMAP_LINEAR) {
+			int argb = texel(texture, (int) Math.floor(x), (int) Math.floor(y));
+			unpack(argb, texel);
+			return;
+		}
+		x -= 0.5f;
+		y -= 0.5f;
+		int x0 = (int) Math.floor(x);
+		int y0 = (int) Math.floor(y);
+		float fx = x - x0;
+		float fy = y - y0;
+		int t00 = texel(texture, x0, y0);
+		int t10 = texel(texture, x0 + 1, y0);
+		int t01 = texel(texture, x0, y0 + 1);
+		int t11 = texel(texture, x0 + 1, y0 + 1);
+		for (int i = 0; i < 4; i++) {
+			int shift = i == 3 ? 24 : 16 - 8 * i;
+			float top = ((t00 >>> shift) & 0xFF) * (1 - fx)
+					+ ((t10 >>> shift) & 0xFF) * fx;
+			float bottom = ((t01 >>> shift) & 0xFF) * (1 - fx)
+					+ ((t11 >>> shift) & 0xFF) * fx;
+			texel[i] = (top * (1 - fy) + bottom * fy) / 255.0f;
+		}
+	}
+
+	private static int texel(Texture texture, int x, int y) {
+		x = wrap(x, texture.width, texture.wrapS);
+		y = wrap(y, texture.height, texture.wrapT);
+		return texture.texels[y * texture.width + x];
+	}
+
+	private static int wrap(int i, int size, int mode) {
+		if (mode == GL10.GL_REPEAT) {
+			i %= size;
+			return i < 0 ? i + size : i;
+		}
+		return i < 0 ? 0 : (i >= size ? size - 1 : i);
+	}
+
+	/**
+	 * Applies the texture environment of a unit to the fragment, GL ES 1.1
+	 * table 3.15.
+	 */
+	private void combine(int format, int mode) {
+		float[] f = mFragment;
+		float[] t = mTexel;
+		boolean hasColor = format != GL10.GL_ALPHA;
+		boolean hasAlpha = format == GL10.GL_ALPHA
+				|| format == GL10.GL_RGBA || format == GL10.GL_LUMINANCE_ALPHA;
+		if (mode == GL10.GL_REPLACE) {
+			if (hasColor) {
+				f[0] = t[0];
+				f[1] = t[1];
+				f[2] = t[2];
+			}
+			if (hasAlpha) {
+				f[3] = t[3];
+			}
+		} else {
+			if (hasColor) {
+				f[0] *= t[0];
+				f[1] *= t[1];
+				f[2] *= t[2];
+			}
+			if (hasAlpha) {
+				f[3] *= t[3];
+			}
+		}
+	}
+
+	private void writeFragment(int x, int y) {
+		mFragments++;
+		int index = (mHeight - 1 - y) * mWidth + x;
+		float[] f = mFragment;
+		if (isEnabled(GL10.GL_BLEND)) {
+			int destination = mPixels[index];
+			float[] d = mTexel;
+			unpack(destination, d);
+			float sr = f[0];
+			float sg = f[1];
+			float sb = f[2];
+			float sa = f[3];
+			for (int i = 0; i < 4; i++) {
+				float source = i == 0 ? sr : i == 1 ? sg : i == 2 ? sb : sa;
+				f[i] = clamp(source
+						* factor(mBlendSource, i, sr, sg, sb, sa, d)
+						+ d[i]
+						* factor(mBlendDestination, i, sr, sg, sb, sa, d));
+			}
+		}
+		mPixels[index] = pack(f);
+	}
+
+	private static float factor(int factor, int channel, float sr, float sg,
+			float sb, float sa, float[] d) {
+		float source = channel == 0 ? sr : channel == 1 ? sg
+				: channel == 2 ? sb : sa;
+		switch (factor) {
+		case GL10.GL_ZERO:
+			return 0.0f;
+		case GL10.GL_ONE:
+			return 1.0f;
+		case GL10.GL_SRC_COLOR:
+			return source;
+		case GL10.GL_ONE_MINUS_SRC_COLOR:
+			return 1.0f - source;
+		case GL10.GL_DST_COLOR:
+			return d[channel];
+		case GL10.GL_ONE_MINUS_DST_COLOR:
+			return 1.0f - d[channel];
+		case GL10.GL_SRC_ALPHA:
+			return sa;
+		case GL10.GL_ONE_MINUS_SRC_ALPHA:
+			return 1.0f - sa;
+		case GL10.GL_DST_ALPHA:
+			return d[3];
+		case GL10.GL_ONE_MINUS_DST_ALPHA:
+			return 1.0f - d[3];
+		case GL10.GL_SRC_ALPHA_SATURATE:
+			return channel == 3 ? 1.0f : Math.min(sa, 1.0f - d[3]);
+		default:
+			throw unsupported("Blend factor " + factor);
+		}
+	}
+
+	// Draw texture extension
+
+	@Override
+	public void glDrawTexfOES(float x, float y, float z, float width,
+			float height) {
+		if (width <= 0.0f || height <= 0.0f) {
+			error(GL10.GL_INVALID_VALUE);
+			return;
+		}
+		checkCaps();
+		mDrawCalls++;
+		setupUnits();
+		if (!mRasterizing) {
+			return;
+		}
+		int minX = Math.max(0, (int) Math.ceil(x - 0.5f));
+		int maxX = Math.min(mWidth - 1, (int) Math.ceil(x + width - 0.5f) - 1);
+		int minY = Math.max(0, (int) Math.ceil(y - 0.5f));
+		int maxY = Math.min(mHeight - 1,
+				(int) Math.ceil(y + height - 0.5f) - 1);
+		for (int unit = 0; unit < UNITS; unit++) {
+			Texture texture = mUnitTextures[unit];
+			if (texture != null) {
+				mUnitMinified[unit] = Math.abs(texture.crop[2]) > width
+						|| Math.abs(texture.crop[3]) > height;
+			}
+		}
+		for (int py = minY; py <= maxY; py++) {
+			for (int px = minX; px <= maxX; px++) {
+				float[] fragment = mFragment;
+				System.arraycopy(mColor, 0, fragment, 0, 4);
+				for (int unit = 0; unit < UNITS; unit++) {
+					Texture texture = mUnitTextures[unit];
+					if (texture == null) {
+						continue;
+					}
+					int[] crop = texture.crop;
+					float s = (crop[0] + (px + 0.5f - x) * crop[2] / width)
+							/ texture.width;
+					float t = (crop[1] + (py + 0.5f - y) * crop[3] / height)
+							/ texture.height;
+					sample(texture, mUnitMinified[unit] ? texture.minFilter
+							: texture.magFilter, s, t);
+					combine(texture.format, mTexEnvModes[unit]);
+				}
+				writeFragment(px, py);
+			}
+		}
+	}
+
+	@Override
+	public void glDrawTexiOES(int x, int y, int z, int width, int height) {
+		glDrawTexfOES(x, y, z, width, height);
+	}
+
+	@Override
+	public void glDrawTexxOES(int x, int y, int z, int width, int height) {
+		glDrawTexfOES(x / 65536.0f, y / 65536.0f, z / 65536.0f,
+				width / 65536.0f, height / 65536.0f);
+	}
+
+	// Read back
+
+	@Override
+	public void glReadPixels(int x, int y, int width, int height, int format,
+			int type, Buffer pixels) {
+		if (format != GL10.GL_RGBA || type != GL10.GL_UNSIGNED_BYTE) {
+			error(GL10.GL_INVALID_OPERATION);
+			return;
+		}
+		ByteBuffer bytes = (ByteBuffer) pixels;
+		int p = bytes.position();
+		for (int row = 0; row < height; row++) {
+			for (int column = 0; column < width; column++) {
+				int argb = mPixels[(mHeight - 1 - (y + row)) * mWidth + x
+						+ column];
+				bytes.put(p++, (byte) (argb >> 16));
+				bytes.put(p++, (byte) (argb >> 8));
+				bytes.put(p++, (byte) argb);
+				bytes.put(p++, (byte) (argb >>> 24));
+			}
+		}
+	}
+
+	private static void unpack(int argb, float[] color) {
+		color[0] = ((argb >> 16) & 0xFF) / 255.0f;
+		color[1] = ((argb >> 8) & 0xFF) / 255.0f;
+		color[2] = (argb & 0xFF) / 255.0f;
+		color[3] = (argb >>> 24) / 255.0f;
+	}
+
+	private static int pack(float[] color) {
+		return Math.round(color[3] * 255.0f) << 24
+				| Math.round(color[0] * 255.0f) << 16
+				| Math.round(color[1] * 255.0f) << 8
+				| Math.round(color[2] * 255.0f);
+	}
+
+	private static float clamp(float value) {
+		return value < 0.0f ? 0.0f : (value > 1.0f ? 1.0f : value);
+	}
+}
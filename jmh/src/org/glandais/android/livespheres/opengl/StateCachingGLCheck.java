@@ -0,0 +1,271 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Checks on a plain JVM that {@link StateCachingGL} drops exactly the
+ * redundant calls: a scripted sequence of state calls goes through it to a
+ * GL recording what it receives, and the recording must be the calls the
+ * script expects to be forwarded, in order. The frame counters must match
+ * the forwarded and dropped calls. Not part of the application.
+ *
+ * Exits with status 1 on a mismatch. Run from the root with "gradle
+ * :jmh:stateCachingGLCheck", part of "gradle check".
+ */
+public class StateCachingGLCheck {
+
+	// Capabilities the cache has no reason to know, to fill its table
+	private static final int FAKE_CAP = 0x9000;
+
+	/**
+	 * Records the state calls, any other call throws.
+	 */
+	private static class RecordingGL extends UnsupportedGL {
+		final List<String> mCalls = new ArrayList<String>();
+
+		private void record(String call, int... args) {
+			StringBuilder builder = new StringBuilder(call);
+			for (int arg : args) {
+				builder.append(' ').append(arg);
+			}
+			mCalls.add(builder.toString());
+		}
+
+		@Override
+		public void glActiveTexture(int texture) {
+			record("glActiveTexture", texture);
+		}
+
+		@Override
+		public void glClientActiveTexture(int texture) {
+			record("glClientActiveTexture", texture);
+		}
+
+		@Override
+		public void glBindTexture(int target, int texture) {
+			record("glBindTexture", target, texture);
+		}
+
+		@Override
+		public void glDeleteTextures(int n, int[] textures, int offset) {
+			record("glDeleteTextures", textures[offset]);
+		}
+
+		@Override
+		public void glBindBuffer(int target, int buffer) {
+			record("glBindBuffer", target, buffer);
+		}
+
+		@Override
+		public void glDeleteBuffers(int n, int[] buffers, int offset) {
+			record("glDeleteBuffers", buffers[offset]);
+		}
+
+		@Override
+		public void glEnable(int cap) {
+			record("glEnable", cap);
+		}
+
+		@Override
+		public void glDisable(int cap) {
+			record("glDisable", cap);
+		}
+
+		@Override
+		public void glEnableClientState(int array) {
+			record("glEnableClientState", array);
+		}
+
+		@Override
+		public void glDisableClientState(int array) {
+			record("glDisableClientState", array);
+		}
+
+		@Override
+		public void glMatrixMode(int mode) {
+			record("glMatrixMode", mode);
+		}
+
+		@Override
+		public void glClear(int mask) {
+			record("glClear", mask);
+		}
+	}
+
+	private final RecordingGL mRecording = new RecordingGL();
+	private final StateCachingGL mGl = new StateCachingGL(mRecording);
+	private final RecordingGL mExpected = new RecordingGL();
+	private int mExpectedSkipped = 0;
+
+	public static void main(String[] args) {
+		StateCachingGLCheck check = new StateCachingGLCheck();
+		check.run();
+		if (!check.verify()) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * The last call made on mGl is expected to reach the recording GL.
+	 */
+	private RecordingGL forwarded() {
+		return mExpected;
+	}
+
+	/**
+	 * The last call made on mGl is expected to be dropped.
+	 */
+	private void dropped() {
+		mExpectedSkipped++;
+	}
+
+	private void run() {
+		final int texture2D = GL10.GL_TEXTURE_2D;
+
+		// Bindings, per texture unit, the first unit until set
+		mGl.glBindTexture(texture2D, 1);
+		forwarded().glBindTexture(texture2D, 1);
+		mGl.glBindTexture(texture2D, 1);
+		dropped();
+		mGl.glBindTexture(texture2D, 2);
+		forwarded().glBindTexture(texture2D, 2);
+		mGl.glActiveTexture(GL10.GL_TEXTURE1);
+		forwarded().glActiveTexture(GL10.GL_TEXTURE1);
+		mGl.glActiveTexture(GL10.GL_TEXTURE1);
+		dropped();
+		mGl.glBindTexture(texture2D, 2);
+		forwarded().glBindTexture(texture2D, 2);
+		mGl.glActiveTexture(GL10.GL_TEXTURE0);
+		forwarded().glActiveTexture(GL10.GL_TEXTURE0);
+		mGl.glBindTexture(texture2D, 2);
+		dropped();
+
+		// Deleting a bound texture binds the default one
+		mGl.glDeleteTextures(1, new int[] { 2 }, 0);
+		forwarded().glDeleteTextures(1, new int[] { 2 }, 0);
+		mGl.glBindTexture(texture2D, 0);
+		dropped();
+		mGl.glBindTexture(texture2D, 2);
+		forwarded().glBindTexture(texture2D, 2);
+
+		// Units past the tracked ones always go through
+		mGl.glActiveTexture(GL10.GL_TEXTURE0 + 9);
+		forwarded().glActiveTexture(GL10.GL_TEXTURE0 + 9);
+		mGl.glBindTexture(texture2D, 3);
+		forwarded().glBindTexture(texture2D, 3);
+		mGl.glBindTexture(texture2D, 3);
+		forwarded().glBindTexture(texture2D, 3);
+		mGl.glActiveTexture(GL10.GL_TEXTURE0);
+		forwarded().glActiveTexture(GL10.GL_TEXTURE0);
+
+		// Capabilities, GL_TEXTURE_2D per unit
+		mGl.glEnable(GL10.GL_BLEND);
+		forwarded().glEnable(GL10.GL_BLEND);
+		mGl.glEnable(GL10.GL_BLEND);
+		dropped();
+		mGl.glDisable(GL10.GL_BLEND);
+		forwarded().glDisable(GL10.GL_BLEND);
+		mGl.glDisable(GL10.GL_BLEND);
+		dropped();
+		mGl.glEnable(texture2D);
+		forwarded().glEnable(texture2D);
+		mGl.glActiveTexture(GL10.GL_TEXTURE1);
+		forwarded().glActiveTexture(GL10.GL_TEXTURE1);
+		mGl.glEnable(texture2D);
+		forwarded().glEnable(texture2D);
+		mGl.glEnable(texture2D);
+		dropped();
+		mGl.glActiveTexture(GL10.GL_TEXTURE0);
+		forwarded().glActiveTexture(GL10.GL_TEXTURE0);
+		mGl.glEnable(texture2D);
+		dropped();
+
+		// Client states, texture coordinates per client unit
+		mGl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+		forwarded().glEnableClientState(GL10.GL_VERTEX_ARRAY);
+		mGl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+		dropped();
+		mGl.glClientActiveTexture(GL10.GL_TEXTURE1);
+		forwarded().glClientActiveTexture(GL10.GL_TEXTURE1);
+		mGl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		forwarded().glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		mGl.glClientActiveTexture(GL10.GL_TEXTURE0);
+		forwarded().glClientActiveTexture(GL10.GL_TEXTURE0);
+		mGl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		forwarded().glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		mGl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		dropped();
+		mGl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		forwarded().glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+
+		// Buffers, per target; deleting a bound buffer unbinds it
+		mGl.glBindBuffer(GL11.GL_ARRAY_BUFFER, 3);
+		forwarded().glBindBuffer(GL11.GL_ARRAY_BUFFER, 3);
+		mGl.glBindBuffer(GL11.GL_ARRAY_BUFFER, 3);
+		dropped();
+		mGl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 3);
+		forwarded().glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 3);
+		mGl.glDeleteBuffers(1, new int[] { 3 }, 0);
+		forwarded().glDeleteBuffers(1, new int[] { 3 }, 0);
+		mGl.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+		dropped();
+		mGl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 3);
+		forwarded().glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 3);
+
+		// Matrix mode
+		mGl.glMatrixMode(GL10.GL_MODELVIEW);
+		forwarded().glMatrixMode(GL10.GL_MODELVIEW);
+		mGl.glMatrixMode(GL10.GL_MODELVIEW);
+		dropped();
+		mGl.glMatrixMode(GL10.GL_PROJECTION);
+		forwarded().glMatrixMode(GL10.GL_PROJECTION);
+
+		// Calls not cached always go through
+		mGl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+		forwarded().glClear(GL10.GL_COLOR_BUFFER_BIT);
+		mGl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+		forwarded().glClear(GL10.GL_COLOR_BUFFER_BIT);
+
+		// Once the capability table is full, new ones always go through
+		for (int i = 0; i < 16; i++) {
+			mGl.glEnable(FAKE_CAP + i);
+			forwarded().glEnable(FAKE_CAP + i);
+		}
+		mGl.glEnable(FAKE_CAP + 15);
+		forwarded().glEnable(FAKE_CAP + 15);
+		mGl.glEnable(FAKE_CAP);
+		dropped();
+
+		mGl.endFrame();
+	}
+
+	private boolean verify() {
+		List<String> expected = mExpected.mCalls;
+		List<String> actual = mRecording.mCalls;
+		boolean passed = true;
+		for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+			String e = i < expected.size() ? expected.get(i) : "nothing";
+			String a = i < actual.size() ? actual.get(i) : "nothing";
+			if (!e.equals(a)) {
+				System.out.println("call " + i + ": expected " + e
+						+ ", forwarded " + a + " FAILED");
+				passed = false;
+				break;
+			}
+		}
+		System.out.println("forwarded: " + actual.size() + " calls, expected "
+				+ expected.size());
+
+		boolean counted = mGl.getFrameCallCount() == expected.size()
+				&& mGl.getFrameSkippedCount() == mExpectedSkipped;
+		System.out.println("counters: " + mGl.getFrameCallCount()
+				+ " forwarded, " + mGl.getFrameSkippedCount()
+				+ " dropped, expected " + expected.size() + " and "
+				+ mExpectedSkipped + (counted ? "" : " FAILED"));
+		return passed && counted;
+	}
+}
@@ -0,0 +1,895 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL;
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+import javax.microedition.khronos.opengles.GL11Ext;
+
+/**
+ * Implements every GL10, GL11 and GL11Ext call by throwing, so that
+ * {@link SoftwareGL} only overrides the subset it supports and any other
+ * call made by the rendering code is caught.
+ */
+public class UnsupportedGL implements GL, GL10, GL11, GL11Ext {
+
+	public UnsupportedGL() {
+		super();
+	}
+
+	protected static UnsupportedOperationException unsupported(String call) {
+		return new UnsupportedOperationException(call + " is not supported");
+	}
+
+	public void glActiveTexture(int texture) {
+		throw unsupported("glActiveTexture");
+	}
+
+	public void glAlphaFunc(int func, float ref) {
+		throw unsupported("glAlphaFunc");
+	}
+
+	public void glAlphaFuncx(int func, int ref) {
+		throw unsupported("glAlphaFuncx");
+	}
+
+	public void glBindTexture(int target, int texture) {
+		throw unsupported("glBindTexture");
+	}
+
+	public void glBlendFunc(int sfactor, int dfactor) {
+		throw unsupported("glBlendFunc");
+	}
+
+	public void glClear(int mask) {
+		throw unsupported("glClear");
+	}
+
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		throw unsupported("glClearColor");
+	}
+
+	public void glClearColorx(int red, int green, int blue, int alpha) {
+		throw unsupported("glClearColorx");
+	}
+
+	public void glClearDepthf(float depth) {
+		throw unsupported("glClearDepthf");
+	}
+
+	public void glClearDepthx(int depth) {
+		throw unsupported("glClearDepthx");
+	}
+
+	public void glClearStencil(int s) {
+		throw unsupported("glClearStencil");
+	}
+
+	public void glClientActiveTexture(int texture) {
+		throw unsupported("glClientActiveTexture");
+	}
+
+	public void glColor4f(float red, float green, float blue, float alpha) {
+		throw unsupported("glColor4f");
+	}
+
+	public void glColor4x(int red, int green, int blue, int alpha) {
+		throw unsupported("glColor4x");
+	}
+
+	public void glColorMask(boolean red, boolean green, boolean blue,
+			boolean alpha) {
+		throw unsupported("glColorMask");
+	}
+
+	public void glColorPointer(int size, int type, int stride, Buffer pointer) {
+		throw unsupported("glColorPointer");
+	}
+
+	public void glCompressedTexImage2D(int target, int level,
+			int internalformat, int width, int height, int border,
+			int imageSize, Buffer data) {
+		throw unsupported("glCompressedTexImage2D");
+	}
+
+	public void glCompressedTexSubImage2D(int target, int level, int xoffset,
+			int yoffset, int width, int height, int format, int imageSize,
+			Buffer data) {
+		throw unsupported("glCompressedTexSubImage2D");
+	}
+
+	public void glCopyTexImage2D(int target, int level, int internalformat,
+			int x, int y, int width, int height, int border) {
+		throw unsupported("glCopyTexImage2D");
+	}
+
+	public void glCopyTexSubImage2D(int target, int level, int xoffset,
+			int yoffset, int x, int y, int width, int height) {
+		throw unsupported("glCopyTexSubImage2D");
+	}
+
+	public void glCullFace(int mode) {
+		throw unsupported("glCullFace");
+	}
+
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		throw unsupported("glDeleteTextures");
+	}
+
+	public void glDeleteTextures(int n, IntBuffer textures) {
+		throw unsupported("glDeleteTextures");
+	}
+
+	public void glDepthFunc(int func) {
+		throw unsupported("glDepthFunc");
+	}
+
+	public void glDepthMask(boolean flag) {
+		throw unsupported("glDepthMask");
+	}
+
+	public void glDepthRangef(float zNear, float zFar) {
+		throw unsupported("glDepthRangef");
+	}
+
+	public void glDepthRangex(int zNear, int zFar) {
+		throw unsupported("glDepthRangex");
+	}
+
+	public void glDisable(int cap) {
+		throw unsupported("glDisable");
+	}
+
+	public void glDisableClientState(int array) {
+		throw unsupported("glDisableClientState");
+	}
+
+	public void glDrawArrays(int mode, int first, int count) {
+		throw unsupported("glDrawArrays");
+	}
+
+	public void glDrawElements(int mode, int count, int type, Buffer indices) {
+		throw unsupported("glDrawElements");
+	}
+
+	public void glEnable(int cap) {
+		throw unsupported("glEnable");
+	}
+
+	public void glEnableClientState(int array) {
+		throw unsupported("glEnableClientState");
+	}
+
+	public void glFinish() {
+		throw unsupported("glFinish");
+	}
+
+	public void glFlush() {
+		throw unsupported("glFlush");
+	}
+
+	public void glFogf(int pname, float param) {
+		throw unsupported("glFogf");
+	}
+
+	public void glFogfv(int pname, float[] params, int offset) {
+		throw unsupported("glFogfv");
+	}
+
+	public void glFogfv(int pname, FloatBuffer params) {
+		throw unsupported("glFogfv");
+	}
+
+	public void glFogx(int pname, int param) {
+		throw unsupported("glFogx");
+	}
+
+	public void glFogxv(int pname, int[] params, int offset) {
+		throw unsupported("glFogxv");
+	}
+
+	public void glFogxv(int pname, IntBuffer params) {
+		throw unsupported("glFogxv");
+	}
+
+	public void glFrontFace(int mode) {
+		throw unsupported("glFrontFace");
+	}
+
+	public void glFrustumf(float left, float right, float bottom, float top,
+			float zNear, float zFar) {
+		throw unsupported("glFrustumf");
+	}
+
+	public void glFrustumx(int left, int right, int bottom, int top, int zNear,
+			int zFar) {
+		throw unsupported("glFrustumx");
+	}
+
+	public void glGenTextures(int n, int[] textures, int offset) {
+		throw unsupported("glGenTextures");
+	}
+
+	public void glGenTextures(int n, IntBuffer textures) {
+		throw unsupported("glGenTextures");
+	}
+
+	public int glGetError() {
+		throw unsupported("glGetError");
+	}
+
+	public void glGetIntegerv(int pname, int[] params, int offset) {
+		throw unsupported("glGetIntegerv");
+	}
+
+	public void glGetIntegerv(int pname, IntBuffer params) {
+		throw unsupported("glGetIntegerv");
+	}
+
+	public String glGetString(int name) {
+		throw unsupported("glGetString");
+	}
+
+	public void glHint(int target, int mode) {
+		throw unsupported("glHint");
+	}
+
+	public void glLightModelf(int pname, float param) {
+		throw unsupported("glLightModelf");
+	}
+
+	public void glLightModelfv(int pname, float[] params, int offset) {
+		throw unsupported("glLightModelfv");
+	}
+
+	public void glLightModelfv(int pname, FloatBuffer params) {
+		throw unsupported("glLightModelfv");
+	}
+
+	public void glLightModelx(int pname, int param) {
+		throw unsupported("glLightModelx");
+	}
+
+	public void glLightModelxv(int pname, int[] params, int offset) {
+		throw unsupported("glLightModelxv");
+	}
+
+	public void glLightModelxv(int pname, IntBuffer params) {
+		throw unsupported("glLightModelxv");
+	}
+
+	public void glLightf(int light, int pname, float param) {
+		throw unsupported("glLightf");
+	}
+
+	public void glLightfv(int light, int pname, float[] params, int offset) {
+		throw unsupported("glLightfv");
+	}
+
+	public void glLightfv(int light, int pname, FloatBuffer params) {
+		throw unsupported("glLightfv");
+	}
+
+	public void glLightx(int light, int pname, int param) {
+		throw unsupported("glLightx");
+	}
+
+	public void glLightxv(int light, int pname, int[] params, int offset) {
+		throw unsupported("glLightxv");
+	}
+
+	public void glLightxv(int light, int pname, IntBuffer params) {
+		throw unsupported("glLightxv");
+	}
+
+	public void glLineWidth(float width) {
+		throw unsupported("glLineWidth");
+	}
+
+	public void glLineWidthx(int width) {
+		throw unsupported("glLineWidthx");
+	}
+
+	public void glLoadIdentity() {
+		throw unsupported("glLoadIdentity");
+	}
+
+	public void glLoadMatrixf(float[] m, int offset) {
+		throw unsupported("glLoadMatrixf");
+	}
+
+	public void glLoadMatrixf(FloatBuffer m) {
+		throw unsupported("glLoadMatrixf");
+	}
+
+	public void glLoadMatrixx(int[] m, int offset) {
+		throw unsupported("glLoadMatrixx");
+	}
+
+	public void glLoadMatrixx(IntBuffer m) {
+		throw unsupported("glLoadMatrixx");
+	}
+
+	public void glLogicOp(int opcode) {
+		throw unsupported("glLogicOp");
+	}
+
+	public void glMaterialf(int face, int pname, float param) {
+		throw unsupported("glMaterialf");
+	}
+
+	public void glMaterialfv(int face, int pname, float[] params, int offset) {
+		throw unsupported("glMaterialfv");
+	}
+
+	public void glMaterialfv(int face, int pname, FloatBuffer params) {
+		throw unsupported("glMaterialfv");
+	}
+
+	public void glMaterialx(int face, int pname, int param) {
+		throw unsupported("glMaterialx");
+	}
+
+	public void glMaterialxv(int face, int pname, int[] params, int offset) {
+		throw unsupported("glMaterialxv");
+	}
+
+	public void glMaterialxv(int face, int pname, IntBuffer params) {
+		throw unsupported("glMaterialxv");
+	}
+
+	public void glMatrixMode(int mode) {
+		throw unsupported("glMatrixMode");
+	}
+
+	public void glMultMatrixf(float[] m, int offset) {
+		throw unsupported("glMultMatrixf");
+	}
+
+	public void glMultMatrixf(FloatBuffer m) {
+		throw unsupported("glMultMatrixf");
+	}
+
+	public void glMultMatrixx(int[] m, int offset) {
+		throw unsupported("glMultMatrixx");
+	}
+
+	public void glMultMatrixx(IntBuffer m) {
+		throw unsupported("glMultMatrixx");
+	}
+
+	public void glMultiTexCoord4f(int target, float s, float t, float r,
+			float q) {
+		throw unsupported("glMultiTexCoord4f");
+	}
+
+	public void glMultiTexCoord4x(int target, int s, int t, int r, int q) {
+		throw unsupported("glMultiTexCoord4x");
+	}
+
+	public void glNormal3f(float nx, float ny, float nz) {
+		throw unsupported("glNormal3f");
+	}
+
+	public void glNormal3x(int nx, int ny, int nz) {
+		throw unsupported("glNormal3x");
+	}
+
+	public void glNormalPointer(int type, int stride, Buffer pointer) {
+		throw unsupported("glNormalPointer");
+	}
+
+	public void glOrthof(float left, float right, float bottom, float top,
+			float zNear, float zFar) {
+		throw unsupported("glOrthof");
+	}
+
+	public void glOrthox(int left, int right, int bottom, int top, int zNear,
+			int zFar) {
+		throw unsupported("glOrthox");
+	}
+
+	public void glPixelStorei(int pname, int param) {
+		throw unsupported("glPixelStorei");
+	}
+
+	public void glPointSize(float size) {
+		throw unsupported("glPointSize");
+	}
+
+	public void glPointSizex(int size) {
+		throw unsupported("glPointSizex");
+	}
+
+	public void glPolygonOffset(float factor, float units) {
+		throw unsupported("glPolygonOffset");
+	}
+
+	public void glPolygonOffsetx(int factor, int units) {
+		throw unsupported("glPolygonOffsetx");
+	}
+
+	public void glPopMatrix() {
+		throw unsupported("glPopMatrix");
+	}
+
+	public void glPushMatrix() {
+		throw unsupported("glPushMatrix");
+	}
+
+	public void glReadPixels(int x, int y, int width, int height, int format,
+			int type, Buffer pixels) {
+		throw unsupported("glReadPixels");
+	}
+
+	public void glRotatef(float angle, float x, float y, float z) {
+		throw unsupported("glRotatef");
+	}
+
+	public void glRotatex(int angle, int x, int y, int z) {
+		throw unsupported("glRotatex");
+	}
+
+	public void glSampleCoverage(float value, boolean invert) {
+		throw unsupported("glSampleCoverage");
+	}
+
+	public void glSampleCoveragex(int value, boolean invert) {
+		throw unsupported("glSampleCoveragex");
+	}
+
+	public void glScalef(float x, float y, float z) {
+		throw unsupported("glScalef");
+	}
+
+	public void glScalex(int x, int y, int z) {
+		throw unsupported("glScalex");
+	}
+
+	public void glScissor(int x, int y, int width, int height) {
+		throw unsupported("glScissor");
+	}
+
+	public void glShadeModel(int mode) {
+		throw unsupported("glShadeModel");
+	}
+
+	public void glStencilFunc(int func, int ref, int mask) {
+		throw unsupported("glStencilFunc");
+	}
+
+	public void glStencilMask(int mask) {
+		throw unsupported("glStencilMask");
+	}
+
+	public void glStencilOp(int fail, int zfail, int zpass) {
+		throw unsupported("glStencilOp");
+	}
+
+	public void glTexCoordPointer(int size, int type, int stride,
+			Buffer pointer) {
+		throw unsupported("glTexCoordPointer");
+	}
+
+	public void glTexEnvf(int target, int pname, float param) {
+		throw unsupported("glTexEnvf");
+	}
+
+	public void glTexEnvfv(int target, int pname, float[] params, int offset) {
+		throw unsupported("glTexEnvfv");
+	}
+
+	public void glTexEnvfv(int target, int pname, FloatBuffer params) {
+		throw unsupported("glTexEnvfv");
+	}
+
+	public void glTexEnvx(int target, int pname, int param) {
+		throw unsupported("glTexEnvx");
+	}
+
+	public void glTexEnvxv(int target, int pname, int[] params, int offset) {
+		throw unsupported("glTexEnvxv");
+	}
+
+	public void glTexEnvxv(int target, int pname, IntBuffer params) {
+		throw unsupported("glTexEnvxv");
+	}
+
+	public void glTexImage2D(int target, int level, int internalformat,
+			int width, int height, int border, int format, int type,
+			Buffer pixels) {
+		throw unsupported("glTexImage2D");
+	}
+
+	public void glTexParameterf(int target, int pname, float param) {
+		throw unsupported("glTexParameterf");
+	}
+
+	public void glTexParameterx(int target, int pname, int param) {
+		throw unsupported("glTexParameterx");
+	}
+
+	public void glTexSubImage2D(int target, int level, int xoffset, int yoffset,
+			int width, int height, int format, int type, Buffer pixels) {
+		throw unsupported("glTexSubImage2D");
+	}
+
+	public void glTranslatef(float x, float y, float z) {
+		throw unsupported("glTranslatef");
+	}
+
+	public void glTranslatex(int x, int y, int z) {
+		throw unsupported("glTranslatex");
+	}
+
+	public void glVertexPointer(int size, int type, int stride,
+			Buffer pointer) {
+		throw unsupported("glVertexPointer");
+	}
+
+	public void glViewport(int x, int y, int width, int height) {
+		throw unsupported("glViewport");
+	}
+
+	public void glBindBuffer(int target, int buffer) {
+		throw unsupported("glBindBuffer");
+	}
+
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		throw unsupported("glBufferData");
+	}
+
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		throw unsupported("glBufferSubData");
+	}
+
+	public void glClipPlanef(int plane, float[] equation, int offset) {
+		throw unsupported("glClipPlanef");
+	}
+
+	public void glClipPlanef(int plane, FloatBuffer equation) {
+		throw unsupported("glClipPlanef");
+	}
+
+	public void glClipPlanex(int plane, int[] equation, int offset) {
+		throw unsupported("glClipPlanex");
+	}
+
+	public void glClipPlanex(int plane, IntBuffer equation) {
+		throw unsupported("glClipPlanex");
+	}
+
+	public void glColor4ub(byte red, byte green, byte blue, byte alpha) {
+		throw unsupported("glColor4ub");
+	}
+
+	public void glColorPointer(int size, int type, int stride, int offset) {
+		throw unsupported("glColorPointer");
+	}
+
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		throw unsupported("glDeleteBuffers");
+	}
+
+	public void glDeleteBuffers(int n, IntBuffer buffers) {
+		throw unsupported("glDeleteBuffers");
+	}
+
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		throw unsupported("glDrawElements");
+	}
+
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		throw unsupported("glGenBuffers");
+	}
+
+	public void glGenBuffers(int n, IntBuffer buffers) {
+		throw unsupported("glGenBuffers");
+	}
+
+	public void glGetBooleanv(int pname, boolean[] params, int offset) {
+		throw unsupported("glGetBooleanv");
+	}
+
+	public void glGetBooleanv(int pname, IntBuffer params) {
+		throw unsupported("glGetBooleanv");
+	}
+
+	public void glGetBufferParameteriv(int target, int pname, int[] params,
+			int offset) {
+		throw unsupported("glGetBufferParameteriv");
+	}
+
+	public void glGetBufferParameteriv(int target, int pname,
+			IntBuffer params) {
+		throw unsupported("glGetBufferParameteriv");
+	}
+
+	public void glGetClipPlanef(int pname, float[] eqn, int offset) {
+		throw unsupported("glGetClipPlanef");
+	}
+
+	public void glGetClipPlanef(int pname, FloatBuffer eqn) {
+		throw unsupported("glGetClipPlanef");
+	}
+
+	public void glGetClipPlanex(int pname, int[] eqn, int offset) {
+		throw unsupported("glGetClipPlanex");
+	}
+
+	public void glGetClipPlanex(int pname, IntBuffer eqn) {
+		throw unsupported("glGetClipPlanex");
+	}
+
+	public void glGetFixedv(int pname, int[] params, int offset) {
+		throw unsupported("glGetFixedv");
+	}
+
+	public void glGetFixedv(int pname, IntBuffer params) {
+		throw unsupported("glGetFixedv");
+	}
+
+	public void glGetFloatv(int pname, float[] params, int offset) {
+		throw unsupported("glGetFloatv");
+	}
+
+	public void glGetFloatv(int pname, FloatBuffer params) {
+		throw unsupported("glGetFloatv");
+	}
+
+	public void glGetLightfv(int light, int pname, float[] params, int offset) {
+		throw unsupported("glGetLightfv");
+	}
+
+	public void glGetLightfv(int light, int pname, FloatBuffer params) {
+		throw unsupported("glGetLightfv");
+	}
+
+	public void glGetLightxv(int light, int pname, int[] params, int offset) {
+		throw unsupported("glGetLightxv");
+	}
+
+	public void glGetLightxv(int light, int pname, IntBuffer params) {
+		throw unsupported("glGetLightxv");
+	}
+
+	public void glGetMaterialfv(int face, int pname, float[] params,
+			int offset) {
+		throw unsupported("glGetMaterialfv");
+	}
+
+	public void glGetMaterialfv(int face, int pname, FloatBuffer params) {
+		throw unsupported("glGetMaterialfv");
+	}
+
+	public void glGetMaterialxv(int face, int pname, int[] params, int offset) {
+		throw unsupported("glGetMaterialxv");
+	}
+
+	public void glGetMaterialxv(int face, int pname, IntBuffer params) {
+		throw unsupported("glGetMaterialxv");
+	}
+
+	public void glGetPointerv(int pname, Buffer[] params) {
+		throw unsupported("glGetPointerv");
+	}
+
+	public void glGetTexEnviv(int env, int pname, int[] params, int offset) {
+		throw unsupported("glGetTexEnviv");
+	}
+
+	public void glGetTexEnviv(int env, int pname, IntBuffer params) {
+		throw unsupported("glGetTexEnviv");
+	}
+
+	public void glGetTexEnvxv(int env, int pname, int[] params, int offset) {
+		throw unsupported("glGetTexEnvxv");
+	}
+
+	public void glGetTexEnvxv(int env, int pname, IntBuffer params) {
+		throw unsupported("glGetTexEnvxv");
+	}
+
+	public void glGetTexParameterfv(int target, int pname, float[] params,
+			int offset) {
+		throw unsupported("glGetTexParameterfv");
+	}
+
+	public void glGetTexParameterfv(int target, int pname, FloatBuffer params) {
+		throw unsupported("glGetTexParameterfv");
+	}
+
+	public void glGetTexParameteriv(int target, int pname, int[] params,
+			int offset) {
+		throw unsupported("glGetTexParameteriv");
+	}
+
+	public void glGetTexParameteriv(int target, int pname, IntBuffer params) {
+		throw unsupported("glGetTexParameteriv");
+	}
+
+	public void glGetTexParameterxv(int target, int pname, int[] params,
+			int offset) {
+		throw unsupported("glGetTexParameterxv");
+	}
+
+	public void glGetTexParameterxv(int target, int pname, IntBuffer params) {
+		throw unsupported("glGetTexParameterxv");
+	}
+
+	public boolean glIsBuffer(int buffer) {
+		throw unsupported("glIsBuffer");
+	}
+
+	public boolean glIsEnabled(int cap) {
+		throw unsupported("glIsEnabled");
+	}
+
+	public boolean glIsTexture(int texture) {
+		throw unsupported("glIsTexture");
+	}
+
+	public void glNormalPointer(int type, int stride, int offset) {
+		throw unsupported("glNormalPointer");
+	}
+
+	public void glPointParameterf(int pname, float param) {
+		throw unsupported("glPointParameterf");
+	}
+
+	public void glPointParameterfv(int pname, float[] params, int offset) {
+		throw unsupported("glPointParameterfv");
+	}
+
+	public void glPointParameterfv(int pname, FloatBuffer params) {
+		throw unsupported("glPointParameterfv");
+	}
+
+	public void glPointParameterx(int pname, int param) {
+		throw unsupported("glPointParameterx");
+	}
+
+	public void glPointParameterxv(int pname, int[] params, int offset) {
+		throw unsupported("glPointParameterxv");
+	}
+
+	public void glPointParameterxv(int pname, IntBuffer params) {
+		throw unsupported("glPointParameterxv");
+	}
+
+	public void glPointSizePointerOES(int type, int stride, Buffer pointer) {
+		throw unsupported("glPointSizePointerOES");
+	}
+
+	public void glTexCoordPointer(int size, int type, int stride, int offset) {
+		throw unsupported("glTexCoordPointer");
+	}
+
+	public void glTexEnvi(int target, int pname, int param) {
+		throw unsupported("glTexEnvi");
+	}
+
+	public void glTexEnviv(int target, int pname, int[] params, int offset) {
+		throw unsupported("glTexEnviv");
+	}
+
+	public void glTexEnviv(int target, int pname, IntBuffer params) {
+		throw unsupported("glTexEnviv");
+	}
+
+	public void glTexParameterfv(int target, int pname, float[] params,
+			int offset) {
+		throw unsupported("glTexParameterfv");
+	}
+
+	public void glTexParameterfv(int target, int pname, FloatBuffer params) {
+		throw unsupported("glTexParameterfv");
+	}
+
+	public void glTexParameteri(int target, int pname, int param) {
+		throw unsupported("glTexParameteri");
+	}
+
+	public void glTexParameteriv(int target, int pname, int[] params,
+			int offset) {
+		throw unsupported("glTexParameteriv");
+	}
+
+	public void glTexParameteriv(int target, int pname, IntBuffer params) {
+		throw unsupported("glTexParameteriv");
+	}
+
+	public void glTexParameterxv(int target, int pname, int[] params,
+			int offset) {
+		throw unsupported("glTexParameterxv");
+	}
+
+	public void glTexParameterxv(int target, int pname, IntBuffer params) {
+		throw unsupported("glTexParameterxv");
+	}
+
+	public void glVertexPointer(int size, int type, int stride, int offset) {
+		throw unsupported("glVertexPointer");
+	}
+
+	public void glCurrentPaletteMatrixOES(int matrixpaletteindex) {
+		throw unsupported("glCurrentPaletteMatrixOES");
+	}
+
+	public void glDrawTexfOES(float x, float y, float z, float width,
+			float height) {
+		throw unsupported("glDrawTexfOES");
+	}
+
+	public void glDrawTexfvOES(float[] coords, int offset) {
+		throw unsupported("glDrawTexfvOES");
+	}
+
+	public void glDrawTexfvOES(FloatBuffer coords) {
+		throw unsupported("glDrawTexfvOES");
+	}
+
+	public void glDrawTexiOES(int x, int y, int z, int width, int height) {
+		throw unsupported("glDrawTexiOES");
+	}
+
+	public void glDrawTexivOES(int[] coords, int offset) {
+		throw unsupported("glDrawTexivOES");
+	}
+
+	public void glDrawTexivOES(IntBuffer coords) {
+		throw unsupported("glDrawTexivOES");
+	}
+
+	public void glDrawTexsOES(short x, short y, short z, short width,
+			short height) {
+		throw unsupported("glDrawTexsOES");
+	}
+
+	public void glDrawTexsvOES(short[] coords, int offset) {
+		throw unsupported("glDrawTexsvOES");
+	}
+
+	public void glDrawTexsvOES(ShortBuffer coords) {
+		throw unsupported("glDrawTexsvOES");
+	}
+
+	public void glDrawTexxOES(int x, int y, int z, int width, int height) {
+		throw unsupported("glDrawTexxOES");
+	}
+
+	public void glDrawTexxvOES(int[] coords, int offset) {
+		throw unsupported("glDrawTexxvOES");
+	}
+
+	public void glDrawTexxvOES(IntBuffer coords) {
+		throw unsupported("glDrawTexxvOES");
+	}
+
+	public void glLoadPaletteFromModelViewMatrixOES() {
+		throw unsupported("glLoadPaletteFromModelViewMatrixOES");
+	}
+
+	public void glMatrixIndexPointerOES(int size, int type, int stride,
+			Buffer pointer) {
+		throw unsupported("glMatrixIndexPointerOES");
+	}
+
+	public void glMatrixIndexPointerOES(int size, int type, int stride,
+			int offset) {
+		throw unsupported("glMatrixIndexPointerOES");
+	}
+
+	public void glWeightPointerOES(int size, int type, int stride,
+			Buffer pointer) {
+		throw unsupported("glWeightPointerOES");
+	}
+
+	public void glWeightPointerOES(int size, int type, int stride, int offset) {
+		throw unsupported("glWeightPointerOES");
+	}
+}
@@ -0,0 +1,66 @@
+package org.glandais.android.livespheres.opengl.sprites;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of filling a whole grid through {@link Grid#set}, in floats or in
+ * fixed point, with and without colors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+
+	@Param({ "2", "16", "64" })
+	public int verts;
+
+	@Param({ "false", "true" })
+	public boolean useFixedPoint;
+
+	@Param({ "false", "true" })
+	public boolean useColor;
+
+	private Grid grid;
+	private float[] color;
+	private float offset;
+
+	@Setup
+	public void setUp() {
+		grid = new Grid(verts, verts, useFixedPoint);
+		color = useColor ? new float[] { 1.0f, 0.5f, 0.25f, 1.0f } : null;
+	}
+
+	@Benchmark
+	public Grid set() {
+		// Moves the grid, so that every call writes new values
+		offset += 0.5f;
+		if (offset > 100.0f) {
+			offset = 0.0f;
+		}
+		float step = 1.0f / (verts - 1);
+		for (int j = 0; j < verts; j++) {
+			float v = j * step;
+			for (int i = 0; i < verts; i++) {
+				float u = i * step;
+				grid.set(i, j, offset + u * 64.0f, offset + v * 64.0f, 0.0f,
+						u, v, color);
+			}
+		}
+		return grid;
+	}
+}
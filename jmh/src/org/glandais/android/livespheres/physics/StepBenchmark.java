@@ -0,0 +1,116 @@
+package org.glandais.android.livespheres.physics;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one physics update, as run by the physics thread: steps, then the
+ * state read for the snapshot. Every combination of the parameters is run,
+ * narrow them with -p, for instance "StepBenchmark -p engine=box2d -p
+ * ballCount=500".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepBenchmark {
+
+	// Same world as a 800x480 screen at 40 pixels per meter
+	private static final float WIDTH = 20.0f;
+	private static final float HEIGHT = 12.0f;
+	private static final float BALL_RADIUS = 0.11f;
+	private static final float MAX_FILL_RATIO = 0.5f;
+	private static final float GRAVITY = 4.0f * 9.81f;
+	private static final float STEP = 0.01f;
+	// Updates between two gravity changes
+	private static final int TILT_PERIOD = 200;
+
+	@Param({ "circles", "box2d" })
+	public String engine;
+
+	@Param({ "10", "100", "500", "1000", "2000" })
+	public int ballCount;
+
+	@Param({ "4" })
+	public int substeps;
+
+	@Param({ "3" })
+	public int velocityIterations;
+
+	@Param({ "8" })
+	public int positionIterations;
+
+	private PhysicsEngine physics;
+	private BodyState state;
+	private int updates;
+
+	@Setup
+	public void setUp() {
+		if ("box2d".equals(engine)) {
+			physics = new Box2DEngine(velocityIterations, positionIterations);
+		} else {
+			physics = new CircleEngine(velocityIterations, positionIterations);
+		}
+		physics.reset(WIDTH, HEIGHT);
+		addBalls(physics, ballCount);
+		physics.setGravity(0.0f, -GRAVITY);
+		state = new BodyState(ballCount);
+		updates = 0;
+	}
+
+	@Benchmark
+	public BodyState update() {
+		int i = updates++;
+		if (i % TILT_PERIOD == 0) {
+			// Tilt, so that balls do not settle
+			float angle = (float) (i * Math.PI / 1000.0);
+			physics.setGravity(GRAVITY * (float) Math.sin(angle), -GRAVITY
+					* (float) Math.cos(angle));
+		}
+		for (int j = 0; j < substeps; j++) {
+			physics.step(STEP);
+		}
+		physics.readState(state);
+		return state;
+	}
+
+	/**
+	 * Same layout as the wallpaper: a grid, and radii within 10% of the mean.
+	 */
+	private static void addBalls(PhysicsEngine engine, int count) {
+		float meanRadius = BALL_RADIUS * Math.min(WIDTH, HEIGHT);
+		float maxMeanRadius = (float) Math.sqrt(MAX_FILL_RATIO * WIDTH * HEIGHT
+				/ (count * Math.PI));
+		meanRadius = Math.min(meanRadius, maxMeanRadius);
+		float maxRadius = meanRadius * 1.1f;
+		int columns = Math.max(1, (int) (WIDTH / (2.0f * maxRadius)));
+		int rows = Math.max(1, (int) (HEIGHT / (2.0f * maxRadius)));
+		float cellWidth = WIDTH / columns;
+		float cellHeight = HEIGHT / rows;
+
+		// Fixed seed, so that runs can be compared
+		Random random = new Random(42);
+		for (int i = 0; i < count; i++) {
+			float radius = meanRadius
+					* (1.0f + 0.1f * (2.0f * random.nextFloat() - 1.0f));
+			int cell = i % (columns * rows);
+			float x = (cell % columns + 0.5f) * cellWidth;
+			float y = (cell / columns + 0.5f) * cellHeight;
+			engine.addBall(x, y, radius, 0.9f, 0.7f);
+		}
+	}
+}
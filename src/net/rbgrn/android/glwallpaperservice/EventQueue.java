@@ -0,0 +1,125 @@
+package net.rbgrn.android.glwallpaperservice;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue of events, for many producer threads and a single
+ * consumer, the GL thread. Each cell has a sequence number telling whether it
+ * can be written for a given position or read (D. Vyukov's bounded queue):
+ * producers claim a position with a compare and set, the consumer drains
+ * everything published in one batch. Nothing is allocated once created, so
+ * producers can keep their command objects and queue them again once run.
+ *
+ * Producers wake the consumer up only when it may not know about pending
+ * events yet, see {@link #requestWakeUp()}.
+ */
+class EventQueue {
+
+	private final int mMask;
+	private final AtomicReferenceArray<Runnable> mEvents;
+	// Position + 1 once published, position + capacity once consumed
+	private final AtomicLongArray mSequences;
+	private final AtomicLong mTail = new AtomicLong();
+	// Used by the consumer only
+	private long mHead = 0;
+	// Set by the first producer since the last drain
+	private final AtomicBoolean mWakeUpRequested = new AtomicBoolean();
+
+	/**
+	 * @param capacity
+	 *            a power of two
+	 */
+	EventQueue(int capacity) {
+		super();
+		if (capacity < 2 || (capacity & (capacity - 1)) != 0) {
+			throw new IllegalArgumentException("capacity");
+		}
+		mMask = capacity - 1;
+		mEvents = new AtomicReferenceArray<Runnable>(capacity);
+		mSequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			mSequences.set(i, i);
+		}
+	}
+
+	int getCapacity() {
+		return mMask + 1;
+	}
+
+	/**
+	 * Adds an event, from any thread.
+	 *
+	 * @return false if the queue is full
+	 */
+	boolean offer(Runnable event) {
+		long position = mTail.get();
+		while (true) {
+			int index = (int) position & mMask;
+			long sequence = mSequences.get(index);
+			long delta = sequence - position;
+			if (delta == 0) {
+				if (mTail.compareAndSet(position, position + 1)) {
+					mEvents.set(index, event);
+					// Publishes the event to the consumer
+					mSequences.set(index, position + 1);
+					return true;
+				}
+				position = mTail.get();
+			} else if (delta < 0) {
+				// Not consumed yet since the last lap
+				return false;
+			} else {
+				// Claimed by another producer
+				position = mTail.get();
+			}
+		}
+	}
+
+	/**
+	 * Called by producers after {@link #offer(Runnable)}.
+	 *
+	 * @return true if the caller must wake the consumer up, false if another
+	 *         producer did since the consumer last drained
+	 */
+	boolean requestWakeUp() {
+		return !mWakeUpRequested.get()
+				&& mWakeUpRequested.compareAndSet(false, true);
+	}
+
+	/**
+	 * @return true if no event is published at the head, consumer only
+	 */
+	boolean isEmpty() {
+		int index = (int) mHead & mMask;
+		return mSequences.get(index) != mHead + 1;
+	}
+
+	/**
+	 * Removes the published events, up to the size of the batch, consumer
+	 * only. Events published after the previous drain request a new wake-up.
+	 *
+	 * @return the number of events stored at the start of batch
+	 */
+	int drainTo(Runnable[] batch) {
+		mWakeUpRequested.set(false);
+		int count = 0;
+		long head = mHead;
+		int capacity = mMask + 1;
+		while (count < batch.length) {
+			int index = (int) head & mMask;
+			if (mSequences.get(index) != head + 1) {
+				break;
+			}
+			batch[count++] = mEvents.get(index);
+			mEvents.set(index, null);
+			// Frees the cell for the next lap
+			mSequences.set(index, head + capacity);
+			head++;
+		}
+		mHead = head;
+		return count;
+	}
+}
@@ -18,6 +18,8 @@ package net.rbgrn.android.glwallpaperservice;
 
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGL11;
@@ -193,6 +195,20 @@ public class GLWallpaperService extends WallpaperService {
 	public interface Renderer extends GLSurfaceView.Renderer {
 
 	}
+
+	/**
+	 * A renderer that tells when its next frame is due. In RENDERMODE_CONTINUOUSLY the GL thread sleeps until then,
+	 * instead of drawing frames as fast as it can.
+	 */
+	public interface PacedRenderer extends Renderer {
+		/**
+		 * Called on the GL thread after each frame.
+		 *
+		 * @return System.nanoTime() at which the next frame should be drawn, or Long.MAX_VALUE to wait for
+		 *         requestRender()
+		 */
+		long getNextFrameTime(long now);
+	}
 }
 
 class LogWriter extends Writer {
@@ -295,17 +311,6 @@ class DefaultWindowSurfaceFactory implements EGLWindowSurfaceFactory {
 	}
 }
 
-interface GLWrapper {
-	/**
-	 * Wraps a gl interface in another gl interface.
-	 *
-	 * @param gl
-	 * a GL interface that is to be wrapped.
-	 * @return either the input argument or another GL object that wraps the input argument.
-	 */
-	GL wrap(GL gl);
-}
-
 class EglHelper {
 
 	private EGL10 mEgl;
@@ -468,9 +473,14 @@ class GLThread extends Thread {
 	private final static boolean LOG_THREADS = false;
 	public final static int DEBUG_CHECK_GL_ERROR = 1;
 	public final static int DEBUG_LOG_GL_CALLS = 2;
+	// Frame period of renderers that are not paced
+	private final static long DEFAULT_FRAME_PERIOD_NS = 10000000L;
+	// Events queued and not run yet, beyond which producers wait
+	private final static int EVENT_QUEUE_CAPACITY = 64;
 
-	private final GLThreadManager sGLThreadManager = new GLThreadManager();
-	private GLThread mEglOwner;
+	// Shared by the GL threads of all engines of the process
+	private final static GLThreadCoordinator sCoordinator = new GLThreadCoordinator();
+	private final GLThreadCoordinator.Slot mSlot;
 
 	private EGLConfigChooser mEGLConfigChooser;
 	private EGLContextFactory mEGLContextFactory;
@@ -481,7 +491,7 @@ class GLThread extends Thread {
 	private boolean mSizeChanged = true;
 
 	// Once the thread is started, all accesses to the following member
-	// variables are protected by the sGLThreadManager monitor
+	// variables are protected by the sCoordinator lock
 	public boolean mDone;
 	private boolean mPaused;
 	private boolean mHasSurface;
@@ -491,11 +501,16 @@ class GLThread extends Thread {
 	private int mHeight;
 	private int mRenderMode;
 	private boolean mRequestRender;
-	private boolean mEventsWaiting;
-	// End of member variables protected by the sGLThreadManager monitor.
+	// System.nanoTime() of the next frame in RENDERMODE_CONTINUOUSLY
+	private long mNextFrameTime;
+	// End of member variables protected by the sCoordinator lock.
 
 	private GLWallpaperService.Renderer mRenderer;
-	private ArrayList<Runnable> mEventQueue = new ArrayList<Runnable>();
+	private final EventQueue mEventQueue = new EventQueue(EVENT_QUEUE_CAPACITY);
+	// Used by the GL thread only
+	private final Runnable[] mEventBatch = new Runnable[EVENT_QUEUE_CAPACITY];
+	// Events queued by the GL thread itself while the queue was full
+	private final ArrayList<Runnable> mOwnEvents = new ArrayList<Runnable>();
 	private EglHelper mEglHelper;
 
 	GLThread(GLWallpaperService.Renderer renderer, EGLConfigChooser chooser, EGLContextFactory contextFactory,
@@ -511,6 +526,7 @@ class GLThread extends Thread {
 		this.mEGLContextFactory = contextFactory;
 		this.mEGLWindowSurfaceFactory = surfaceFactory;
 		this.mGLWrapper = wrapper;
+		mSlot = sCoordinator.register(this);
 	}
 
 	@Override
@@ -525,18 +541,27 @@ class GLThread extends Thread {
 		} catch (InterruptedException e) {
 			// fall thru and exit normally
 		} finally {
-			sGLThreadManager.threadExiting(this);
+			if (LOG_THREADS) {
+				Log.i("GLThread", "exiting tid=" + getId());
+			}
+			sCoordinator.lock();
+			try {
+				mDone = true;
+				sCoordinator.threadExiting(mSlot);
+			} finally {
+				sCoordinator.unlock();
+			}
 		}
 	}
 
 	/*
-	 * This private method should only be called inside a synchronized(sGLThreadManager) block.
+	 * This private method should only be called with the sCoordinator lock held.
 	 */
 	private void stopEglLocked() {
 		if (mHaveEgl) {
 			mHaveEgl = false;
 			mEglHelper.destroySurface();
-			sGLThreadManager.releaseEglSurface(this);
+			sCoordinator.releaseEglSurface(mSlot);
 		}
 	}
 
@@ -546,6 +571,7 @@ class GLThread extends Thread {
 			GL10 gl = null;
 			boolean tellRendererSurfaceCreated = true;
 			boolean tellRendererSurfaceChanged = true;
+			boolean eventsWaiting = false;
 
 			/*
 			 * This is our main activity thread's loop, we go until asked to quit.
@@ -558,28 +584,38 @@ class GLThread extends Thread {
 				int h = 0;
 				boolean changed = false;
 				boolean needStart = false;
-				boolean eventsWaiting = false;
+				boolean woken = false;
 
-				synchronized (sGLThreadManager) {
+				sCoordinator.lock();
+				try {
+					if (eventsWaiting) {
+						// Room again for producers that found the queue full
+						sCoordinator.eventsDrained(mSlot);
+						eventsWaiting = false;
+					}
 					while (true) {
+						long now = System.nanoTime();
 						// Manage acquiring and releasing the SurfaceView
 						// surface and the EGL surface.
 						if (mPaused) {
 							stopEglLocked();
 						}
+						boolean waitingForEgl = false;
 						if (!mHasSurface) {
 							if (!mWaitingForSurface) {
 								stopEglLocked();
 								mWaitingForSurface = true;
-								sGLThreadManager.notifyAll();
+								sCoordinator.stateChanged(mSlot);
 							}
 						} else {
 							if (!mHaveEgl) {
-								if (sGLThreadManager.tryAcquireEglSurface(this)) {
+								if (sCoordinator.tryAcquireEglSurface(mSlot)) {
 									mHaveEgl = true;
 									mEglHelper.start();
 									mRequestRender = true;
 									needStart = true;
+								} else {
+									waitingForEgl = !mPaused;
 								}
 							}
 						}
@@ -593,14 +629,15 @@ class GLThread extends Thread {
 							return;
 						}
 
-						if (mEventsWaiting) {
+						if (!mEventQueue.isEmpty() || !mOwnEvents.isEmpty()) {
 							eventsWaiting = true;
-							mEventsWaiting = false;
 							break;
 						}
 
-						if ((!mPaused) && mHasSurface && mHaveEgl && (mWidth > 0) && (mHeight > 0)
-								&& (mRequestRender || (mRenderMode == GLWallpaperService.GLEngine.RENDERMODE_CONTINUOUSLY))) {
+						boolean canRender = (!mPaused) && mHasSurface && mHaveEgl && (mWidth > 0) && (mHeight > 0);
+						boolean paced = mRenderMode == GLWallpaperService.GLEngine.RENDERMODE_CONTINUOUSLY
+								&& mNextFrameTime != Long.MAX_VALUE;
+						if (canRender && (mRequestRender || (paced && now >= mNextFrameTime))) {
 							changed = mSizeChanged;
 							w = mWidth;
 							h = mHeight;
@@ -609,31 +646,48 @@ class GLThread extends Thread {
 							if (mHasSurface && mWaitingForSurface) {
 								changed = true;
 								mWaitingForSurface = false;
-								sGLThreadManager.notifyAll();
 							}
 							break;
 						}
 
-						// By design, this is the only place where we wait().
+						// By design, this is the only place where we wait.
 
 						if (LOG_THREADS) {
 							Log.i("GLThread", "waiting tid=" + getId());
 						}
-						sGLThreadManager.wait();
+						if (woken) {
+							// Woken up for nothing to do
+							sCoordinator.spuriousWakeUp(mSlot);
+						}
+						int state = waitingForEgl ? GLThreadCoordinator.STATE_WAITING_FOR_EGL
+								: GLThreadCoordinator.STATE_WAITING;
+						if (canRender && paced) {
+							// Until the next frame is due, unless woken up before
+							sCoordinator.await(mSlot, state, mNextFrameTime - now);
+						} else {
+							sCoordinator.await(mSlot, state, 0);
+						}
+						woken = true;
 					}
-				} // end of synchronized(sGLThreadManager)
+				} finally {
+					sCoordinator.unlock();
+				}
 
 				/*
 				 * Handle queued events
 				 */
 				if (eventsWaiting) {
-					Runnable r;
-					while ((r = getEvent()) != null) {
+					// All the events published so far, in one batch
+					int count = mEventQueue.drainTo(mEventBatch);
+					for (int i = 0; i < count; i++) {
+						Runnable r = mEventBatch[i];
+						mEventBatch[i] = null;
 						r.run();
-						if (isDone()) {
-							return;
-						}
 					}
+					for (int i = 0; i < mOwnEvents.size(); i++) {
+						mOwnEvents.get(i).run();
+					}
+					mOwnEvents.clear();
 					// Go back and see if we need to wait to render.
 					continue;
 				}
@@ -647,6 +701,12 @@ class GLThread extends Thread {
 					tellRendererSurfaceChanged = true;
 				}
 				if (tellRendererSurfaceCreated) {
+					sCoordinator.lock();
+					try {
+						sCoordinator.checkGLDriver(gl);
+					} finally {
+						sCoordinator.unlock();
+					}
 					mRenderer.onSurfaceCreated(gl, mEglHelper.mEglConfig);
 					tellRendererSurfaceCreated = false;
 				}
@@ -663,23 +723,42 @@ class GLThread extends Thread {
 					 * rendered frame
 					 */
 					mEglHelper.swap();
-					Thread.sleep(10);
+
+					long now = System.nanoTime();
+					long nextFrameTime;
+					if (mRenderer instanceof GLWallpaperService.PacedRenderer) {
+						nextFrameTime = ((GLWallpaperService.PacedRenderer) mRenderer).getNextFrameTime(now);
+					} else {
+						nextFrameTime = now + DEFAULT_FRAME_PERIOD_NS;
+					}
+					sCoordinator.lock();
+					try {
+						mNextFrameTime = nextFrameTime;
+					} finally {
+						sCoordinator.unlock();
+					}
 				}
 			}
 		} finally {
 			/*
 			 * clean-up everything...
 			 */
-			synchronized (sGLThreadManager) {
+			sCoordinator.lock();
+			try {
 				stopEglLocked();
 				mEglHelper.finish();
+			} finally {
+				sCoordinator.unlock();
 			}
 		}
 	}
 
 	private boolean isDone() {
-		synchronized (sGLThreadManager) {
+		sCoordinator.lock();
+		try {
 			return mDone;
+		} finally {
+			sCoordinator.unlock();
 		}
 	}
 
@@ -687,85 +766,113 @@ class GLThread extends Thread {
 		if (!((GLWallpaperService.GLEngine.RENDERMODE_WHEN_DIRTY <= renderMode) && (renderMode <= GLWallpaperService.GLEngine.RENDERMODE_CONTINUOUSLY))) {
 			throw new IllegalArgumentException("renderMode");
 		}
-		synchronized (sGLThreadManager) {
+		sCoordinator.lock();
+		try {
 			mRenderMode = renderMode;
 			if (renderMode == GLWallpaperService.GLEngine.RENDERMODE_CONTINUOUSLY) {
-				sGLThreadManager.notifyAll();
+				mNextFrameTime = 0;
+				sCoordinator.wakeUp(mSlot);
 			}
+		} finally {
+			sCoordinator.unlock();
 		}
 	}
 
 	public int getRenderMode() {
-		synchronized (sGLThreadManager) {
+		sCoordinator.lock();
+		try {
 			return mRenderMode;
+		} finally {
+			sCoordinator.unlock();
 		}
 	}
 
 	public void requestRender() {
-		synchronized (sGLThreadManager) {
+		sCoordinator.lock();
+		try {
 			mRequestRender = true;
-			sGLThreadManager.notifyAll();
+			sCoordinator.wakeUp(mSlot);
+		} finally {
+			sCoordinator.unlock();
 		}
 	}
 
 	public void surfaceCreated(SurfaceHolder holder) {
 		mHolder = holder;
-		synchronized (sGLThreadManager) {
+		sCoordinator.lock();
+		try {
 			if (LOG_THREADS) {
 				Log.i("GLThread", "surfaceCreated tid=" + getId());
 			}
 			mHasSurface = true;
-			sGLThreadManager.notifyAll();
+			sCoordinator.wakeUp(mSlot);
+		} finally {
+			sCoordinator.unlock();
 		}
 	}
 
 	public void surfaceDestroyed() {
-		synchronized (sGLThreadManager) {
+		sCoordinator.lock();
+		try {
 			if (LOG_THREADS) {
 				Log.i("GLThread", "surfaceDestroyed tid=" + getId());
 			}
 			mHasSurface = false;
-			sGLThreadManager.notifyAll();
+			sCoordinator.wakeUp(mSlot);
 			while (!mWaitingForSurface && isAlive() && !mDone) {
 				try {
-					sGLThreadManager.wait();
+					sCoordinator.awaitStateChange(mSlot);
 				} catch (InterruptedException e) {
 					Thread.currentThread().interrupt();
 				}
 			}
+		} finally {
+			sCoordinator.unlock();
 		}
 	}
 
 	public void onPause() {
-		synchronized (sGLThreadManager) {
+		sCoordinator.lock();
+		try {
 			mPaused = true;
-			sGLThreadManager.notifyAll();
+			sCoordinator.wakeUp(mSlot);
+		} finally {
+			sCoordinator.unlock();
 		}
 	}
 
 	public void onResume() {
-		synchronized (sGLThreadManager) {
+		sCoordinator.lock();
+		try {
 			mPaused = false;
 			mRequestRender = true;
-			sGLThreadManager.notifyAll();
+			sCoordinator.wakeUp(mSlot);
+		} finally {
+			sCoordinator.unlock();
 		}
 	}
 
 	public void onWindowResize(int w, int h) {
-		synchronized (sGLThreadManager) {
+		sCoordinator.lock();
+		try {
 			mWidth = w;
 			mHeight = h;
 			mSizeChanged = true;
-			sGLThreadManager.notifyAll();
+			sCoordinator.wakeUp(mSlot);
+		} finally {
+			sCoordinator.unlock();
 		}
 	}
 
 	public void requestExitAndWait() {
 		// don't call this from GLThread thread or it is a guaranteed
 		// deadlock!
-		synchronized (sGLThreadManager) {
+		sCoordinator.lock();
+		try {
 			mDone = true;
-			sGLThreadManager.notifyAll();
+			sCoordinator.wakeUp(mSlot);
+		} finally {
+			sCoordinator.unlock();
 		}
 		try {
 			join();
@@ -775,63 +882,267 @@ class GLThread extends Thread {
 	}
 
 	/**
-	 * Queue an "event" to be run on the GL rendering thread.
+	 * Queue an "event" to be run on the GL rendering thread. Does not lock nor allocate, except to wake the GL thread
+	 * up for the first event since it last ran events, so the same runnable can be queued again once run. Blocks
+	 * while EVENT_QUEUE_CAPACITY events are pending, until the GL thread has drained them.
 	 *
 	 * @param r
 	 * the runnable to be run on the GL rendering thread.
 	 */
 	public void queueEvent(Runnable r) {
-		synchronized (this) {
-			mEventQueue.add(r);
-			synchronized (sGLThreadManager) {
-				mEventsWaiting = true;
-				sGLThreadManager.notifyAll();
+		if (Thread.currentThread() == this) {
+			// Waiting for the GL thread to drain the queue would never end
+			if (!mEventQueue.offer(r)) {
+				mOwnEvents.add(r);
+			}
+			return;
+		}
+		if (!mEventQueue.offer(r)) {
+			sCoordinator.lock();
+			try {
+				// The GL thread signals after a drain with the lock held, so
+				// trying again under the lock cannot miss it
+				while (!mEventQueue.offer(r)) {
+					if (mDone) {
+						// Never drained again
+						return;
+					}
+					sCoordinator.wakeUp(mSlot);
+					try {
+						sCoordinator.awaitEventsDrained(mSlot);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			} finally {
+				sCoordinator.unlock();
+			}
+		}
+		if (mEventQueue.requestWakeUp()) {
+			sCoordinator.lock();
+			try {
+				sCoordinator.wakeUp(mSlot);
+			} finally {
+				sCoordinator.unlock();
 			}
 		}
 	}
+}
 
-	private Runnable getEvent() {
-		synchronized (this) {
-			if (mEventQueue.size() > 0) {
-				return mEventQueue.remove(0);
-			}
+/**
+ * Coordinates the GL threads of all engines of the process. Their state is guarded by a single lock, but each thread
+ * waits on its own condition, so that a change only wakes up the thread it concerns, and the right to use an EGL
+ * surface only wakes up the threads waiting for it. As in GLSurfaceView, that right is given to one thread at a time
+ * only on GPUs that cannot run several GLES contexts; elsewhere the preview and the home screen engines each keep
+ * their own surface.
+ *
+ * Each thread goes through explicit states, see STATE_*, and counts its wake-ups, the spurious ones after which it
+ * waits again, and the time spent waiting. With LOG_STATS, they are logged when the thread exits, with the totals of
+ * the process.
+ */
+class GLThreadCoordinator {
+	private final static String TAG = "GLThreadCoordinator";
+	private final static boolean LOG_STATS = false;
+
+	// Created, not waiting yet
+	public final static int STATE_STARTING = 0;
+	// Drawing, running events, or checking its state
+	public final static int STATE_RUNNING = 1;
+	// Waiting for a request, an event, a surface or the next frame
+	public final static int STATE_WAITING = 2;
+	// Ready to draw, waiting for the EGL surface held by another thread
+	public final static int STATE_WAITING_FOR_EGL = 3;
+	public final static int STATE_EXITED = 4;
+
+	private final static String MSM7K_RENDERER_PREFIX = "Q3Dimension MSM7500 ";
 
+	/**
+	 * The coordination state of a thread, guarded by the lock.
+	 */
+	static class Slot {
+		final GLThread thread;
+		// Signaled to wake the thread up
+		final Condition wakeUp;
+		// Signaled when the thread waits for a surface, or exits
+		final Condition stateChanged;
+		// Signaled when the thread drained events producers were blocked on
+		final Condition eventsDrained;
+		int blockedProducers;
+		int state = STATE_STARTING;
+		int wakeUps;
+		int spuriousWakeUps;
+		long waitTime;
+
+		Slot(GLThread thread, Condition wakeUp, Condition stateChanged, Condition eventsDrained) {
+			this.thread = thread;
+			this.wakeUp = wakeUp;
+			this.stateChanged = stateChanged;
+			this.eventsDrained = eventsDrained;
+		}
+
+		@Override
+		public String toString() {
+			return "wakeups=" + wakeUps + " spurious=" + spuriousWakeUps + " waited=" + waitTime / 1000000L + "ms";
 		}
-		return null;
 	}
 
-	private class GLThreadManager {
+	private final ReentrantLock mLock = new ReentrantLock();
+	private final ArrayList<Slot> mSlots = new ArrayList<Slot>();
+	private Slot mEglOwner;
+	// Cleared once a GL driver is known to support a single context
+	private boolean mGLDriverChecked = false;
+	private boolean mMultipleContextsAllowed = true;
 
-		public synchronized void threadExiting(GLThread thread) {
-			if (LOG_THREADS) {
-				Log.i("GLThread", "exiting tid=" + thread.getId());
-			}
-			thread.mDone = true;
-			if (mEglOwner == thread) {
-				mEglOwner = null;
+	// Totals of the exited threads
+	private int mWakeUps;
+	private int mSpuriousWakeUps;
+	private long mWaitTime;
+
+	public void lock() {
+		mLock.lock();
+	}
+
+	public void unlock() {
+		mLock.unlock();
+	}
+
+	public Slot register(GLThread thread) {
+		mLock.lock();
+		try {
+			Slot slot = new Slot(thread, mLock.newCondition(), mLock.newCondition(), mLock.newCondition());
+			mSlots.add(slot);
+			return slot;
+		} finally {
+			mLock.unlock();
+		}
+	}
+
+	/*
+	 * The methods below must be called with the lock held.
+	 */
+
+	/**
+	 * Waits until the thread is woken up, or for at most timeout ns if positive. Called by the thread itself.
+	 */
+	public void await(Slot slot, int state, long timeout) throws InterruptedException {
+		slot.state = state;
+		long start = System.nanoTime();
+		try {
+			if (timeout > 0) {
+				slot.wakeUp.awaitNanos(timeout);
+			} else {
+				slot.wakeUp.await();
 			}
-			notifyAll();
+		} finally {
+			slot.waitTime += System.nanoTime() - start;
+			slot.wakeUps++;
+			slot.state = STATE_RUNNING;
 		}
+	}
 
-		/*
-		 * Tries once to acquire the right to use an EGL surface. Does not block.
-		 *
-		 * @return true if the right to use an EGL surface was acquired.
-		 */
-		public synchronized boolean tryAcquireEglSurface(GLThread thread) {
-			if (mEglOwner == thread || mEglOwner == null) {
-				mEglOwner = thread;
-				notifyAll();
-				return true;
+	/**
+	 * Wakes the thread up if it waits, after a change of its state.
+	 */
+	public void wakeUp(Slot slot) {
+		if (slot.state == STATE_WAITING || slot.state == STATE_WAITING_FOR_EGL) {
+			slot.wakeUp.signal();
+		}
+	}
+
+	public void spuriousWakeUp(Slot slot) {
+		slot.spuriousWakeUps++;
+	}
+
+	/**
+	 * Tells the threads waiting for this one to wait for a surface or exit.
+	 */
+	public void stateChanged(Slot slot) {
+		slot.stateChanged.signalAll();
+	}
+
+	public void awaitStateChange(Slot slot) throws InterruptedException {
+		slot.stateChanged.await();
+	}
+
+	/**
+	 * Waits until the thread drains its events, called by a producer that found the queue full.
+	 */
+	public void awaitEventsDrained(Slot slot) throws InterruptedException {
+		slot.blockedProducers++;
+		try {
+			slot.eventsDrained.await();
+		} finally {
+			slot.blockedProducers--;
+		}
+	}
+
+	/**
+	 * Wakes the producers blocked on a full queue up, called by the thread after a drain.
+	 */
+	public void eventsDrained(Slot slot) {
+		if (slot.blockedProducers > 0) {
+			slot.eventsDrained.signalAll();
+		}
+	}
+
+	public void threadExiting(Slot slot) {
+		releaseEglSurface(slot);
+		slot.state = STATE_EXITED;
+		mSlots.remove(slot);
+		mWakeUps += slot.wakeUps;
+		mSpuriousWakeUps += slot.spuriousWakeUps;
+		mWaitTime += slot.waitTime;
+		if (LOG_STATS) {
+			Log.d(TAG, slot.thread.getName() + " " + slot + ", process wakeups=" + mWakeUps + " spurious="
+					+ mSpuriousWakeUps + " waited=" + mWaitTime / 1000000L + "ms");
+		}
+		stateChanged(slot);
+		slot.eventsDrained.signalAll();
+	}
+
+	/*
+	 * Tries once to acquire the right to use an EGL surface. Does not block.
+	 *
+	 * @return true if the right to use an EGL surface was acquired.
+	 */
+	public boolean tryAcquireEglSurface(Slot slot) {
+		if (mEglOwner == slot || mEglOwner == null) {
+			mEglOwner = slot;
+			return true;
+		}
+		// Other threads only wait for the owner on limited GPUs
+		return mMultipleContextsAllowed;
+	}
+
+	/**
+	 * Checks, once per process, whether the GL driver can run several GLES contexts, from the first thread that got
+	 * one. The MSM7K driver cannot, GLSurfaceView serializes access to it the same way.
+	 */
+	public void checkGLDriver(GL10 gl) {
+		if (!mGLDriverChecked) {
+			String renderer = gl.glGetString(GL10.GL_RENDERER);
+			mMultipleContextsAllowed = renderer == null || !renderer.startsWith(MSM7K_RENDERER_PREFIX);
+			mGLDriverChecked = true;
+			if (LOG_STATS) {
+				Log.d(TAG, "renderer=" + renderer + " multiple contexts=" + mMultipleContextsAllowed);
 			}
-			return false;
 		}
+	}
 
-		public synchronized void releaseEglSurface(GLThread thread) {
-			if (mEglOwner == thread) {
-				mEglOwner = null;
+	/**
+	 * Gives up the right to use an EGL surface, waking up the threads waiting for it.
+	 */
+	public void releaseEglSurface(Slot slot) {
+		if (mEglOwner != slot) {
+			return;
+		}
+		mEglOwner = null;
+		for (int i = 0; i < mSlots.size(); i++) {
+			Slot other = mSlots.get(i);
+			if (other.state == STATE_WAITING_FOR_EGL) {
+				other.wakeUp.signal();
 			}
-			notifyAll();
 		}
 	}
 }
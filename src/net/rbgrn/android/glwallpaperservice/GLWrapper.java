@@ -0,0 +1,19 @@
+package net.rbgrn.android.glwallpaperservice;
+
+import javax.microedition.khronos.opengles.GL;
+
+/**
+ * An interface used to wrap a GL interface, set with
+ * {@link GLWallpaperService.GLEngine#setGLWrapper(GLWrapper)}. The wrapper is
+ * called each time a surface is created, on the GL thread.
+ */
+public interface GLWrapper {
+	/**
+	 * Wraps a gl interface in another gl interface.
+	 *
+	 * @param gl
+	 * a GL interface that is to be wrapped.
+	 * @return either the input argument or another GL object that wraps the input argument.
+	 */
+	GL wrap(GL gl);
+}
@@ -2,8 +2,8 @@ package org.glandais.android.livespheres;
 
 import java.util.List;
 
+import org.glandais.android.livespheres.physics.BodyState;
 import org.jbox2d.common.Vec2;
-import org.jbox2d.dynamics.Body;
 
 import android.app.Application;
 import android.app.Service;
@@ -241,7 +241,7 @@ public class SpheresWallpaper extends WallpaperService {
 		}
 
 		public void draw(Canvas c) {
-			List<Body> balls = mWorld.getBalls();
+			BodyState balls = mWorld.getState();
 
 			// if (bitmap_background != null) {
 			// bitmap_background.setBounds(0, 0, c.getWidth(), c.getHeight());
@@ -250,15 +250,16 @@ public class SpheresWallpaper extends WallpaperService {
 			c.drawARGB(255, 255, 255, 255);
 			// }
 
-			for (Body body : balls) {
-				Vec2 screenPos = toScreen(body.getPosition());
-				Float worldRadius = (Float) body.getUserData();
+			for (int i = 0; i < balls.count; i++) {
+				Vec2 position = new Vec2(balls.x[i], balls.y[i]);
+				Vec2 screenPos = toScreen(position);
+				float worldRadius = balls.radius[i];
 				float screenRadius = worldRadius * scaleFactor;
 
-				float bodyAngle = body.getAngle();
+				float bodyAngle = balls.angle[i];
 				float xball = (float) (worldRadius * Math.cos(bodyAngle));
 				float yball = (float) (worldRadius * Math.sin(bodyAngle));
-				Vec2 point = body.getPosition().add(new Vec2(xball, yball));
+				Vec2 point = position.add(new Vec2(xball, yball));
 				Vec2 screenPos2 = toScreen(point);
 
 				mPaint.setColor(0xff000000);
@@ -0,0 +1,80 @@
+package org.glandais.android.livespheres.opengl;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Counts heap allocations made by the current thread between {@link #begin()}
+ * and {@link #end()}. Used to check that the steady-state frame path (physics
+ * update, snapshot, draw and input) does not allocate: once the warm-up
+ * frames are over, every section that allocates is a failure, which throws
+ * unless {@link #FAIL_ON_ALLOCATION} is cleared. This holds with the
+ * circle-only engine, the default; JBox2D allocates in its broadphase.
+ *
+ * Disabled unless {@link #ENABLED} is set, as allocation counting slows the
+ * VM down. Counting starts with the first section and runs until the process
+ * dies; each section resets the count of its thread.
+ */
+public class AllocationTracker {
+
+	public static final boolean ENABLED = false;
+
+	// Set to only log and count the failures
+	public static final boolean FAIL_ON_ALLOCATION = true;
+
+	private static final String TAG = "AllocationTracker";
+
+	// Sections ignored while the world, caches and JIT settle down
+	private static final int WARMUP_COUNT = 100;
+
+	private static volatile boolean sCounting = false;
+
+	private final String mName;
+	private int mSectionCount;
+	private int mFailureCount;
+
+	public AllocationTracker(String name) {
+		super();
+		mName = name;
+	}
+
+	private static synchronized void startCounting() {
+		if (!sCounting) {
+			Debug.startAllocCounting();
+			sCounting = true;
+		}
+	}
+
+	public void begin() {
+		if (ENABLED) {
+			if (!sCounting) {
+				startCounting();
+			}
+			Debug.resetThreadAllocCount();
+		}
+	}
+
+	public void end() {
+		if (ENABLED) {
+			int allocations = Debug.getThreadAllocCount();
+			mSectionCount++;
+			if (mSectionCount > WARMUP_COUNT && allocations > 0) {
+				mFailureCount++;
+				String message = mName + " allocated " + allocations
+						+ " objects (failures: " + mFailureCount + "/"
+						+ (mSectionCount - WARMUP_COUNT) + ")";
+				if (FAIL_ON_ALLOCATION) {
+					throw new IllegalStateException(message);
+				}
+				Log.e(TAG, message);
+			}
+		}
+	}
+
+	/**
+	 * @return sections that allocated after the warm-up
+	 */
+	public int getFailureCount() {
+		return mFailureCount;
+	}
+}
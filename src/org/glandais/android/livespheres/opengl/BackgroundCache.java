@@ -0,0 +1,159 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * Keeps the prepared background in the cache directory, as the raw pixels of
+ * its texture, so that the next engines upload it without decoding. There
+ * is one file per surface size, for both orientations. Files are read and
+ * written through memory mappings.
+ *
+ * The header, big endian, holds the source path and modification time, the
+ * image and texture sizes; a file whose header does not match the request is
+ * stale.
+ */
+public class BackgroundCache {
+
+	private static final String TAG = "BackgroundCache";
+
+	private static final String PREFIX = "background_";
+	private static final String SUFFIX = ".raw";
+	// "LSBG"
+	private static final int MAGIC = 0x4C534247;
+	private static final int VERSION = 1;
+	private static final int FORMAT_RGB_565 = 0;
+	// Magic, version, format, modification time, 4 sizes, path length
+	private static final int FIXED_HEADER_SIZE = 4 + 4 + 4 + 8 + 4 * 2 + 4;
+
+	private final File mDirectory;
+
+	public BackgroundCache(File directory) {
+		super();
+		mDirectory = directory;
+	}
+
+	/**
+	 * @return the RGB 565 pixels of the texture prepared from the image for
+	 *         the size, mapped in memory, null if not cached
+	 */
+	public ByteBuffer read(String path, int width, int height,
+			int textureWidth, int textureHeight) {
+		File file = getFile(width, height);
+		if (!file.exists()) {
+			return null;
+		}
+		long modified = new File(path).lastModified();
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			byte[] pathBytes = path.getBytes("UTF-8");
+			if (buffer.remaining() < FIXED_HEADER_SIZE
+					|| buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+					|| buffer.getInt() != FORMAT_RGB_565
+					|| buffer.getLong() != modified
+					|| buffer.getShort() != width
+					|| buffer.getShort() != height
+					|| buffer.getShort() != textureWidth
+					|| buffer.getShort() != textureHeight
+					|| buffer.getInt() != pathBytes.length
+					|| buffer.remaining() != pathBytes.length + textureWidth
+							* textureHeight * 2) {
+				return null;
+			}
+			for (int i = 0; i < pathBytes.length; i++) {
+				if (buffer.get() != pathBytes[i]) {
+					return null;
+				}
+			}
+			// The mapping outlives the channel
+			return buffer.slice();
+		} catch (IOException e) {
+			Log.w(TAG, "Cannot read " + file, e);
+			return null;
+		} finally {
+			close(raf);
+		}
+	}
+
+	/**
+	 * Stores the texture bitmap prepared from the image, RGB 565, with the
+	 * image at its top left.
+	 */
+	public void write(String path, int width, int height, Bitmap bitmap) {
+		File file = getFile(width, height);
+		File temp = new File(mDirectory, file.getName() + ".tmp");
+		RandomAccessFile raf = null;
+		try {
+			byte[] pathBytes = path.getBytes("UTF-8");
+			int size = FIXED_HEADER_SIZE + pathBytes.length
+					+ bitmap.getRowBytes() * bitmap.getHeight();
+			raf = new RandomAccessFile(temp, "rw");
+			raf.setLength(size);
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(FORMAT_RGB_565);
+			buffer.putLong(new File(path).lastModified());
+			buffer.putShort((short) width);
+			buffer.putShort((short) height);
+			buffer.putShort((short) bitmap.getWidth());
+			buffer.putShort((short) bitmap.getHeight());
+			buffer.putInt(pathBytes.length);
+			buffer.put(pathBytes);
+			bitmap.copyPixelsToBuffer(buffer);
+			buffer.force();
+		} catch (IOException e) {
+			Log.w(TAG, "Cannot write " + temp, e);
+			temp.delete();
+			return;
+		} finally {
+			close(raf);
+		}
+		// Readers never see a partial file
+		if (!temp.renameTo(file)) {
+			Log.w(TAG, "Cannot rename " + temp);
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Deletes all cached backgrounds, when the image changes.
+	 */
+	public void clear() {
+		File[] files = mDirectory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].getName().startsWith(PREFIX)) {
+				files[i].delete();
+			}
+		}
+	}
+
+	private File getFile(int width, int height) {
+		return new File(mDirectory, PREFIX + width + "x" + height + SUFFIX);
+	}
+
+	private static void close(RandomAccessFile raf) {
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				// Ignore.
+			}
+		}
+	}
+}
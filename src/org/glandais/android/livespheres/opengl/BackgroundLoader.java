@@ -0,0 +1,386 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.nio.ByteBuffer;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+/**
+ * Decodes the background image picked by the user on a worker thread, at
+ * the size of the surface. Bounds are read first, then the image is decoded
+ * with the largest power of two sample size still covering the surface, and
+ * scaled and cropped to the top left of a bitmap sized for a texture. That
+ * bitmap is reused by the next decodes once the GL thread has uploaded it.
+ * When a cache is given and enabled, prepared images are stored there and
+ * the next engines map them instead of decoding.
+ *
+ * Requests come from any thread, the GL thread polls for the result.
+ */
+public class BackgroundLoader implements Runnable {
+
+	private static final String TAG = "BackgroundLoader";
+	// Logs how long each image took, mapped or decoded
+	private static final boolean LOG_STATS = false;
+
+	/**
+	 * A prepared image, at the top left of its texture. Both bitmap and
+	 * pixels are null to go back to the default background.
+	 */
+	public static class Image {
+		// Decoded image
+		public final Bitmap bitmap;
+		// Or RGB 565 pixels from the cache
+		public final ByteBuffer pixels;
+		public final int width;
+		public final int height;
+		public final int textureWidth;
+		public final int textureHeight;
+
+		private Image(Bitmap bitmap, ByteBuffer pixels, int width,
+				int height, int textureWidth, int textureHeight) {
+			super();
+			this.bitmap = bitmap;
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			this.textureWidth = textureWidth;
+			this.textureHeight = textureHeight;
+		}
+	}
+
+	private final Runnable mOnReady;
+	private final BackgroundCache mCache;
+
+	// All accesses to the following fields are protected by this monitor
+	private String mPath;
+	private boolean mCacheEnabled = true;
+	private int mWidth = 0;
+	private int mHeight = 0;
+	// Bumped by each request, images decoded for older ones are dropped
+	private int mRequest = 0;
+	private int mDecoded = 0;
+	private Image mReady;
+	// Bitmap given back by the GL thread, for the next decode
+	private Bitmap mSpare;
+	private Thread mThread;
+	private boolean mDone = false;
+
+	// Used by the worker thread only
+	private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+	private final byte[] mTempStorage = new byte[16 * 1024];
+	private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private final Rect mSource = new Rect();
+	private final Rect mTarget = new Rect();
+
+	/**
+	 * @param onReady
+	 *            run on the worker thread when an image can be polled
+	 * @param cache
+	 *            where to keep prepared images, null to always decode
+	 */
+	public BackgroundLoader(Runnable onReady, BackgroundCache cache) {
+		super();
+		mOnReady = onReady;
+		mCache = cache;
+	}
+
+	/**
+	 * @param path
+	 *            image file, null for the default background
+	 */
+	public synchronized void setPath(String path) {
+		if (path == null ? mPath == null : path.equals(mPath)) {
+			return;
+		}
+		if (mPath != null && mCache != null) {
+			// Files of another image are stale, drop them all
+			mCache.clear();
+		}
+		mPath = path;
+		request();
+	}
+
+	/**
+	 * Turns the cache off to always decode, to compare the start times with
+	 * and without it. The current image is loaded again.
+	 */
+	public synchronized void setCacheEnabled(boolean cacheEnabled) {
+		if (cacheEnabled == mCacheEnabled) {
+			return;
+		}
+		mCacheEnabled = cacheEnabled;
+		request();
+	}
+
+	public synchronized void setSize(int width, int height) {
+		if (width == mWidth && height == mHeight) {
+			return;
+		}
+		mWidth = width;
+		mHeight = height;
+		request();
+	}
+
+	/**
+	 * Decodes the image again, when its texture has been lost with the GL
+	 * context.
+	 */
+	public synchronized void reload() {
+		request();
+	}
+
+	private void request() {
+		mRequest++;
+		if (mDone) {
+			return;
+		}
+		if (mThread == null && mPath != null) {
+			mThread = new Thread(this, "BackgroundLoader");
+			mThread.setPriority(Thread.MIN_PRIORITY);
+			mThread.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * @return the image decoded for the last request, once, null if not
+	 *         ready. Its bitmap must be handed back with
+	 *         {@link #recycle(Bitmap)} once uploaded.
+	 */
+	public synchronized Image poll() {
+		Image image = mReady;
+		mReady = null;
+		return image;
+	}
+
+	public synchronized void recycle(Bitmap bitmap) {
+		if (mDone) {
+			bitmap.recycle();
+			return;
+		}
+		keepSpare(bitmap);
+	}
+
+	public void shutdown() {
+		Thread thread;
+		synchronized (this) {
+			mDone = true;
+			thread = mThread;
+			mThread = null;
+			notifyAll();
+		}
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			if (mReady != null && mReady.bitmap != null) {
+				mReady.bitmap.recycle();
+			}
+			mReady = null;
+			if (mSpare != null) {
+				mSpare.recycle();
+				mSpare = null;
+			}
+		}
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				String path;
+				int width;
+				int height;
+				int request;
+				BackgroundCache cache;
+				synchronized (this) {
+					while (!mDone && (mDecoded == mRequest || mWidth == 0)) {
+						wait();
+					}
+					if (mDone) {
+						return;
+					}
+					path = mPath;
+					width = mWidth;
+					height = mHeight;
+					request = mRequest;
+					cache = mCacheEnabled ? mCache : null;
+				}
+
+				Image image = load(path, width, height, cache);
+
+				boolean ready = false;
+				synchronized (this) {
+					if (request == mRequest && !mDone) {
+						mDecoded = request;
+						if (mReady != null && mReady.bitmap != null) {
+							// Superseded before the GL thread took it
+							keepSpare(mReady.bitmap);
+						}
+						mReady = image;
+						ready = true;
+					} else if (image.bitmap != null) {
+						keepSpare(image.bitmap);
+					}
+				}
+				if (ready) {
+					mOnReady.run();
+				}
+			}
+		} catch (InterruptedException e) {
+			// fall thru and exit normally
+		}
+	}
+
+	private void keepSpare(Bitmap bitmap) {
+		if (mSpare != null && mSpare != bitmap) {
+			mSpare.recycle();
+		}
+		mSpare = bitmap;
+	}
+
+	private Image load(String path, int width, int height,
+			BackgroundCache cache) {
+		if (path == null) {
+			return new Image(null, null, 0, 0, 0, 0);
+		}
+		int textureWidth = powerOfTwo(width);
+		int textureHeight = powerOfTwo(height);
+		long start = System.nanoTime();
+		if (cache != null) {
+			ByteBuffer pixels = cache.read(path, width, height, textureWidth,
+					textureHeight);
+			if (pixels != null) {
+				if (LOG_STATS) {
+					Log.d(TAG, "Mapped cached " + path + " in "
+							+ (System.nanoTime() - start) / 1000000L + "ms");
+				}
+				return new Image(null, pixels, width, height, textureWidth,
+						textureHeight);
+			}
+		}
+		Bitmap bitmap = decode(path, width, height);
+		if (bitmap == null) {
+			return new Image(null, null, 0, 0, 0, 0);
+		}
+		if (LOG_STATS) {
+			Log.d(TAG, "Decoded " + path + " in "
+					+ (System.nanoTime() - start) / 1000000L
+					+ "ms, sample size " + mOptions.inSampleSize);
+		}
+		if (cache != null) {
+			cache.write(path, width, height, bitmap);
+		}
+		return new Image(bitmap, null, width, height, textureWidth,
+				textureHeight);
+	}
+
+	/**
+	 * @return the image scaled to cover width x height, at the top left of a
+	 *         bitmap sized for a texture, null if it cannot be read
+	 */
+	private Bitmap decode(String path, int width, int height) {
+		BitmapFactory.Options options = mOptions;
+		options.inJustDecodeBounds = true;
+		options.inSampleSize = 1;
+		options.outWidth = 0;
+		options.outHeight = 0;
+		BitmapFactory.decodeFile(path, options);
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			Log.w(TAG, "Cannot read " + path);
+			return null;
+		}
+
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = getSampleSize(options.outWidth,
+				options.outHeight, width, height);
+		options.inPreferredConfig = Bitmap.Config.RGB_565;
+		options.inDither = true;
+		options.inTempStorage = mTempStorage;
+		Bitmap decoded;
+		try {
+			decoded = BitmapFactory.decodeFile(path, options);
+		} catch (OutOfMemoryError e) {
+			Log.w(TAG, "Not enough memory to decode " + path);
+			return null;
+		}
+		if (decoded == null) {
+			Log.w(TAG, "Cannot decode " + path);
+			return null;
+		}
+
+		Bitmap bitmap = obtain(powerOfTwo(width), powerOfTwo(height));
+		if (bitmap == null) {
+			decoded.recycle();
+			return null;
+		}
+		// Center crop to the aspect ratio of the surface
+		int sourceWidth = decoded.getWidth();
+		int sourceHeight = decoded.getHeight();
+		if (sourceWidth * height > sourceHeight * width) {
+			int cropped = sourceHeight * width / height;
+			int x = (sourceWidth - cropped) / 2;
+			mSource.set(x, 0, x + cropped, sourceHeight);
+		} else {
+			int cropped = sourceWidth * height / width;
+			int y = (sourceHeight - cropped) / 2;
+			mSource.set(0, y, sourceWidth, y + cropped);
+		}
+		mTarget.set(0, 0, width, height);
+		new Canvas(bitmap).drawBitmap(decoded, mSource, mTarget, mPaint);
+		decoded.recycle();
+		return bitmap;
+	}
+
+	/**
+	 * @return the spare bitmap if it has the size, a new one otherwise
+	 */
+	private Bitmap obtain(int width, int height) {
+		synchronized (this) {
+			Bitmap spare = mSpare;
+			mSpare = null;
+			if (spare != null) {
+				if (spare.getWidth() == width && spare.getHeight() == height) {
+					return spare;
+				}
+				spare.recycle();
+			}
+		}
+		try {
+			return Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+		} catch (OutOfMemoryError e) {
+			Log.w(TAG, "Not enough memory for a " + width + "x" + height
+					+ " background");
+			return null;
+		}
+	}
+
+	/**
+	 * @return the largest power of two by which the image can be divided and
+	 *         still cover width x height
+	 */
+	static int getSampleSize(int imageWidth, int imageHeight, int width,
+			int height) {
+		int sampleSize = 1;
+		while (imageWidth / (sampleSize * 2) >= width
+				&& imageHeight / (sampleSize * 2) >= height) {
+			sampleSize *= 2;
+		}
+		return sampleSize;
+	}
+
+	private static int powerOfTwo(int size) {
+		int power = 1;
+		while (power < size) {
+			power *= 2;
+		}
+		return power;
+	}
+}
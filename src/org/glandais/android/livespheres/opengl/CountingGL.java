@@ -0,0 +1,1124 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL;
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+import javax.microedition.khronos.opengles.GL11Ext;
+
+/**
+ * Forwards every call to another GL, counting them. GL11 and GL11Ext calls
+ * require the wrapped GL to implement them, which the Android one does.
+ */
+public class CountingGL implements GL, GL10, GL11, GL11Ext {
+
+	private final GL10 mGl;
+	private final GL11 mGl11;
+	private final GL11Ext mGl11Ext;
+
+	// Calls forwarded since the last reset
+	protected int mCalls = 0;
+
+	public CountingGL(GL10 gl) {
+		super();
+		mGl = gl;
+		mGl11 = gl instanceof GL11 ? (GL11) gl : null;
+		mGl11Ext = gl instanceof GL11Ext ? (GL11Ext) gl : null;
+	}
+
+	/**
+	 * @return calls forwarded since the last call, and starts counting again
+	 */
+	public int takeCallCount() {
+		int calls = mCalls;
+		mCalls = 0;
+		return calls;
+	}
+
+	public void glActiveTexture(int texture) {
+		mCalls++;
+		mGl.glActiveTexture(texture);
+	}
+
+	public void glAlphaFunc(int func, float ref) {
+		mCalls++;
+		mGl.glAlphaFunc(func, ref);
+	}
+
+	public void glAlphaFuncx(int func, int ref) {
+		mCalls++;
+		mGl.glAlphaFuncx(func, ref);
+	}
+
+	public void glBindTexture(int target, int texture) {
+		mCalls++;
+		mGl.glBindTexture(target, texture);
+	}
+
+	public void glBlendFunc(int sfactor, int dfactor) {
+		mCalls++;
+		mGl.glBlendFunc(sfactor, dfactor);
+	}
+
+	public void glClear(int mask) {
+		mCalls++;
+		mGl.glClear(mask);
+	}
+
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		mCalls++;
+		mGl.glClearColor(red, green, blue, alpha);
+	}
+
+	public void glClearColorx(int red, int green, int blue, int alpha) {
+		mCalls++;
+		mGl.glClearColorx(red, green, blue, alpha);
+	}
+
+	public void glClearDepthf(float depth) {
+		mCalls++;
+		mGl.glClearDepthf(depth);
+	}
+
+	public void glClearDepthx(int depth) {
+		mCalls++;
+		mGl.glClearDepthx(depth);
+	}
+
+	public void glClearStencil(int s) {
+		mCalls++;
+		mGl.glClearStencil(s);
+	}
+
+	public void glClientActiveTexture(int texture) {
+		mCalls++;
+		mGl.glClientActiveTexture(texture);
+	}
+
+	public void glColor4f(float red, float green, float blue, float alpha) {
+		mCalls++;
+		mGl.glColor4f(red, green, blue, alpha);
+	}
+
+	public void glColor4x(int red, int green, int blue, int alpha) {
+		mCalls++;
+		mGl.glColor4x(red, green, blue, alpha);
+	}
+
+	public void glColorMask(boolean red, boolean green, boolean blue,
+			boolean alpha) {
+		mCalls++;
+		mGl.glColorMask(red, green, blue, alpha);
+	}
+
+	public void glColorPointer(int size, int type, int stride, Buffer pointer) {
+		mCalls++;
+		mGl.glColorPointer(size, type, stride, pointer);
+	}
+
+	public void glCompressedTexImage2D(int target, int level,
+			int internalformat, int width, int height, int border,
+			int imageSize, Buffer data) {
+		mCalls++;
+		mGl.glCompressedTexImage2D(target, level, internalformat, width, height,
+				border, imageSize, data);
+	}
+
+	public void glCompressedTexSubImage2D(int target, int level, int xoffset,
+			int yoffset, int width, int height, int format, int imageSize,
+			Buffer data) {
+		mCalls++;
+		mGl.glCompressedTexSubImage2D(target, level, xoffset, yoffset, width,
+				height, format, imageSize, data);
+	}
+
+	public void glCopyTexImage2D(int target, int level, int internalformat,
+			int x, int y, int width, int height, int border) {
+		mCalls++;
+		mGl.glCopyTexImage2D(target, level, internalformat, x, y, width, height,
+				border);
+	}
+
+	public void glCopyTexSubImage2D(int target, int level, int xoffset,
+			int yoffset, int x, int y, int width, int height) {
+		mCalls++;
+		mGl.glCopyTexSubImage2D(target, level, xoffset, yoffset, x, y, width,
+				height);
+	}
+
+	public void glCullFace(int mode) {
+		mCalls++;
+		mGl.glCullFace(mode);
+	}
+
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		mCalls++;
+		mGl.glDeleteTextures(n, textures, offset);
+	}
+
+	public void glDeleteTextures(int n, IntBuffer textures) {
+		mCalls++;
+		mGl.glDeleteTextures(n, textures);
+	}
+
+	public void glDepthFunc(int func) {
+		mCalls++;
+		mGl.glDepthFunc(func);
+	}
+
+	public void glDepthMask(boolean flag) {
+		mCalls++;
+		mGl.glDepthMask(flag);
+	}
+
+	public void glDepthRangef(float zNear, float zFar) {
+		mCalls++;
+		mGl.glDepthRangef(zNear, zFar);
+	}
+
+	public void glDepthRangex(int zNear, int zFar) {
+		mCalls++;
+		mGl.glDepthRangex(zNear, zFar);
+	}
+
+	public void glDisable(int cap) {
+		mCalls++;
+		mGl.glDisable(cap);
+	}
+
+	public void glDisableClientState(int array) {
+		mCalls++;
+		mGl.glDisableClientState(array);
+	}
+
+	public void glDrawArrays(int mode, int first, int count) {
+		mCalls++;
+		mGl.glDrawArrays(mode, first, count);
+	}
+
+	public void glDrawElements(int mode, int count, int type, Buffer indices) {
+		mCalls++;
+		mGl.glDrawElements(mode, count, type, indices);
+	}
+
+	public void glEnable(int cap) {
+		mCalls++;
+		mGl.glEnable(cap);
+	}
+
+	public void glEnableClientState(int array) {
+		mCalls++;
+		mGl.glEnableClientState(array);
+	}
+
+	public void glFinish() {
+		mCalls++;
+		mGl.glFinish();
+	}
+
+	public void glFlush() {
+		mCalls++;
+		mGl.glFlush();
+	}
+
+	public void glFogf(int pname, float param) {
+		mCalls++;
+		mGl.glFogf(pname, param);
+	}
+
+	public void glFogfv(int pname, float[] params, int offset) {
+		mCalls++;
+		mGl.glFogfv(pname, params, offset);
+	}
+
+	public void glFogfv(int pname, FloatBuffer params) {
+		mCalls++;
+		mGl.glFogfv(pname, params);
+	}
+
+	public void glFogx(int pname, int param) {
+		mCalls++;
+		mGl.glFogx(pname, param);
+	}
+
+	public void glFogxv(int pname, int[] params, int offset) {
+		mCalls++;
+		mGl.glFogxv(pname, params, offset);
+	}
+
+	public void glFogxv(int pname, IntBuffer params) {
+		mCalls++;
+		mGl.glFogxv(pname, params);
+	}
+
+	public void glFrontFace(int mode) {
+		mCalls++;
+		mGl.glFrontFace(mode);
+	}
+
+	public void glFrustumf(float left, float right, float bottom, float top,
+			float zNear, float zFar) {
+		mCalls++;
+		mGl.glFrustumf(left, right, bottom, top, zNear, zFar);
+	}
+
+	public void glFrustumx(int left, int right, int bottom, int top, int zNear,
+			int zFar) {
+		mCalls++;
+		mGl.glFrustumx(left, right, bottom, top, zNear, zFar);
+	}
+
+	public void glGenTextures(int n, int[] textures, int offset) {
+		mCalls++;
+		mGl.glGenTextures(n, textures, offset);
+	}
+
+	public void glGenTextures(int n, IntBuffer textures) {
+		mCalls++;
+		mGl.glGenTextures(n, textures);
+	}
+
+	public int glGetError() {
+		mCalls++;
+		return mGl.glGetError();
+	}
+
+	public void glGetIntegerv(int pname, int[] params, int offset) {
+		mCalls++;
+		mGl.glGetIntegerv(pname, params, offset);
+	}
+
+	public void glGetIntegerv(int pname, IntBuffer params) {
+		mCalls++;
+		mGl.glGetIntegerv(pname, params);
+	}
+
+	public String glGetString(int name) {
+		mCalls++;
+		return mGl.glGetString(name);
+	}
+
+	public void glHint(int target, int mode) {
+		mCalls++;
+		mGl.glHint(target, mode);
+	}
+
+	public void glLightModelf(int pname, float param) {
+		mCalls++;
+		mGl.glLightModelf(pname, param);
+	}
+
+	public void glLightModelfv(int pname, float[] params, int offset) {
+		mCalls++;
+		mGl.glLightModelfv(pname, params, offset);
+	}
+
+	public void glLightModelfv(int pname, FloatBuffer params) {
+		mCalls++;
+		mGl.glLightModelfv(pname, params);
+	}
+
+	public void glLightModelx(int pname, int param) {
+		mCalls++;
+		mGl.glLightModelx(pname, param);
+	}
+
+	public void glLightModelxv(int pname, int[] params, int offset) {
+		mCalls++;
+		mGl.glLightModelxv(pname, params, offset);
+	}
+
+	public void glLightModelxv(int pname, IntBuffer params) {
+		mCalls++;
+		mGl.glLightModelxv(pname, params);
+	}
+
+	public void glLightf(int light, int pname, float param) {
+		mCalls++;
+		mGl.glLightf(light, pname, param);
+	}
+
+	public void glLightfv(int light, int pname, float[] params, int offset) {
+		mCalls++;
+		mGl.glLightfv(light, pname, params, offset);
+	}
+
+	public void glLightfv(int light, int pname, FloatBuffer params) {
+		mCalls++;
+		mGl.glLightfv(light, pname, params);
+	}
+
+	public void glLightx(int light, int pname, int param) {
+		mCalls++;
+		mGl.glLightx(light, pname, param);
+	}
+
+	public void glLightxv(int light, int pname, int[] params, int offset) {
+		mCalls++;
+		mGl.glLightxv(light, pname, params, offset);
+	}
+
+	public void glLightxv(int light, int pname, IntBuffer params) {
+		mCalls++;
+		mGl.glLightxv(light, pname, params);
+	}
+
+	public void glLineWidth(float width) {
+		mCalls++;
+		mGl.glLineWidth(width);
+	}
+
+	public void glLineWidthx(int width) {
+		mCalls++;
+		mGl.glLineWidthx(width);
+	}
+
+	public void glLoadIdentity() {
+		mCalls++;
+		mGl.glLoadIdentity();
+	}
+
+	public void glLoadMatrixf(float[] m, int offset) {
+		mCalls++;
+		mGl.glLoadMatrixf(m, offset);
+	}
+
+	public void glLoadMatrixf(FloatBuffer m) {
+		mCalls++;
+		mGl.glLoadMatrixf(m);
+	}
+
+	public void glLoadMatrixx(int[] m, int offset) {
+		mCalls++;
+		mGl.glLoadMatrixx(m, offset);
+	}
+
+	public void glLoadMatrixx(IntBuffer m) {
+		mCalls++;
+		mGl.glLoadMatrixx(m);
+	}
+
+	public void glLogicOp(int opcode) {
+		mCalls++;
+		mGl.glLogicOp(opcode);
+	}
+
+	public void glMaterialf(int face, int pname, float param) {
+		mCalls++;
+		mGl.glMaterialf(face, pname, param);
+	}
+
+	public void glMaterialfv(int face, int pname, float[] params, int offset) {
+		mCalls++;
+		mGl.glMaterialfv(face, pname, params, offset);
+	}
+
+	public void glMaterialfv(int face, int pname, FloatBuffer params) {
+		mCalls++;
+		mGl.glMaterialfv(face, pname, params);
+	}
+
+	public void glMaterialx(int face, int pname, int param) {
+		mCalls++;
+		mGl.glMaterialx(face, pname, param);
+	}
+
+	public void glMaterialxv(int face, int pname, int[] params, int offset) {
+		mCalls++;
+		mGl.glMaterialxv(face, pname, params, offset);
+	}
+
+	public void glMaterialxv(int face, int pname, IntBuffer params) {
+		mCalls++;
+		mGl.glMaterialxv(face, pname, params);
+	}
+
+	public void glMatrixMode(int mode) {
+		mCalls++;
+		mGl.glMatrixMode(mode);
+	}
+
+	public void glMultMatrixf(float[] m, int offset) {
+		mCalls++;
+		mGl.glMultMatrixf(m, offset);
+	}
+
+	public void glMultMatrixf(FloatBuffer m) {
+		mCalls++;
+		mGl.glMultMatrixf(m);
+	}
+
+	public void glMultMatrixx(int[] m, int offset) {
+		mCalls++;
+		mGl.glMultMatrixx(m, offset);
+	}
+
+	public void glMultMatrixx(IntBuffer m) {
+		mCalls++;
+		mGl.glMultMatrixx(m);
+	}
+
+	public void glMultiTexCoord4f(int target, float s, float t, float r,
+			float q) {
+		mCalls++;
+		mGl.glMultiTexCoord4f(target, s, t, r, q);
+	}
+
+	public void glMultiTexCoord4x(int target, int s, int t, int r, int q) {
+		mCalls++;
+		mGl.glMultiTexCoord4x(target, s, t, r, q);
+	}
+
+	public void glNormal3f(float nx, float ny, float nz) {
+		mCalls++;
+		mGl.glNormal3f(nx, ny, nz);
+	}
+
+	public void glNormal3x(int nx, int ny, int nz) {
+		mCalls++;
+		mGl.glNormal3x(nx, ny, nz);
+	}
+
+	public void glNormalPointer(int type, int stride, Buffer pointer) {
+		mCalls++;
+		mGl.glNormalPointer(type, stride, pointer);
+	}
+
+	public void glOrthof(float left, float right, float bottom, float top,
+			float zNear, float zFar) {
+		mCalls++;
+		mGl.glOrthof(left, right, bottom, top, zNear, zFar);
+	}
+
+	public void glOrthox(int left, int right, int bottom, int top, int zNear,
+			int zFar) {
+		mCalls++;
+		mGl.glOrthox(left, right, bottom, top, zNear, zFar);
+	}
+
+	public void glPixelStorei(int pname, int param) {
+		mCalls++;
+		mGl.glPixelStorei(pname, param);
+	}
+
+	public void glPointSize(float size) {
+		mCalls++;
+		mGl.glPointSize(size);
+	}
+
+	public void glPointSizex(int size) {
+		mCalls++;
+		mGl.glPointSizex(size);
+	}
+
+	public void glPolygonOffset(float factor, float units) {
+		mCalls++;
+		mGl.glPolygonOffset(factor, units);
+	}
+
+	public void glPolygonOffsetx(int factor, int units) {
+		mCalls++;
+		mGl.glPolygonOffsetx(factor, units);
+	}
+
+	public void glPopMatrix() {
+		mCalls++;
+		mGl.glPopMatrix();
+	}
+
+	public void glPushMatrix() {
+		mCalls++;
+		mGl.glPushMatrix();
+	}
+
+	public void glReadPixels(int x, int y, int width, int height, int format,
+			int type, Buffer pixels) {
+		mCalls++;
+		mGl.glReadPixels(x, y, width, height, format, type, pixels);
+	}
+
+	public void glRotatef(float angle, float x, float y, float z) {
+		mCalls++;
+		mGl.glRotatef(angle, x, y, z);
+	}
+
+	public void glRotatex(int angle, int x, int y, int z) {
+		mCalls++;
+		mGl.glRotatex(angle, x, y, z);
+	}
+
+	public void glSampleCoverage(float value, boolean invert) {
+		mCalls++;
+		mGl.glSampleCoverage(value, invert);
+	}
+
+	public void glSampleCoveragex(int value, boolean invert) {
+		mCalls++;
+		mGl.glSampleCoveragex(value, invert);
+	}
+
+	public void glScalef(float x, float y, float z) {
+		mCalls++;
+		mGl.glScalef(x, y, z);
+	}
+
+	public void glScalex(int x, int y, int z) {
+		mCalls++;
+		mGl.glScalex(x, y, z);
+	}
+
+	public void glScissor(int x, int y, int width, int height) {
+		mCalls++;
+		mGl.glScissor(x, y, width, height);
+	}
+
+	public void glShadeModel(int mode) {
+		mCalls++;
+		mGl.glShadeModel(mode);
+	}
+
+	public void glStencilFunc(int func, int ref, int mask) {
+		mCalls++;
+		mGl.glStencilFunc(func, ref, mask);
+	}
+
+	public void glStencilMask(int mask) {
+		mCalls++;
+		mGl.glStencilMask(mask);
+	}
+
+	public void glStencilOp(int fail, int zfail, int zpass) {
+		mCalls++;
+		mGl.glStencilOp(fail, zfail, zpass);
+	}
+
+	public void glTexCoordPointer(int size, int type, int stride,
+			Buffer pointer) {
+		mCalls++;
+		mGl.glTexCoordPointer(size, type, stride, pointer);
+	}
+
+	public void glTexEnvf(int target, int pname, float param) {
+		mCalls++;
+		mGl.glTexEnvf(target, pname, param);
+	}
+
+	public void glTexEnvfv(int target, int pname, float[] params, int offset) {
+		mCalls++;
+		mGl.glTexEnvfv(target, pname, params, offset);
+	}
+
+	public void glTexEnvfv(int target, int pname, FloatBuffer params) {
+		mCalls++;
+		mGl.glTexEnvfv(target, pname, params);
+	}
+
+	public void glTexEnvx(int target, int pname, int param) {
+		mCalls++;
+		mGl.glTexEnvx(target, pname, param);
+	}
+
+	public void glTexEnvxv(int target, int pname, int[] params, int offset) {
+		mCalls++;
+		mGl.glTexEnvxv(target, pname, params, offset);
+	}
+
+	public void glTexEnvxv(int target, int pname, IntBuffer params) {
+		mCalls++;
+		mGl.glTexEnvxv(target, pname, params);
+	}
+
+	public void glTexImage2D(int target, int level, int internalformat,
+			int width, int height, int border, int format, int type,
+			Buffer pixels) {
+		mCalls++;
+		mGl.glTexImage2D(target, level, internalformat, width, height, border,
+				format, type, pixels);
+	}
+
+	public void glTexParameterf(int target, int pname, float param) {
+		mCalls++;
+		mGl.glTexParameterf(target, pname, param);
+	}
+
+	public void glTexParameterx(int target, int pname, int param) {
+		mCalls++;
+		mGl.glTexParameterx(target, pname, param);
+	}
+
+	public void glTexSubImage2D(int target, int level, int xoffset, int yoffset,
+			int width, int height, int format, int type, Buffer pixels) {
+		mCalls++;
+		mGl.glTexSubImage2D(target, level, xoffset, yoffset, width, height,
+				format, type, pixels);
+	}
+
+	public void glTranslatef(float x, float y, float z) {
+		mCalls++;
+		mGl.glTranslatef(x, y, z);
+	}
+
+	public void glTranslatex(int x, int y, int z) {
+		mCalls++;
+		mGl.glTranslatex(x, y, z);
+	}
+
+	public void glVertexPointer(int size, int type, int stride,
+			Buffer pointer) {
+		mCalls++;
+		mGl.glVertexPointer(size, type, stride, pointer);
+	}
+
+	public void glViewport(int x, int y, int width, int height) {
+		mCalls++;
+		mGl.glViewport(x, y, width, height);
+	}
+
+	public void glBindBuffer(int target, int buffer) {
+		mCalls++;
+		mGl11.glBindBuffer(target, buffer);
+	}
+
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		mCalls++;
+		mGl11.glBufferData(target, size, data, usage);
+	}
+
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		mCalls++;
+		mGl11.glBufferSubData(target, offset, size, data);
+	}
+
+	public void glClipPlanef(int plane, float[] equation, int offset) {
+		mCalls++;
+		mGl11.glClipPlanef(plane, equation, offset);
+	}
+
+	public void glClipPlanef(int plane, FloatBuffer equation) {
+		mCalls++;
+		mGl11.glClipPlanef(plane, equation);
+	}
+
+	public void glClipPlanex(int plane, int[] equation, int offset) {
+		mCalls++;
+		mGl11.glClipPlanex(plane, equation, offset);
+	}
+
+	public void glClipPlanex(int plane, IntBuffer equation) {
+		mCalls++;
+		mGl11.glClipPlanex(plane, equation);
+	}
+
+	public void glColor4ub(byte red, byte green, byte blue, byte alpha) {
+		mCalls++;
+		mGl11.glColor4ub(red, green, blue, alpha);
+	}
+
+	public void glColorPointer(int size, int type, int stride, int offset) {
+		mCalls++;
+		mGl11.glColorPointer(size, type, stride, offset);
+	}
+
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		mCalls++;
+		mGl11.glDeleteBuffers(n, buffers, offset);
+	}
+
+	public void glDeleteBuffers(int n, IntBuffer buffers) {
+		mCalls++;
+		mGl11.glDeleteBuffers(n, buffers);
+	}
+
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		mCalls++;
+		mGl11.glDrawElements(mode, count, type, offset);
+	}
+
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		mCalls++;
+		mGl11.glGenBuffers(n, buffers, offset);
+	}
+
+	public void glGenBuffers(int n, IntBuffer buffers) {
+		mCalls++;
+		mGl11.glGenBuffers(n, buffers);
+	}
+
+	public void glGetBooleanv(int pname, boolean[] params, int offset) {
+		mCalls++;
+		mGl11.glGetBooleanv(pname, params, offset);
+	}
+
+	public void glGetBooleanv(int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glGetBooleanv(pname, params);
+	}
+
+	public void glGetBufferParameteriv(int target, int pname, int[] params,
+			int offset) {
+		mCalls++;
+		mGl11.glGetBufferParameteriv(target, pname, params, offset);
+	}
+
+	public void glGetBufferParameteriv(int target, int pname,
+			IntBuffer params) {
+		mCalls++;
+		mGl11.glGetBufferParameteriv(target, pname, params);
+	}
+
+	public void glGetClipPlanef(int pname, float[] eqn, int offset) {
+		mCalls++;
+		mGl11.glGetClipPlanef(pname, eqn, offset);
+	}
+
+	public void glGetClipPlanef(int pname, FloatBuffer eqn) {
+		mCalls++;
+		mGl11.glGetClipPlanef(pname, eqn);
+	}
+
+	public void glGetClipPlanex(int pname, int[] eqn, int offset) {
+		mCalls++;
+		mGl11.glGetClipPlanex(pname, eqn, offset);
+	}
+
+	public void glGetClipPlanex(int pname, IntBuffer eqn) {
+		mCalls++;
+		mGl11.glGetClipPlanex(pname, eqn);
+	}
+
+	public void glGetFixedv(int pname, int[] params, int offset) {
+		mCalls++;
+		mGl11.glGetFixedv(pname, params, offset);
+	}
+
+	public void glGetFixedv(int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glGetFixedv(pname, params);
+	}
+
+	public void glGetFloatv(int pname, float[] params, int offset) {
+		mCalls++;
+		mGl11.glGetFloatv(pname, params, offset);
+	}
+
+	public void glGetFloatv(int pname, FloatBuffer params) {
+		mCalls++;
+		mGl11.glGetFloatv(pname, params);
+	}
+
+	public void glGetLightfv(int light, int pname, float[] params, int offset) {
+		mCalls++;
+		mGl11.glGetLightfv(light, pname, params, offset);
+	}
+
+	public void glGetLightfv(int light, int pname, FloatBuffer params) {
+		mCalls++;
+		mGl11.glGetLightfv(light, pname, params);
+	}
+
+	public void glGetLightxv(int light, int pname, int[] params, int offset) {
+		mCalls++;
+		mGl11.glGetLightxv(light, pname, params, offset);
+	}
+
+	public void glGetLightxv(int light, int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glGetLightxv(light, pname, params);
+	}
+
+	public void glGetMaterialfv(int face, int pname, float[] params,
+			int offset) {
+		mCalls++;
+		mGl11.glGetMaterialfv(face, pname, params, offset);
+	}
+
+	public void glGetMaterialfv(int face, int pname, FloatBuffer params) {
+		mCalls++;
+		mGl11.glGetMaterialfv(face, pname, params);
+	}
+
+	public void glGetMaterialxv(int face, int pname, int[] params, int offset) {
+		mCalls++;
+		mGl11.glGetMaterialxv(face, pname, params, offset);
+	}
+
+	public void glGetMaterialxv(int face, int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glGetMaterialxv(face, pname, params);
+	}
+
+	public void glGetPointerv(int pname, Buffer[] params) {
+		mCalls++;
+		mGl11.glGetPointerv(pname, params);
+	}
+
+	public void glGetTexEnviv(int env, int pname, int[] params, int offset) {
+		mCalls++;
+		mGl11.glGetTexEnviv(env, pname, params, offset);
+	}
+
+	public void glGetTexEnviv(int env, int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glGetTexEnviv(env, pname, params);
+	}
+
+	public void glGetTexEnvxv(int env, int pname, int[] params, int offset) {
+		mCalls++;
+		mGl11.glGetTexEnvxv(env, pname, params, offset);
+	}
+
+	public void glGetTexEnvxv(int env, int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glGetTexEnvxv(env, pname, params);
+	}
+
+	public void glGetTexParameterfv(int target, int pname, float[] params,
+			int offset) {
+		mCalls++;
+		mGl11.glGetTexParameterfv(target, pname, params, offset);
+	}
+
+	public void glGetTexParameterfv(int target, int pname, FloatBuffer params) {
+		mCalls++;
+		mGl11.glGetTexParameterfv(target, pname, params);
+	}
+
+	public void glGetTexParameteriv(int target, int pname, int[] params,
+			int offset) {
+		mCalls++;
+		mGl11.glGetTexParameteriv(target, pname, params, offset);
+	}
+
+	public void glGetTexParameteriv(int target, int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glGetTexParameteriv(target, pname, params);
+	}
+
+	public void glGetTexParameterxv(int target, int pname, int[] params,
+			int offset) {
+		mCalls++;
+		mGl11.glGetTexParameterxv(target, pname, params, offset);
+	}
+
+	public void glGetTexParameterxv(int target, int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glGetTexParameterxv(target, pname, params);
+	}
+
+	public boolean glIsBuffer(int buffer) {
+		mCalls++;
+		return mGl11.glIsBuffer(buffer);
+	}
+
+	public boolean glIsEnabled(int cap) {
+		mCalls++;
+		return mGl11.glIsEnabled(cap);
+	}
+
+	public boolean glIsTexture(int texture) {
+		mCalls++;
+		return mGl11.glIsTexture(texture);
+	}
+
+	public void glNormalPointer(int type, int stride, int offset) {
+		mCalls++;
+		mGl11.glNormalPointer(type, stride, offset);
+	}
+
+	public void glPointParameterf(int pname, float param) {
+		mCalls++;
+		mGl11.glPointParameterf(pname, param);
+	}
+
+	public void glPointParameterfv(int pname, float[] params, int offset) {
+		mCalls++;
+		mGl11.glPointParameterfv(pname, params, offset);
+	}
+
+	public void glPointParameterfv(int pname, FloatBuffer params) {
+		mCalls++;
+		mGl11.glPointParameterfv(pname, params);
+	}
+
+	public void glPointParameterx(int pname, int param) {
+		mCalls++;
+		mGl11.glPointParameterx(pname, param);
+	}
+
+	public void glPointParameterxv(int pname, int[] params, int offset) {
+		mCalls++;
+		mGl11.glPointParameterxv(pname, params, offset);
+	}
+
+	public void glPointParameterxv(int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glPointParameterxv(pname, params);
+	}
+
+	public void glPointSizePointerOES(int type, int stride, Buffer pointer) {
+		mCalls++;
+		mGl11.glPointSizePointerOES(type, stride, pointer);
+	}
+
+	public void glTexCoordPointer(int size, int type, int stride, int offset) {
+		mCalls++;
+		mGl11.glTexCoordPointer(size, type, stride, offset);
+	}
+
+	public void glTexEnvi(int target, int pname, int param) {
+		mCalls++;
+		mGl11.glTexEnvi(target, pname, param);
+	}
+
+	public void glTexEnviv(int target, int pname, int[] params, int offset) {
+		mCalls++;
+		mGl11.glTexEnviv(target, pname, params, offset);
+	}
+
+	public void glTexEnviv(int target, int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glTexEnviv(target, pname, params);
+	}
+
+	public void glTexParameterfv(int target, int pname, float[] params,
+			int offset) {
+		mCalls++;
+		mGl11.glTexParameterfv(target, pname, params, offset);
+	}
+
+	public void glTexParameterfv(int target, int pname, FloatBuffer params) {
+		mCalls++;
+		mGl11.glTexParameterfv(target, pname, params);
+	}
+
+	public void glTexParameteri(int target, int pname, int param) {
+		mCalls++;
+		mGl11.glTexParameteri(target, pname, param);
+	}
+
+	public void glTexParameteriv(int target, int pname, int[] params,
+			int offset) {
+		mCalls++;
+		mGl11.glTexParameteriv(target, pname, params, offset);
+	}
+
+	public void glTexParameteriv(int target, int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glTexParameteriv(target, pname, params);
+	}
+
+	public void glTexParameterxv(int target, int pname, int[] params,
+			int offset) {
+		mCalls++;
+		mGl11.glTexParameterxv(target, pname, params, offset);
+	}
+
+	public void glTexParameterxv(int target, int pname, IntBuffer params) {
+		mCalls++;
+		mGl11.glTexParameterxv(target, pname, params);
+	}
+
+	public void glVertexPointer(int size, int type, int stride, int offset) {
+		mCalls++;
+		mGl11.glVertexPointer(size, type, stride, offset);
+	}
+
+	public void glCurrentPaletteMatrixOES(int matrixpaletteindex) {
+		mCalls++;
+		mGl11Ext.glCurrentPaletteMatrixOES(matrixpaletteindex);
+	}
+
+	public void glDrawTexfOES(float x, float y, float z, float width,
+			float height) {
+		mCalls++;
+		mGl11Ext.glDrawTexfOES(x, y, z, width, height);
+	}
+
+	public void glDrawTexfvOES(float[] coords, int offset) {
+		mCalls++;
+		mGl11Ext.glDrawTexfvOES(coords, offset);
+	}
+
+	public void glDrawTexfvOES(FloatBuffer coords) {
+		mCalls++;
+		mGl11Ext.glDrawTexfvOES(coords);
+	}
+
+	public void glDrawTexiOES(int x, int y, int z, int width, int height) {
+		mCalls++;
+		mGl11Ext.glDrawTexiOES(x, y, z, width, height);
+	}
+
+	public void glDrawTexivOES(int[] coords, int offset) {
+		mCalls++;
+		mGl11Ext.glDrawTexivOES(coords, offset);
+	}
+
+	public void glDrawTexivOES(IntBuffer coords) {
+		mCalls++;
+		mGl11Ext.glDrawTexivOES(coords);
+	}
+
+	public void glDrawTexsOES(short x, short y, short z, short width,
+			short height) {
+		mCalls++;
+		mGl11Ext.glDrawTexsOES(x, y, z, width, height);
+	}
+
+	public void glDrawTexsvOES(short[] coords, int offset) {
+		mCalls++;
+		mGl11Ext.glDrawTexsvOES(coords, offset);
+	}
+
+	public void glDrawTexsvOES(ShortBuffer coords) {
+		mCalls++;
+		mGl11Ext.glDrawTexsvOES(coords);
+	}
+
+	public void glDrawTexxOES(int x, int y, int z, int width, int height) {
+		mCalls++;
+		mGl11Ext.glDrawTexxOES(x, y, z, width, height);
+	}
+
+	public void glDrawTexxvOES(int[] coords, int offset) {
+		mCalls++;
+		mGl11Ext.glDrawTexxvOES(coords, offset);
+	}
+
+	public void glDrawTexxvOES(IntBuffer coords) {
+		mCalls++;
+		mGl11Ext.glDrawTexxvOES(coords);
+	}
+
+	public void glLoadPaletteFromModelViewMatrixOES() {
+		mCalls++;
+		mGl11Ext.glLoadPaletteFromModelViewMatrixOES();
+	}
+
+	public void glMatrixIndexPointerOES(int size, int type, int stride,
+			Buffer pointer) {
+		mCalls++;
+		mGl11Ext.glMatrixIndexPointerOES(size, type, stride, pointer);
+	}
+
+	public void glMatrixIndexPointerOES(int size, int type, int stride,
+			int offset) {
+		mCalls++;
+		mGl11Ext.glMatrixIndexPointerOES(size, type, stride, offset);
+	}
+
+	public void glWeightPointerOES(int size, int type, int stride,
+			Buffer pointer) {
+		mCalls++;
+		mGl11Ext.glWeightPointerOES(size, type, stride, pointer);
+	}
+
+	public void glWeightPointerOES(int size, int type, int stride, int offset) {
+		mCalls++;
+		mGl11Ext.glWeightPointerOES(size, type, stride, offset);
+	}
+}
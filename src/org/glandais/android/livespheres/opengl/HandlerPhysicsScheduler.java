@@ -0,0 +1,83 @@
+package org.glandais.android.livespheres.opengl;
+
+import org.glandais.android.livespheres.physics.TickStats;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Ticks on the looper of the thread that created it, usually the main
+ * thread. Ticks are posted at absolute deadlines so that delays do not add
+ * up.
+ */
+public class HandlerPhysicsScheduler implements PhysicsScheduler, Runnable {
+
+	private static final String TAG = "HandlerPhysicsScheduler";
+	private static final boolean LOG_STATS = false;
+	private static final int STATS_TICKS = 500;
+
+	private final Handler mHandler = new Handler();
+	private final Runnable mTick;
+	private long mPeriodNs;
+	private final TickStats mStats = new TickStats();
+
+	private boolean mRunning = false;
+	// Kept in nanoseconds, so that periods of a fractional millisecond
+	// count do not drift
+	private long mDeadlineNs;
+
+	public HandlerPhysicsScheduler(Runnable tick, long periodNs) {
+		super();
+		mTick = tick;
+		mPeriodNs = periodNs;
+	}
+
+	public void start() {
+		if (!mRunning) {
+			mRunning = true;
+			mDeadlineNs = SystemClock.uptimeMillis() * 1000000L + mPeriodNs;
+			mHandler.postAtTime(this, mDeadlineNs / 1000000L);
+		}
+	}
+
+	public void stop() {
+		mRunning = false;
+		mHandler.removeCallbacks(this);
+	}
+
+	public void setPeriod(long periodNs) {
+		mPeriodNs = periodNs;
+	}
+
+	public void shutdown() {
+		stop();
+	}
+
+	public TickStats getStats() {
+		return mStats;
+	}
+
+	public void run() {
+		if (!mRunning) {
+			return;
+		}
+		long now = SystemClock.uptimeMillis() * 1000000L;
+		mStats.record(mDeadlineNs, now);
+		if (LOG_STATS && mStats.getCount() % STATS_TICKS == 0) {
+			Log.d(TAG, mStats.toString());
+		}
+
+		mTick.run();
+
+		mDeadlineNs += mPeriodNs;
+		now = SystemClock.uptimeMillis() * 1000000L;
+		if (mDeadlineNs <= now) {
+			// Too late, skip the missed ticks
+			mDeadlineNs = now + mPeriodNs;
+		}
+		if (mRunning) {
+			mHandler.postAtTime(this, mDeadlineNs / 1000000L);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package org.glandais.android.livespheres.opengl;
+
+import org.glandais.android.livespheres.physics.TickStats;
+
+/**
+ * Runs the physics tick periodically.
+ */
+public interface PhysicsScheduler {
+
+	/**
+	 * Starts or resumes ticking.
+	 */
+	void start();
+
+	/**
+	 * Pauses ticking. When this returns, no tick is running and none will run
+	 * until {@link #start()} is called again.
+	 */
+	void stop();
+
+	/**
+	 * Changes the tick period, from the next tick on.
+	 */
+	void setPeriod(long periodNs);
+
+	/**
+	 * Stops ticking for good and releases resources.
+	 */
+	void shutdown();
+
+	/**
+	 * @return lateness statistics of the ticks run so far
+	 */
+	TickStats getStats();
+}
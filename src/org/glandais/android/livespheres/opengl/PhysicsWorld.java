@@ -1,21 +1,19 @@
 package org.glandais.android.livespheres.opengl;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.glandais.android.livespheres.opengl.sprites.GLSprite;
-import org.jbox2d.collision.shapes.CircleShape;
-import org.jbox2d.collision.shapes.PolygonShape;
+import org.glandais.android.livespheres.physics.BodyState;
+import org.glandais.android.livespheres.physics.Box2DEngine;
+import org.glandais.android.livespheres.physics.CircleEngine;
+import org.glandais.android.livespheres.physics.CostStats;
+import org.glandais.android.livespheres.physics.GravityFilter;
+import org.glandais.android.livespheres.physics.PhysicsEngine;
+import org.glandais.android.livespheres.physics.SnapshotExchange;
+import org.glandais.android.livespheres.physics.TouchQueue;
+import org.glandais.android.livespheres.physics.WorldSnapshot;
 import org.jbox2d.common.Vec2;
-import org.jbox2d.dynamics.Body;
-import org.jbox2d.dynamics.BodyDef;
-import org.jbox2d.dynamics.BodyType;
-import org.jbox2d.dynamics.FixtureDef;
-import org.jbox2d.dynamics.World;
 
 import android.app.Application;
 import android.app.Service;
-import android.view.Surface;
 import android.view.WindowManager;
 
 public class PhysicsWorld {
@@ -25,23 +23,50 @@ public class PhysicsWorld {
 
 	// Ball radius in smallest side ratio
 	public static final float BALL_RADIUS = 0.11f;
+	// Part of the screen the balls may cover, radius shrinks beyond that
+	public static final float MAX_FILL_RATIO = 0.5f;
 
-	public static final float DRAWFRAME_FRAMERATE = 25;
-	public static final float PHYSIC_FRAMERATE = 100;
+	public static final int DEFAULT_BALL_COUNT = 10;
+	// Radius varies by this ratio around the mean radius
+	public static final float DEFAULT_SIZE_VARIATION = 0.1f;
 
-	public static final int SIM_COUNT = (int) Math.round(PHYSIC_FRAMERATE
-			/ DRAWFRAME_FRAMERATE);
+	// Fixed step, updates run at the rate picked by the governor
+	public static final float PHYSIC_FRAMERATE = 100;
 
 	public static final float PHYSIC_STEP_SEC = (1f / PHYSIC_FRAMERATE);
-	public static final int DRAWFRAME_STEP_MS = Math
-			.round(1000.0f / DRAWFRAME_FRAMERATE);
+	public static final long PHYSIC_STEP_NS = Math
+			.round(1000000000.0 / PHYSIC_FRAMERATE);
+	// Steps run at most per update, time beyond that is dropped after a stall
+	public static final int MAX_STEPS_PER_UPDATE = 10;
 	public static final int VEL_ITER = 3;
 	public static final int POS_ITER = 8;
 	private static final float MAX_SPEED = 2.0f;
-
-	private List<Body> balls = new ArrayList<Body>();
-
-	private World world;
+	// Touch samples kept between two updates, closer ones are merged
+	private static final int TOUCH_CAPACITY = 64;
+	private static final float TOUCH_MERGE_DISTANCE = 2.0f / SCALE_FACTOR;
+
+	// Balls slower than this, in m/s, for REST_DELAY_NS are at rest
+	private static final float REST_SPEED = 0.05f;
+	private static final long REST_DELAY_NS = 1000000000L;
+	// Gravity change, ratio included, that wakes the balls up
+	private static final float GRAVITY_TOLERANCE = 1.0f;
+	// Accelerometer samples kept between two updates, and the time constant
+	// of their low-pass filter
+	private static final int GRAVITY_CAPACITY = 32;
+	private static final long GRAVITY_TIME_CONSTANT_NS = 80000000L;
+
+	// Ball material
+	private static final float BALL_FRICTION = 0.9f;
+	private static final float BALL_RESTITUTION = 0.7f;
+
+	private int ballCount = 0;
+
+	private int ballCountSetting = DEFAULT_BALL_COUNT;
+	private float sizeVariation = DEFAULT_SIZE_VARIATION;
+	private boolean circleEngineSetting = true;
+	private boolean configChanged = false;
+
+	private PhysicsEngine engine;
 	private float minaxis;
 
 	private Application application;
@@ -49,23 +74,108 @@ public class PhysicsWorld {
 	private int width = 1;
 	private int height = 1;
 
-	private float[] cacheX;
-	private float[] cacheY;
-	private float[] cacheAngle;
-
+	// Fixed timestep clock
+	private long lastUpdateTime = 0;
+	private long accumulator = 0;
+
+	// Last published state, and the time it stands for
+	private final BodyState state = new BodyState(DEFAULT_BALL_COUNT);
+	private long cacheTime = 0;
+
+	private final CostStats updateCost = new CostStats();
+
+	// Rest detection
+	private long calmSince = 0;
+	private volatile boolean atRest = false;
+	private volatile boolean disturbed = false;
+	private float restGravityX = 0.0f;
+	private float restGravityY = 0.0f;
+	// Last sample, from the sensor thread
+	private boolean gravityReceived = false;
+	private float lastGravityX = 0.0f;
+	private float lastGravityY = 0.0f;
+
+	// Activity, read by the rate governor
+	private float meanEnergy = 0.0f;
+	private int newContactCount = 0;
+	private volatile long lastInputTime = 0;
+
+	// Handoff to the GL thread, replaced when the world is recreated
+	private volatile SnapshotExchange snapshots;
+
+	// World to screen, replaced when the surface changes
+	private volatile ScreenTransform transform;
+
+	// Gravity from the sensor thread, filtered by the physics thread
+	private final GravityFilter gravity = new GravityFilter(GRAVITY_CAPACITY,
+			GRAVITY_TIME_CONSTANT_NS);
+
+	// Touches from the input thread, applied by the physics thread
+	private final TouchQueue touches = new TouchQueue(TOUCH_CAPACITY,
+			TOUCH_MERGE_DISTANCE);
+
+	// Frame being drawn, GL thread only
+	private final FrameInterpolator frame = new FrameInterpolator(
+			DEFAULT_BALL_COUNT);
+
+	/**
+	 * @param application
+	 *            gives the display rotation, null to run without a display,
+	 *            in its natural orientation
+	 */
 	public PhysicsWorld(Application application) {
 		super();
 		this.application = application;
 		recreateWorld(640, 480);
 	}
 
+	/**
+	 * Selects the circle-only engine, the default, or JBox2D, applied when the
+	 * world is recreated. Only the circle-only engine is free of allocations
+	 * once warmed up.
+	 */
+	public void setCircleEngine(boolean circleEngine) {
+		if (circleEngine != circleEngineSetting) {
+			circleEngineSetting = circleEngine;
+			configChanged = true;
+		}
+	}
+
+	/**
+	 * Sets the ball count and radius variation, applied when the world is
+	 * recreated.
+	 */
+	public void setBallConfig(int count, float variation) {
+		if (count != ballCountSetting || variation != sizeVariation) {
+			ballCountSetting = count;
+			sizeVariation = variation;
+			configChanged = true;
+		}
+	}
+
+	/**
+	 * Applies a new surface size, and the settings changed since the last
+	 * call. A size change alone resizes the box in place: balls keep their
+	 * place relative to the box and their speed, and their radius follows the
+	 * size addBalls would pick. Settings changes rebuild the world.
+	 * 
+	 * @return true if the balls have been recreated, sprites must be too
+	 */
 	public boolean recreateWorld(int newWidth, int newHeight) {
 		int realWidth = Math.max(newWidth, newHeight);
 		int realHeight = Math.min(newWidth, newHeight);
 
-		if (this.width != realWidth || this.height != realHeight) {
+		if (!configChanged && engine != null
+				&& (this.width != realWidth || this.height != realHeight)) {
+			resizeWorld(realWidth, realHeight);
+			return false;
+		}
+		if (this.width != realWidth || this.height != realHeight
+				|| configChanged) {
 			this.width = realWidth;
 			this.height = realHeight;
+			configChanged = false;
+			updateOrientation();
 
 			float xmax = realWidth / SCALE_FACTOR;
 			float ymax = realHeight / SCALE_FACTOR;
@@ -74,119 +184,378 @@ public class PhysicsWorld {
 
 			// Log.i("World", "RecreateWorld " + xmax + " / " + ymax);
 
-			Vec2 gravity = new Vec2(0.0f, 0.0f);
-			world = new World(gravity, false);
-			world.setContinuousPhysics(true);
-			world.setWarmStarting(true);
+			if (circleEngineSetting) {
+				if (!(engine instanceof CircleEngine)) {
+					engine = new CircleEngine(VEL_ITER, POS_ITER);
+				}
+			} else if (!(engine instanceof Box2DEngine)) {
+				engine = new Box2DEngine(VEL_ITER, POS_ITER);
+			}
+			engine.reset(xmax, ymax);
+			touches.clear();
+
+			int count = ballCountSetting;
+			ballCount = 0;
+			state.ensureCapacity(count);
+			addBalls(count, xmax, ymax);
+
+			copyState();
+			cacheTime = 0;
+			calmSince = 0;
+			atRest = false;
+			SnapshotExchange exchange = new SnapshotExchange(ballCount);
+			publish(exchange, 0);
+			snapshots = exchange;
+			return true;
+		}
+		return false;
+	}
 
-			BodyDef def = new BodyDef();
-			def.type = BodyType.STATIC;
-			Body groundBody = world.createBody(def);
-			createEdge(0.0f, 0.0f, xmax, 0.0f, groundBody);
-			createEdge(xmax, 0.0f, xmax, ymax, groundBody);
-			createEdge(xmax, ymax, 0.0f, ymax, groundBody);
-			createEdge(0.0f, ymax, 0.0f, 0.0f, groundBody);
+	/**
+	 * Moves the box edges and the balls in place, the snapshot exchange and
+	 * the sprites are kept.
+	 */
+	private void resizeWorld(int realWidth, int realHeight) {
+		float oldMeanRadius = getMeanRadius(ballCount, width / SCALE_FACTOR,
+				height / SCALE_FACTOR);
+		this.width = realWidth;
+		this.height = realHeight;
+		updateOrientation();
+
+		float xmax = realWidth / SCALE_FACTOR;
+		float ymax = realHeight / SCALE_FACTOR;
+		this.minaxis = Math.min(xmax, ymax);
+
+		engine.resize(xmax, ymax, getMeanRadius(ballCount, xmax, ymax)
+				/ oldMeanRadius);
+		// Queued for the old box
+		touches.clear();
+
+		// The new state is its own interpolation origin, balls do not slide
+		// from where they were on the old screen
+		copyState();
+		cacheTime = 0;
+		calmSince = 0;
+		atRest = false;
+		publish(snapshots, 0);
+	}
 
-			balls.clear();
-			float random = (float) Math.random();
-			float ballsize = (BALL_RADIUS * minaxis) * (0.9f + 0.2f * random);
+	/**
+	 * @return the mean radius of count balls in a box of the given size,
+	 *         shrunk when they would cover more than {@link #MAX_FILL_RATIO}
+	 *         of it
+	 */
+	private float getMeanRadius(int count, float xmax, float ymax) {
+		float meanRadius = BALL_RADIUS * Math.min(xmax, ymax);
+		float maxMeanRadius = (float) Math.sqrt(MAX_FILL_RATIO * xmax * ymax
+				/ (Math.max(1, count) * Math.PI));
+		return Math.min(meanRadius, maxMeanRadius);
+	}
 
-			cacheX = new float[10];
-			cacheY = new float[10];
-			cacheAngle = new float[10];
+	/**
+	 * Lays balls out on a grid, so that they do not overlap when there is
+	 * room enough. The mean radius shrinks when the balls would cover more
+	 * than {@link #MAX_FILL_RATIO} of the screen.
+	 */
+	private void addBalls(int count, float xmax, float ymax) {
+		float meanRadius = getMeanRadius(count, xmax, ymax);
+
+		float maxRadius = meanRadius * (1.0f + sizeVariation);
+		int columns = Math.max(1, (int) (xmax / (2.0f * maxRadius)));
+		int rows = Math.max(1, (int) (ymax / (2.0f * maxRadius)));
+		float cellWidth = xmax / columns;
+		float cellHeight = ymax / rows;
+
+		for (int i = 0; i < count; i++) {
+			float random = 2.0f * (float) Math.random() - 1.0f;
+			float radius = meanRadius * (1.0f + sizeVariation * random);
+
+			int cell = i % (columns * rows);
+			float x = (cell % columns + 0.5f) * cellWidth;
+			float y = (cell / columns + 0.5f) * cellHeight;
+			if (i >= columns * rows) {
+				// No free cell left, the solver will push balls apart
+				x += (float) (Math.random() - 0.5) * cellWidth;
+				y += (float) (Math.random() - 0.5) * cellHeight;
+			}
+			addBall(x, y, radius);
+		}
+	}
 
-			for (int i = 0; i < 10; i++) {
+	/**
+	 * Queues a touch, from the input thread. It pushes the balls around it
+	 * away when the physics thread next steps the world, scaled by weight:
+	 * the samples of one event share a weight of 1.
+	 */
+	public void touch(float screenX, float screenY, float weight) {
+		touch(screenX, screenY, weight, System.nanoTime());
+	}
 
-				float x = (float) (ballsize + random * (xmax - ballsize));
-				float y = (float) (ballsize + random * (ymax - ballsize));
+	public void touch(float screenX, float screenY, float weight, long now) {
+		disturb(now);
+		ScreenTransform t = transform;
+		touches.add(t.toWorldX(screenX, screenY), t
+				.toWorldY(screenX, screenY), weight);
+	}
 
-				Vec2 position = new Vec2(x, y);
-				addBall(position, ballsize);
+	/**
+	 * Applies the touches queued since the last update, between two steps.
+	 */
+	private void applyTouches() {
+		int count = touches.take();
+		if (count == 0) {
+			return;
+		}
+		float[] touchX = touches.getX();
+		float[] touchY = touches.getY();
+		float[] touchWeight = touches.getWeight();
+		float radius = minaxis / 2.0f;
+		for (int s = 0; s < count; s++) {
+			for (int i = 0; i < ballCount; i++) {
+				float dx = engine.getX(i) - touchX[s];
+				float dy = engine.getY(i) - touchY[s];
+				float length = (float) Math.sqrt(dx * dx + dy * dy);
+				if (length < radius && length > 0.0f) {
+					float speed = MAX_SPEED * (1.0f - length / radius)
+							* touchWeight[s] / length;
+					engine.addVelocity(i, dx * speed, dy * speed);
+				}
 			}
+		}
+	}
+
+	private void addBall(float x, float y, float radius) {
+		engine.addBall(x, y, radius, BALL_FRICTION, BALL_RESTITUTION);
+		state.radius[ballCount] = radius;
+		ballCount++;
+		state.count = ballCount;
+	}
+
+	/**
+	 * Queues an accelerometer sample, from the sensor thread. The physics
+	 * thread filters the samples and applies the result before each step.
+	 * 
+	 * @return true if gravity moved far enough from the last reference to
+	 *         wake the balls up
+	 */
+	public boolean setGravity(float x, float y, float ratio) {
+		return setGravity(x, y, ratio, System.nanoTime());
+	}
+
+	public boolean setGravity(float x, float y, float ratio, long now) {
+		float gx = x * ratio;
+		float gy = y * ratio;
+		gravity.add(gx, gy, now);
+		gravityReceived = true;
+		lastGravityX = gx;
+		lastGravityY = gy;
+		float dx = gx - restGravityX;
+		float dy = gy - restGravityY;
+		if (dx * dx + dy * dy > GRAVITY_TOLERANCE * GRAVITY_TOLERANCE) {
+			restGravityX = gx;
+			restGravityY = gy;
+			disturb(now);
 			return true;
 		}
 		return false;
 	}
 
-	private void createEdge(float x1, float y1, float x2, float y2,
-			Body groundBody) {
-		Vec2 v1 = new Vec2(x1, y1);
-		Vec2 v2 = new Vec2(x2, y2);
-
-		PolygonShape groundShapeDef = new PolygonShape();
-		groundShapeDef.setAsEdge(v1, v2);
-
-		FixtureDef def = new FixtureDef();
-		def.density = 1.0f;
-		// 1 =
-		def.friction = 0.9f;
-		// 1 = rebond
-		def.restitution = 0.7f;
-		def.shape = groundShapeDef;
-
-		groundBody.createFixture(def);
-	}
-
-	public void touch(Vec2 screenPosition) {
-		Vec2 worldPosition = toWorld(screenPosition);
-		for (Body ball : balls) {
-			Vec2 ballPosition = ball.getPosition();
-			Vec2 dist = ballPosition.sub(worldPosition);
-			float length = dist.normalize();
-			float radius = minaxis / 2.0f;
-			if (length < radius) {
-				float speed = MAX_SPEED * (1.0f - length / radius);
-				dist.mul(speed);
-				ball.setLinearVelocity(ball.getLinearVelocity().add(dist));
-			}
-		}
+	/**
+	 * Restarts rest detection, after input.
+	 */
+	public void disturb() {
+		disturb(System.nanoTime());
 	}
 
-	private void addBall(Vec2 worldPosition, float radius) {
-		// Log.i("World", "Add ball " + position + " / " + radius);
+	public void disturb(long now) {
+		lastInputTime = now;
+		disturbed = true;
+		atRest = false;
+	}
 
-		BodyDef bodyDef = new BodyDef();
-		bodyDef.type = BodyType.DYNAMIC;
-		bodyDef.position.set(worldPosition);
-		Body body = world.createBody(bodyDef);
+	/**
+	 * @return mean kinetic energy per unit of mass of the balls, in J/kg, as
+	 *         of the last update
+	 */
+	public float getMeanEnergy() {
+		return meanEnergy;
+	}
 
-		CircleShape shape = new CircleShape();
-		shape.m_radius = radius;
+	/**
+	 * @return contacts that began during the updates since the last call
+	 */
+	public int takeNewContactCount() {
+		int newContacts = newContactCount;
+		newContactCount = 0;
+		return newContacts;
+	}
 
-		// body.createFixture(shape, 1.0f);
+	/**
+	 * @return System.nanoTime() of the last input, 0 if none
+	 */
+	public long getLastInputTime() {
+		return lastInputTime;
+	}
 
-		FixtureDef def = new FixtureDef();
-		def.density = 1.0f;
-		// 1 =
-		def.friction = 0.9f;
-		// 1 = rebond
-		def.restitution = 0.7f;
-		def.shape = shape;
-		body.createFixture(def);
+	/**
+	 * @return true when all balls have been still for a while, and nothing
+	 *         disturbed them since
+	 */
+	public boolean isAtRest() {
+		return atRest && !disturbed;
+	}
 
-		body.resetMassData();
+	private void updateRest(long now) {
+		float[] vx = state.vx;
+		float[] vy = state.vy;
+		float maxSpeedSquared = REST_SPEED * REST_SPEED;
+		float sumSpeedSquared = 0.0f;
+		boolean calm = true;
+		for (int i = 0; i < ballCount; i++) {
+			float speedSquared = vx[i] * vx[i] + vy[i] * vy[i];
+			sumSpeedSquared += speedSquared;
+			if (speedSquared > maxSpeedSquared) {
+				calm = false;
+			}
+		}
+		meanEnergy = ballCount == 0 ? 0.0f : 0.5f * sumSpeedSquared
+				/ ballCount;
+
+		if (disturbed) {
+			disturbed = false;
+			atRest = false;
+			calmSince = 0;
+			return;
+		}
+		if (!calm) {
+			calmSince = 0;
+			atRest = false;
+			return;
+		}
+		if (calmSince == 0) {
+			calmSince = now;
+		} else if (now - calmSince >= REST_DELAY_NS) {
+			atRest = true;
+		}
+	}
 
-		body.setUserData(new Float(radius));
+	/**
+	 * Restarts the clock, so that the time spent while the simulation was not
+	 * scheduled is not caught up on the next update. Must be called from the
+	 * sensor thread while no update runs.
+	 */
+	public void resetClock() {
+		resetClock(System.nanoTime());
+	}
 
-		balls.add(body);
+	public void resetClock(long now) {
+		lastUpdateTime = 0;
+		accumulator = 0;
+		cacheTime = 0;
+		// Samples queued while not scheduled are stale, and once the ring was
+		// full the latest ones were dropped: only the latest one is kept
+		gravity.clear();
+		if (gravityReceived) {
+			gravity.add(lastGravityX, lastGravityY, now);
+		}
 	}
 
-	public void setGravity(float x, float y, float ratio) {
-		world.setGravity(new Vec2(x * ratio, y * ratio));
+	public boolean update() {
+		return update(System.nanoTime());
 	}
 
-	public void update() {
-		for (int i = 0; i < SIM_COUNT; i++) {
-			world.step(PHYSIC_STEP_SEC, VEL_ITER, POS_ITER);
+	/**
+	 * Consumes the wall-clock time elapsed since the previous update in fixed
+	 * steps of {@link #PHYSIC_STEP_SEC}. The remainder is kept for the next
+	 * update and catch-up is capped to {@link #MAX_STEPS_PER_UPDATE} steps.
+	 * 
+	 * @return true if a new snapshot has been published
+	 */
+	public boolean update(long now) {
+		long start = System.nanoTime();
+		if (lastUpdateTime == 0) {
+			lastUpdateTime = now;
+		}
+		accumulator += now - lastUpdateTime;
+		lastUpdateTime = now;
+		if (accumulator > MAX_STEPS_PER_UPDATE * PHYSIC_STEP_NS) {
+			accumulator = MAX_STEPS_PER_UPDATE * PHYSIC_STEP_NS;
+		}
+
+		int steps = (int) (accumulator / PHYSIC_STEP_NS);
+		if (steps == 0) {
+			return false;
 		}
-		synchronized (this) {
-			for (int i = 0; i < balls.size(); i++) {
-				Body ball = balls.get(i);
-				cacheX[i] = ball.getPosition().x;
-				cacheY[i] = ball.getPosition().y;
-				cacheAngle[i] = ball.getAngle();
+		accumulator -= steps * PHYSIC_STEP_NS;
+
+		// The last step ends where the unconsumed time begins
+		long stateTime = now - accumulator;
+		applyTouches();
+		for (int i = 0; i < steps; i++) {
+			// Each step sees the samples received before it ends
+			long stepTime = stateTime - (steps - 1 - i) * PHYSIC_STEP_NS;
+			if (gravity.update(stepTime)) {
+				engine.setGravity(gravity.getX(), gravity.getY());
 			}
+			engine.step(PHYSIC_STEP_SEC);
+		}
+		newContactCount += engine.takeNewContactCount();
+		if (cacheTime == 0) {
+			cacheTime = stateTime - PHYSIC_STEP_NS * steps;
 		}
+		publish(snapshots, stateTime);
+		updateRest(stateTime);
+		updateCost.record(start, System.nanoTime());
+		return true;
+	}
+
+	/**
+	 * @return the gravity filter, for its stats
+	 */
+	public GravityFilter getGravityFilter() {
+		return gravity;
+	}
+
+	/**
+	 * @return cost of the updates that ran at least one step
+	 */
+	public CostStats getUpdateCost() {
+		return updateCost;
+	}
+
+	/**
+	 * Publishes the current body state, with the previously published one as
+	 * the interpolation origin.
+	 */
+	private void publish(SnapshotExchange exchange, long stateTime) {
+		WorldSnapshot snapshot = exchange.getBackBuffer();
+		System.arraycopy(state.x, 0, snapshot.previousX, 0, ballCount);
+		System.arraycopy(state.y, 0, snapshot.previousY, 0, ballCount);
+		System.arraycopy(state.angle, 0, snapshot.previousAngle, 0, ballCount);
+		snapshot.previousTime = cacheTime;
+
+		copyState();
+		cacheTime = stateTime;
+		System.arraycopy(state.x, 0, snapshot.x, 0, ballCount);
+		System.arraycopy(state.y, 0, snapshot.y, 0, ballCount);
+		System.arraycopy(state.angle, 0, snapshot.angle, 0, ballCount);
+		// Radii change when the world is resized
+		System.arraycopy(state.radius, 0, snapshot.radius, 0, ballCount);
+		snapshot.time = stateTime;
+		snapshot.count = ballCount;
+
+		exchange.publish();
+	}
+
+	private void copyState() {
+		engine.readState(state);
+	}
+
+	/**
+	 * @return state of the balls as of the last update
+	 */
+	public BodyState getState() {
+		return state;
 	}
 
 	private WindowManager getWindowManager() {
@@ -195,82 +564,109 @@ public class PhysicsWorld {
 	}
 
 	private int getOrientation() {
+		if (application == null) {
+			return ScreenTransform.ROTATION_0;
+		}
 		return getWindowManager().getDefaultDisplay().getOrientation();
 	}
 
+	/**
+	 * Captures the display orientation, to be called when the surface
+	 * changes: coordinates are converted with the transform computed here.
+	 */
+	public void updateOrientation() {
+		transform = new ScreenTransform(getOrientation(), width, height,
+				SCALE_FACTOR);
+	}
+
+	/**
+	 * @return the screen angle, in radians, of a world angle
+	 */
 	public float angleToScreen(float worldAngle) {
-		int orientation = getOrientation();
-		float screenAngle = 0.0f;
-		if (orientation == Surface.ROTATION_0) {
-			screenAngle = -worldAngle - 90;
-		} else if (orientation == Surface.ROTATION_90) {
-			screenAngle = -worldAngle - 180;
-		} else if (orientation == Surface.ROTATION_180) {
-			screenAngle = -worldAngle - 270;
-		} else if (orientation == Surface.ROTATION_270) {
-			screenAngle = -worldAngle;
-		}
-		return screenAngle;
+		return transform.toScreenAngle(worldAngle);
 	}
 
 	public Vec2 toScreen(Vec2 worldPos) {
-		int orientation = getOrientation();
-		Vec2 screenPos = new Vec2();
-
-		if (orientation == Surface.ROTATION_0) {
-			screenPos.x = worldPos.y * SCALE_FACTOR;
-			screenPos.y = worldPos.x * SCALE_FACTOR;
-		} else if (orientation == Surface.ROTATION_90) {
-			screenPos.x = width - worldPos.x * SCALE_FACTOR;
-			screenPos.y = worldPos.y * SCALE_FACTOR;
-		} else if (orientation == Surface.ROTATION_180) {
-			screenPos.x = height - worldPos.y * SCALE_FACTOR;
-			screenPos.y = width - worldPos.x * SCALE_FACTOR;
-		} else if (orientation == Surface.ROTATION_270) {
-			screenPos.x = worldPos.x * SCALE_FACTOR;
-			screenPos.y = height - worldPos.y * SCALE_FACTOR;
-		}
+		return toScreen(worldPos, new Vec2());
+	}
 
+	public Vec2 toScreen(Vec2 worldPos, Vec2 screenPos) {
+		ScreenTransform t = transform;
+		float x = worldPos.x;
+		float y = worldPos.y;
+		screenPos.x = t.toScreenX(x, y);
+		screenPos.y = t.toScreenY(x, y);
 		return screenPos;
 	}
 
 	public Vec2 toWorld(Vec2 screenPos) {
-		Vec2 worldPos = new Vec2();
-		int orientation = getOrientation();
-		if (orientation == Surface.ROTATION_0) {
-			worldPos.y = screenPos.x / SCALE_FACTOR;
-			worldPos.x = screenPos.y / SCALE_FACTOR;
-		} else if (orientation == Surface.ROTATION_90) {
-			worldPos.x = (width - screenPos.x) / SCALE_FACTOR;
-			worldPos.y = screenPos.y / SCALE_FACTOR;
-		} else if (orientation == Surface.ROTATION_180) {
-			worldPos.x = (height - screenPos.y) / SCALE_FACTOR;
-			worldPos.y = (width - screenPos.x) / SCALE_FACTOR;
-		} else if (orientation == Surface.ROTATION_270) {
-			worldPos.x = screenPos.x / SCALE_FACTOR;
-			worldPos.y = (height - screenPos.y) / SCALE_FACTOR;
-		}
+		return toWorld(screenPos, new Vec2());
+	}
+
+	public Vec2 toWorld(Vec2 screenPos, Vec2 worldPos) {
+		ScreenTransform t = transform;
+		float x = screenPos.x;
+		float y = screenPos.y;
+		worldPos.x = t.toWorldX(x, y);
+		worldPos.y = t.toWorldY(x, y);
 		return worldPos;
 	}
 
 	public int getBallCount() {
-		return balls.size();
+		return ballCount;
 	}
 
 	public float getBallRadius(int i) {
-		return ((Float) balls.get(i).getUserData()) * SCALE_FACTOR;
-	}
-
-	public void setBallCoords(GLSprite[] ballSprites) {
-		synchronized (this) {
-			for (int i = 0; i < balls.size(); i++) {
-				float ballRadius = getBallRadius(i);
-				Vec2 position = new Vec2(cacheX[i], cacheY[i]);
-				Vec2 screen = toScreen(position);
-				ballSprites[i].x = screen.x - ballRadius;
-				ballSprites[i].y = screen.y - ballRadius;
-				ballSprites[i].angle = cacheAngle[i];
-			}
+		return state.radius[i] * SCALE_FACTOR;
+	}
+
+	/**
+	 * Sets sprite positions for the given render time, from the latest
+	 * snapshot published by the physics thread. Rendering lags one update
+	 * behind the simulation, so that positions and angles can be interpolated
+	 * between the two last computed states.
+	 * 
+	 * @return true if a new snapshot has been received since the last call
+	 */
+	public boolean setBallCoords(GLSprite[] ballSprites, long renderTime) {
+		boolean received = frame.interpolate(snapshots, transform,
+				SCALE_FACTOR, renderTime);
+		int count = Math.min(frame.getCount(), ballSprites.length);
+		float[] x = frame.getX();
+		float[] y = frame.getY();
+		float[] angle = frame.getAngle();
+		float[] radius = frame.getRadius();
+		for (int i = 0; i < count; i++) {
+			float r = radius[i];
+			ballSprites[i].width = 2.0f * r;
+			ballSprites[i].height = 2.0f * r;
+			ballSprites[i].x = x[i] - r;
+			ballSprites[i].y = y[i] - r;
+			ballSprites[i].angle = angle[i];
 		}
+		return received;
+	}
+
+	/**
+	 * @return true if the last frame set by
+	 *         {@link #setBallCoords(GLSprite[], long)} is the same as the one
+	 *         before
+	 */
+	public boolean isFrameRepeated() {
+		return frame.isRepeated();
+	}
+
+	/**
+	 * Tells when the frame after the last one set by
+	 * {@link #setBallCoords(GLSprite[], long)} is worth drawing. Frames are
+	 * drawn every framePeriod while they interpolate towards the latest
+	 * snapshot. The frame that would reach it is left to the next snapshot,
+	 * whose first frame shows the same positions.
+	 * 
+	 * @return the time of the next frame, or Long.MAX_VALUE to wait for the
+	 *         next snapshot
+	 */
+	public long getNextFrameTime(long framePeriod) {
+		return frame.getNextFrameTime(snapshots.getFrontBuffer(), framePeriod);
 	}
 }
@@ -1,39 +1,42 @@
 package org.glandais.android.livespheres.opengl;
 
-import java.io.IOException;
-import java.io.InputStream;
-
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.opengles.GL11;
-import javax.microedition.khronos.opengles.GL11Ext;
 
 import net.rbgrn.android.glwallpaperservice.GLWallpaperService;
 
 import org.glandais.android.livespheres.R;
 import org.glandais.android.livespheres.opengl.sprites.GLSprite;
 import org.glandais.android.livespheres.opengl.sprites.Grid;
+import org.glandais.android.livespheres.opengl.sprites.PointSpriteBatch;
+import org.glandais.android.livespheres.opengl.sprites.SpriteBatch;
+import org.glandais.android.livespheres.opengl.sprites.TextureRegion;
+import org.glandais.android.livespheres.physics.CostStats;
+import org.glandais.android.livespheres.physics.PacingStats;
+import org.glandais.android.livespheres.physics.RateGovernor;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
-import android.opengl.GLUtils;
 import android.util.Log;
 
 // Original code provided by Robert Green
 // http://www.rbgrn.net/content/354-glsurfaceview-adapted-3d-live-wallpapers
-public class SpheresRenderer implements GLWallpaperService.Renderer {
+public class SpheresRenderer implements GLWallpaperService.PacedRenderer {
+
+	private static final String TAG = "SpheresRenderer";
+	private static final boolean LOG_STATS = false;
+	private static final int STATS_FRAMES = 250;
+
+	// Sprite images sharing one texture. None for now: the background is
+	// too large for the atlas, and the ball alone gains nothing from it
+	// while its ETC1 version is smaller
+	private static final int[] ATLAS_RESOURCES = {};
 
-	// Specifies the format our textures should be converted to upon load.
-	private static BitmapFactory.Options sBitmapOptions = new BitmapFactory.Options();
 	// An array of things to draw every frame.
 	private GLSprite[] mSprites;
 	protected GLSprite[] ballSprites;
-	// Pre-allocated arrays to use at runtime so that allocation during the
-	// test can be avoided.
-	private int[] mTextureNameWorkspace;
-	private int[] mCropWorkspace;
 	// A reference to the application context.
 	private Context mContext;
 	// Determines the use of vertex arrays.
@@ -41,98 +44,290 @@ public class SpheresRenderer implements GLWallpaperService.Renderer {
 	// Determines the use of vertex buffer objects.
 	private boolean mUseHardwareBuffers;
 	private PhysicsWorld mWorld;
+	// Draws sprites with one call per texture, null when not using vertex
+	// arrays
+	private SpriteBatch mBatch;
+	// Draws balls as point sprites when the extensions are there, null
+	// otherwise
+	private PointSpriteBatch mPoints;
+	private final TextureManager mTextures;
+	private TextureRegion mBackgroundRegion;
+	// Decodes the user background, swapped in by the GL thread when ready
+	private final BackgroundLoader mBackgroundLoader;
+	// Size of the background sprite, 0 for the size of the default one
+	private int mBackgroundWidth = 0;
+	private int mBackgroundHeight = 0;
+	// Creation time, and time the user background was first drawn
+	private final long mCreateTime = System.nanoTime();
+	private long mBackgroundShownTime = 0;
+	private TextureRegion mBallRegion;
+	// Ball in a texture of its own, for point sprites
+	private TextureRegion mBallPointRegion;
+	private final AllocationTracker mDrawAllocations = new AllocationTracker(
+			"draw");
+	private final CostStats mDrawCost = new CostStats();
+	// Time the next frame was due at, Long.MAX_VALUE when it waits for a
+	// snapshot
+	private long mNextFrameTime = Long.MAX_VALUE;
+	private final PacingStats mPacing = new PacingStats();
+	// GL calls forwarded and dropped by the state cache, over the stats
+	private int mGLCalls = 0;
+	private int mGLSkipped = 0;
+	// Shortest time between two frames interpolating the same snapshots
+	private volatile long mFramePeriod = RateGovernor
+			.getPeriod(RateGovernor.TIER_FAST);
+	// Time from a surface change, as seen by the engine, to the first frame
+	// drawn at the new size
+	private volatile long mSurfaceChangeTime = 0;
+	private long mResizeStart = 0;
+	private final CostStats mResizeCost = new CostStats();
 
 	public SpheresRenderer(Context context, boolean useVerts,
-			boolean useHardwareBuffers, PhysicsWorld world) {
+			boolean useHardwareBuffers, PhysicsWorld world,
+			BackgroundLoader backgroundLoader) {
 		super();
 		mSprites = new GLSprite[0];
 		ballSprites = new GLSprite[0];
-		// Pre-allocate and store these objects so we can use them at runtime
-		// without allocating memory mid-frame.
-		mTextureNameWorkspace = new int[1];
-		mCropWorkspace = new int[4];
-
-		// Set our bitmaps to 16-bit, 565 format.
-		sBitmapOptions.inPreferredConfig = Bitmap.Config.RGB_565;
 
 		mContext = context;
+		mTextures = new TextureManager(context, ATLAS_RESOURCES);
+		// Encoded at build time by TextureCompressor
+		mTextures.setCompressed(R.drawable.background, R.raw.background_etc1,
+				0);
+		mTextures.setCompressed(R.drawable.ball, R.raw.ball_etc1,
+				R.raw.ball_alpha);
 
 		mUseVerts = useVerts;
 		mUseHardwareBuffers = useVerts ? useHardwareBuffers : false;
 
 		mWorld = world;
+		mBackgroundLoader = backgroundLoader;
 
-		updateSpriteArray();
+		if (mUseVerts) {
+			mBatch = new SpriteBatch(PhysicsWorld.DEFAULT_BALL_COUNT);
+		}
 	}
 
+	/**
+	 * Fits the sprite list to the world ball count, keeping the sprites
+	 * already there, and points them to the current texture regions. Must be
+	 * called on the GL thread once the surface exists.
+	 */
 	public void updateSpriteArray() {
-		mSprites = new GLSprite[1 + mWorld.getBallCount()];
-		ballSprites = new GLSprite[mWorld.getBallCount()];
-
-		mSprites[0] = new GLSprite(R.drawable.background);
-		BitmapDrawable backgroundImage = (BitmapDrawable) mContext
-				.getResources().getDrawable(R.drawable.background);
-		Bitmap backgoundBitmap = backgroundImage.getBitmap();
-		mSprites[0].width = backgoundBitmap.getWidth();
-		mSprites[0].height = backgoundBitmap.getHeight();
-		if (mUseVerts) {
-			// Setup the background grid. This is just a quad.
-			Grid backgroundGrid = new Grid(2, 2, false);
-			backgroundGrid.set(0, 0, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, null);
-			backgroundGrid.set(1, 0, mSprites[0].width, 0.0f, 0.0f, 1.0f, 1.0f,
-					null);
-			backgroundGrid.set(0, 1, 0.0f, mSprites[0].height, 0.0f, 0.0f,
-					0.0f, null);
-			backgroundGrid.set(1, 1, mSprites[0].width, mSprites[0].height,
-					0.0f, 1.0f, 0.0f, null);
-			mSprites[0].setGrid(backgroundGrid);
+		int ballCount = mWorld.getBallCount();
+		if (mSprites.length != 1 + ballCount) {
+			GLSprite[] sprites = new GLSprite[1 + ballCount];
+			System.arraycopy(mSprites, 0, sprites, 0, Math.min(
+					mSprites.length, sprites.length));
+			mSprites = sprites;
+			ballSprites = new GLSprite[ballCount];
 		}
 
-		// This list of things to move. It points to the same content as the
-		// sprite list except for the background.
-		for (int x = 0; x < mWorld.getBallCount(); x++) {
-			float ball_size = mWorld.getBallRadius(x) * 2;
-			GLSprite ball = new GLSprite(R.drawable.ball);
-
-			ball.width = ball_size;
-			ball.height = ball_size;
-
-			// Pick a random location for this sprite.
-			ball.x = (float) (Math.random() * 100.0);
-			ball.y = (float) (Math.random() * 100.0);
+		if (mSprites[0] == null) {
+			mSprites[0] = new GLSprite(R.drawable.background);
+		}
+		setBackground(mSprites[0]);
 
-			if (mUseVerts) {
-				Grid ballGrid = new Grid(2, 2, false);
-				ballGrid.set(0, 0, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, null);
-				ballGrid.set(1, 0, ball_size, 0.0f, 0.0f, 1.0f, 1.0f, null);
-				ballGrid.set(0, 1, 0.0f, ball_size, 0.0f, 0.0f, 0.0f, null);
-				ballGrid.set(1, 1, ball_size, ball_size, 0.0f, 1.0f, 0.0f, null);
-				ball.setGrid(ballGrid);
+		// This list of things to move. It points to the same content as the
+		// sprite list except for the background. Sizes and positions are set
+		// from the physics snapshot on each frame.
+		for (int x = 0; x < ballCount; x++) {
+			GLSprite ball = mSprites[x + 1];
+			if (ball == null) {
+				ball = new GLSprite(R.drawable.ball);
+				mSprites[x + 1] = ball;
 			}
-
-			mSprites[x + 1] = ball;
+			ball.setRegion(mBallRegion);
 			ballSprites[x] = ball;
 		}
+		if (mUseVerts) {
+			mBatch.ensureCapacity(ballCount);
+		}
+		if (mPoints != null) {
+			mPoints.ensureCapacity(ballCount);
+		}
 	}
 
 	public void onDrawFrame(GL10 gl) {
+		mDrawAllocations.begin();
+		long start = System.nanoTime();
+		swapBackground(gl);
 		if (mSprites != null) {
 			gl.glMatrixMode(GL10.GL_MODELVIEW);
+			mWorld.setBallCoords(ballSprites, start);
 			if (mUseVerts) {
+				gl.glLoadIdentity();
 				Grid.beginDrawing(gl, true, false);
+				mBatch.begin(mBackgroundRegion.textureName,
+						mBackgroundRegion.alphaTextureName);
+				mBatch.add(gl, mSprites[0]);
+				mBatch.end(gl);
+				if (mPoints != null && fitInPoints(ballSprites)) {
+					mPoints.begin(mBallPointRegion.textureName,
+							mBallPointRegion.alphaTextureName);
+					for (int x = 0; x < ballSprites.length; x++) {
+						mPoints.add(gl, ballSprites[x]);
+					}
+					mPoints.end(gl);
+				} else {
+					mBatch.begin(mBallRegion.textureName,
+							mBallRegion.alphaTextureName);
+					for (int x = 0; x < ballSprites.length; x++) {
+						mBatch.add(gl, ballSprites[x]);
+					}
+					mBatch.end(gl);
+				}
+				Grid.endDrawing(gl);
+			} else {
+				for (int x = 0; x < mSprites.length; x++) {
+					mSprites[x].draw(gl);
+				}
 			}
-			mWorld.setBallCoords(ballSprites);
-			for (int x = 0; x < mSprites.length; x++) {
-				mSprites[x].draw(gl);
+		}
+		if (gl instanceof StateCachingGL) {
+			StateCachingGL cache = (StateCachingGL) gl;
+			cache.endFrame();
+			mGLCalls += cache.getFrameCallCount();
+			mGLSkipped += cache.getFrameSkippedCount();
+		}
+		mDrawCost.record(start, System.nanoTime());
+		if (mResizeStart != 0) {
+			mResizeCost.record(mResizeStart, System.nanoTime());
+			mResizeStart = 0;
+			if (LOG_STATS) {
+				Log.d(TAG, "resize to frame " + mResizeCost);
 			}
+		}
+		// Frames drawn before their time were requested by a new snapshot
+		mPacing.recordFrame(start, start >= mNextFrameTime ? mNextFrameTime
+				: 0, mWorld.isFrameRepeated());
+		if (LOG_STATS && mDrawCost.getCount() % STATS_FRAMES == 0) {
+			int drawCalls = mSprites.length;
 			if (mUseVerts) {
-				Grid.endDrawing(gl);
+				drawCalls = (mBatch.takeDrawCallCount() + takePointDrawCalls())
+						/ STATS_FRAMES;
 			}
+			Log.d(TAG, "draw balls=" + ballSprites.length + " draw calls="
+					+ drawCalls + " " + mDrawCost);
+			Log.d(TAG, "pacing " + mPacing);
+			Log.d(TAG, "gl calls per frame=" + mGLCalls / STATS_FRAMES
+					+ " skipped=" + mGLSkipped / STATS_FRAMES);
+			mGLCalls = 0;
+			mGLSkipped = 0;
+			mDrawCost.reset();
+			mPacing.reset();
 		}
+		mDrawAllocations.end();
+	}
+
+	/**
+	 * Replaces the background with the image decoded last, if any. The new
+	 * texture is uploaded before the old one is released, so that frames
+	 * draw either background.
+	 */
+	private void swapBackground(GL10 gl) {
+		if (mBackgroundRegion == null) {
+			return;
+		}
+		BackgroundLoader.Image image = mBackgroundLoader.poll();
+		if (image == null) {
+			return;
+		}
+		TextureRegion region;
+		if (image.bitmap != null) {
+			region = mTextures.acquire(gl, image.bitmap, image.width,
+					image.height);
+			mBackgroundLoader.recycle(image.bitmap);
+		} else if (image.pixels != null) {
+			region = mTextures.acquire(gl, image.pixels, image.textureWidth,
+					image.textureHeight, image.width, image.height);
+		} else {
+			region = mTextures.acquire(gl, R.drawable.background);
+		}
+		if (mBackgroundShownTime == 0 && image.width != 0) {
+			// Cold start to the first frame with the user background
+			mBackgroundShownTime = System.nanoTime();
+			if (LOG_STATS) {
+				Log.d(TAG, "Background shown "
+						+ (mBackgroundShownTime - mCreateTime) / 1000000L
+						+ "ms after start, "
+						+ (image.pixels != null ? "cached" : "decoded"));
+			}
+		}
+		mTextures.release(gl, mBackgroundRegion);
+		mBackgroundRegion = region;
+		mBackgroundWidth = image.width;
+		mBackgroundHeight = image.height;
+		if (mSprites.length > 0) {
+			setBackground(mSprites[0]);
+		}
+	}
+
+	private void setBackground(GLSprite sprite) {
+		if (mBackgroundWidth == 0) {
+			BitmapDrawable backgroundImage = (BitmapDrawable) mContext
+					.getResources().getDrawable(R.drawable.background);
+			Bitmap backgoundBitmap = backgroundImage.getBitmap();
+			sprite.width = backgoundBitmap.getWidth();
+			sprite.height = backgoundBitmap.getHeight();
+		} else {
+			sprite.width = mBackgroundWidth;
+			sprite.height = mBackgroundHeight;
+		}
+		sprite.setRegion(mBackgroundRegion);
+	}
+
+	public long getNextFrameTime(long now) {
+		mNextFrameTime = mWorld.getNextFrameTime(mFramePeriod);
+		return mNextFrameTime;
+	}
+
+	/**
+	 * Sets the shortest time between two frames, in ns, from any thread.
+	 */
+	public void setFramePeriod(long framePeriod) {
+		mFramePeriod = framePeriod;
+	}
+
+	/**
+	 * @return true if no sprite is larger than the largest point size
+	 */
+	private boolean fitInPoints(GLSprite[] sprites) {
+		float maxSize = mPoints.getMaxSize();
+		for (int i = 0; i < sprites.length; i++) {
+			if (sprites[i].width > maxSize) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int takePointDrawCalls() {
+		return mPoints == null ? 0 : mPoints.takeDrawCallCount();
+	}
+
+	/**
+	 * Starts measuring the time to the first frame drawn after a surface
+	 * change, from the engine callback.
+	 */
+	public void setSurfaceChangeTime(long time) {
+		mSurfaceChangeTime = time;
+	}
+
+	/**
+	 * @return time from the surface changes to the first frames drawn after
+	 *         them
+	 */
+	public CostStats getResizeCost() {
+		return mResizeCost;
 	}
 
 	public void onSurfaceChanged(GL10 gl, int width, int height) {
+		mResizeStart = mSurfaceChangeTime;
+		mSurfaceChangeTime = 0;
 		gl.glViewport(0, 0, width, height);
+		// The user background is decoded for the surface size
+		mBackgroundLoader.setSize(width, height);
 
 		/*
 		 * Set our projection matrix. This doesn't have to be done each time we
@@ -171,136 +366,74 @@ public class SpheresRenderer implements GLWallpaperService.Renderer {
 
 		gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
 
-		updateSpriteArray();
-
 		// If we are using hardware buffers and the screen lost context
 		// then the buffer indexes that we recorded previously are now
-		// invalid. Forget them here and recreate them below.
+		// invalid. Forget them here and recreate them below. Buffers of a
+		// kept context are reused, generating them again would leak them.
+		boolean contextKept = isContextKept(gl);
 		if (mUseHardwareBuffers) {
-			if (mSprites != null) {
-				for (int x = 0; x < mSprites.length; x++) {
-					// Ditch old buffer indexes.
-					GLSprite glSprite = mSprites[x];
-					if (glSprite != null) {
-						Grid grid = glSprite.getGrid();
-						if (grid != null) {
-							grid.invalidateHardwareBuffers();
-						}
-					}
-				}
+			if (!contextKept) {
+				mBatch.invalidateHardwareBuffers();
 			}
+			mBatch.generateHardwareBuffers(gl);
 		}
 
-		// Load our texture and set its texture name on all sprites.
-
-		// To keep this sample simple we will assume that sprites that share
-		// the same texture are grouped together in our sprite list. A real
-		// app would probably have another level of texture management,
-		// like a texture hash.
-
-		int lastLoadedResource = -1;
-		int lastTextureId = -1;
+		// The context, and its extensions, are kept until the thread exits
+		if (mUseVerts && mPoints == null && PointSpriteBatch.isSupported(gl)) {
+			mPoints = new PointSpriteBatch(gl, mWorld.getBallCount());
+			Log.i(TAG, "Drawing balls as point sprites, up to "
+					+ mPoints.getMaxSize() + " pixels");
+		}
 
-		for (int x = 0; x < mSprites.length; x++) {
-			int resource = mSprites[x].getResourceId();
-			if (resource != lastLoadedResource) {
-				lastTextureId = loadBitmap(mContext, gl, resource);
-				lastLoadedResource = resource;
-			}
-			mSprites[x].setTextureName(lastTextureId);
-			if (mUseHardwareBuffers) {
-				// Grid currentGrid = mSprites[x].getGrid();
-				// if (!currentGrid.usingHardwareBuffers()) {
-				// currentGrid.generateHardwareBuffers(gl);
-				// }
-				mSprites[x].getGrid().generateHardwareBuffers(gl);
-			}
+		// Load our textures, sprites pick their region up when they are
+		// created.
+		if (!contextKept) {
+			loadTextures(gl);
 		}
+
+		updateSpriteArray();
 	}
 
 	/**
-	 * Called when the rendering thread shuts down. This is a good place to
-	 * release OpenGL ES resources.
-	 * 
-	 * @param gl
+	 * @return true if the textures, and buffers, of the previous surface are
+	 *         still there: the EGL context is kept when only the surface is
+	 *         recreated
 	 */
-	public void shutdown() {
-		if (mSprites != null) {
-
-			int lastFreedResource = -1;
-			int[] textureToDelete = new int[1];
-
-			for (int x = 0; x < mSprites.length; x++) {
-				int resource = mSprites[x].getResourceId();
-				if (resource != lastFreedResource) {
-					textureToDelete[0] = mSprites[x].getTextureName();
-					// gl.glDeleteTextures(1, textureToDelete, 0);
-					mSprites[x].setTextureName(0);
-				}
-				if (mUseHardwareBuffers) {
-					// mSprites[x].getGrid().releaseHardwareBuffers(gl);
-				}
-			}
-		}
+	private boolean isContextKept(GL10 gl) {
+		return mBallRegion != null
+				&& (!(gl instanceof GL11) || ((GL11) gl)
+						.glIsTexture(mBallRegion.textureName));
 	}
 
 	/**
-	 * Loads a bitmap into OpenGL and sets up the common parameters for 2D
-	 * texture maps.
+	 * Acquires the textures, after the context they belonged to was lost.
 	 */
-	protected int loadBitmap(Context context, GL10 gl, int resourceId) {
-		int textureName = -1;
-		if (context != null && gl != null) {
-			gl.glGenTextures(1, mTextureNameWorkspace, 0);
-
-			textureName = mTextureNameWorkspace[0];
-			gl.glBindTexture(GL10.GL_TEXTURE_2D, textureName);
-
-			gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER,
-					GL10.GL_NEAREST);
-			gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER,
-					GL10.GL_LINEAR);
-
-			gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S,
-					GL10.GL_CLAMP_TO_EDGE);
-			gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T,
-					GL10.GL_CLAMP_TO_EDGE);
-
-			gl.glTexEnvf(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE,
-					GL10.GL_REPLACE);
-
-			InputStream is = context.getResources().openRawResource(resourceId);
-			Bitmap bitmap;
-			try {
-				bitmap = BitmapFactory.decodeStream(is, null, sBitmapOptions);
-			} finally {
-				try {
-					is.close();
-				} catch (IOException e) {
-					// Ignore.
-				}
-			}
-
-			GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, bitmap, 0);
-
-			mCropWorkspace[0] = 0;
-			mCropWorkspace[1] = bitmap.getHeight();
-			mCropWorkspace[2] = bitmap.getWidth();
-			mCropWorkspace[3] = -bitmap.getHeight();
-
-			bitmap.recycle();
-
-			((GL11) gl).glTexParameteriv(GL10.GL_TEXTURE_2D,
-					GL11Ext.GL_TEXTURE_CROP_RECT_OES, mCropWorkspace, 0);
-
-			int error = gl.glGetError();
-			if (error != GL10.GL_NO_ERROR) {
-				Log.e("SpriteMethodTest", "Texture Load GLError: " + error);
-			}
-
+	private void loadTextures(GL10 gl) {
+		// The context they belonged to is gone
+		mTextures.invalidate();
+		mBackgroundRegion = mTextures.acquire(gl, R.drawable.background);
+		if (mBackgroundWidth != 0) {
+			// The user background is shown again once decoded
+			mBackgroundWidth = 0;
+			mBackgroundHeight = 0;
+			mBackgroundLoader.reload();
+		}
+		mBallRegion = mTextures.acquire(gl, R.drawable.ball);
+		if (mPoints != null) {
+			mBallPointRegion = mTextures.acquireTexture(gl, R.drawable.ball);
 		}
+	}
 
-		return textureName;
+	/**
+	 * Called when the rendering thread shuts down, once its EGL context has
+	 * been destroyed along with all textures.
+	 */
+	public void shutdown() {
+		mTextures.invalidate();
+		mBackgroundRegion = null;
+		mBallRegion = null;
+		mBallPointRegion = null;
+		mPoints = null;
 	}
 
 }
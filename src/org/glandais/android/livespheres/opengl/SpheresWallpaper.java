@@ -2,15 +2,24 @@ package org.glandais.android.livespheres.opengl;
 
 import java.util.List;
 
+import javax.microedition.khronos.opengles.GL;
+import javax.microedition.khronos.opengles.GL10;
+
 import net.rbgrn.android.glwallpaperservice.GLWallpaperService;
+import net.rbgrn.android.glwallpaperservice.GLWrapper;
 
-import org.jbox2d.common.Vec2;
+import org.glandais.android.livespheres.physics.IdleStats;
+import org.glandais.android.livespheres.physics.MotionGate;
+import org.glandais.android.livespheres.physics.RateGovernor;
 
+import android.content.SharedPreferences;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Handler;
+import android.os.Process;
+import android.util.Log;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 
@@ -20,6 +29,15 @@ public class SpheresWallpaper extends GLWallpaperService {
 
 	public static final String SHARED_PREFS_NAME = "spheressettings";
 	public static final String KEY_BACKGROUND = "background";
+	public static final String KEY_PHYSICS_THREAD = "physics_thread";
+	public static final String KEY_BALL_COUNT = "ball_count";
+	public static final String KEY_BALL_SIZE_VARIATION = "ball_size_variation";
+	public static final String KEY_PHYSICS_ENGINE = "physics_engine";
+	public static final String KEY_BACKGROUND_CACHE = "background_cache";
+	public static final String ENGINE_BOX2D = "box2d";
+	public static final String ENGINE_CIRCLES = "circles";
+
+	private static final int PHYSICS_THREAD_PRIORITY = Process.THREAD_PRIORITY_DISPLAY;
 
 	public SpheresWallpaper() {
 		super();
@@ -30,23 +48,120 @@ public class SpheresWallpaper extends GLWallpaperService {
 		return engine;
 	}
 
-	public class SpheresEngine extends GLEngine implements SensorEventListener {
+	private static final String TAG = "SpheresWallpaper";
+	private static final boolean LOG_STATS = false;
+	private static final int STATS_UPDATES = 250;
+	// Accelerometer rates, slow once the device has been still for a while
+	private static final int SENSOR_RATE_FAST = SensorManager.SENSOR_DELAY_UI;
+	private static final int SENSOR_RATE_SLOW = SensorManager.SENSOR_DELAY_NORMAL;
+	private static final long SENSOR_PERIOD_FAST_NS = 60000000L;
+	private static final float SENSOR_STILL_TOLERANCE = 0.4f;
+	private static final long SENSOR_STILL_DELAY_NS = 2000000000L;
+
+	public class SpheresEngine extends GLEngine implements
+			SharedPreferences.OnSharedPreferenceChangeListener,
+			SensorEventListener {
 
 		private SpheresRenderer renderer;
 
 		private PhysicsWorld mWorld;
 
-		private final Handler mHandler = new Handler();
+		private PhysicsScheduler mScheduler;
+
+		private SharedPreferences mPrefs;
+
+		private final BackgroundLoader mBackgroundLoader;
 
 		private boolean scheduled = false;
 
-		private final Runnable mDrawCube = new Runnable() {
+		// Balls at rest, neither simulated nor rendered until woken up
+		private final Handler mHandler = new Handler();
+		private boolean mSleeping = false;
+		private volatile boolean mSleepRequested = false;
+		// Balls come to rest in the slow tier
+		private final IdleStats mIdleStats = new IdleStats(
+				RateGovernor.getPeriod(RateGovernor.TIER_SLOW));
+
+		// Update and frame rate, following motion
+		private final RateGovernor mGovernor = new RateGovernor();
+		private volatile int mRateTier = mGovernor.getTier();
+
+		private int mWidth = 640;
+		private int mHeight = 480;
+
+		// Accelerometer rate, following device motion
+		private final MotionGate mMotionGate = new MotionGate(
+				SENSOR_STILL_TOLERANCE, SENSOR_STILL_DELAY_NS,
+				SENSOR_PERIOD_FAST_NS);
+		private boolean mSensorRegistered = false;
+		private boolean mSensorSlow = false;
+
+		private final AllocationTracker mUpdateAllocations = new AllocationTracker(
+				"update");
+		private final AllocationTracker mInputAllocations = new AllocationTracker(
+				"input");
+
+		private final Runnable mPhysicsTick = new Runnable() {
 			public void run() {
-				mHandler.removeCallbacks(mDrawCube);
-				if (scheduled) {
-					mWorld.update();
-					mHandler.postDelayed(mDrawCube,
-							PhysicsWorld.DRAWFRAME_STEP_MS);
+				mUpdateAllocations.begin();
+				boolean published = mWorld.update();
+				mUpdateAllocations.end();
+				if (published) {
+					// The GL thread waits for new positions
+					requestRender();
+					int tier = mGovernor.update(System.nanoTime(), mWorld
+							.getMeanEnergy(), mWorld.takeNewContactCount(),
+							mWorld.getLastInputTime());
+					if (tier != mRateTier) {
+						mRateTier = tier;
+						mHandler.post(mApplyRate);
+					}
+				}
+				if (!mSleepRequested && mWorld.isAtRest()) {
+					// Scheduler and GL thread are driven from the main thread
+					mSleepRequested = true;
+					mHandler.post(mSleep);
+				}
+				if (LOG_STATS
+						&& mWorld.getUpdateCost().getCount() == STATS_UPDATES) {
+					Log.d(TAG, "update balls=" + mWorld.getBallCount() + " "
+							+ mWorld.getUpdateCost());
+					Log.d(TAG, "rate " + mGovernor);
+					Log.d(TAG, "gravity " + mWorld.getGravityFilter());
+					mWorld.getUpdateCost().reset();
+					mWorld.getGravityFilter().resetStats();
+				}
+			}
+		};
+
+		private final Runnable mSleep = new Runnable() {
+			public void run() {
+				sleep();
+			}
+		};
+
+		private final Runnable mApplyRate = new Runnable() {
+			public void run() {
+				applyRate();
+			}
+		};
+
+		private final Runnable mApplySensorRate = new Runnable() {
+			public void run() {
+				registerSensor();
+			}
+		};
+
+		private final Runnable mRequestRender = new Runnable() {
+			public void run() {
+				requestRender();
+			}
+		};
+
+		private final Runnable mUpdateSprites = new Runnable() {
+			public void run() {
+				if (renderer != null) {
+					renderer.updateSpriteArray();
 				}
 			}
 		};
@@ -55,9 +170,97 @@ public class SpheresWallpaper extends GLWallpaperService {
 			super();
 			mWorld = new PhysicsWorld(spheresWallpaper.getApplication());
 			// handle prefs, other initialization
-			renderer = new SpheresRenderer(spheresWallpaper, true, true, mWorld);
+			// The new background must be drawn even if balls are at rest
+			mBackgroundLoader = new BackgroundLoader(mRequestRender,
+					new BackgroundCache(spheresWallpaper.getCacheDir()));
+			renderer = new SpheresRenderer(spheresWallpaper, true, true,
+					mWorld, mBackgroundLoader);
+			// Drops redundant state changes, must be set before the renderer
+			setGLWrapper(new GLWrapper() {
+				public GL wrap(GL gl) {
+					return new StateCachingGL((GL10) gl);
+				}
+			});
 			setRenderer(renderer);
 			setRenderMode(RENDERMODE_CONTINUOUSLY);
+
+			mPrefs = spheresWallpaper.getSharedPreferences(SHARED_PREFS_NAME,
+					MODE_PRIVATE);
+			mPrefs.registerOnSharedPreferenceChangeListener(this);
+			onSharedPreferenceChanged(mPrefs, null);
+		}
+
+		public void onSharedPreferenceChanged(SharedPreferences prefs,
+				String key) {
+			if (key == null || KEY_BACKGROUND_CACHE.equals(key)) {
+				mBackgroundLoader.setCacheEnabled(prefs.getBoolean(
+						KEY_BACKGROUND_CACHE, true));
+			}
+			if (key == null || KEY_BACKGROUND.equals(key)) {
+				mBackgroundLoader.setPath(prefs
+						.getString(KEY_BACKGROUND, null));
+			}
+			if (key == null || KEY_PHYSICS_THREAD.equals(key)) {
+				boolean useThread = prefs.getBoolean(KEY_PHYSICS_THREAD, true);
+				if (mScheduler != null) {
+					mScheduler.shutdown();
+				}
+				long period = RateGovernor.getPeriod(mGovernor.getTier());
+				if (useThread) {
+					mScheduler = new ThreadPhysicsScheduler(mPhysicsTick,
+							period, PHYSICS_THREAD_PRIORITY);
+				} else {
+					mScheduler = new HandlerPhysicsScheduler(mPhysicsTick,
+							period);
+				}
+				// Left stopped while at rest, wake() starts it
+				if (scheduled && !mSleeping) {
+					mScheduler.start();
+				}
+			}
+			if (key == null || KEY_BALL_COUNT.equals(key)
+					|| KEY_BALL_SIZE_VARIATION.equals(key)
+					|| KEY_PHYSICS_ENGINE.equals(key)) {
+				int count = Integer.parseInt(prefs.getString(KEY_BALL_COUNT,
+						String.valueOf(PhysicsWorld.DEFAULT_BALL_COUNT)));
+				float variation = Float.parseFloat(prefs.getString(
+						KEY_BALL_SIZE_VARIATION,
+						String.valueOf(PhysicsWorld.DEFAULT_SIZE_VARIATION)));
+				mWorld.setBallConfig(count, variation);
+				mWorld.setCircleEngine(ENGINE_CIRCLES.equals(prefs.getString(
+						KEY_PHYSICS_ENGINE, ENGINE_CIRCLES)));
+				if (key != null) {
+					recreateWorld(mWidth, mHeight);
+				}
+			}
+		}
+
+		/**
+		 * Applies the governor tier to the physics tick and to the frames.
+		 */
+		private void applyRate() {
+			long period = RateGovernor.getPeriod(mGovernor.getTier());
+			mScheduler.setPeriod(period);
+			if (renderer != null) {
+				renderer.setFramePeriod(period);
+			}
+		}
+
+		private void recreateWorld(int width, int height) {
+			boolean slept = mSleeping;
+			stopSleeping();
+			// The world must not be stepped while it is recreated
+			mScheduler.stop();
+			if (mWorld.recreateWorld(width, height)) {
+				queueEvent(mUpdateSprites);
+			}
+			if (scheduled) {
+				// Does not catch up with the time spent asleep
+				if (slept) {
+					mWorld.resetClock();
+				}
+				mScheduler.start();
+			}
 		}
 
 		@Override
@@ -69,6 +272,10 @@ public class SpheresWallpaper extends GLWallpaperService {
 		public void onDestroy() {
 			super.onDestroy();
 			unschedule();
+			mHandler.removeCallbacks(mSleep);
+			mScheduler.shutdown();
+			mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+			mBackgroundLoader.shutdown();
 			if (renderer != null) {
 				renderer.shutdown(); // assuming yours has this method - it
 										// should!
@@ -83,6 +290,9 @@ public class SpheresWallpaper extends GLWallpaperService {
 			} else {
 				unschedule();
 			}
+			// Pauses the GL thread while hidden, which gives its EGL surface
+			// up for the other engines
+			super.onVisibilityChanged(visible);
 		}
 
 		public void onSensorChanged(SensorEvent event) {
@@ -93,7 +303,15 @@ public class SpheresWallpaper extends GLWallpaperService {
 				float xAxis = - sensorY;
 				float yAxis = - sensorX;
 
-				mWorld.setGravity(xAxis, yAxis, 4.0f);
+				mInputAllocations.begin();
+				if (mWorld.setGravity(xAxis, yAxis, 4.0f)) {
+					wake();
+				}
+				if (mMotionGate.update(xAxis, yAxis, System.nanoTime())) {
+					// Not re-registered from within its own callback
+					mHandler.post(mApplySensorRate);
+				}
+				mInputAllocations.end();
 			}
 		}
 
@@ -103,10 +321,16 @@ public class SpheresWallpaper extends GLWallpaperService {
 		@Override
 		public void onSurfaceChanged(SurfaceHolder holder, int format,
 				int width, int height) {
-			super.onSurfaceChanged(holder, format, width, height);
-			if (mWorld.recreateWorld(width, height)) {
-				renderer.updateSpriteArray();
+			if (renderer != null) {
+				renderer.setSurfaceChangeTime(System.nanoTime());
 			}
+			super.onSurfaceChanged(holder, format, width, height);
+			mWidth = width;
+			mHeight = height;
+			// Rotations always come with a surface change, a new size only
+			// resizes the world in place
+			mWorld.updateOrientation();
+			recreateWorld(width, height);
 		}
 
 		@Override
@@ -121,7 +345,17 @@ public class SpheresWallpaper extends GLWallpaperService {
 			if (event.getAction() == MotionEvent.ACTION_UP
 					|| event.getAction() == MotionEvent.ACTION_DOWN
 					|| event.getAction() == MotionEvent.ACTION_MOVE) {
-				mWorld.touch(new Vec2(event.getX(), event.getY()));
+				mInputAllocations.begin();
+				// Samples batched since the last event trace the move
+				int history = event.getHistorySize();
+				float weight = 1.0f / (history + 1);
+				for (int i = 0; i < history; i++) {
+					mWorld.touch(event.getHistoricalX(i), event
+							.getHistoricalY(i), weight);
+				}
+				mWorld.touch(event.getX(), event.getY(), weight);
+				wake();
+				mInputAllocations.end();
 			}
 			super.onTouchEvent(event);
 		}
@@ -132,24 +366,105 @@ public class SpheresWallpaper extends GLWallpaperService {
 
 		private void unschedule() {
 			scheduled = false;
-			mHandler.removeCallbacks(mDrawCube);
+			mScheduler.stop();
+			mGovernor.stop(System.nanoTime());
+			unregisterSensor();
+			mHandler.removeCallbacks(mApplySensorRate);
+		}
 
+		private Sensor getAccelerometer() {
 			List<Sensor> sensors = getSensorManager().getSensorList(
 					Sensor.TYPE_ACCELEROMETER);
-			if (sensors.size() > 0) {
-				getSensorManager().unregisterListener(this, sensors.get(0));
+			return sensors.size() > 0 ? sensors.get(0) : null;
+		}
+
+		/**
+		 * Registers the listener at the rate the motion gate asks for, again
+		 * if the rate changed.
+		 */
+		private void registerSensor() {
+			Sensor sensor = getAccelerometer();
+			if (sensor == null || !scheduled) {
+				return;
+			}
+			if (!mSensorRegistered) {
+				mMotionGate.start(System.nanoTime());
+			}
+			boolean slow = mMotionGate.isStill();
+			if (mSensorRegistered) {
+				if (slow == mSensorSlow) {
+					return;
+				}
+				getSensorManager().unregisterListener(this, sensor);
+			}
+			getSensorManager().registerListener(this, sensor,
+					slow ? SENSOR_RATE_SLOW : SENSOR_RATE_FAST);
+			mSensorRegistered = true;
+			mSensorSlow = slow;
+			if (LOG_STATS) {
+				Log.d(TAG, "sensor " + mMotionGate);
+			}
+		}
+
+		private void unregisterSensor() {
+			if (mSensorRegistered) {
+				mSensorRegistered = false;
+				mMotionGate.stop(System.nanoTime());
+				getSensorManager().unregisterListener(this, getAccelerometer());
+			}
+		}
+
+		private void sleep() {
+			mSleepRequested = false;
+			if (!scheduled || mSleeping) {
+				return;
+			}
+			// Once stopped no tick runs, so rest can be checked for good
+			mScheduler.stop();
+			if (mWorld.isAtRest()) {
+				mSleeping = true;
+				mIdleStats.recordSleep(System.nanoTime());
+				mGovernor.setIdle(true, System.nanoTime());
+				setRenderMode(RENDERMODE_WHEN_DIRTY);
+				// Draws the final positions
+				requestRender();
+			} else {
+				mScheduler.start();
+			}
+		}
+
+		private void wake() {
+			if (mSleeping) {
+				stopSleeping();
+				if (scheduled) {
+					mWorld.resetClock();
+					mScheduler.start();
+				}
+			}
+		}
+
+		private void stopSleeping() {
+			if (mSleeping) {
+				mSleeping = false;
+				mIdleStats.recordWake(System.nanoTime());
+				mGovernor.setIdle(false, System.nanoTime());
+				setRenderMode(RENDERMODE_CONTINUOUSLY);
+				if (LOG_STATS) {
+					Log.d(TAG, "wake " + mIdleStats);
+					Log.d(TAG, "rate " + mGovernor);
+				}
 			}
 		}
 
 		private void schedule() {
-			scheduled = true;
-			mHandler.postDelayed(mDrawCube, PhysicsWorld.DRAWFRAME_STEP_MS);
-			List<Sensor> sensors = getSensorManager().getSensorList(
-					Sensor.TYPE_ACCELEROMETER);
-			if (sensors.size() > 0) {
-				getSensorManager().registerListener(this, sensors.get(0),
-						SensorManager.SENSOR_DELAY_UI);
+			stopSleeping();
+			if (!scheduled) {
+				scheduled = true;
+				mGovernor.start(System.nanoTime());
+				mWorld.resetClock();
+				mScheduler.start();
 			}
+			registerSensor();
 		}
 
 	}
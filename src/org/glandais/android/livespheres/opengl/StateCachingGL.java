@@ -0,0 +1,295 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.nio.IntBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Drops calls that would not change the GL state: texture and buffer
+ * bindings, active texture units, enabled capabilities and client states,
+ * and the matrix mode. The state starts unknown, so the first call of each
+ * kind always goes through; GL_TEXTURE_2D and the texture coordinate array
+ * are tracked per unit. The active units are assumed to be the first one
+ * until set, the GL default, which users restore after using another.
+ *
+ * Forwarded and dropped calls are counted per frame, see
+ * {@link #endFrame()}. Must be used on the GL thread.
+ */
+public class StateCachingGL extends CountingGL {
+
+	private static final int UNKNOWN = -1;
+	// Default value of the state arrays
+	private static final byte STATE_UNKNOWN = 0;
+	private static final byte STATE_ENABLED = 1;
+	private static final byte STATE_DISABLED = 2;
+	// Texture units tracked, calls on others go through
+	private static final int MAX_UNITS = 8;
+	// Capabilities and client states tracked, besides per unit ones
+	private static final int MAX_CAPS = 16;
+
+	private int mActiveTexture = UNKNOWN;
+	private int mClientActiveTexture = UNKNOWN;
+	private final int[] mBoundTextures = new int[MAX_UNITS];
+	private final byte[] mTexture2D = new byte[MAX_UNITS];
+	private final byte[] mTexCoordArrays = new byte[MAX_UNITS];
+	private int mArrayBuffer = UNKNOWN;
+	private int mElementArrayBuffer = UNKNOWN;
+	private int mMatrixMode = UNKNOWN;
+
+	// Other capabilities and client states, and their state
+	private final int[] mCaps = new int[MAX_CAPS];
+	private final byte[] mCapStates = new byte[MAX_CAPS];
+	private int mCapCount = 0;
+	private final int[] mClientStates = new int[MAX_CAPS];
+	private final byte[] mClientStateStates = new byte[MAX_CAPS];
+	private int mClientStateCount = 0;
+
+	private int mSkipped = 0;
+	private int mFrameCalls = 0;
+	private int mFrameSkipped = 0;
+
+	public StateCachingGL(GL10 gl) {
+		super(gl);
+		for (int i = 0; i < MAX_UNITS; i++) {
+			mBoundTextures[i] = UNKNOWN;
+		}
+	}
+
+	/**
+	 * Ends a frame: its counters are returned by
+	 * {@link #getFrameCallCount()} and {@link #getFrameSkippedCount()} until
+	 * the next one.
+	 */
+	public void endFrame() {
+		mFrameCalls = takeCallCount();
+		mFrameSkipped = mSkipped;
+		mSkipped = 0;
+	}
+
+	/**
+	 * @return calls forwarded during the last frame
+	 */
+	public int getFrameCallCount() {
+		return mFrameCalls;
+	}
+
+	/**
+	 * @return calls dropped during the last frame
+	 */
+	public int getFrameSkippedCount() {
+		return mFrameSkipped;
+	}
+
+	@Override
+	public void glActiveTexture(int texture) {
+		if (texture == mActiveTexture) {
+			mSkipped++;
+			return;
+		}
+		super.glActiveTexture(texture);
+		mActiveTexture = texture;
+	}
+
+	@Override
+	public void glClientActiveTexture(int texture) {
+		if (texture == mClientActiveTexture) {
+			mSkipped++;
+			return;
+		}
+		super.glClientActiveTexture(texture);
+		mClientActiveTexture = texture;
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture) {
+		int unit = getUnit(mActiveTexture);
+		if (target != GL10.GL_TEXTURE_2D || unit == UNKNOWN) {
+			super.glBindTexture(target, texture);
+			return;
+		}
+		if (mBoundTextures[unit] == texture) {
+			mSkipped++;
+			return;
+		}
+		super.glBindTexture(target, texture);
+		mBoundTextures[unit] = texture;
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		super.glDeleteTextures(n, textures, offset);
+		for (int i = 0; i < n; i++) {
+			textureDeleted(textures[offset + i]);
+		}
+	}
+
+	@Override
+	public void glDeleteTextures(int n, IntBuffer textures) {
+		super.glDeleteTextures(n, textures);
+		for (int i = 0; i < n; i++) {
+			textureDeleted(textures.get(textures.position() + i));
+		}
+	}
+
+	/**
+	 * Deleting a bound texture binds the default one.
+	 */
+	private void textureDeleted(int texture) {
+		for (int unit = 0; unit < MAX_UNITS; unit++) {
+			if (mBoundTextures[unit] == texture) {
+				mBoundTextures[unit] = 0;
+			}
+		}
+	}
+
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+		if (target == GL11.GL_ARRAY_BUFFER) {
+			if (mArrayBuffer == buffer) {
+				mSkipped++;
+				return;
+			}
+			mArrayBuffer = buffer;
+		} else if (target == GL11.GL_ELEMENT_ARRAY_BUFFER) {
+			if (mElementArrayBuffer == buffer) {
+				mSkipped++;
+				return;
+			}
+			mElementArrayBuffer = buffer;
+		}
+		super.glBindBuffer(target, buffer);
+	}
+
+	@Override
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		super.glDeleteBuffers(n, buffers, offset);
+		for (int i = 0; i < n; i++) {
+			bufferDeleted(buffers[offset + i]);
+		}
+	}
+
+	@Override
+	public void glDeleteBuffers(int n, IntBuffer buffers) {
+		super.glDeleteBuffers(n, buffers);
+		for (int i = 0; i < n; i++) {
+			bufferDeleted(buffers.get(buffers.position() + i));
+		}
+	}
+
+	/**
+	 * Deleting a bound buffer unbinds it.
+	 */
+	private void bufferDeleted(int buffer) {
+		if (mArrayBuffer == buffer) {
+			mArrayBuffer = 0;
+		}
+		if (mElementArrayBuffer == buffer) {
+			mElementArrayBuffer = 0;
+		}
+	}
+
+	@Override
+	public void glEnable(int cap) {
+		if (setCap(cap, STATE_ENABLED)) {
+			super.glEnable(cap);
+		}
+	}
+
+	@Override
+	public void glDisable(int cap) {
+		if (setCap(cap, STATE_DISABLED)) {
+			super.glDisable(cap);
+		}
+	}
+
+	@Override
+	public void glEnableClientState(int array) {
+		if (setClientState(array, STATE_ENABLED)) {
+			super.glEnableClientState(array);
+		}
+	}
+
+	@Override
+	public void glDisableClientState(int array) {
+		if (setClientState(array, STATE_DISABLED)) {
+			super.glDisableClientState(array);
+		}
+	}
+
+	@Override
+	public void glMatrixMode(int mode) {
+		if (mode == mMatrixMode) {
+			mSkipped++;
+			return;
+		}
+		super.glMatrixMode(mode);
+		mMatrixMode = mode;
+	}
+
+	/**
+	 * @return true if the call changes the state and must go through
+	 */
+	private boolean setCap(int cap, byte state) {
+		if (cap == GL10.GL_TEXTURE_2D) {
+			return setState(mTexture2D, getUnit(mActiveTexture), state);
+		}
+		int i = indexOf(mCaps, mCapCount, cap);
+		if (i == UNKNOWN) {
+			if (mCapCount == MAX_CAPS) {
+				return true;
+			}
+			i = mCapCount++;
+			mCaps[i] = cap;
+		}
+		return setState(mCapStates, i, state);
+	}
+
+	private boolean setClientState(int array, byte state) {
+		if (array == GL10.GL_TEXTURE_COORD_ARRAY) {
+			return setState(mTexCoordArrays,
+					getUnit(mClientActiveTexture), state);
+		}
+		int i = indexOf(mClientStates, mClientStateCount, array);
+		if (i == UNKNOWN) {
+			if (mClientStateCount == MAX_CAPS) {
+				return true;
+			}
+			i = mClientStateCount++;
+			mClientStates[i] = array;
+		}
+		return setState(mClientStateStates, i, state);
+	}
+
+	private boolean setState(byte[] states, int i, byte state) {
+		if (i == UNKNOWN) {
+			return true;
+		}
+		if (states[i] == state) {
+			mSkipped++;
+			return false;
+		}
+		states[i] = state;
+		return true;
+	}
+
+	private static int indexOf(int[] values, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			if (values[i] == value) {
+				return i;
+			}
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * @return the index of the texture unit, UNKNOWN if not tracked
+	 */
+	private static int getUnit(int texture) {
+		if (texture == UNKNOWN) {
+			return 0;
+		}
+		int unit = texture - GL10.GL_TEXTURE0;
+		return unit >= 0 && unit < MAX_UNITS ? unit : UNKNOWN;
+	}
+}
@@ -0,0 +1,420 @@
+package org.glandais.android.livespheres.opengl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import org.glandais.android.livespheres.opengl.sprites.TextureRegion;
+import org.glandais.android.livespheres.texture.Pkm;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.opengl.GLUtils;
+import android.util.Log;
+
+/**
+ * Loads textures by resource id and keeps them while they are used. Small
+ * images are packed together into one atlas texture, so that sprites using
+ * any of them can be drawn without binding another texture. Other images get
+ * a texture of their own.
+ *
+ * Images with an ETC1 version, see {@link #setCompressed(int, int, int)},
+ * are uploaded as is when the GPU supports it, without decoding. The atlas
+ * is always decoded, so its images cannot have one.
+ *
+ * Textures are reference counted: each {@link #acquire(GL10, int)} must be
+ * matched by a {@link #release(GL10, TextureRegion)}, and a texture is
+ * deleted once none of its regions is used. Must be used on the GL thread.
+ */
+public class TextureManager {
+
+	private static final String TAG = "TextureManager";
+
+	private static final int ATLAS_WIDTH = 512;
+	// Empty pixels around atlas images, so that filtering does not bleed
+	private static final int PADDING = 2;
+
+	private static final String ETC1_EXTENSION = "GL_OES_compressed_ETC1_RGB8_texture";
+	private static final int GL_ETC1_RGB8_OES = 0x8D64;
+
+	private final Context mContext;
+	private final int[] mAtlasResources;
+
+	// Loaded regions by resource id
+	private final HashMap<Integer, TextureRegion> mAtlasRegions = new HashMap<Integer, TextureRegion>();
+	private final HashMap<Integer, TextureRegion> mRegions = new HashMap<Integer, TextureRegion>();
+	// Users of each texture, by texture name
+	private final HashMap<Integer, Integer> mUsers = new HashMap<Integer, Integer>();
+
+	// ETC1 and alpha plane raw resources, by resource id
+	private final HashMap<Integer, int[]> mCompressed = new HashMap<Integer, int[]>();
+	// Whether the context supports ETC1, null until checked
+	private Boolean mEtc1Supported;
+
+	private final int[] mTextureNameWorkspace = new int[1];
+
+	public TextureManager(Context context, int[] atlasResources) {
+		super();
+		mContext = context;
+		mAtlasResources = atlasResources;
+	}
+
+	/**
+	 * Declares an ETC1 version of an image, to be used instead when
+	 * supported. Compressed images have a texture of their own.
+	 *
+	 * @param alphaResourceId
+	 *            alpha plane of the image, 0 if opaque
+	 * @throws IllegalArgumentException
+	 *             if the image is part of the atlas
+	 */
+	public void setCompressed(int resourceId, int etc1ResourceId,
+			int alphaResourceId) {
+		if (isInAtlas(resourceId)) {
+			throw new IllegalArgumentException("Image " + resourceId
+					+ " is part of the atlas");
+		}
+		mCompressed.put(resourceId, new int[] { etc1ResourceId,
+				alphaResourceId });
+	}
+
+	/**
+	 * @return the region holding the image, loaded if needed
+	 */
+	public TextureRegion acquire(GL10 gl, int resourceId) {
+		return acquire(gl, resourceId, isInAtlas(resourceId));
+	}
+
+	/**
+	 * Same as {@link #acquire(GL10, int)}, but the image gets a texture of
+	 * its own even if it is part of the atlas, for point sprites which always
+	 * map the whole texture.
+	 */
+	public TextureRegion acquireTexture(GL10 gl, int resourceId) {
+		return acquire(gl, resourceId, false);
+	}
+
+	private TextureRegion acquire(GL10 gl, int resourceId, boolean inAtlas) {
+		HashMap<Integer, TextureRegion> regions = inAtlas ? mAtlasRegions
+				: mRegions;
+		TextureRegion region = regions.get(resourceId);
+		if (region == null) {
+			if (inAtlas) {
+				loadAtlas(gl);
+			} else if (isCompressed(gl, resourceId)) {
+				loadCompressed(gl, resourceId);
+			} else {
+				loadTexture(gl, resourceId);
+			}
+			region = regions.get(resourceId);
+		}
+		Integer users = mUsers.get(region.textureName);
+		mUsers.put(region.textureName, users == null ? 1 : users + 1);
+		return region;
+	}
+
+	/**
+	 * Creates a texture of its own for the top left width x height pixels of
+	 * the bitmap, which can be reused once this returns.
+	 */
+	public TextureRegion acquire(GL10 gl, Bitmap bitmap, int width,
+			int height) {
+		int textureName = upload(gl, bitmap);
+		mUsers.put(textureName, 1);
+		return new TextureRegion(0, textureName, 0, 0, width, height, bitmap
+				.getWidth(), bitmap.getHeight());
+	}
+
+	/**
+	 * Same as {@link #acquire(GL10, Bitmap, int, int)}, from the RGB 565
+	 * pixels of a textureWidth x textureHeight image.
+	 */
+	public TextureRegion acquire(GL10 gl, Buffer pixels, int textureWidth,
+			int textureHeight, int width, int height) {
+		int textureName = generateTexture(gl);
+		gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGB, textureWidth,
+				textureHeight, 0, GL10.GL_RGB, GL10.GL_UNSIGNED_SHORT_5_6_5,
+				pixels);
+		checkError(gl);
+		mUsers.put(textureName, 1);
+		return new TextureRegion(0, textureName, 0, 0, width, height,
+				textureWidth, textureHeight);
+	}
+
+	public void release(GL10 gl, TextureRegion region) {
+		Integer users = mUsers.get(region.textureName);
+		if (users == null) {
+			// Texture already gone with a previous context
+			return;
+		}
+		if (users > 1) {
+			mUsers.put(region.textureName, users - 1);
+			return;
+		}
+		mUsers.remove(region.textureName);
+		removeRegions(mAtlasRegions, region.textureName);
+		removeRegions(mRegions, region.textureName);
+		mTextureNameWorkspace[0] = region.textureName;
+		gl.glDeleteTextures(1, mTextureNameWorkspace, 0);
+		if (region.alphaTextureName != 0) {
+			mTextureNameWorkspace[0] = region.alphaTextureName;
+			gl.glDeleteTextures(1, mTextureNameWorkspace, 0);
+		}
+	}
+
+	/**
+	 * Forgets all textures without deleting them, when the GL context they
+	 * belonged to has been destroyed.
+	 */
+	public void invalidate() {
+		mEtc1Supported = null;
+		mAtlasRegions.clear();
+		mRegions.clear();
+		mUsers.clear();
+	}
+
+	private static void removeRegions(HashMap<Integer, TextureRegion> map,
+			int textureName) {
+		Iterator<TextureRegion> regions = map.values().iterator();
+		while (regions.hasNext()) {
+			if (regions.next().textureName == textureName) {
+				regions.remove();
+			}
+		}
+	}
+
+	private boolean isInAtlas(int resourceId) {
+		for (int i = 0; i < mAtlasResources.length; i++) {
+			if (mAtlasResources[i] == resourceId) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Packs atlas images on shelves, tallest first.
+	 */
+	private void loadAtlas(GL10 gl) {
+		int count = mAtlasResources.length;
+		ArrayList<Bitmap> bitmaps = new ArrayList<Bitmap>(count);
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			bitmaps.add(decode(mAtlasResources[i], Bitmap.Config.ARGB_8888));
+			order[i] = i;
+		}
+		for (int i = 1; i < count; i++) {
+			for (int j = i; j > 0
+					&& bitmaps.get(order[j]).getHeight() > bitmaps.get(
+							order[j - 1]).getHeight(); j--) {
+				Integer swap = order[j];
+				order[j] = order[j - 1];
+				order[j - 1] = swap;
+			}
+		}
+
+		int[] x = new int[count];
+		int[] y = new int[count];
+		int shelfX = 0;
+		int shelfY = 0;
+		int shelfHeight = 0;
+		for (int k = 0; k < count; k++) {
+			int i = order[k];
+			Bitmap bitmap = bitmaps.get(i);
+			int width = bitmap.getWidth() + 2 * PADDING;
+			if (shelfX + width > ATLAS_WIDTH && shelfX > 0) {
+				shelfY += shelfHeight;
+				shelfX = 0;
+				shelfHeight = 0;
+			}
+			x[i] = shelfX + PADDING;
+			y[i] = shelfY + PADDING;
+			shelfX += width;
+			shelfHeight = Math.max(shelfHeight, bitmap.getHeight() + 2
+					* PADDING);
+		}
+		int atlasHeight = powerOfTwo(shelfY + shelfHeight);
+
+		Bitmap atlas = Bitmap.createBitmap(ATLAS_WIDTH, atlasHeight,
+				Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(atlas);
+		for (int i = 0; i < count; i++) {
+			canvas.drawBitmap(bitmaps.get(i), x[i], y[i], null);
+		}
+
+		int textureName = upload(gl, atlas);
+		for (int i = 0; i < count; i++) {
+			Bitmap bitmap = bitmaps.get(i);
+			mAtlasRegions.put(mAtlasResources[i], new TextureRegion(
+					mAtlasResources[i], textureName, x[i], y[i], bitmap
+							.getWidth(), bitmap.getHeight(), ATLAS_WIDTH,
+					atlasHeight));
+			bitmap.recycle();
+		}
+		atlas.recycle();
+	}
+
+	private void loadTexture(GL10 gl, int resourceId) {
+		// 16 bits for opaque images, the decoder keeps 32 bits when there is
+		// alpha
+		Bitmap bitmap = decode(resourceId, Bitmap.Config.RGB_565);
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+		int textureName = upload(gl, bitmap);
+		mRegions.put(resourceId, new TextureRegion(resourceId, textureName,
+				0, 0, width, height, width, height));
+		bitmap.recycle();
+	}
+
+	private boolean isCompressed(GL10 gl, int resourceId) {
+		if (!mCompressed.containsKey(resourceId)) {
+			return false;
+		}
+		if (mEtc1Supported == null) {
+			String extensions = gl.glGetString(GL10.GL_EXTENSIONS);
+			mEtc1Supported = Boolean.valueOf(extensions != null
+					&& (" " + extensions + " ").indexOf(" " + ETC1_EXTENSION
+							+ " ") >= 0);
+			if (!mEtc1Supported.booleanValue()) {
+				Log.i(TAG, "No ETC1 support, decoding images");
+			}
+		}
+		return mEtc1Supported.booleanValue();
+	}
+
+	private void loadCompressed(GL10 gl, int resourceId) {
+		int[] sources = mCompressed.get(resourceId);
+		byte[] data = read(sources[0]);
+		Pkm pkm = Pkm.read(data);
+		int textureName = generateTexture(gl);
+		gl.glCompressedTexImage2D(GL10.GL_TEXTURE_2D, 0, GL_ETC1_RGB8_OES,
+				pkm.extendedWidth, pkm.extendedHeight, 0, pkm.getDataSize(),
+				toBuffer(data));
+		checkError(gl);
+
+		int alphaTextureName = 0;
+		if (sources[1] != 0) {
+			data = read(sources[1]);
+			Pkm alpha = Pkm.read(data);
+			alphaTextureName = generateTexture(gl);
+			// Rows of one byte pixels are not aligned
+			gl.glPixelStorei(GL10.GL_UNPACK_ALIGNMENT, 1);
+			gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_ALPHA,
+					alpha.width, alpha.height, 0, GL10.GL_ALPHA,
+					GL10.GL_UNSIGNED_BYTE, toBuffer(data));
+			gl.glPixelStorei(GL10.GL_UNPACK_ALIGNMENT, 4);
+			checkError(gl);
+		}
+
+		mRegions.put(resourceId, new TextureRegion(resourceId, textureName,
+				alphaTextureName, 0, 0, pkm.width, pkm.height,
+				pkm.extendedWidth, pkm.extendedHeight));
+	}
+
+	private byte[] read(int resourceId) {
+		InputStream is = mContext.getResources().openRawResource(resourceId);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = is.read(buffer)) > 0) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read resource " + resourceId, e);
+		} finally {
+			try {
+				is.close();
+			} catch (IOException e) {
+				// Ignore.
+			}
+		}
+	}
+
+	/**
+	 * @return the data following the header, in a direct buffer
+	 */
+	private static ByteBuffer toBuffer(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(
+				data.length - Pkm.HEADER_SIZE).order(ByteOrder.nativeOrder());
+		buffer.put(data, Pkm.HEADER_SIZE, data.length - Pkm.HEADER_SIZE);
+		buffer.position(0);
+		return buffer;
+	}
+
+	private Bitmap decode(int resourceId, Bitmap.Config config) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inPreferredConfig = config;
+		InputStream is = mContext.getResources().openRawResource(resourceId);
+		try {
+			return BitmapFactory.decodeStream(is, null, options);
+		} finally {
+			try {
+				is.close();
+			} catch (IOException e) {
+				// Ignore.
+			}
+		}
+	}
+
+	/**
+	 * Creates a texture from the bitmap, with the common parameters for 2D
+	 * texture maps.
+	 */
+	private int upload(GL10 gl, Bitmap bitmap) {
+		int textureName = generateTexture(gl);
+		GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, bitmap, 0);
+		checkError(gl);
+		return textureName;
+	}
+
+	/**
+	 * Creates and binds a texture, with the common parameters for 2D texture
+	 * maps.
+	 */
+	private int generateTexture(GL10 gl) {
+		gl.glGenTextures(1, mTextureNameWorkspace, 0);
+		int textureName = mTextureNameWorkspace[0];
+		gl.glBindTexture(GL10.GL_TEXTURE_2D, textureName);
+
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER,
+				GL10.GL_NEAREST);
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER,
+				GL10.GL_LINEAR);
+
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S,
+				GL10.GL_CLAMP_TO_EDGE);
+		gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T,
+				GL10.GL_CLAMP_TO_EDGE);
+
+		gl.glTexEnvf(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE,
+				GL10.GL_REPLACE);
+		return textureName;
+	}
+
+	private static void checkError(GL10 gl) {
+		int error = gl.glGetError();
+		if (error != GL10.GL_NO_ERROR) {
+			Log.e(TAG, "Texture Load GLError: " + error);
+		}
+	}
+
+	private static int powerOfTwo(int size) {
+		int power = 1;
+		while (power < size) {
+			power *= 2;
+		}
+		return power;
+	}
+}
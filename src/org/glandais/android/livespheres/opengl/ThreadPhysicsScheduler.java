@@ -0,0 +1,154 @@
+package org.glandais.android.livespheres.opengl;
+
+import org.glandais.android.livespheres.physics.TickStats;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Ticks on a dedicated thread, so that physics does not compete with input
+ * dispatch and UI work on the main thread. The thread sleeps until the next
+ * absolute deadline and parks while stopped.
+ */
+public class ThreadPhysicsScheduler implements PhysicsScheduler, Runnable {
+
+	private static final String TAG = "ThreadPhysicsScheduler";
+	private static final boolean LOG_STATS = false;
+	private static final int STATS_TICKS = 500;
+
+	private final Runnable mTick;
+	private final int mPriority;
+	private final TickStats mStats = new TickStats();
+
+	// All accesses to the following fields are protected by this monitor
+	private long mPeriodNs;
+	private Thread mThread;
+	private boolean mRunning = false;
+	private boolean mTicking = false;
+	private boolean mDone = false;
+
+	/**
+	 * @param priority
+	 *            a Linux thread priority, from {@link Process}
+	 */
+	public ThreadPhysicsScheduler(Runnable tick, long periodNs, int priority) {
+		super();
+		mTick = tick;
+		mPeriodNs = periodNs;
+		mPriority = priority;
+	}
+
+	public synchronized void start() {
+		if (mDone) {
+			return;
+		}
+		if (mThread == null) {
+			mThread = new Thread(this, "Physics");
+			mThread.start();
+		}
+		mRunning = true;
+		notifyAll();
+	}
+
+	public synchronized void stop() {
+		mRunning = false;
+		notifyAll();
+		// Wait for the running tick, unless called from the tick itself
+		while (mTicking && Thread.currentThread() != mThread) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	public synchronized void setPeriod(long periodNs) {
+		mPeriodNs = periodNs;
+	}
+
+	public void shutdown() {
+		Thread thread;
+		synchronized (this) {
+			mDone = true;
+			mRunning = false;
+			thread = mThread;
+			mThread = null;
+			notifyAll();
+		}
+		if (thread != null && thread != Thread.currentThread()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public TickStats getStats() {
+		return mStats;
+	}
+
+	public void run() {
+		Process.setThreadPriority(mPriority);
+		long deadline = 0;
+		long period = 0;
+		try {
+			while (true) {
+				synchronized (this) {
+					if (deadline != 0 && period != mPeriodNs) {
+						// Period changed by the last tick
+						deadline += mPeriodNs - period;
+					}
+					period = mPeriodNs;
+					if (mTicking) {
+						mTicking = false;
+						notifyAll();
+					}
+					while (!mRunning && !mDone) {
+						wait();
+						deadline = 0;
+					}
+					if (mDone) {
+						return;
+					}
+					long now = System.nanoTime();
+					if (deadline == 0) {
+						deadline = now + period;
+					}
+					long delay = deadline - now;
+					if (delay > 0) {
+						// Woken up early by start / stop, or on time: check
+						// the state again before ticking
+						wait(delay / 1000000L, (int) (delay % 1000000L));
+						continue;
+					}
+					mTicking = true;
+				}
+
+				long now = System.nanoTime();
+				mStats.record(deadline, now);
+				if (LOG_STATS && mStats.getCount() % STATS_TICKS == 0) {
+					Log.d(TAG, mStats.toString());
+				}
+
+				mTick.run();
+
+				deadline += period;
+				now = System.nanoTime();
+				if (deadline <= now) {
+					// Too late, skip the missed ticks
+					deadline = now + period;
+				}
+			}
+		} catch (InterruptedException e) {
+			// fall thru and exit normally
+		} finally {
+			synchronized (this) {
+				mTicking = false;
+				notifyAll();
+			}
+		}
+	}
+}
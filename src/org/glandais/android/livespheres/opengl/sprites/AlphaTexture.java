@@ -0,0 +1,36 @@
+package org.glandais.android.livespheres.opengl.sprites;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Draws with a second texture unit holding the alpha of an opaque texture,
+ * for ETC1 textures which have none. The GL_ALPHA texture modulates the
+ * alpha given by the first unit, colors pass through. Texture coordinates of
+ * the second unit are set by the caller.
+ */
+public class AlphaTexture {
+
+	private AlphaTexture() {
+		super();
+	}
+
+	public static void enable(GL10 gl, int textureName, boolean pointSprite) {
+		gl.glActiveTexture(GL10.GL_TEXTURE1);
+		gl.glEnable(GL10.GL_TEXTURE_2D);
+		gl.glBindTexture(GL10.GL_TEXTURE_2D, textureName);
+		gl.glTexEnvf(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE,
+				GL10.GL_MODULATE);
+		if (pointSprite) {
+			((GL11) gl).glTexEnvi(GL11.GL_POINT_SPRITE_OES,
+					GL11.GL_COORD_REPLACE_OES, 1);
+		}
+		gl.glActiveTexture(GL10.GL_TEXTURE0);
+	}
+
+	public static void disable(GL10 gl) {
+		gl.glActiveTexture(GL10.GL_TEXTURE1);
+		gl.glDisable(GL10.GL_TEXTURE_2D);
+		gl.glActiveTexture(GL10.GL_TEXTURE0);
+	}
+}
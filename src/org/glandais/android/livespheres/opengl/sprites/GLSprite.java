@@ -17,19 +17,22 @@
 package org.glandais.android.livespheres.opengl.sprites;
 
 import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
 import javax.microedition.khronos.opengles.GL11Ext;
 
 /**
  * This is the OpenGL ES version of a sprite. It is more complicated than the
  * CanvasSprite class because it can be used in more than one way. This class
  * can draw using a grid of verts, a grid of verts stored in VBO objects, or
- * using the DrawTexture extension.
+ * using the DrawTexture extension. The grid is a unit quad scaled to the
+ * sprite size, so that it can be shared by many sprites.
  */
 public class GLSprite {
 
 	// Position.
 	public float x;
 	public float y;
+	// Rotation around the center in radians, only drawn by SpriteBatch
 	public float angle;
 
 	// Size.
@@ -40,6 +43,8 @@ public class GLSprite {
 	private int mTextureName;
 	// The id of the original resource that mTextureName is based on.
 	private int mResourceId;
+	// Part of the texture to draw, the whole texture when null.
+	private TextureRegion mRegion;
 	private Grid mGrid;
 
 	public GLSprite(int resourceId) {
@@ -63,6 +68,16 @@ public class GLSprite {
 		return mResourceId;
 	}
 
+	public void setRegion(TextureRegion region) {
+		mRegion = region;
+		mTextureName = region.textureName;
+		mResourceId = region.resourceId;
+	}
+
+	public TextureRegion getRegion() {
+		return mRegion;
+	}
+
 	public void setGrid(Grid grid) {
 		mGrid = grid;
 	}
@@ -75,8 +90,23 @@ public class GLSprite {
 		gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextureName);
 
 		if (mGrid == null) {
-			// Draw using the DrawTexture extension.
-			((GL11Ext) gl).glDrawTexfOES(x, y, 0.0f, width, height);
+			// Draw using the DrawTexture extension. The crop rectangle
+			// belongs to the texture, which may be shared by other regions.
+			if (mRegion != null) {
+				((GL11) gl).glTexParameteriv(GL10.GL_TEXTURE_2D,
+						GL11Ext.GL_TEXTURE_CROP_RECT_OES, mRegion.crop, 0);
+			}
+			if (mRegion != null && mRegion.alphaTextureName != 0) {
+				AlphaTexture.enable(gl, mRegion.alphaTextureName, false);
+				gl.glActiveTexture(GL10.GL_TEXTURE1);
+				((GL11) gl).glTexParameteriv(GL10.GL_TEXTURE_2D,
+						GL11Ext.GL_TEXTURE_CROP_RECT_OES, mRegion.crop, 0);
+				gl.glActiveTexture(GL10.GL_TEXTURE0);
+				((GL11Ext) gl).glDrawTexfOES(x, y, 0.0f, width, height);
+				AlphaTexture.disable(gl);
+			} else {
+				((GL11Ext) gl).glDrawTexfOES(x, y, 0.0f, width, height);
+			}
 		} else {
 
 			// Draw using verts or VBO verts.
@@ -84,6 +114,7 @@ public class GLSprite {
 			gl.glLoadIdentity();
 			// gl.glRotatef(angle, mTextureName, y, z)
 			gl.glTranslatef(x, y, 0.0f);
+			gl.glScalef(width, height, 1.0f);
 
 			mGrid.draw(gl, true, false);
 
@@ -0,0 +1,166 @@
+package org.glandais.android.livespheres.opengl.sprites;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Draws many square sprites sharing a texture as point sprites, with a single
+ * glDrawArrays call. Each sprite is one vertex holding its center and size,
+ * instead of the four vertices and six indices of {@link SpriteBatch}.
+ * Sprites are not rotated, and the texture is mapped whole, so it cannot be
+ * an atlas.
+ *
+ * Needs the GL_OES_point_sprite and GL_OES_point_size_array extensions, see
+ * {@link #isSupported(GL10)}. The vertex array must be enabled and the model
+ * view matrix set to identity. Client arrays are always used, as GL11 has no
+ * buffer offset variant of glPointSizePointerOES.
+ */
+public class PointSpriteBatch {
+
+	private static final String POINT_SPRITE = "GL_OES_point_sprite";
+	private static final String POINT_SIZE_ARRAY = "GL_OES_point_size_array";
+
+	// x, y, size
+	private static final int VERTEX_FLOATS = 3;
+	private static final int VERTEX_SIZE = VERTEX_FLOATS * 4;
+
+	private int mCapacity;
+	private float[] mVertices;
+	private FloatBuffer mVertexBuffer;
+
+	private int mPointCount;
+	private int mTextureName;
+	private int mAlphaTextureName;
+	private int mDrawCallCount;
+	private final float mMaxSize;
+
+	/**
+	 * @return true when the context can draw point sprites with a size array
+	 */
+	public static boolean isSupported(GL10 gl) {
+		if (!(gl instanceof GL11)) {
+			return false;
+		}
+		String extensions = gl.glGetString(GL10.GL_EXTENSIONS);
+		return extensions != null && hasExtension(extensions, POINT_SPRITE)
+				&& hasExtension(extensions, POINT_SIZE_ARRAY);
+	}
+
+	private static boolean hasExtension(String extensions, String name) {
+		// Names are space separated, and some are prefixes of others
+		return (" " + extensions + " ").indexOf(" " + name + " ") >= 0;
+	}
+
+	/**
+	 * Must be created on the GL thread, to read the largest point size.
+	 */
+	public PointSpriteBatch(GL10 gl, int capacity) {
+		super();
+		float[] range = new float[2];
+		((GL11) gl).glGetFloatv(GL10.GL_ALIASED_POINT_SIZE_RANGE, range, 0);
+		mMaxSize = range[1];
+		allocate(Math.max(1, capacity));
+	}
+
+	/**
+	 * @return the largest sprite size, in pixels, that can be drawn
+	 */
+	public float getMaxSize() {
+		return mMaxSize;
+	}
+
+	/**
+	 * Makes room for the given number of sprites per draw call.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > mCapacity) {
+			allocate(capacity);
+		}
+	}
+
+	private void allocate(int capacity) {
+		mCapacity = capacity;
+		mVertices = new float[capacity * VERTEX_FLOATS];
+		mVertexBuffer = ByteBuffer.allocateDirect(capacity * VERTEX_SIZE)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * @param alphaTextureName
+	 *            texture holding the alpha, see {@link AlphaTexture}, 0 if
+	 *            none
+	 */
+	public void begin(int textureName, int alphaTextureName) {
+		mTextureName = textureName;
+		mAlphaTextureName = alphaTextureName;
+		mPointCount = 0;
+	}
+
+	/**
+	 * Adds a sprite, its width being used as size. The angle is ignored.
+	 */
+	public void add(GL10 gl, GLSprite sprite) {
+		if (mPointCount == mCapacity) {
+			flush(gl);
+		}
+		float halfWidth = sprite.width * 0.5f;
+		float[] v = mVertices;
+		int i = mPointCount * VERTEX_FLOATS;
+		v[i] = sprite.x + halfWidth;
+		v[i + 1] = sprite.y + sprite.height * 0.5f;
+		v[i + 2] = sprite.width;
+		mPointCount++;
+	}
+
+	public void end(GL10 gl) {
+		flush(gl);
+	}
+
+	private void flush(GL10 gl) {
+		if (mPointCount == 0) {
+			return;
+		}
+		GL11 gl11 = (GL11) gl;
+		gl11.glBindTexture(GL10.GL_TEXTURE_2D, mTextureName);
+		gl11.glEnable(GL11.GL_POINT_SPRITE_OES);
+		// GL_TRUE, not defined by GL10
+		gl11.glTexEnvi(GL11.GL_POINT_SPRITE_OES, GL11.GL_COORD_REPLACE_OES, 1);
+		if (mAlphaTextureName != 0) {
+			AlphaTexture.enable(gl, mAlphaTextureName, true);
+		}
+		gl11.glEnableClientState(GL11.GL_POINT_SIZE_ARRAY_OES);
+		gl11.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+
+		mVertexBuffer.clear();
+		mVertexBuffer.put(mVertices, 0, mPointCount * VERTEX_FLOATS);
+		mVertexBuffer.position(0);
+
+		gl11.glVertexPointer(2, GL10.GL_FLOAT, VERTEX_SIZE, mVertexBuffer);
+		mVertexBuffer.position(2);
+		gl11.glPointSizePointerOES(GL10.GL_FLOAT, VERTEX_SIZE, mVertexBuffer);
+		mVertexBuffer.position(0);
+		gl11.glDrawArrays(GL10.GL_POINTS, 0, mPointCount);
+
+		gl11.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		gl11.glDisableClientState(GL11.GL_POINT_SIZE_ARRAY_OES);
+		gl11.glDisable(GL11.GL_POINT_SPRITE_OES);
+		if (mAlphaTextureName != 0) {
+			AlphaTexture.disable(gl);
+		}
+		mDrawCallCount++;
+		mPointCount = 0;
+	}
+
+	/**
+	 * @return draw calls issued since the last call
+	 */
+	public int takeDrawCallCount() {
+		int count = mDrawCallCount;
+		mDrawCallCount = 0;
+		return count;
+	}
+}
@@ -0,0 +1,269 @@
+package org.glandais.android.livespheres.opengl.sprites;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Draws many sprites sharing a texture with a single glDrawElements call. The
+ * quads of all sprites, rotated and scaled, are written into one streaming
+ * vertex buffer, re-uploaded on each flush. Vertex and texture coordinate
+ * arrays must be enabled, see {@link Grid#beginDrawing(GL10, boolean, boolean)}
+ * , and the model view matrix set to identity.
+ */
+public class SpriteBatch {
+
+	// 16 bits indices
+	private static final int MAX_QUADS = 65536 / 4;
+
+	// x, y, u, v
+	private static final int VERTEX_FLOATS = 4;
+	private static final int VERTEX_SIZE = VERTEX_FLOATS * 4;
+	private static final int QUAD_FLOATS = 4 * VERTEX_FLOATS;
+
+	private int mCapacity;
+	private float[] mVertices;
+	private FloatBuffer mVertexBuffer;
+	private CharBuffer mIndexBuffer;
+
+	private int mQuadCount;
+	private int mTextureName;
+	private int mAlphaTextureName;
+	private int mDrawCallCount;
+
+	private boolean mUseHardwareBuffers;
+	private int mVertBufferIndex;
+	private int mIndexBufferIndex;
+	// Indices must be uploaded before the next hardware draw
+	private boolean mIndicesChanged;
+	private final int[] mBufferWorkspace = new int[1];
+
+	public SpriteBatch(int capacity) {
+		super();
+		allocate(Math.max(1, Math.min(capacity, MAX_QUADS)));
+	}
+
+	/**
+	 * Makes room for the given number of sprites per draw call.
+	 */
+	public void ensureCapacity(int capacity) {
+		capacity = Math.min(capacity, MAX_QUADS);
+		if (capacity > mCapacity) {
+			allocate(capacity);
+		}
+	}
+
+	private void allocate(int capacity) {
+		mCapacity = capacity;
+		mVertices = new float[capacity * QUAD_FLOATS];
+		mVertexBuffer = ByteBuffer.allocateDirect(capacity * 4 * VERTEX_SIZE)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		mIndexBuffer = ByteBuffer.allocateDirect(capacity * 6 * 2)
+				.order(ByteOrder.nativeOrder()).asCharBuffer();
+
+		// Same triangles as Grid: bottom left, bottom right, top left, then
+		// bottom right, top left, top right.
+		int i = 0;
+		for (int quad = 0; quad < capacity; quad++) {
+			char first = (char) (quad * 4);
+			mIndexBuffer.put(i++, first);
+			mIndexBuffer.put(i++, (char) (first + 1));
+			mIndexBuffer.put(i++, (char) (first + 2));
+			mIndexBuffer.put(i++, (char) (first + 1));
+			mIndexBuffer.put(i++, (char) (first + 2));
+			mIndexBuffer.put(i++, (char) (first + 3));
+		}
+		mIndicesChanged = true;
+	}
+
+	/**
+	 * @param alphaTextureName
+	 *            texture holding the alpha, see {@link AlphaTexture}, 0 if
+	 *            none
+	 */
+	public void begin(int textureName, int alphaTextureName) {
+		mTextureName = textureName;
+		mAlphaTextureName = alphaTextureName;
+		mQuadCount = 0;
+	}
+
+	/**
+	 * Adds a sprite, rotated by its angle, in radians, around its center. The
+	 * sprite region, if any, must be in the batch texture.
+	 */
+	public void add(GL10 gl, GLSprite sprite) {
+		if (mQuadCount == mCapacity) {
+			flush(gl);
+		}
+		float halfWidth = sprite.width * 0.5f;
+		float halfHeight = sprite.height * 0.5f;
+		float centerX = sprite.x + halfWidth;
+		float centerY = sprite.y + halfHeight;
+		float cos = 1.0f;
+		float sin = 0.0f;
+		if (sprite.angle != 0.0f) {
+			cos = (float) Math.cos(sprite.angle);
+			sin = (float) Math.sin(sprite.angle);
+		}
+		// Half diagonals along the rotated axes
+		float ax = halfWidth * cos;
+		float ay = halfWidth * sin;
+		float bx = -halfHeight * sin;
+		float by = halfHeight * cos;
+
+		float u0 = 0.0f;
+		float v0 = 0.0f;
+		float u1 = 1.0f;
+		float v1 = 1.0f;
+		TextureRegion region = sprite.getRegion();
+		if (region != null) {
+			u0 = region.u0;
+			v0 = region.v0;
+			u1 = region.u1;
+			v1 = region.v1;
+		}
+
+		float[] v = mVertices;
+		int i = mQuadCount * QUAD_FLOATS;
+		// Bitmaps are stored top down, hence v1 at the bottom
+		i = put(v, i, centerX - ax - bx, centerY - ay - by, u0, v1);
+		i = put(v, i, centerX + ax - bx, centerY + ay - by, u1, v1);
+		i = put(v, i, centerX - ax + bx, centerY - ay + by, u0, v0);
+		put(v, i, centerX + ax + bx, centerY + ay + by, u1, v0);
+		mQuadCount++;
+	}
+
+	private static int put(float[] v, int i, float x, float y, float s,
+			float t) {
+		v[i] = x;
+		v[i + 1] = y;
+		v[i + 2] = s;
+		v[i + 3] = t;
+		return i + VERTEX_FLOATS;
+	}
+
+	public void end(GL10 gl) {
+		flush(gl);
+	}
+
+	private void flush(GL10 gl) {
+		if (mQuadCount == 0) {
+			return;
+		}
+		gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextureName);
+		boolean alpha = mAlphaTextureName != 0;
+		if (alpha) {
+			AlphaTexture.enable(gl, mAlphaTextureName, false);
+			gl.glClientActiveTexture(GL10.GL_TEXTURE1);
+			gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+			gl.glClientActiveTexture(GL10.GL_TEXTURE0);
+		}
+
+		mVertexBuffer.clear();
+		mVertexBuffer.put(mVertices, 0, mQuadCount * QUAD_FLOATS);
+		mVertexBuffer.position(0);
+
+		int indexCount = mQuadCount * 6;
+		if (!mUseHardwareBuffers) {
+			gl.glVertexPointer(2, GL10.GL_FLOAT, VERTEX_SIZE, mVertexBuffer);
+			mVertexBuffer.position(2);
+			gl.glTexCoordPointer(2, GL10.GL_FLOAT, VERTEX_SIZE, mVertexBuffer);
+			if (alpha) {
+				gl.glClientActiveTexture(GL10.GL_TEXTURE1);
+				gl.glTexCoordPointer(2, GL10.GL_FLOAT, VERTEX_SIZE,
+						mVertexBuffer);
+				gl.glClientActiveTexture(GL10.GL_TEXTURE0);
+			}
+			mVertexBuffer.position(0);
+			gl.glDrawElements(GL10.GL_TRIANGLES, indexCount,
+					GL10.GL_UNSIGNED_SHORT, mIndexBuffer);
+		} else {
+			GL11 gl11 = (GL11) gl;
+			gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mVertBufferIndex);
+			// Respecifying the whole store lets the driver orphan the
+			// buffer still used by the previous draw
+			gl11.glBufferData(GL11.GL_ARRAY_BUFFER, mQuadCount * 4
+					* VERTEX_SIZE, mVertexBuffer, GL11.GL_DYNAMIC_DRAW);
+			gl11.glVertexPointer(2, GL10.GL_FLOAT, VERTEX_SIZE, 0);
+			gl11.glTexCoordPointer(2, GL10.GL_FLOAT, VERTEX_SIZE, 8);
+			if (alpha) {
+				gl11.glClientActiveTexture(GL10.GL_TEXTURE1);
+				gl11.glTexCoordPointer(2, GL10.GL_FLOAT, VERTEX_SIZE, 8);
+				gl11.glClientActiveTexture(GL10.GL_TEXTURE0);
+			}
+
+			gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferIndex);
+			if (mIndicesChanged) {
+				gl11.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER,
+						mIndexBuffer.capacity() * 2, mIndexBuffer,
+						GL11.GL_STATIC_DRAW);
+				mIndicesChanged = false;
+			}
+			gl11.glDrawElements(GL11.GL_TRIANGLES, indexCount,
+					GL11.GL_UNSIGNED_SHORT, 0);
+
+			gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+			gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+		}
+		if (alpha) {
+			gl.glClientActiveTexture(GL10.GL_TEXTURE1);
+			gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+			gl.glClientActiveTexture(GL10.GL_TEXTURE0);
+			AlphaTexture.disable(gl);
+		}
+		mDrawCallCount++;
+		mQuadCount = 0;
+	}
+
+	/**
+	 * @return draw calls issued since the last call
+	 */
+	public int takeDrawCallCount() {
+		int count = mDrawCallCount;
+		mDrawCallCount = 0;
+		return count;
+	}
+
+	/**
+	 * Forgets the hardware buffers, when the GL context has been lost.
+	 */
+	public void invalidateHardwareBuffers() {
+		mVertBufferIndex = 0;
+		mIndexBufferIndex = 0;
+		mUseHardwareBuffers = false;
+	}
+
+	public void releaseHardwareBuffers(GL10 gl) {
+		if (mUseHardwareBuffers) {
+			GL11 gl11 = (GL11) gl;
+			mBufferWorkspace[0] = mVertBufferIndex;
+			gl11.glDeleteBuffers(1, mBufferWorkspace, 0);
+			mBufferWorkspace[0] = mIndexBufferIndex;
+			gl11.glDeleteBuffers(1, mBufferWorkspace, 0);
+			invalidateHardwareBuffers();
+		}
+	}
+
+	/**
+	 * Allocates a static index buffer and a streaming vertex buffer on the
+	 * graphics card, if GL11 is available. Both are filled when drawing.
+	 */
+	public void generateHardwareBuffers(GL10 gl) {
+		if (!mUseHardwareBuffers && gl instanceof GL11) {
+			GL11 gl11 = (GL11) gl;
+
+			gl11.glGenBuffers(1, mBufferWorkspace, 0);
+			mVertBufferIndex = mBufferWorkspace[0];
+
+			gl11.glGenBuffers(1, mBufferWorkspace, 0);
+			mIndexBufferIndex = mBufferWorkspace[0];
+			mIndicesChanged = true;
+
+			mUseHardwareBuffers = true;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package org.glandais.android.livespheres.opengl.sprites;
+
+/**
+ * Part of a GL texture holding one image, possibly packed with others in an
+ * atlas.
+ */
+public class TextureRegion {
+
+	public final int resourceId;
+	public final int textureName;
+	// Texture holding the alpha of an opaque texture, 0 if none
+	public final int alphaTextureName;
+
+	// Texture coordinates, v0 is the top of the image
+	public final float u0;
+	public final float v0;
+	public final float u1;
+	public final float v1;
+
+	// Crop rectangle in pixels for the DrawTexture extension
+	public final int[] crop;
+
+	public TextureRegion(int resourceId, int textureName, int x, int y,
+			int width, int height, int textureWidth, int textureHeight) {
+		this(resourceId, textureName, 0, x, y, width, height, textureWidth,
+				textureHeight);
+	}
+
+	public TextureRegion(int resourceId, int textureName,
+			int alphaTextureName, int x, int y, int width, int height,
+			int textureWidth, int textureHeight) {
+		super();
+		this.resourceId = resourceId;
+		this.textureName = textureName;
+		this.alphaTextureName = alphaTextureName;
+		u0 = (float) x / textureWidth;
+		v0 = (float) y / textureHeight;
+		u1 = (float) (x + width) / textureWidth;
+		v1 = (float) (y + height) / textureHeight;
+		crop = new int[] { x, y + height, width, -height };
+	}
+}